@@ -0,0 +1,80 @@
+package com.benchmarks;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alerts.AlertGenerator;
+import com.alerts.StreamingAlertEvaluator;
+import com.data_management.DataStorage;
+import com.data_management.Patient;
+import com.data_management.RecordTypes;
+
+/**
+ * Measures full-history alert evaluation of one patient against the cost of
+ * evaluating a single reading as it arrives.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AlertEvaluationBenchmark {
+    @Param({ "60", "1440" })
+    public int historyMinutes;
+
+    private Patient patient;
+    private AlertGenerator alertGenerator;
+    private StreamingAlertEvaluator streamingEvaluator;
+    private int saturationTypeId;
+    private long timestamp;
+    private long alertCount;
+    private PrintStream originalOut;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        DataStorage storage = new DataStorage();
+        SimulatedFeed.generate(1, historyMinutes * 60, storage::addPatientData);
+        patient = storage.getAllPatients().get(0);
+        alertGenerator = new AlertGenerator(storage);
+        streamingEvaluator = new StreamingAlertEvaluator(alert -> alertCount++);
+        saturationTypeId = RecordTypes.idOf("Saturation");
+        timestamp = SimulatedFeed.START_TIME;
+        // evaluateData prints every alert; keep the console out of the measurement
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void evaluateFullHistory() {
+        alertGenerator.evaluateData(patient);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long evaluateOneReading() {
+        timestamp += 1000;
+        streamingEvaluator.onRecord(1, saturationTypeId, 90 + (timestamp / 1000) % 11, timestamp);
+        return alertCount;
+    }
+}
@@ -0,0 +1,131 @@
+package com.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.data_management.Aggregation;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.RecordView;
+
+/**
+ * Measures ingestion into {@link DataStorage}, the "last 5 minutes" range
+ * queries that dashboards issue and a 1,000-point chart of the whole history,
+ * over a pre-filled history.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DataStorageBenchmark {
+    private static final long FIVE_MINUTES = 5 * 60 * 1000L;
+    private static final int CHART_POINTS = 1000;
+
+    @State(Scope.Benchmark)
+    public static class History {
+        @Param({ "10", "100" })
+        public int patientCount;
+
+        @Param({ "60", "1440" })
+        public int historyMinutes;
+
+        DataStorage storage;
+        long endTime;
+        int nextPatient;
+
+        @Setup(Level.Trial)
+        public void fill() {
+            storage = new DataStorage();
+            SimulatedFeed.generate(patientCount, historyMinutes * 60, storage::addPatientData);
+            endTime = SimulatedFeed.START_TIME + historyMinutes * 60 * 1000L;
+        }
+
+        int nextPatient() {
+            nextPatient = nextPatient % patientCount + 1;
+            return nextPatient;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Ingest {
+        DataStorage storage;
+        long timestamp;
+        int patientId;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            storage = new DataStorage();
+            timestamp = SimulatedFeed.START_TIME;
+            patientId = 0;
+        }
+    }
+
+    @Benchmark
+    public void addPatientData(Ingest ingest) {
+        // 500 patients, one ECG reading each per simulated second
+        if (++ingest.patientId > 500) {
+            ingest.patientId = 1;
+            ingest.timestamp += 1000;
+        }
+        ingest.storage.addPatientData(ingest.patientId, 0.5, "ECG", ingest.timestamp);
+    }
+
+    @Benchmark
+    public double lastFiveMinutesOfType(History history) {
+        RecordView view = history.storage.getRecords(history.nextPatient(), "ECG",
+                history.endTime - FIVE_MINUTES, history.endTime);
+        double sum = 0;
+        for (int i = 0; i < view.size(); i++) {
+            sum += view.getValue(i);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void lastFiveMinutesAllTypes(History history, Blackhole blackhole) {
+        List<PatientRecord> records = history.storage.getRecords(history.nextPatient(),
+                history.endTime - FIVE_MINUTES, history.endTime);
+        for (PatientRecord record : records) {
+            blackhole.consume(record.getMeasurementValue());
+        }
+    }
+
+    @Benchmark
+    public void chartFromRecords(History history, Blackhole blackhole) {
+        // What a dashboard had to do before: fetch every record and reduce it itself
+        List<PatientRecord> records = history.storage.getRecords(history.nextPatient(),
+                SimulatedFeed.START_TIME, history.endTime);
+        for (PatientRecord record : records) {
+            if (record.getRecordType().equals("ECG")) {
+                blackhole.consume(record.getMeasurementValue());
+            }
+        }
+    }
+
+    @Benchmark
+    public Aggregation chartFromAggregate(History history) {
+        return history.storage.aggregate(history.nextPatient(), "ECG", SimulatedFeed.START_TIME,
+                history.endTime, CHART_POINTS);
+    }
+
+    @Benchmark
+    public RecordView chartFromDownsample(History history) {
+        return history.storage.downsample(history.nextPatient(), "ECG", SimulatedFeed.START_TIME,
+                history.endTime, CHART_POINTS);
+    }
+}
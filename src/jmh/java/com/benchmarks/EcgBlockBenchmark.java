@@ -0,0 +1,103 @@
+package com.benchmarks;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.outputs.BinaryFrameWriter;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Measures one second of high-rate ECG for 1,000 patients, one block per
+ * patient, on a single thread. Samples per second per core is
+ * {@code 1000 * rate} divided by the time per operation:
+ * <ul>
+ * <li>{@code memory}: a strategy that takes each block as arrays and sums it,
+ * so the result is the cost of generating the waveform.</li>
+ * <li>{@code binary}: every sample encoded into binary batch frames of 256
+ * readings, as the {@code tcp-bin} and {@code websocket-bin} outputs do.</li>
+ * </ul>
+ * Running with {@code -jvmArgsAppend -XX:-UseSuperWord} shows what the
+ * JIT's vectorization of the block loops is worth.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EcgBlockBenchmark {
+    private static final int PATIENTS = 1000;
+
+    @Param({ "250", "500" })
+    public int rate;
+
+    @Param({ "memory", "binary" })
+    public String output;
+
+    private ECGDataGenerator generator;
+    private OutputStrategy strategy;
+    private Blackhole blackhole;
+    private long timestamp;
+
+    @Setup(Level.Trial)
+    public void createGenerator(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        generator = new ECGDataGenerator(PATIENTS, new SplittableRandom(1), rate);
+        timestamp = 1_700_000_000_000L;
+        if (output.equals("memory")) {
+            strategy = new BlockOutput() {
+                @Override
+                public void outputBlock(int patientId, long[] timestamps, int labelId, double[] values, int count) {
+                    double sum = 0;
+                    for (int i = 0; i < count; i++) {
+                        sum += values[i];
+                    }
+                    EcgBlockBenchmark.this.blackhole.consume(sum);
+                }
+            };
+        } else {
+            BinaryFrameWriter writer = new BinaryFrameWriter(256);
+            strategy = new BlockOutput() {
+                @Override
+                public void output(int patientId, long timestamp, int labelId, double value) {
+                    if (writer.add(patientId, timestamp, labelId, value)) {
+                        EcgBlockBenchmark.this.blackhole.consume(writer.flush());
+                    }
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public void generateSecond() {
+        for (int patientId = 1; patientId <= PATIENTS; patientId++) {
+            generator.generate(patientId, timestamp, strategy);
+        }
+        timestamp += 1000;
+    }
+
+    /**
+     * A strategy that only takes numbers.
+     */
+    private abstract static class BlockOutput implements OutputStrategy {
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
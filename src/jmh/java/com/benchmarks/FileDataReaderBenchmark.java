@@ -0,0 +1,96 @@
+package com.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.data_management.DataReader;
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.MappedFileDataReader;
+
+/**
+ * Measures loading an archive of simulator readings, one file per record
+ * type, line by line through {@link FileDataReader} ({@code file}) against
+ * the parallel, memory-mapped {@link MappedFileDataReader} ({@code mapped}).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileDataReaderBenchmark {
+    @Param({ "50" })
+    public int patientCount;
+
+    @Param({ "60", "600" })
+    public int historyMinutes;
+
+    @Param({ "file", "mapped" })
+    public String reader;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void writeArchive() throws IOException {
+        directory = Files.createTempDirectory("file-reader-benchmark");
+        Map<String, BufferedWriter> writers = new HashMap<>();
+        try {
+            SimulatedFeed.generate(patientCount, historyMinutes * 60, (patientId, value, type, timestamp) -> {
+                try {
+                    BufferedWriter writer = writers.get(type);
+                    if (writer == null) {
+                        writer = Files.newBufferedWriter(directory.resolve(type + ".txt"));
+                        writers.put(type, writer);
+                    }
+                    writer.write(patientId + "," + timestamp + "," + type + "," + value);
+                    writer.newLine();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteArchive() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public DataStorage readData() throws IOException {
+        DataStorage storage = new DataStorage();
+        DataReader dataReader = reader.equals("file") ? new FileDataReader(directory.toString())
+                : new MappedFileDataReader(directory.toString());
+        dataReader.readData(storage);
+        return storage;
+    }
+}
@@ -0,0 +1,97 @@
+package com.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cardio_generator.outputs.BatchingFileOutputStrategy;
+import com.cardio_generator.outputs.FileOutputStrategy;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Measures writing simulator output to files with {@link FileOutputStrategy},
+ * which opens the file for every reading, and with
+ * {@link BatchingFileOutputStrategy}. Each operation outputs ten seconds of
+ * readings and then closes the strategy, so the batching strategy is timed
+ * until everything is on disk.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FileOutputBenchmark {
+    @Param({ "500" })
+    public int patientCount;
+
+    @Param({ "file", "batched-file" })
+    public String strategy;
+
+    private int[] patientIds;
+    private long[] timestamps;
+    private String[] labels;
+    private String[] data;
+    private Path directory;
+    private OutputStrategy output;
+
+    @Setup(Level.Trial)
+    public void generateReadings() {
+        List<Object[]> readings = new ArrayList<>();
+        SimulatedFeed.generate(patientCount, 10, (patientId, value, type, timestamp) ->
+                readings.add(new Object[] { patientId, timestamp, type, Double.toString(value) }));
+        patientIds = new int[readings.size()];
+        timestamps = new long[readings.size()];
+        labels = new String[readings.size()];
+        data = new String[readings.size()];
+        for (int i = 0; i < readings.size(); i++) {
+            patientIds[i] = (Integer) readings.get(i)[0];
+            timestamps[i] = (Long) readings.get(i)[1];
+            labels[i] = (String) readings.get(i)[2];
+            data[i] = (String) readings.get(i)[3];
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void openOutput() throws IOException {
+        directory = Files.createTempDirectory("file-output-benchmark");
+        output = strategy.equals("file")
+                ? new FileOutputStrategy(directory.toString())
+                : new BatchingFileOutputStrategy(directory.toString());
+    }
+
+    @TearDown(Level.Iteration)
+    public void deleteOutput() throws IOException {
+        try (var files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    public void outputReadings() {
+        for (int i = 0; i < patientIds.length; i++) {
+            output.output(patientIds[i], timestamps[i], labels[i], data[i]);
+        }
+        output.close();
+    }
+}
@@ -0,0 +1,106 @@
+package com.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodLevelsDataGenerator;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.BinaryFrameWriter;
+import com.cardio_generator.outputs.Labels;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Measures one round of every generator for 1,000 patients (about 7,000
+ * readings) against outputs that do no I/O, so the result is the cost of
+ * producing and encoding the readings. With the GC profiler,
+ * {@code gc.alloc.rate.norm} is the garbage per round:
+ * <ul>
+ * <li>{@code text}: a strategy that only takes data strings, as every
+ * strategy did before label ids; each reading is formatted.</li>
+ * <li>{@code memory}: a strategy that takes the primitive form and keeps
+ * running sums.</li>
+ * <li>{@code binary}: binary batch frames of 256 readings, as the
+ * {@code tcp-bin} and {@code websocket-bin} outputs encode them.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GeneratorOutputBenchmark {
+    private static final int PATIENTS = 1000;
+
+    @Param({ "text", "memory", "binary" })
+    public String output;
+
+    private PatientDataGenerator[] generators;
+    private OutputStrategy strategy;
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void createOutput(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        generators = new PatientDataGenerator[] { new ECGDataGenerator(PATIENTS),
+                new BloodSaturationDataGenerator(PATIENTS), new BloodPressureDataGenerator(PATIENTS),
+                new BloodLevelsDataGenerator(PATIENTS), new AlertGenerator(PATIENTS) };
+        if (output.equals("text")) {
+            strategy = (patientId, timestamp, label, data) -> this.blackhole.consume(data);
+        } else if (output.equals("memory")) {
+            double[] sums = new double[64];
+            strategy = new PrimitiveOutput() {
+                @Override
+                public void output(int patientId, long timestamp, int labelId, double value) {
+                    sums[labelId] += value;
+                }
+            };
+        } else {
+            BinaryFrameWriter writer = new BinaryFrameWriter(256);
+            strategy = new PrimitiveOutput() {
+                @Override
+                public void output(int patientId, long timestamp, int labelId, double value) {
+                    if (writer.add(patientId, timestamp, labelId, value)) {
+                        GeneratorOutputBenchmark.this.blackhole.consume(writer.flush());
+                    }
+                }
+            };
+        }
+    }
+
+    @Benchmark
+    public void generateRound() {
+        for (int patientId = 1; patientId <= PATIENTS; patientId++) {
+            for (PatientDataGenerator generator : generators) {
+                generator.generate(patientId, strategy);
+            }
+        }
+    }
+
+    /**
+     * A strategy for the primitive form only.
+     */
+    private abstract static class PrimitiveOutput implements OutputStrategy {
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            output(patientId, timestamp, Labels.idOf(label), BinaryFrameWriter.parseValue(data));
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.benchmarks;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.RPeakDetector;
+import com.data_management.RecordTypes;
+
+/**
+ * Measures one second of 500 Hz ECG for 200 patients (100,000 samples) on a
+ * single thread, from the simulator's high-rate waveform. The detector keeps
+ * up in real time while an operation takes less than a second:
+ * <ul>
+ * <li>{@code detector}: the samples passed straight to
+ * {@link RPeakDetector#onRecord}; heart rates and RR intervals are added to a
+ * storage of their own.</li>
+ * <li>{@code storage}: the samples added to a {@link DataStorage} with the
+ * detector registered, so storing the ECG is included.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RPeakDetectorBenchmark {
+    private static final int PATIENTS = 200;
+    private static final int SAMPLE_RATE = 500;
+    private static final int SECONDS = 10; // Replayed in a loop
+
+    @Param({ "detector", "storage" })
+    public String path;
+
+    private final int ecg = RecordTypes.idOf("ECG");
+    private double[][][] values; // Second, patient, sample
+    private long[] offsets;
+    private DataStorage storage;
+    private RPeakDetector detector;
+    private long second;
+
+    @Setup(Level.Trial)
+    public void generateEcg() {
+        ECGDataGenerator generator = new ECGDataGenerator(PATIENTS, new SplittableRandom(1), SAMPLE_RATE);
+        values = new double[SECONDS][PATIENTS + 1][];
+        offsets = new long[SAMPLE_RATE];
+        for (int s = 0; s < SECONDS; s++) {
+            int current = s;
+            OutputStrategy capture = new OutputStrategy() {
+                @Override
+                public void output(int patientId, long timestamp, String label, String data) {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public void outputBlock(int patientId, long[] timestamps, int labelId, double[] samples,
+                        int count) {
+                    values[current][patientId] = Arrays.copyOf(samples, count);
+                    for (int i = 0; i < count; i++) {
+                        offsets[i] = timestamps[i] - timestamps[0];
+                    }
+                }
+            };
+            for (int patientId = 1; patientId <= PATIENTS; patientId++) {
+                generator.generate(patientId, s * 1000L, capture);
+            }
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createStorage() {
+        // A fresh storage per iteration, so the stored history does not grow without bound
+        storage = new DataStorage();
+        detector = new RPeakDetector(storage);
+        if (path.equals("storage")) {
+            storage.addListener(detector);
+        }
+        second = 0;
+    }
+
+    @Benchmark
+    public void processSecond() {
+        double[][] patients = values[(int) (second % SECONDS)];
+        long start = 1_700_000_000_000L + second * 1000;
+        boolean direct = path.equals("detector");
+        for (int patientId = 1; patientId <= PATIENTS; patientId++) {
+            double[] samples = patients[patientId];
+            for (int i = 0; i < samples.length; i++) {
+                if (direct) {
+                    detector.onRecord(patientId, ecg, samples[i], start + offsets[i]);
+                } else {
+                    storage.addPatientData(patientId, samples[i], ecg, start + offsets[i]);
+                }
+            }
+        }
+        second++;
+    }
+}
@@ -0,0 +1,63 @@
+package com.benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import com.data_management.DataStorage;
+
+/**
+ * Checks that the heap plateaus when {@link DataStorage} retention runs under
+ * steady load. Not a JMH benchmark: ECG and saturation readings for every
+ * patient are stored once per simulated second, as fast as possible, while
+ * retention runs in the background; every few seconds of real time the heap
+ * used after a full GC is printed next to the simulated time. Once the
+ * simulated time exceeds the rollup retention, the used heap should stop
+ * growing.
+ *
+ * <p>Arguments: {@code [patientCount] [minutes] [readingRetentionHours]
+ * [rollupRetentionHours]}, defaulting to 500 patients for 10 minutes with one
+ * hour of readings and 24 hours of rollups.
+ */
+public final class RetentionSoak {
+    private static final long HOUR = 3_600_000L;
+
+    private RetentionSoak() {
+    }
+
+    public static void main(String[] args) {
+        int patientCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        long minutes = args.length > 1 ? Long.parseLong(args[1]) : 10;
+        long readingRetention = (args.length > 2 ? Long.parseLong(args[2]) : 1) * HOUR;
+        long rollupRetention = (args.length > 3 ? Long.parseLong(args[3]) : 24) * HOUR;
+
+        DataStorage storage = new DataStorage();
+        storage.startRetention(readingRetention, rollupRetention, 1000);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long end = System.nanoTime() + minutes * 60_000_000_000L;
+        long nextReport = 0;
+        long plateauHeap = -1;
+        long readings = 0;
+        for (long second = 0; System.nanoTime() < end; second++) {
+            long timestamp = SimulatedFeed.START_TIME + second * 1000;
+            for (int patientId = 1; patientId <= patientCount; patientId++) {
+                storage.addPatientData(patientId, Math.sin(second * 0.1 + patientId), "ECG", timestamp);
+                storage.addPatientData(patientId, 95 + (second + patientId) % 5, "Saturation", timestamp);
+            }
+            readings += 2L * patientCount;
+            if (System.nanoTime() >= nextReport) {
+                System.gc();
+                long used = memory.getHeapMemoryUsage().getUsed();
+                boolean rollupsFull = second * 1000 > rollupRetention;
+                if (rollupsFull && plateauHeap < 0) {
+                    plateauHeap = used;
+                }
+                System.out.printf("simulated=%.1fh readings=%d usedHeap=%dMB estimated=%dMB%s%n", second / 3600.0,
+                        readings, used >> 20, storage.estimateHeapBytes() >> 20,
+                        plateauHeap > 0 ? String.format(" vs plateau %+.1f%%", 100.0 * (used - plateauHeap) / plateauHeap)
+                                : "");
+                nextReport = System.nanoTime() + 10_000_000_000L;
+            }
+        }
+        storage.stopRetention();
+    }
+}
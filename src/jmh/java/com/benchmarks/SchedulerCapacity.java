@@ -0,0 +1,111 @@
+package com.benchmarks;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cardio_generator.GenerationScheduler;
+import com.cardio_generator.TickScheduler;
+import com.cardio_generator.VirtualThreadScheduler;
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodLevelsDataGenerator;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Finds the largest patient count each way of scheduling the simulator can
+ * sustain when the output strategy blocks, as a slow TCP client or disk would.
+ * Not a JMH benchmark: for each patient count the simulator's five generators
+ * run in real time for a while, and the count is sustained if at least 95% of
+ * the expected ECG readings were output. Counts are tried in increasing order
+ * until one is not sustained.
+ *
+ * <p>Arguments: {@code mode patientCounts [blockMillis] [seconds]}, where mode
+ * is {@code per-task} (one platform thread pool task per generator, as the
+ * simulator does by default), {@code tick} or {@code virtual}, and
+ * patientCounts is comma-separated.
+ */
+public final class SchedulerCapacity {
+    private SchedulerCapacity() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        String mode = args[0];
+        long blockMillis = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        for (String count : args[1].split(",")) {
+            int patientCount = Integer.parseInt(count);
+            double ratio = run(mode, patientCount, blockMillis, seconds);
+            System.out.printf("%s patients=%d blockMillis=%d ecgReadings=%.1f%% of expected%n", mode, patientCount,
+                    blockMillis, ratio * 100);
+            if (ratio < 0.95) {
+                System.out.printf("%s: max sustained patient count is below %d%n", mode, patientCount);
+                return;
+            }
+        }
+        System.out.printf("%s: every patient count was sustained%n", mode);
+    }
+
+    private static double run(String mode, int patientCount, long blockMillis, int seconds)
+            throws InterruptedException {
+        LongAdder ecgReadings = new LongAdder();
+        OutputStrategy blockingOutput = (patientId, timestamp, label, data) -> {
+            try {
+                Thread.sleep(blockMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (label.equals("ECG")) {
+                ecgReadings.increment();
+            }
+        };
+        PatientDataGenerator[] generators = {
+                new ECGDataGenerator(patientCount), new BloodSaturationDataGenerator(patientCount),
+                new BloodPressureDataGenerator(patientCount), new BloodLevelsDataGenerator(patientCount),
+                new AlertGenerator(patientCount) };
+        long[] periods = { 1, 1, 60, 120, 20 };
+
+        GenerationScheduler scheduler = null;
+        ScheduledExecutorService pool = null;
+        if (mode.equals("per-task")) {
+            pool = Executors.newScheduledThreadPool(patientCount * 4);
+        } else if (mode.equals("tick")) {
+            scheduler = new TickScheduler(1000, Runtime.getRuntime().availableProcessors());
+        } else if (mode.equals("virtual")) {
+            scheduler = new VirtualThreadScheduler();
+        } else {
+            throw new IllegalArgumentException("Unknown mode: " + mode);
+        }
+        for (int p = 1; p <= patientCount; p++) {
+            int patientId = p;
+            for (int g = 0; g < generators.length; g++) {
+                PatientDataGenerator generator = generators[g];
+                if (pool != null) {
+                    pool.scheduleAtFixedRate(() -> generator.generate(patientId, blockingOutput), 0, periods[g],
+                            TimeUnit.SECONDS);
+                } else {
+                    scheduler.schedule(patientId, generator, 0, periods[g], TimeUnit.SECONDS);
+                }
+            }
+        }
+        if (scheduler != null) {
+            scheduler.start(blockingOutput);
+        }
+        // Let the first readings of every patient through before measuring
+        Thread.sleep(2000);
+        long before = ecgReadings.sum();
+        Thread.sleep(seconds * 1000L);
+        long measured = ecgReadings.sum() - before;
+        if (pool != null) {
+            pool.shutdownNow();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        } else {
+            scheduler.stop();
+        }
+        return measured / ((double) patientCount * seconds);
+    }
+}
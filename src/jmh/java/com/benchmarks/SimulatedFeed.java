@@ -0,0 +1,73 @@
+package com.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Produces deterministic readings shaped like the simulator's generators, in
+ * timestamp order: ECG and saturation every second, blood pressure every
+ * minute, blood levels every two minutes and the occasional triggered alert.
+ * Systolic readings are labelled "BloodPressure" so that the blood pressure
+ * alert rules see them.
+ */
+final class SimulatedFeed {
+    static final long START_TIME = 1_700_000_000_000L;
+
+    /**
+     * Receives one simulated reading.
+     */
+    interface ReadingConsumer {
+        void accept(int patientId, double measurementValue, String recordType, long timestamp);
+    }
+
+    private SimulatedFeed() {
+    }
+
+    /**
+     * Emits {@code seconds} seconds of readings for patients 1 to
+     * {@code patientCount}.
+     *
+     * @param patientCount the number of patients
+     * @param seconds      the length of the simulated history
+     * @param consumer     receives every reading
+     */
+    static void generate(int patientCount, int seconds, ReadingConsumer consumer) {
+        Random random = new Random(42);
+        int[] saturation = new int[patientCount + 1];
+        int[] systolic = new int[patientCount + 1];
+        double[] cholesterol = new double[patientCount + 1];
+        for (int p = 1; p <= patientCount; p++) {
+            saturation[p] = 95 + random.nextInt(6);
+            systolic[p] = 110 + random.nextInt(20);
+            cholesterol[p] = 150 + random.nextDouble() * 50;
+        }
+        for (int second = 0; second < seconds; second++) {
+            long timestamp = START_TIME + second * 1000L;
+            for (int p = 1; p <= patientCount; p++) {
+                consumer.accept(p, ecg(random, timestamp), "ECG", timestamp);
+                saturation[p] = Math.min(Math.max(saturation[p] + random.nextInt(3) - 1, 90), 100);
+                consumer.accept(p, saturation[p], "Saturation", timestamp);
+                if (second % 60 == p % 60) {
+                    systolic[p] = Math.min(Math.max(systolic[p] + random.nextInt(5) - 2, 90), 180);
+                    consumer.accept(p, systolic[p], "BloodPressure", timestamp);
+                }
+                if (second % 120 == p % 120) {
+                    consumer.accept(p, cholesterol[p] + (random.nextDouble() - 0.5) * 10, "Cholesterol", timestamp);
+                    consumer.accept(p, 4 + random.nextDouble() * 6, "WhiteBloodCells", timestamp);
+                    consumer.accept(p, 4.5 + random.nextDouble() * 1.5, "RedBloodCells", timestamp);
+                }
+                if (second % 20 == p % 20 && random.nextDouble() < 0.05) {
+                    consumer.accept(p, 1, "Alert", timestamp);
+                }
+            }
+        }
+    }
+
+    private static double ecg(Random random, long timestamp) {
+        double frequency = (60.0 + random.nextDouble() * 20.0) / 60.0;
+        double t = timestamp / 1000.0;
+        return 0.1 * Math.sin(2 * Math.PI * frequency * t)
+                + 0.5 * Math.sin(2 * Math.PI * 3 * frequency * t)
+                + 0.2 * Math.sin(2 * Math.PI * 2 * frequency * t + Math.PI / 4)
+                + random.nextDouble() * 0.05;
+    }
+}
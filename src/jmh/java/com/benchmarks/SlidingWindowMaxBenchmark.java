@@ -0,0 +1,68 @@
+package com.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alerts.SlidingWindowMax;
+
+/**
+ * Measures the rapid saturation drop check over a whole 1 Hz series, as the
+ * rule runs it: move the window, compare with its maximum, add the reading.
+ * The time per operation should grow in proportion to {@code hours} and not
+ * depend on {@code windowMinutes}, which is either the rule's default of 10
+ * minutes or the whole day.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SlidingWindowMaxBenchmark {
+    @Param({ "1", "6", "24" })
+    public int hours;
+
+    @Param({ "10", "1440" })
+    public int windowMinutes;
+
+    private long[] timestamps;
+    private double[] values;
+
+    @Setup(Level.Trial)
+    public void generateSeries() {
+        int readings = hours * 60 * 60;
+        timestamps = new long[readings];
+        values = new double[readings];
+        for (int second = 0; second < readings; second++) {
+            timestamps[second] = SimulatedFeed.START_TIME + second * 1000L;
+            // Slow decline, reset every 10 minutes, with a little jitter
+            values[second] = 100 - (second % 600) / 100.0 + (second * 7 % 5) / 10.0;
+        }
+    }
+
+    @Benchmark
+    public int detectDrops() {
+        SlidingWindowMax window = new SlidingWindowMax(windowMinutes * 60 * 1000L);
+        int drops = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            window.advance(timestamps[i]);
+            if (window.max() - values[i] >= 5) {
+                drops++;
+            }
+            window.add(timestamps[i], values[i]);
+        }
+        return drops;
+    }
+}
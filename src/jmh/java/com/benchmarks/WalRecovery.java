@@ -0,0 +1,95 @@
+package com.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import com.data_management.DataStorage;
+import com.data_management.WriteAheadLog;
+
+/**
+ * Measures how long {@link WriteAheadLog} takes to recover a
+ * {@link DataStorage}. Not a JMH benchmark: a simulated history is stored
+ * with the log attached, a snapshot is written before the last few minutes
+ * of it, and the storage is then discarded and recovered from the snapshot
+ * and the log tail into a fresh one.
+ *
+ * <p>Arguments: {@code [patientCount] [hours] [tailMinutes] [directory]},
+ * defaulting to 500 patients for 24 hours with a 10-minute tail in a
+ * temporary directory that is deleted afterwards.
+ */
+public final class WalRecovery {
+    private WalRecovery() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int patientCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int seconds = (args.length > 1 ? Integer.parseInt(args[1]) : 24) * 3600;
+        int tailSeconds = (args.length > 2 ? Integer.parseInt(args[2]) : 10) * 60;
+        Path directory = args.length > 3 ? Path.of(args[3]) : Files.createTempDirectory("wal-recovery");
+
+        try {
+            long written = write(directory, patientCount, seconds, tailSeconds);
+            System.gc();
+
+            DataStorage recovered = new DataStorage();
+            try (WriteAheadLog log = new WriteAheadLog(directory.toString(), recovered)) {
+                WriteAheadLog.RecoveryReport report = log.getRecoveryReport();
+                System.out.println(report);
+                long readings = report.getSnapshotReadings() + report.getReplayedReadings();
+                System.out.printf("%.1f M readings/sec, %s%n", readings * 1e3 / report.getElapsedNanos(),
+                        readings == written ? "all readings recovered" : "MISSING " + (written - readings));
+            }
+        } finally {
+            if (args.length <= 3) {
+                delete(directory);
+            }
+        }
+    }
+
+    private static long write(Path directory, int patientCount, int seconds, int tailSeconds) throws IOException {
+        DataStorage storage = new DataStorage();
+        long snapshotTime = SimulatedFeed.START_TIME + (seconds - tailSeconds) * 1000L;
+        long[] readings = new long[1];
+        long startNanos = System.nanoTime();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), storage)) {
+            boolean[] snapshotted = new boolean[1];
+            SimulatedFeed.generate(patientCount, seconds, (patientId, value, recordType, timestamp) -> {
+                if (!snapshotted[0] && timestamp >= snapshotTime) {
+                    snapshotted[0] = true;
+                    try {
+                        long snapshotStart = System.nanoTime();
+                        log.snapshot();
+                        System.out.printf("Snapshot of %d readings written in %d ms%n", readings[0],
+                                (System.nanoTime() - snapshotStart) / 1_000_000);
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                storage.addPatientData(patientId, value, recordType, timestamp);
+                readings[0]++;
+            });
+            log.sync();
+        }
+        long bytes = 0;
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                bytes += Files.size(file);
+                System.out.printf("%s: %d MB%n", file.getFileName(), Files.size(file) >> 20);
+            }
+        }
+        System.out.printf("Stored and logged %d readings in %d ms, %d MB on disk%n", readings[0],
+                (System.nanoTime() - startNanos) / 1_000_000, bytes >> 20);
+        return readings[0];
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.cardio_generator.outputs.BinaryFrameWriter;
+
+/**
+ * Measures encoding one second of simulator readings for 1,000 patients for
+ * the wire: as the text lines of the {@code tcp:} and {@code websocket:}
+ * outputs, or as binary frames, one per reading or batched. The data strings
+ * are what the generators produce. The bytes per reading of each format are
+ * printed during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WireFormatBenchmark {
+    @Param({ "text", "binary", "binary-batch" })
+    public String format;
+
+    private int[] patientIds;
+    private long[] timestamps;
+    private String[] labels;
+    private String[] data;
+
+    @Setup(Level.Trial)
+    public void generateReadings() {
+        List<Object[]> readings = new ArrayList<>();
+        SimulatedFeed.generate(1000, 1, (patientId, value, type, timestamp) ->
+                readings.add(new Object[] { patientId, timestamp, type,
+                        type.equals("Saturation") ? (int) value + "%" : Double.toString(value) }));
+        int n = readings.size();
+        patientIds = new int[n];
+        timestamps = new long[n];
+        labels = new String[n];
+        data = new String[n];
+        for (int i = 0; i < n; i++) {
+            patientIds[i] = (Integer) readings.get(i)[0];
+            timestamps[i] = (Long) readings.get(i)[1];
+            labels[i] = (String) readings.get(i)[2];
+            data[i] = (String) readings.get(i)[3];
+        }
+        System.out.printf("%n%s: %.1f bytes per reading%n", format, encode() / (double) n);
+    }
+
+    @Benchmark
+    public long encode() {
+        long bytes = 0;
+        if (format.equals("text")) {
+            for (int i = 0; i < patientIds.length; i++) {
+                String message = String.format("%d,%d,%s,%s", patientIds[i], timestamps[i], labels[i], data[i]);
+                bytes += (message + "\n").getBytes(StandardCharsets.UTF_8).length;
+            }
+            return bytes;
+        }
+        BinaryFrameWriter writer = new BinaryFrameWriter(format.equals("binary") ? 1 : 256);
+        for (int i = 0; i < patientIds.length; i++) {
+            if (writer.add(patientIds[i], timestamps[i], labels[i], BinaryFrameWriter.parseValue(data[i]))) {
+                bytes += writer.flush().remaining();
+            }
+        }
+        ByteBuffer rest = writer.flush();
+        return rest == null ? bytes : bytes + rest.remaining();
+    }
+}
@@ -1,7 +1,12 @@
 package com.alerts;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import com.data_management.DataStorage;
 import com.data_management.Patient;
+import com.data_management.RecordTypes;
+import com.data_management.RecordView;
 
 /**
  * The {@code AlertGenerator} class is responsible for monitoring patient data
@@ -11,6 +16,7 @@ import com.data_management.Patient;
  */
 public class AlertGenerator {
     private DataStorage dataStorage;
+    private StreamingAlertEvaluator streamingEvaluator;
 
     /**
      * Constructs an {@code AlertGenerator} with a specified {@code DataStorage}.
@@ -24,123 +30,70 @@ public class AlertGenerator {
         this.dataStorage = dataStorage;
     }
 
+    /**
+     * Starts evaluating every reading as it is added to the data storage.
+     * Each alert is triggered once, when the reading that causes it arrives,
+     * via the {@link #triggerAlert} method.
+     */
+    public void startMonitoring() {
+        if (streamingEvaluator == null) {
+            streamingEvaluator = new StreamingAlertEvaluator(this::triggerAlert);
+            dataStorage.addListener(streamingEvaluator);
+        }
+    }
+
+    /**
+     * Stops evaluating readings as they are added to the data storage.
+     */
+    public void stopMonitoring() {
+        if (streamingEvaluator != null) {
+            dataStorage.removeListener(streamingEvaluator);
+            streamingEvaluator = null;
+        }
+    }
+
     /**
      * Evaluates the specified patient's data to determine if any alert conditions
      * are met. If a condition is met, an alert is triggered via the
      * {@link #triggerAlert}
-     * method. This method should define the specific conditions under which an
-     * alert
-     * will be triggered.
+     * method.
+     * The patient's whole history is replayed in timestamp order through the
+     * same rules that {@link #startMonitoring()} applies to live readings, so
+     * calling this repeatedly re-triggers the alerts of earlier readings.
+     * Record types are matched to rules ignoring case, so readings stored as
+     * e.g. "saturation" are evaluated too.
      *
      * @param patient the patient data to evaluate for alert conditions
      */
     public void evaluateData(Patient patient) {
-        // Get all records for this patient
-        java.util.List<com.data_management.PatientRecord> allRecords = patient.getRecords(Long.MIN_VALUE, Long.MAX_VALUE);
-        // Sort records by timestamp
-        allRecords.sort(new java.util.Comparator<com.data_management.PatientRecord>() {
-            public int compare(com.data_management.PatientRecord r1, com.data_management.PatientRecord r2) {
-                return Long.compare(r1.getTimestamp(), r2.getTimestamp());
-            }
-        });
-
-        // Blood Pressure Alerts
-        java.util.List<com.data_management.PatientRecord> bloodPressureRecords = new java.util.ArrayList<>();
-        for (int i = 0; i < allRecords.size(); i++) {
-            com.data_management.PatientRecord record = allRecords.get(i);
-            if (record.getRecordType().equalsIgnoreCase("BloodPressure")) {
-                bloodPressureRecords.add(record);
-            }
-        }
-        // Trend Alert: 3 consecutive readings, each >10 mmHg change
-        for (int i = 2; i < bloodPressureRecords.size(); i++) {
-            double first = bloodPressureRecords.get(i-2).getMeasurementValue();
-            double second = bloodPressureRecords.get(i-1).getMeasurementValue();
-            double third = bloodPressureRecords.get(i).getMeasurementValue();
-            if ((second - first > 10 && third - second > 10) || (first - second > 10 && second - third > 10)) {
-                Alert alert = new Alert(String.valueOf(patient.getPatientId()), "Blood Pressure Trend Alert", bloodPressureRecords.get(i).getTimestamp());
-                triggerAlert(alert);
-            }
-        }
-        // Critical Threshold Alert
-        for (int i = 0; i < bloodPressureRecords.size(); i++) {
-            com.data_management.PatientRecord record = bloodPressureRecords.get(i);
-            double value = record.getMeasurementValue();
-            if (value > 180 || value < 90 || value > 120 || value < 60) {
-                Alert alert = new Alert(String.valueOf(patient.getPatientId()), "Critical Blood Pressure Alert", record.getTimestamp());
-                triggerAlert(alert);
-            }
-        }
-
-        // Blood Saturation Alerts
-        java.util.List<com.data_management.PatientRecord> saturationRecords = new java.util.ArrayList<>();
-        for (int i = 0; i < allRecords.size(); i++) {
-            com.data_management.PatientRecord record = allRecords.get(i);
-            if (record.getRecordType().equalsIgnoreCase("Saturation")) {
-                saturationRecords.add(record);
-            }
-        }
-        for (int i = 0; i < saturationRecords.size(); i++) {
-            double saturationValue = saturationRecords.get(i).getMeasurementValue();
-            if (saturationValue < 92) {
-                Alert alert = new Alert(String.valueOf(patient.getPatientId()), "Low Saturation Alert", saturationRecords.get(i).getTimestamp());
-                triggerAlert(alert);
-            }
-            // Rapid Drop Alert: drop of 5% or more within 10 minutes
-            for (int j = i+1; j < saturationRecords.size(); j++) {
-                double nextSaturationValue = saturationRecords.get(j).getMeasurementValue();
-                long firstTimestamp = saturationRecords.get(i).getTimestamp();
-                long secondTimestamp = saturationRecords.get(j).getTimestamp();
-                if (secondTimestamp - firstTimestamp <= 10 * 60 * 1000 && saturationValue - nextSaturationValue >= 5) {
-                    Alert alert = new Alert(String.valueOf(patient.getPatientId()), "Rapid Saturation Drop Alert", saturationRecords.get(j).getTimestamp());
-                    triggerAlert(alert);
+        // Each view is already ordered by timestamp, so they only need merging
+        List<RecordView> views = new ArrayList<>();
+        List<Integer> recordTypeIds = new ArrayList<>();
+        for (int id = 0; id < RecordTypes.count(); id++) {
+            if (PatientAlertState.isEvaluated(id)) {
+                RecordView view = patient.getRecords(RecordTypes.nameOf(id), Long.MIN_VALUE, Long.MAX_VALUE);
+                if (!view.isEmpty()) {
+                    views.add(view);
+                    recordTypeIds.add(id);
                 }
             }
         }
-
-        // Combined Alert: Hypotensive Hypoxemia
-        for (int i = 0; i < bloodPressureRecords.size(); i++) {
-            com.data_management.PatientRecord bpRecord = bloodPressureRecords.get(i);
-            for (int j = 0; j < saturationRecords.size(); j++) {
-                com.data_management.PatientRecord satRecord = saturationRecords.get(j);
-                if (Math.abs(bpRecord.getTimestamp() - satRecord.getTimestamp()) < 5 * 60 * 1000) {
-                    if (bpRecord.getMeasurementValue() < 90 && satRecord.getMeasurementValue() < 92) {
-                        Alert alert = new Alert(String.valueOf(patient.getPatientId()), "Hypotensive Hypoxemia Alert", Math.max(bpRecord.getTimestamp(), satRecord.getTimestamp()));
-                        triggerAlert(alert);
-                    }
+        int[] positions = new int[views.size()];
+        PatientAlertState state = new PatientAlertState(patient.getPatientId());
+        while (true) {
+            int next = -1;
+            for (int v = 0; v < views.size(); v++) {
+                if (positions[v] < views.get(v).size() && (next < 0
+                        || views.get(v).getTimestamp(positions[v]) < views.get(next).getTimestamp(positions[next]))) {
+                    next = v;
                 }
             }
-        }
-
-        // ECG Data Alerts (simple peak detection)
-        java.util.List<com.data_management.PatientRecord> ecgRecords = new java.util.ArrayList<>();
-        for (int i = 0; i < allRecords.size(); i++) {
-            com.data_management.PatientRecord record = allRecords.get(i);
-            if (record.getRecordType().equalsIgnoreCase("ECG")) {
-                ecgRecords.add(record);
-            }
-        }
-        int windowSize = 5;
-        for (int i = windowSize; i < ecgRecords.size(); i++) {
-            double sum = 0;
-            for (int j = i-windowSize; j < i; j++) {
-                sum += ecgRecords.get(j).getMeasurementValue();
-            }
-            double average = sum / windowSize;
-            double peak = ecgRecords.get(i).getMeasurementValue();
-            if (peak > average * 1.5) {
-                Alert alert = new Alert(String.valueOf(patient.getPatientId()), "ECG Peak Alert", ecgRecords.get(i).getTimestamp());
-                triggerAlert(alert);
-            }
-        }
-
-        // Triggered Alert (from button)
-        for (int i = 0; i < allRecords.size(); i++) {
-            com.data_management.PatientRecord record = allRecords.get(i);
-            if (record.getRecordType().equalsIgnoreCase("Alert")) {
-                Alert alert = new Alert(String.valueOf(patient.getPatientId()), "Triggered Alert", record.getTimestamp());
-                triggerAlert(alert);
+            if (next < 0) {
+                break;
             }
+            int index = positions[next]++;
+            state.accept(recordTypeIds.get(next), views.get(next).getValue(index),
+                    views.get(next).getTimestamp(index), this::triggerAlert);
         }
     }
 
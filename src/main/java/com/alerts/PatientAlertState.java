@@ -0,0 +1,209 @@
+package com.alerts;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import com.data_management.RecordTypes;
+
+/**
+ * Holds the rule state needed to evaluate one patient's readings
+ * incrementally: the last blood pressure readings, a rolling ECG window, the
+ * highest saturation of the rapid drop window and the low readings that are
+ * still inside the combined rule's time window.
+ * Every reading is looked at once, and the work per reading is bounded by the
+ * rule windows rather than by the patient's history.
+ * Readings are expected in timestamp order per record type, but live feeds can
+ * deliver late ones. A reading older than the latest of its type is still
+ * checked against the thresholds and the combined rule, but is left out of the
+ * rules that compare consecutive readings (the blood pressure trend, the rapid
+ * saturation drop and the ECG window), which would otherwise compare it with
+ * readings taken after it.
+ * Record types are matched to rules ignoring case, e.g. "ecg" is evaluated as
+ * "ECG".
+ */
+class PatientAlertState {
+    private static final int OTHER = 0;
+    private static final int BLOOD_PRESSURE = 1;
+    private static final int SATURATION = 2;
+    private static final int ECG = 3;
+    private static final int TRIGGERED = 4;
+    private static final String[] RULE_TYPES = { null, "BloodPressure", "Saturation", "ECG", "Alert" };
+    private static volatile byte[] rules = new byte[0]; // Indexed by RecordTypes id
+
+    static final long SATURATION_DROP_WINDOW = 10 * 60 * 1000; // Rapid drop: within 10 minutes
+    private static final long HYPOXEMIA_WINDOW = 5 * 60 * 1000; // Combined rule: within 5 minutes
+    private static final int ECG_WINDOW = 5;
+
+    private final String patientId;
+
+    // Latest timestamp of each rule's record type, indexed by rule
+    private final long[] latest = { Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE,
+            Long.MIN_VALUE };
+
+    // Blood pressure trend: the two readings before the current one
+    private int bloodPressureCount;
+    private double previousBloodPressure;
+    private double lastBloodPressure;
+
+    // Highest saturation of the rapid drop window
+    private final SlidingWindowMax saturationWindow;
+
+    // Hypotensive hypoxemia: low blood pressure (left) joined with low saturation (right)
+    private final TemporalJoin hypoxemiaJoin = new TemporalJoin(HYPOXEMIA_WINDOW);
+    private final TemporalJoin.MatchHandler hypoxemiaMatch = this::recordHypoxemiaMatch;
+    private long latestHypoxemiaMatch;
+
+    // Rolling ECG window
+    private final double[] ecgWindow = new double[ECG_WINDOW];
+    private int ecgCount; // readings in the window, up to ECG_WINDOW
+    private int ecgNext; // ring position of the oldest reading
+
+    PatientAlertState(int patientId) {
+        this(patientId, SATURATION_DROP_WINDOW);
+    }
+
+    PatientAlertState(int patientId, long saturationDropWindow) {
+        this.patientId = String.valueOf(patientId);
+        this.saturationWindow = new SlidingWindowMax(saturationDropWindow);
+    }
+
+    /**
+     * Evaluates one reading against every rule and emits the alerts it
+     * triggers.
+     *
+     * @param recordTypeId     the interned id of the reading's record type
+     * @param measurementValue the value of the reading
+     * @param timestamp        the time of the reading
+     * @param alerts           receives each alert the reading triggers
+     */
+    void accept(int recordTypeId, double measurementValue, long timestamp, Consumer<Alert> alerts) {
+        int rule = ruleOf(recordTypeId);
+        if (rule == OTHER) {
+            return;
+        }
+        boolean late = timestamp < latest[rule];
+        if (!late) {
+            latest[rule] = timestamp;
+        }
+        if (rule == BLOOD_PRESSURE) {
+            acceptBloodPressure(measurementValue, timestamp, late, alerts);
+        } else if (rule == SATURATION) {
+            acceptSaturation(measurementValue, timestamp, late, alerts);
+        } else if (rule == ECG) {
+            if (!late) {
+                acceptEcg(measurementValue, timestamp, alerts);
+            }
+        } else if (measurementValue != 0) { // 0 is a resolved alert
+            alerts.accept(new Alert(patientId, "Triggered Alert", timestamp));
+        }
+    }
+
+    /**
+     * Returns whether readings of a record type are evaluated by any rule.
+     *
+     * @param recordTypeId the interned id of the record type
+     * @return true if a rule looks at readings of the type
+     */
+    static boolean isEvaluated(int recordTypeId) {
+        return ruleOf(recordTypeId) != OTHER;
+    }
+
+    private static int ruleOf(int recordTypeId) {
+        byte[] current = rules;
+        return recordTypeId < current.length ? current[recordTypeId] : classify(recordTypeId);
+    }
+
+    /**
+     * Matches the record types registered up to the given id to rules, once per
+     * type.
+     */
+    private static synchronized int classify(int recordTypeId) {
+        byte[] current = rules;
+        if (recordTypeId < current.length) {
+            return current[recordTypeId];
+        }
+        byte[] updated = Arrays.copyOf(current, recordTypeId + 1);
+        for (int id = current.length; id <= recordTypeId; id++) {
+            String name = RecordTypes.nameOf(id);
+            for (int rule = 1; rule < RULE_TYPES.length; rule++) {
+                if (RULE_TYPES[rule].equalsIgnoreCase(name)) {
+                    updated[id] = (byte) rule;
+                }
+            }
+        }
+        rules = updated;
+        return updated[recordTypeId];
+    }
+
+    private void acceptBloodPressure(double value, long timestamp, boolean late, Consumer<Alert> alerts) {
+        // Trend Alert: 3 consecutive readings, each >10 mmHg change
+        if (!late) {
+            if (bloodPressureCount >= 2) {
+                double first = previousBloodPressure;
+                double second = lastBloodPressure;
+                if ((second - first > 10 && value - second > 10) || (first - second > 10 && second - value > 10)) {
+                    alerts.accept(new Alert(patientId, "Blood Pressure Trend Alert", timestamp));
+                }
+            }
+            previousBloodPressure = lastBloodPressure;
+            lastBloodPressure = value;
+            bloodPressureCount++;
+        }
+
+        // Critical Threshold Alert
+        if (value > 180 || value < 90 || value > 120 || value < 60) {
+            alerts.accept(new Alert(patientId, "Critical Blood Pressure Alert", timestamp));
+        }
+
+        latestHypoxemiaMatch = Long.MIN_VALUE;
+        if (value < 90 && hypoxemiaJoin.offerLeft(timestamp, value, hypoxemiaMatch) > 0) {
+            alerts.accept(new Alert(patientId, "Hypotensive Hypoxemia Alert", latestHypoxemiaMatch));
+        }
+    }
+
+    private void acceptSaturation(double value, long timestamp, boolean late, Consumer<Alert> alerts) {
+        if (value < 92) {
+            alerts.accept(new Alert(patientId, "Low Saturation Alert", timestamp));
+        }
+
+        // Rapid Drop Alert: drop of 5% or more from any reading within the window
+        if (!late) {
+            saturationWindow.advance(timestamp);
+            if (saturationWindow.max() - value >= 5) {
+                alerts.accept(new Alert(patientId, "Rapid Saturation Drop Alert", timestamp));
+            }
+            saturationWindow.add(timestamp, value);
+        }
+
+        latestHypoxemiaMatch = Long.MIN_VALUE;
+        if (value < 92 && hypoxemiaJoin.offerRight(timestamp, value, hypoxemiaMatch) > 0) {
+            alerts.accept(new Alert(patientId, "Hypotensive Hypoxemia Alert", latestHypoxemiaMatch));
+        }
+    }
+
+    /**
+     * Combined Alert: Hypotensive Hypoxemia. Remembers the latest time at which
+     * the offered low reading coincides with a low reading of the other signal,
+     * which becomes the alert's timestamp.
+     */
+    private void recordHypoxemiaMatch(long bloodPressureTime, double bloodPressure, long saturationTime,
+            double saturation) {
+        latestHypoxemiaMatch = Math.max(latestHypoxemiaMatch, Math.max(bloodPressureTime, saturationTime));
+    }
+
+    private void acceptEcg(double value, long timestamp, Consumer<Alert> alerts) {
+        // ECG Data Alerts (simple peak detection against the previous 5 readings)
+        if (ecgCount >= ECG_WINDOW) {
+            double sum = 0;
+            for (double windowValue : ecgWindow) {
+                sum += windowValue;
+            }
+            if (value > sum / ECG_WINDOW * 1.5) {
+                alerts.accept(new Alert(patientId, "ECG Peak Alert", timestamp));
+            }
+        }
+        ecgWindow[ecgNext] = value;
+        ecgNext = (ecgNext + 1) % ECG_WINDOW;
+        ecgCount = Math.min(ecgCount + 1, ECG_WINDOW);
+    }
+}
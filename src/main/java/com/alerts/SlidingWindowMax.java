@@ -0,0 +1,117 @@
+package com.alerts;
+
+/**
+ * Tracks the maximum value of a series over a sliding time window.
+ * Readings are kept in a monotonic deque: a reading is dropped as soon as a
+ * later reading with an equal or higher value arrives, because it can never be
+ * the maximum again. Each reading is therefore added and removed at most once,
+ * which makes every operation O(1) amortized regardless of how many readings
+ * fall inside the window.
+ * Readings must be added in timestamp order: a late reading would sit behind
+ * newer ones and break both the ordering of the deque and eviction, so it is
+ * rejected and callers decide how to handle late data.
+ */
+public class SlidingWindowMax {
+    private final long windowMillis;
+    // Ring buffer of candidate readings, values strictly decreasing from head to tail
+    private long[] timestamps = new long[16];
+    private double[] values = new double[16];
+    private int head;
+    private int count;
+    private long latest = Long.MIN_VALUE;
+
+    /**
+     * Constructs a tracker over the given window.
+     *
+     * @param windowMillis the length of the window in milliseconds; a reading
+     *                     taken at {@code t} stays in the window up to and
+     *                     including time {@code t + windowMillis}
+     */
+    public SlidingWindowMax(long windowMillis) {
+        if (windowMillis < 0) {
+            throw new IllegalArgumentException("Window must not be negative: " + windowMillis);
+        }
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Removes the readings that are no longer in the window at the given time.
+     *
+     * @param now the current time, in milliseconds since the Unix epoch
+     */
+    public void advance(long now) {
+        while (count > 0 && now - timestamps[head] > windowMillis) {
+            head = (head + 1) & (timestamps.length - 1);
+            count--;
+        }
+    }
+
+    /**
+     * Adds a reading and moves the window so that it ends at the reading.
+     *
+     * @param timestamp the time of the reading, in milliseconds since the Unix
+     *                  epoch
+     * @param value     the value of the reading
+     * @throws IllegalArgumentException if the reading is older than the last
+     *                                  reading added
+     */
+    public void add(long timestamp, double value) {
+        if (timestamp < latest) {
+            throw new IllegalArgumentException("Reading at " + timestamp + " is older than " + latest);
+        }
+        latest = timestamp;
+        advance(timestamp);
+        int mask = timestamps.length - 1;
+        while (count > 0 && values[(head + count - 1) & mask] <= value) {
+            count--;
+        }
+        if (count == timestamps.length) {
+            grow();
+            mask = timestamps.length - 1;
+        }
+        int tail = (head + count) & mask;
+        timestamps[tail] = timestamp;
+        values[tail] = value;
+        count++;
+    }
+
+    /**
+     * Returns whether the window holds no readings.
+     *
+     * @return true if no reading is in the window
+     */
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Returns the highest value in the window.
+     *
+     * @return the maximum value, or {@link Double#NEGATIVE_INFINITY} if the
+     *         window is empty
+     */
+    public double max() {
+        return count == 0 ? Double.NEGATIVE_INFINITY : values[head];
+    }
+
+    /**
+     * Returns the length of the window.
+     *
+     * @return the window length in milliseconds
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    private void grow() {
+        long[] newTimestamps = new long[timestamps.length * 2];
+        double[] newValues = new double[values.length * 2];
+        for (int i = 0; i < count; i++) {
+            newTimestamps[i] = timestamps[(head + i) & (timestamps.length - 1)];
+            newValues[i] = values[(head + i) & (values.length - 1)];
+        }
+        timestamps = newTimestamps;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,79 @@
+package com.alerts;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import com.data_management.DataStorage;
+import com.data_management.RecordListener;
+
+/**
+ * Evaluates alert rules on each reading as it is added to a
+ * {@link DataStorage}, instead of re-evaluating the whole history of a patient.
+ * Every reading is consumed exactly once, so every alert is emitted exactly
+ * once, and the time between a reading arriving and its alert being emitted
+ * does not grow with how long the patient has been monitored.
+ *
+ * <p>State is kept per patient and evaluation for a patient is serialized on
+ * that state, so readings for different patients are evaluated in parallel
+ * without contention.
+ */
+public class StreamingAlertEvaluator implements RecordListener {
+    private final ConcurrentHashMap<Integer, PatientAlertState> states = new ConcurrentHashMap<>();
+    private final Consumer<Alert> alertHandler;
+    private final long saturationDropWindow;
+
+    /**
+     * Constructs a {@code StreamingAlertEvaluator} that passes each alert to
+     * the given handler.
+     *
+     * @param alertHandler receives every alert, on the thread that added the
+     *                     reading which triggered it
+     */
+    public StreamingAlertEvaluator(Consumer<Alert> alertHandler) {
+        this(alertHandler, PatientAlertState.SATURATION_DROP_WINDOW);
+    }
+
+    /**
+     * Constructs a {@code StreamingAlertEvaluator} with a custom window for the
+     * rapid saturation drop rule.
+     *
+     * @param alertHandler         receives every alert, on the thread that
+     *                             added the reading which triggered it
+     * @param saturationDropWindow how far back, in milliseconds, a saturation
+     *                             reading is compared against for a rapid drop
+     */
+    public StreamingAlertEvaluator(Consumer<Alert> alertHandler, long saturationDropWindow) {
+        this.alertHandler = alertHandler;
+        this.saturationDropWindow = saturationDropWindow;
+    }
+
+    /**
+     * Evaluates a newly stored reading against the patient's rule state.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param recordTypeId     the interned id of the record type
+     * @param measurementValue the value of the reading
+     * @param timestamp        the time of the reading, in milliseconds since the
+     *                         Unix epoch
+     */
+    @Override
+    public void onRecord(int patientId, int recordTypeId, double measurementValue, long timestamp) {
+        PatientAlertState state = states.get(patientId);
+        if (state == null) {
+            state = states.computeIfAbsent(patientId, id -> new PatientAlertState(id, saturationDropWindow));
+        }
+        synchronized (state) {
+            state.accept(recordTypeId, measurementValue, timestamp, alertHandler);
+        }
+    }
+
+    /**
+     * Discards the rule state of a patient, e.g. when the patient is
+     * discharged.
+     *
+     * @param patientId the unique identifier of the patient
+     */
+    public void forgetPatient(int patientId) {
+        states.remove(patientId);
+    }
+}
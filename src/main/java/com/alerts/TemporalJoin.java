@@ -0,0 +1,227 @@
+package com.alerts;
+
+import java.util.function.DoublePredicate;
+
+import com.data_management.RecordView;
+
+/**
+ * Joins two time-ordered series on time proximity: a reading of the left
+ * series matches a reading of the right series when their timestamps are less
+ * than a tolerance apart.
+ * Readings are offered one at a time, normally in timestamp order across both
+ * sides, and each offered reading is matched against the readings of the other
+ * side still inside the tolerance window. A pair is therefore reported once,
+ * when its later reading arrives, and readings that have fallen out of the
+ * window are discarded, so memory is bounded by the number of readings within
+ * one tolerance window.
+ * A reading older than the latest one offered is still matched and kept in
+ * timestamp order, but readings more than one tolerance older than the latest
+ * have already been discarded, so pairs with those are missed.
+ * Rules that combine two signals keep one {@code TemporalJoin} per patient;
+ * {@link #join} runs the same two-pointer merge over already stored series.
+ */
+public class TemporalJoin {
+    /**
+     * Receives the pairs of readings found by a join.
+     */
+    public interface MatchHandler {
+        /**
+         * Called once for every matching pair.
+         *
+         * @param leftTimestamp  the timestamp of the left reading
+         * @param leftValue      the value of the left reading
+         * @param rightTimestamp the timestamp of the right reading
+         * @param rightValue     the value of the right reading
+         */
+        void onMatch(long leftTimestamp, double leftValue, long rightTimestamp, double rightValue);
+    }
+
+    private final long toleranceMillis;
+    private final Window left = new Window();
+    private final Window right = new Window();
+    private long latest = Long.MIN_VALUE;
+
+    /**
+     * Constructs a join with the given tolerance.
+     *
+     * @param toleranceMillis readings match when their timestamps differ by less
+     *                        than this many milliseconds
+     */
+    public TemporalJoin(long toleranceMillis) {
+        if (toleranceMillis <= 0) {
+            throw new IllegalArgumentException("Tolerance must be positive: " + toleranceMillis);
+        }
+        this.toleranceMillis = toleranceMillis;
+    }
+
+    /**
+     * Offers a reading of the left series and reports its matches with the
+     * right readings seen so far.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the value of the reading
+     * @param handler   receives each match, or null if only the count is needed
+     * @return the number of right readings the reading matched
+     */
+    public int offerLeft(long timestamp, double value, MatchHandler handler) {
+        advance(timestamp);
+        int matches = 0;
+        for (int i = 0; i < right.count; i++) {
+            long rightTimestamp = right.timestampAt(i);
+            if (Math.abs(timestamp - rightTimestamp) < toleranceMillis) {
+                matches++;
+                if (handler != null) {
+                    handler.onMatch(timestamp, value, rightTimestamp, right.valueAt(i));
+                }
+            }
+        }
+        keep(left, timestamp, value);
+        return matches;
+    }
+
+    /**
+     * Offers a reading of the right series and reports its matches with the
+     * left readings seen so far.
+     *
+     * @param timestamp the time of the reading
+     * @param value     the value of the reading
+     * @param handler   receives each match, or null if only the count is needed
+     * @return the number of left readings the reading matched
+     */
+    public int offerRight(long timestamp, double value, MatchHandler handler) {
+        advance(timestamp);
+        int matches = 0;
+        for (int i = 0; i < left.count; i++) {
+            long leftTimestamp = left.timestampAt(i);
+            if (Math.abs(timestamp - leftTimestamp) < toleranceMillis) {
+                matches++;
+                if (handler != null) {
+                    handler.onMatch(leftTimestamp, left.valueAt(i), timestamp, value);
+                }
+            }
+        }
+        keep(right, timestamp, value);
+        return matches;
+    }
+
+    /**
+     * Returns the join tolerance.
+     *
+     * @return the tolerance in milliseconds
+     */
+    public long getToleranceMillis() {
+        return toleranceMillis;
+    }
+
+    /**
+     * Joins two stored series with a two-pointer merge, in O(n + m) plus the
+     * number of matches.
+     *
+     * @param left            the left series, ordered by timestamp
+     * @param leftFilter      selects the left readings taking part in the join
+     * @param right           the right series, ordered by timestamp
+     * @param rightFilter     selects the right readings taking part in the join
+     * @param toleranceMillis readings match when their timestamps differ by less
+     *                        than this many milliseconds
+     * @param handler         receives each match
+     * @return the number of matching pairs
+     */
+    public static int join(RecordView left, DoublePredicate leftFilter, RecordView right,
+            DoublePredicate rightFilter, long toleranceMillis, MatchHandler handler) {
+        TemporalJoin join = new TemporalJoin(toleranceMillis);
+        int matches = 0;
+        int i = 0;
+        int j = 0;
+        while (i < left.size() || j < right.size()) {
+            if (j >= right.size() || (i < left.size() && left.getTimestamp(i) <= right.getTimestamp(j))) {
+                if (leftFilter.test(left.getValue(i))) {
+                    matches += join.offerLeft(left.getTimestamp(i), left.getValue(i), handler);
+                }
+                i++;
+            } else {
+                if (rightFilter.test(right.getValue(j))) {
+                    matches += join.offerRight(right.getTimestamp(j), right.getValue(j), handler);
+                }
+                j++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Moves the window to a newer reading, dropping the readings of both sides
+     * that can no longer match a reading taken at or after it. An older reading
+     * leaves the window where it is.
+     */
+    private void advance(long timestamp) {
+        if (timestamp > latest) {
+            latest = timestamp;
+            left.evictBefore(timestamp - toleranceMillis);
+            right.evictBefore(timestamp - toleranceMillis);
+        }
+    }
+
+    /**
+     * Keeps an offered reading for matching later readings of the other side,
+     * unless it is already outside the window.
+     */
+    private void keep(Window side, long timestamp, double value) {
+        if (latest - timestamp < toleranceMillis) {
+            side.add(timestamp, value);
+        }
+    }
+
+    /**
+     * Ring buffer of the readings of one side, oldest first.
+     */
+    private static final class Window {
+        long[] timestamps = new long[8];
+        double[] values = new double[8];
+        int head;
+        int count;
+
+        long timestampAt(int i) {
+            return timestamps[(head + i) & (timestamps.length - 1)];
+        }
+
+        double valueAt(int i) {
+            return values[(head + i) & (values.length - 1)];
+        }
+
+        void evictBefore(long bound) {
+            // A reading at or before the bound is at least one tolerance away from now
+            while (count > 0 && timestamps[head] <= bound) {
+                head = (head + 1) & (timestamps.length - 1);
+                count--;
+            }
+        }
+
+        /**
+         * Adds a reading, moving newer readings up by one if it arrived late.
+         */
+        void add(long timestamp, double value) {
+            if (count == timestamps.length) {
+                long[] newTimestamps = new long[count * 2];
+                double[] newValues = new double[count * 2];
+                for (int i = 0; i < count; i++) {
+                    newTimestamps[i] = timestampAt(i);
+                    newValues[i] = valueAt(i);
+                }
+                timestamps = newTimestamps;
+                values = newValues;
+                head = 0;
+            }
+            int mask = timestamps.length - 1;
+            int position = (head + count) & mask;
+            for (int i = count; i > 0 && timestampAt(i - 1) > timestamp; i--) {
+                int previous = (position - 1) & mask;
+                timestamps[position] = timestamps[previous];
+                values[position] = values[previous];
+                position = previous;
+            }
+            timestamps[position] = timestamp;
+            values[position] = value;
+            count++;
+        }
+    }
+}
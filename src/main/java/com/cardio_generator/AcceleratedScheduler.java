@@ -0,0 +1,316 @@
+package com.cardio_generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Runs the data generators against a simulated clock instead of the wall
+ * clock, to produce days of data in minutes.
+ * Every run is due at a logical time, the start time plus the initial delay
+ * plus a whole number of periods, and the generator is passed that time with
+ * {@link PatientDataGenerator#generate(int, long, OutputStrategy)}, so the
+ * readings are stamped as if generated then. A worker thread runs the runs of
+ * its patients in order of their logical time, without waiting in between:
+ * generation goes as fast as the {@link OutputStrategy} takes the readings,
+ * unless a speed is given, in which case the simulated clock is held to at
+ * most that many times the wall clock.
+ * Patients are divided among the workers by id, so all the readings of a
+ * patient are generated in time order by one thread. The workers are not kept
+ * in step with each other: when running at full speed, one worker's readings
+ * may run ahead of another's.
+ *
+ * @author Ege Postacioglu
+ */
+public class AcceleratedScheduler implements GenerationScheduler {
+    private final long startTime;
+    private final long durationMillis;
+    private final double speed;
+    private final Worker[] workers;
+    private final List<Thread> threads = new ArrayList<>();
+    private long startNanos;
+    private boolean started;
+    private volatile boolean stopped;
+
+    /**
+     * Creates a new AcceleratedScheduler.
+     *
+     * @param startTime The simulated time at which generation starts, in
+     *            milliseconds since the epoch.
+     * @param durationMillis How much simulated time to generate, in
+     *            milliseconds, or {@link Long#MAX_VALUE} to run until stopped.
+     * @param speed The most simulated time generated per unit of wall time,
+     *            e.g. 3600 for an hour per second, or 0 for no limit.
+     * @param workerCount The number of threads generating readings.
+     */
+    public AcceleratedScheduler(long startTime, long durationMillis, double speed, int workerCount) {
+        if (durationMillis <= 0 || speed < 0 || workerCount <= 0) {
+            throw new IllegalArgumentException("Duration and worker count must be positive and speed not negative");
+        }
+        this.startTime = startTime;
+        this.durationMillis = durationMillis;
+        this.speed = speed;
+        this.workers = new Worker[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            workers[i] = new Worker();
+        }
+    }
+
+    /**
+     * Schedules a generator to run for a patient at a fixed rate of simulated
+     * time. Delays and periods are taken in whole milliseconds.
+     *
+     * @param patientId The ID of the patient.
+     * @param generator The generator to run.
+     * @param initialDelay The delay before the first run.
+     * @param period The period between runs.
+     * @param timeUnit The time unit of the delay and the period.
+     * @throws IllegalStateException If the scheduler has already been started.
+     */
+    @Override
+    public synchronized void schedule(int patientId, PatientDataGenerator generator, long initialDelay, long period,
+            TimeUnit timeUnit) {
+        if (started) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        long periodMillis = timeUnit.toMillis(period);
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("Period must be at least a millisecond: " + period + " " + timeUnit);
+        }
+        Worker worker = workers[Math.floorMod(patientId, workers.length)];
+        worker.queue.add(new Run(patientId, generator, timeUnit.toMillis(initialDelay), periodMillis,
+                worker.scheduledRuns++));
+    }
+
+    /**
+     * Starts the worker threads. They stop by themselves once the duration
+     * has been generated; see {@link #awaitCompletion()}.
+     *
+     * @param outputStrategy The strategy used to output the generated data.
+     */
+    @Override
+    public synchronized void start(OutputStrategy outputStrategy) {
+        if (started) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        started = true;
+        startNanos = System.nanoTime();
+        for (int i = 0; i < workers.length; i++) {
+            Worker worker = workers[i];
+            if (worker.scheduledRuns == 0) {
+                continue;
+            }
+            Thread thread = new Thread(() -> worker.run(outputStrategy), "accelerated-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Waits until every worker has generated the whole duration, or has been
+     * stopped.
+     *
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public void awaitCompletion() throws InterruptedException {
+        List<Thread> running;
+        synchronized (this) {
+            running = new ArrayList<>(threads);
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Stops the workers, waiting for the runs in progress to finish.
+     */
+    @Override
+    public void stop() {
+        stopped = true;
+        boolean interrupted = false;
+        List<Thread> running;
+        synchronized (this) {
+            running = new ArrayList<>(threads);
+        }
+        for (Thread thread : running) {
+            LockSupport.unpark(thread);
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of worker threads.
+     *
+     * @return The thread count.
+     */
+    @Override
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /**
+     * Returns a snapshot of how far generation has got.
+     *
+     * @return The current metrics.
+     */
+    public synchronized Metrics getMetrics() {
+        long simulated = Long.MAX_VALUE;
+        long runs = 0;
+        for (Worker worker : workers) {
+            if (worker.scheduledRuns > 0) {
+                simulated = Math.min(simulated, worker.reachedMillis);
+            }
+            runs += worker.runCount;
+        }
+        if (simulated == Long.MAX_VALUE) {
+            simulated = 0;
+        }
+        long elapsed = started ? System.nanoTime() - startNanos : 0;
+        return new Metrics(startTime + simulated, simulated, elapsed, runs);
+    }
+
+    /**
+     * The generator runs of the patients of one worker thread, ordered by the
+     * logical time they are due.
+     */
+    private final class Worker {
+        final PriorityQueue<Run> queue = new PriorityQueue<>();
+        int scheduledRuns; // Only changed before the scheduler is started
+        // Written only by the worker thread, read by getMetrics()
+        volatile long reachedMillis;
+        volatile long runCount;
+
+        void run(OutputStrategy outputStrategy) {
+            long runs = 0;
+            while (!stopped) {
+                Run next = queue.poll();
+                if (next.dueMillis >= durationMillis) {
+                    reachedMillis = durationMillis;
+                    return;
+                }
+                if (speed > 0 && !waitForSpeed(next.dueMillis)) {
+                    return;
+                }
+                reachedMillis = next.dueMillis;
+                next.generator.generate(next.patientId, startTime + next.dueMillis, outputStrategy);
+                runCount = ++runs;
+                next.dueMillis += next.periodMillis;
+                queue.add(next);
+            }
+        }
+
+        /**
+         * Sleeps while the logical time is ahead of the target speed by more
+         * than a millisecond. Returns false if stopped while sleeping.
+         */
+        private boolean waitForSpeed(long dueMillis) {
+            long target = startNanos + (long) (dueMillis * 1_000_000 / speed);
+            for (long wait = target - System.nanoTime(); wait > 1_000_000; wait = target - System.nanoTime()) {
+                LockSupport.parkNanos(wait);
+                if (stopped) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * One generator of one patient with the logical time it is next due.
+     * Runs due at the same time keep the order they were scheduled in.
+     */
+    private static final class Run implements Comparable<Run> {
+        final int patientId;
+        final PatientDataGenerator generator;
+        final long periodMillis;
+        final int order;
+        long dueMillis;
+
+        Run(int patientId, PatientDataGenerator generator, long dueMillis, long periodMillis, int order) {
+            this.patientId = patientId;
+            this.generator = generator;
+            this.dueMillis = dueMillis;
+            this.periodMillis = periodMillis;
+            this.order = order;
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            int byTime = Long.compare(dueMillis, other.dueMillis);
+            return byTime != 0 ? byTime : Integer.compare(order, other.order);
+        }
+    }
+
+    /**
+     * A snapshot of the scheduler's progress.
+     */
+    public static final class Metrics {
+        private final long simulatedTime;
+        private final long simulatedMillis;
+        private final long elapsedNanos;
+        private final long runCount;
+
+        Metrics(long simulatedTime, long simulatedMillis, long elapsedNanos, long runCount) {
+            this.simulatedTime = simulatedTime;
+            this.simulatedMillis = simulatedMillis;
+            this.elapsedNanos = elapsedNanos;
+            this.runCount = runCount;
+        }
+
+        /**
+         * @return The simulated time every worker has reached, in milliseconds since the epoch.
+         */
+        public long getSimulatedTime() {
+            return simulatedTime;
+        }
+
+        /**
+         * @return The simulated time generated so far by every worker, in milliseconds.
+         */
+        public long getSimulatedMillis() {
+            return simulatedMillis;
+        }
+
+        /**
+         * @return The wall time since the scheduler was started, in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * @return The number of generator runs so far.
+         */
+        public long getRunCount() {
+            return runCount;
+        }
+
+        /**
+         * @return The simulated time generated per unit of wall time so far.
+         */
+        public double getSpeed() {
+            return elapsedNanos == 0 ? 0 : simulatedMillis * 1_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("simulated %.1f h in %.1f s (%.0fx), %d generator runs",
+                    simulatedMillis / 3_600_000.0, elapsedNanos / 1e9, getSpeed(), runCount);
+        }
+    }
+}
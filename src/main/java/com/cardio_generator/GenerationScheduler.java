@@ -0,0 +1,47 @@
+package com.cardio_generator;
+
+import java.util.concurrent.TimeUnit;
+
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Interface for running the data generators of the simulated patients at
+ * fixed rates. Generators are scheduled first and then run until
+ * {@link #stop()} is called.
+ *
+ * @author Ege Postacioglu
+ */
+public interface GenerationScheduler {
+    /**
+     * Schedules a generator to run for a patient at a fixed rate.
+     *
+     * @param patientId The ID of the patient.
+     * @param generator The generator to run.
+     * @param initialDelay The delay before the first run.
+     * @param period The period between runs.
+     * @param timeUnit The time unit of the delay and the period.
+     * @throws IllegalStateException If the scheduler has already been started.
+     */
+    void schedule(int patientId, PatientDataGenerator generator, long initialDelay, long period, TimeUnit timeUnit);
+
+    /**
+     * Starts running the scheduled generators. Every generator run passes its
+     * readings to the given output strategy.
+     *
+     * @param outputStrategy The strategy used to output the generated data.
+     */
+    void start(OutputStrategy outputStrategy);
+
+    /**
+     * Stops running the generators, waiting for runs in progress to finish.
+     */
+    void stop();
+
+    /**
+     * Returns the number of threads used by this scheduler.
+     *
+     * @return The thread count.
+     */
+    int getThreadCount();
+}
@@ -10,19 +10,26 @@ import com.cardio_generator.generators.BloodPressureDataGenerator;
 import com.cardio_generator.generators.BloodSaturationDataGenerator;
 import com.cardio_generator.generators.BloodLevelsDataGenerator;
 import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.BatchingFileOutputStrategy;
 import com.cardio_generator.outputs.ConsoleOutputStrategy;
+import com.cardio_generator.outputs.FileLineFormat;
 import com.cardio_generator.outputs.FileOutputStrategy;
 import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.SlowConsumerPolicy;
 import com.cardio_generator.outputs.TcpOutputStrategy;
 import com.cardio_generator.outputs.WebSocketOutputStrategy;
 
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
+import java.util.SplittableRandom;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 
 /**
@@ -35,8 +42,19 @@ public class HealthDataSimulator {
 
     private static int patientCount = 50; // Default number of patients
     private static ScheduledExecutorService scheduler;
+    private static GenerationScheduler generationScheduler; // Used instead of scheduler when not null
+    private static boolean useTickScheduler = false;
+    private static boolean useVirtualThreads = false;
+    private static boolean useAcceleratedTime = false;
+    private static double speed = 0; // Simulated time per wall time in accelerated mode, 0 for no limit
+    private static long durationMillis = Long.MAX_VALUE; // Simulated time to generate in accelerated mode
+    private static long startTime = System.currentTimeMillis(); // Simulated start time in accelerated mode
     private static OutputStrategy outputStrategy = new ConsoleOutputStrategy(); // Default output strategy
-    private static final Random random = new Random();
+    private static SlowConsumerPolicy slowConsumerPolicy = SlowConsumerPolicy.DROP_OLDEST;
+    private static int clientQueueCapacity = TcpOutputStrategy.DEFAULT_QUEUE_CAPACITY;
+    private static long seed = new SplittableRandom().nextLong(); // Master seed, set with --seed
+    private static int ecgSampleRate = 0; // ECG samples per second in block mode, 0 for one value per second
+    private static SplittableRandom random; // Start offsets, split from the master seed
 
     /**
      * The main entry point for the simulation.
@@ -47,13 +65,59 @@ public class HealthDataSimulator {
     public static void main(String[] args) throws IOException {
 
         parseArguments(args);
+        // Every random stream is split from the master seed, so a run can be repeated with --seed
+        SplittableRandom master = new SplittableRandom(seed);
+        random = master.split();
+        System.out.println("Random seed: " + seed);
 
-        scheduler = Executors.newScheduledThreadPool(patientCount * 4);
+        if (useTickScheduler && useVirtualThreads) {
+            System.err.println("Error: --scheduler tick runs on platform threads and cannot be combined with"
+                    + " --executor virtual");
+            System.exit(1);
+        } else if (useAcceleratedTime && (useTickScheduler || useVirtualThreads)) {
+            System.err.println("Error: --time-mode accelerated runs its own workers and cannot be combined with"
+                    + " --scheduler tick or --executor virtual");
+            System.exit(1);
+        } else if (useAcceleratedTime) {
+            generationScheduler = new AcceleratedScheduler(startTime, durationMillis, speed,
+                    Runtime.getRuntime().availableProcessors());
+        } else if (useTickScheduler) {
+            generationScheduler = new TickScheduler(1000, Runtime.getRuntime().availableProcessors());
+        } else if (useVirtualThreads) {
+            generationScheduler = new VirtualThreadScheduler();
+        } else {
+            scheduler = Executors.newScheduledThreadPool(patientCount * 4);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (generationScheduler != null) {
+                generationScheduler.stop();
+                if (generationScheduler instanceof TickScheduler) {
+                    System.err.println("Tick scheduler: " + ((TickScheduler) generationScheduler).getMetrics());
+                } else if (generationScheduler instanceof AcceleratedScheduler) {
+                    System.err.println("Accelerated time: "
+                            + ((AcceleratedScheduler) generationScheduler).getMetrics());
+                }
+            } else {
+                scheduler.shutdownNow();
+            }
+            outputStrategy.close();
+        }));
 
         List<Integer> patientIds = initializePatientIds(patientCount);
-        Collections.shuffle(patientIds); // Randomize the order of patient IDs
+        Collections.shuffle(patientIds, new Random(random.nextLong())); // Randomize the order of patient IDs
 
-        scheduleTasksForPatients(patientIds);
+        scheduleTasksForPatients(patientIds, master);
+        if (generationScheduler != null) {
+            generationScheduler.start(outputStrategy);
+        }
+        if (useAcceleratedTime && durationMillis != Long.MAX_VALUE) {
+            try {
+                ((AcceleratedScheduler) generationScheduler).awaitCompletion();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            System.exit(0); // The shutdown hook closes the output
+        }
     }
 
     /**
@@ -63,6 +127,7 @@ public class HealthDataSimulator {
      * @throws IOException If an I/O error occurs while creating directories.
      */
     private static void parseArguments(String[] args) throws IOException {
+        String outputArg = null;
         for (int i = 0; i < args.length; i++) {
             switch (args[i]) {
                 case "-h":
@@ -81,37 +146,113 @@ public class HealthDataSimulator {
                     break;
                 case "--output":
                     if (i + 1 < args.length) {
-                        String outputArg = args[++i];
-                        if (outputArg.equals("console")) {
-                            outputStrategy = new ConsoleOutputStrategy();
-                        } else if (outputArg.startsWith("file:")) {
-                            String baseDirectory = outputArg.substring(5);
-                            Path outputPath = Paths.get(baseDirectory);
-                            if (!Files.exists(outputPath)) {
-                                Files.createDirectories(outputPath);
-                            }
-                            outputStrategy = new FileOutputStrategy(baseDirectory);
-                        } else if (outputArg.startsWith("websocket:")) {
-                            try {
-                                int port = Integer.parseInt(outputArg.substring(10));
-                                // Initialize your WebSocket output strategy here
-                                outputStrategy = new WebSocketOutputStrategy(port);
-                                System.out.println("WebSocket output will be on port: " + port);
-                            } catch (NumberFormatException e) {
-                                System.err.println(
-                                        "Invalid port for WebSocket output. Please specify a valid port number.");
-                            }
-                        } else if (outputArg.startsWith("tcp:")) {
-                            try {
-                                int port = Integer.parseInt(outputArg.substring(4));
-                                // Initialize your TCP socket output strategy here
-                                outputStrategy = new TcpOutputStrategy(port);
-                                System.out.println("TCP socket output will be on port: " + port);
-                            } catch (NumberFormatException e) {
-                                System.err.println("Invalid port for TCP output. Please specify a valid port number.");
+                        outputArg = args[++i];
+                    }
+                    break;
+                case "--slow-consumer":
+                    if (i + 1 < args.length) {
+                        String policyArg = args[++i];
+                        try {
+                            slowConsumerPolicy = SlowConsumerPolicy.valueOf(policyArg.toUpperCase().replace('-', '_'));
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Unknown slow consumer policy. Using default (drop-oldest).");
+                        }
+                    }
+                    break;
+                case "--client-queue":
+                    if (i + 1 < args.length) {
+                        try {
+                            clientQueueCapacity = Math.max(2, Integer.parseInt(args[++i]));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid client queue size. Using default value: "
+                                    + clientQueueCapacity);
+                        }
+                    }
+                    break;
+                case "--seed":
+                    if (i + 1 < args.length) {
+                        try {
+                            seed = Long.parseLong(args[++i]);
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid seed. Using a random seed.");
+                        }
+                    }
+                    break;
+                case "--ecg-rate":
+                    if (i + 1 < args.length) {
+                        try {
+                            ecgSampleRate = Integer.parseInt(args[++i]);
+                            if (ecgSampleRate < 1 || ecgSampleRate > ECGDataGenerator.MAX_SAMPLE_RATE) {
+                                throw new NumberFormatException();
                             }
+                        } catch (NumberFormatException e) {
+                            ecgSampleRate = 0;
+                            System.err.println("Error: ECG rate must be between 1 and "
+                                    + ECGDataGenerator.MAX_SAMPLE_RATE + " Hz. Generating one ECG value per second.");
+                        }
+                    }
+                    break;
+                case "--time-mode":
+                    if (i + 1 < args.length) {
+                        String modeArg = args[++i];
+                        if (modeArg.equals("accelerated")) {
+                            useAcceleratedTime = true;
+                        } else if (modeArg.equals("realtime")) {
+                            useAcceleratedTime = false;
+                        } else {
+                            System.err.println("Unknown time mode. Using default (realtime).");
+                        }
+                    }
+                    break;
+                case "--speed":
+                    if (i + 1 < args.length) {
+                        String speedArg = args[++i];
+                        try {
+                            speed = speedArg.equals("max") ? 0 : Math.max(0, Double.parseDouble(speedArg));
+                        } catch (NumberFormatException e) {
+                            System.err.println("Error: Invalid speed. Generating as fast as possible.");
+                        }
+                    }
+                    break;
+                case "--duration":
+                    if (i + 1 < args.length) {
+                        try {
+                            durationMillis = parseDuration(args[++i]);
+                        } catch (IllegalArgumentException e) {
+                            System.err.println("Error: Invalid duration. Generating until stopped.");
+                        }
+                    }
+                    break;
+                case "--start-time":
+                    if (i + 1 < args.length) {
+                        try {
+                            startTime = Instant.parse(args[++i]).toEpochMilli();
+                        } catch (DateTimeParseException e) {
+                            System.err.println("Error: Invalid start time. Starting at the current time.");
+                        }
+                    }
+                    break;
+                case "--scheduler":
+                    if (i + 1 < args.length) {
+                        String schedulerArg = args[++i];
+                        if (schedulerArg.equals("tick")) {
+                            useTickScheduler = true;
+                        } else if (schedulerArg.equals("per-task")) {
+                            useTickScheduler = false;
                         } else {
-                            System.err.println("Unknown output type. Using default (console).");
+                            System.err.println("Unknown scheduler type. Using default (per-task).");
+                        }
+                    }
+                    break;
+                case "--executor":
+                    if (i + 1 < args.length) {
+                        String executorArg = args[++i];
+                        if (executorArg.equals("virtual")) {
+                            useVirtualThreads = true;
+                        } else if (executorArg.equals("platform")) {
+                            useVirtualThreads = false;
+                        } else {
+                            System.err.println("Unknown executor type. Using default (platform).");
                         }
                     }
                     break;
@@ -121,6 +262,108 @@ public class HealthDataSimulator {
                     System.exit(1);
             }
         }
+        if (outputArg != null) {
+            createOutputStrategy(outputArg);
+        }
+    }
+
+    /**
+     * Parses a duration such as {@code 90s}, {@code 45m}, {@code 12h} or
+     * {@code 7d}. A number without a unit is taken in seconds.
+     *
+     * @param durationArg The value of the {@code --duration} option.
+     * @return The duration in milliseconds.
+     * @throws IllegalArgumentException If the duration is not valid.
+     */
+    private static long parseDuration(String durationArg) {
+        TimeUnit unit = TimeUnit.SECONDS;
+        String number = durationArg;
+        char suffix = durationArg.isEmpty() ? ' ' : durationArg.charAt(durationArg.length() - 1);
+        if (!Character.isDigit(suffix)) {
+            number = durationArg.substring(0, durationArg.length() - 1);
+            switch (suffix) {
+                case 's':
+                    unit = TimeUnit.SECONDS;
+                    break;
+                case 'm':
+                    unit = TimeUnit.MINUTES;
+                    break;
+                case 'h':
+                    unit = TimeUnit.HOURS;
+                    break;
+                case 'd':
+                    unit = TimeUnit.DAYS;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown duration unit: " + durationArg);
+            }
+        }
+        long millis = unit.toMillis(Long.parseLong(number));
+        if (millis <= 0) {
+            throw new IllegalArgumentException("Duration must be positive: " + durationArg);
+        }
+        return millis;
+    }
+
+    /**
+     * Creates the output strategy selected with {@code --output}.
+     *
+     * @param outputArg The value of the {@code --output} option.
+     * @throws IOException If an I/O error occurs while creating directories.
+     */
+    private static void createOutputStrategy(String outputArg) throws IOException {
+        if (outputArg.equals("console")) {
+            outputStrategy = new ConsoleOutputStrategy();
+        } else if (outputArg.startsWith("file:")) {
+            String baseDirectory = outputArg.substring(5);
+            Path outputPath = Paths.get(baseDirectory);
+            if (!Files.exists(outputPath)) {
+                Files.createDirectories(outputPath);
+            }
+            outputStrategy = new FileOutputStrategy(baseDirectory);
+        } else if (outputArg.startsWith("batched-file:")) {
+            outputStrategy = new BatchingFileOutputStrategy(outputArg.substring(13));
+        } else if (outputArg.startsWith("csv-file:")) {
+            outputStrategy = new BatchingFileOutputStrategy(outputArg.substring(9), FileLineFormat.CSV);
+        } else if (outputArg.startsWith("websocket-bin:") || outputArg.startsWith("tcp-bin:")) {
+            boolean webSocket = outputArg.startsWith("websocket-bin:");
+            String[] parts = outputArg.substring(outputArg.indexOf(':') + 1).split(":");
+            try {
+                int port = Integer.parseInt(parts[0]);
+                int batchSize = parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+                if (webSocket) {
+                    outputStrategy = new WebSocketOutputStrategy(port, batchSize);
+                    System.out.println("Binary WebSocket output will be on port: " + port);
+                } else {
+                    outputStrategy = new TcpOutputStrategy(port, batchSize, slowConsumerPolicy,
+                            clientQueueCapacity);
+                    System.out.println("Binary TCP socket output will be on port: " + port);
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println("Invalid port or batch size for binary output. Please specify valid numbers.");
+            }
+        } else if (outputArg.startsWith("websocket:")) {
+            String[] parts = outputArg.substring(10).split(":");
+            try {
+                int port = Integer.parseInt(parts[0]);
+                long flushMillis = parts.length > 1 ? Long.parseLong(parts[1]) : 0;
+                outputStrategy = new WebSocketOutputStrategy(port, 0, flushMillis);
+                System.out.println("WebSocket output will be on port: " + port);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port for WebSocket output. Please specify a valid port number.");
+            }
+        } else if (outputArg.startsWith("tcp:")) {
+            try {
+                int port = Integer.parseInt(outputArg.substring(4));
+                // Initialize your TCP socket output strategy here
+                outputStrategy = new TcpOutputStrategy(port, 0, slowConsumerPolicy, clientQueueCapacity);
+                System.out.println("TCP socket output will be on port: " + port);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid port for TCP output. Please specify a valid port number.");
+            }
+        } else {
+            System.err.println("Unknown output type. Using default (console).");
+        }
     }
 
     /**
@@ -135,12 +378,46 @@ public class HealthDataSimulator {
         System.out.println("  --output <type>          Define the output method. Options are:");
         System.out.println("                             'console' for console output,");
         System.out.println("                             'file:<directory>' for file output,");
-        System.out.println("                             'websocket:<port>' for WebSocket output,");
-        System.out.println("                             'tcp:<port>' for TCP socket output.");
+        System.out.println("                             'batched-file:<directory>' for buffered file output,");
+        System.out.println("                             'csv-file:<directory>' for buffered CSV files that");
+        System.out.println("                             DataStorage can load,");
+        System.out.println("                             'websocket:<port>[:<ms>]' for WebSocket output, optionally");
+        System.out.println("                             sending the readings of every <ms> milliseconds as one message,");
+        System.out.println("                             'tcp:<port>' for TCP socket output,");
+        System.out.println("                             'websocket-bin:<port>[:<batch>]' and 'tcp-bin:<port>[:<batch>]'");
+        System.out.println("                             for binary frames, optionally batching <batch> readings per frame.");
+        System.out.println("  --slow-consumer <policy> What TCP output does when a client falls behind:");
+        System.out.println("                             'drop-oldest' (default), 'disconnect' or 'block'.");
+        System.out.println("  --client-queue <count>   Messages queued per TCP client (default: "
+                + TcpOutputStrategy.DEFAULT_QUEUE_CAPACITY + ").");
+        System.out.println("  --seed <number>          Seed all random values, to repeat an earlier run (default: random;");
+        System.out.println("                             the seed in use is printed at startup).");
+        System.out.println("  --ecg-rate <hz>          Generate a realistic ECG waveform at <hz> samples per second, e.g.");
+        System.out.println("                             250 or 500, output as one block per patient per second");
+        System.out.println("                             (default: one value per second).");
+        System.out.println("  --scheduler <type>       Define how generation is scheduled. Options are:");
+        System.out.println("                             'per-task' for one timer per patient and generator (default),");
+        System.out.println("                             'tick' for one-second ticks on a fixed pool of threads.");
+        System.out.println("  --executor <type>        Define which threads run the generators. Options are:");
+        System.out.println("                             'platform' for platform threads (default),");
+        System.out.println("                             'virtual' for one virtual thread per patient.");
+        System.out.println("  --time-mode <mode>       Define which clock stamps the readings. Options are:");
+        System.out.println("                             'realtime' for the wall clock (default),");
+        System.out.println("                             'accelerated' for a simulated clock that runs as fast as the");
+        System.out.println("                             output takes the readings.");
+        System.out.println("  --speed <multiplier>     In accelerated mode, generate at most <multiplier> seconds of data");
+        System.out.println("                             per second, e.g. 3600 (default: 'max', no limit).");
+        System.out.println("  --duration <time>        In accelerated mode, generate this much data and exit, e.g. 90m,");
+        System.out.println("                             12h or 7d (default: until stopped).");
+        System.out.println("  --start-time <instant>   In accelerated mode, the time of the first readings, e.g.");
+        System.out.println("                             2024-01-01T00:00:00Z (default: now).");
         System.out.println("Example:");
         System.out.println("  java HealthDataSimulator --patient-count 100 --output websocket:8080");
         System.out.println(
                 "  This command simulates data for 100 patients and sends the output to WebSocket clients connected to port 8080.");
+        System.out.println("  java HealthDataSimulator --patient-count 1000 --time-mode accelerated --duration 7d"
+                + " --output csv-file:archive");
+        System.out.println("  This command writes a week of data for 1000 patients to the archive directory and exits.");
     }
 
     /**
@@ -161,20 +438,26 @@ public class HealthDataSimulator {
      * Schedules data generation tasks for each patient.
      *
      * @param patientIds The list of patient IDs.
+     * @param master The stream every generator's random streams are split from.
      */
-    private static void scheduleTasksForPatients(List<Integer> patientIds) {
-        ECGDataGenerator ecgDataGenerator = new ECGDataGenerator(patientCount);
-        BloodSaturationDataGenerator bloodSaturationDataGenerator = new BloodSaturationDataGenerator(patientCount);
-        BloodPressureDataGenerator bloodPressureDataGenerator = new BloodPressureDataGenerator(patientCount);
-        BloodLevelsDataGenerator bloodLevelsDataGenerator = new BloodLevelsDataGenerator(patientCount);
-        AlertGenerator alertGenerator = new AlertGenerator(patientCount);
+    private static void scheduleTasksForPatients(List<Integer> patientIds, SplittableRandom master) {
+        ECGDataGenerator ecgDataGenerator = ecgSampleRate > 0
+                ? new ECGDataGenerator(patientCount, master.split(), ecgSampleRate)
+                : new ECGDataGenerator(patientCount, master.split());
+        BloodSaturationDataGenerator bloodSaturationDataGenerator = new BloodSaturationDataGenerator(patientCount,
+                master.split());
+        BloodPressureDataGenerator bloodPressureDataGenerator = new BloodPressureDataGenerator(patientCount,
+                master.split());
+        BloodLevelsDataGenerator bloodLevelsDataGenerator = new BloodLevelsDataGenerator(patientCount,
+                master.split());
+        AlertGenerator alertGenerator = new AlertGenerator(patientCount, master.split());
 
         for (int patientId : patientIds) {
-            scheduleTask(() -> ecgDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.SECONDS);
-            scheduleTask(() -> bloodSaturationDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.SECONDS);
-            scheduleTask(() -> bloodPressureDataGenerator.generate(patientId, outputStrategy), 1, TimeUnit.MINUTES);
-            scheduleTask(() -> bloodLevelsDataGenerator.generate(patientId, outputStrategy), 2, TimeUnit.MINUTES);
-            scheduleTask(() -> alertGenerator.generate(patientId, outputStrategy), 20, TimeUnit.SECONDS);
+            scheduleGenerator(patientId, ecgDataGenerator, 1, TimeUnit.SECONDS);
+            scheduleGenerator(patientId, bloodSaturationDataGenerator, 1, TimeUnit.SECONDS);
+            scheduleGenerator(patientId, bloodPressureDataGenerator, 1, TimeUnit.MINUTES);
+            scheduleGenerator(patientId, bloodLevelsDataGenerator, 2, TimeUnit.MINUTES);
+            scheduleGenerator(patientId, alertGenerator, 20, TimeUnit.SECONDS);
         }
     }
 
@@ -188,4 +471,27 @@ public class HealthDataSimulator {
     private static void scheduleTask(Runnable task, long period, TimeUnit timeUnit) {
         scheduler.scheduleAtFixedRate(task, random.nextInt(5), period, timeUnit);
     }
+
+    /**
+     * Schedules a generator for a patient at a fixed rate, on the generation
+     * scheduler if one is used and as a separate task otherwise.
+     *
+     * @param patientId The ID of the patient.
+     * @param generator The generator to run.
+     * @param period The period between executions.
+     * @param timeUnit The time unit for the period.
+     */
+    private static void scheduleGenerator(int patientId, PatientDataGenerator generator, long period,
+            TimeUnit timeUnit) {
+        if (generationScheduler instanceof TickScheduler || generationScheduler instanceof AcceleratedScheduler) {
+            // Spread patients over the whole period so every second carries a similar load
+            long periodSeconds = timeUnit.toSeconds(period);
+            generationScheduler.schedule(patientId, generator, random.nextInt((int) periodSeconds), periodSeconds,
+                    TimeUnit.SECONDS);
+        } else if (generationScheduler != null) {
+            generationScheduler.schedule(patientId, generator, random.nextInt(5), period, timeUnit);
+        } else {
+            scheduleTask(() -> generator.generate(patientId, outputStrategy), period, timeUnit);
+        }
+    }
 }
@@ -2,6 +2,7 @@ package com.cardio_generator;
 
 import com.data_management.DataStorage;
 import java.io.IOException;
+import java.util.Arrays;
 
 /**
  * Main class that serves as the entry point for the application.
@@ -10,13 +11,13 @@ import java.io.IOException;
 public class Main {
     /**
      * Main method that determines which class to run based on command-line arguments.
-     * @param args Command-line arguments. If first argument is "DataStorage", runs DataStorage,
-     *             otherwise runs HealthDataSimulator.
+     * @param args Command-line arguments. If first argument is "DataStorage", runs DataStorage
+     *             with the remaining arguments, otherwise runs HealthDataSimulator.
      */
     public static void main(String[] args) {
         try {
             if (args.length > 0 && args[0].equals("DataStorage")) {
-                DataStorage.main(new String[]{});
+                DataStorage.main(Arrays.copyOfRange(args, 1, args.length));
             } else {
                 HealthDataSimulator.main(args);
             }
@@ -0,0 +1,288 @@
+package com.cardio_generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Runs the data generators of many patients on a small, fixed number of
+ * threads.
+ * Time is divided into ticks. Each generator scheduled with a period of
+ * {@code n} ticks gets a wheel of {@code n} slots, and every patient is placed
+ * in the slot matching its initial delay. On each tick one thread walks the
+ * due slot of every wheel and splits the patients in it into one batch per
+ * worker (of at least {@value #MIN_BATCH_SIZE} patients), so a slot keeps the
+ * whole fixed pool busy, the number of threads does not depend on the number
+ * of patients and no timer is kept per patient.
+ * A tick waits for all its batches before the next tick starts. How late each
+ * tick starts compared to its nominal time is recorded as jitter; see
+ * {@link #getMetrics()}.
+ *
+ * @author Ege Postacioglu
+ */
+public class TickScheduler implements GenerationScheduler {
+    private static final int MIN_BATCH_SIZE = 32;
+
+    private final long tickMillis;
+    private final int workerCount;
+    private final List<Wheel> wheels = new ArrayList<>();
+    private ScheduledExecutorService ticker;
+    private ExecutorService workers;
+    private OutputStrategy outputStrategy;
+    private long startNanos;
+
+    // Written only by the ticker thread, read by getMetrics()
+    private volatile long tickCount;
+    private volatile long lastJitterNanos;
+    private volatile long maxJitterNanos;
+    private volatile long totalJitterNanos;
+    private volatile long lastTickDurationNanos;
+
+    /**
+     * Creates a new TickScheduler.
+     *
+     * @param tickMillis The length of one tick in milliseconds.
+     * @param workerCount The number of threads generating readings.
+     */
+    public TickScheduler(long tickMillis, int workerCount) {
+        if (tickMillis <= 0 || workerCount <= 0) {
+            throw new IllegalArgumentException("Tick length and worker count must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.workerCount = workerCount;
+    }
+
+    /**
+     * Schedules a generator to run for a patient at a fixed rate. The period
+     * is rounded to a whole number of ticks, at least one, and the initial
+     * delay is taken modulo the period.
+     *
+     * @param patientId The ID of the patient.
+     * @param generator The generator to run.
+     * @param initialDelay The delay before the first run.
+     * @param period The period between runs.
+     * @param timeUnit The time unit of the delay and the period.
+     * @throws IllegalStateException If the scheduler has already been started.
+     */
+    @Override
+    public synchronized void schedule(int patientId, PatientDataGenerator generator, long initialDelay, long period,
+            TimeUnit timeUnit) {
+        if (ticker != null) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        int periodTicks = (int) Math.max(1, Math.round(timeUnit.toMillis(period) / (double) tickMillis));
+        int slot = (int) ((timeUnit.toMillis(initialDelay) / tickMillis) % periodTicks);
+        wheelFor(generator, periodTicks).add(slot, patientId);
+    }
+
+    /**
+     * Starts ticking. Every generator run passes its readings to the given
+     * output strategy.
+     *
+     * @param outputStrategy The strategy used to output the generated data.
+     */
+    @Override
+    public synchronized void start(OutputStrategy outputStrategy) {
+        if (ticker != null) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        this.outputStrategy = outputStrategy;
+        workers = Executors.newFixedThreadPool(workerCount);
+        ticker = Executors.newSingleThreadScheduledExecutor();
+        startNanos = System.nanoTime();
+        ticker.scheduleAtFixedRate(this::tick, 0, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops ticking, waiting for a tick in progress to finish.
+     */
+    @Override
+    public synchronized void stop() {
+        if (ticker == null) {
+            return;
+        }
+        ticker.shutdown();
+        try {
+            ticker.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdown();
+    }
+
+    /**
+     * Returns the number of threads used by this scheduler: the workers and
+     * the thread driving the ticks.
+     *
+     * @return The thread count.
+     */
+    @Override
+    public int getThreadCount() {
+        return workerCount + 1;
+    }
+
+    /**
+     * Returns a snapshot of the tick count and jitter so far.
+     *
+     * @return The current metrics.
+     */
+    public Metrics getMetrics() {
+        long ticks = tickCount;
+        return new Metrics(getThreadCount(), ticks, lastJitterNanos, maxJitterNanos,
+                ticks == 0 ? 0 : totalJitterNanos / ticks, lastTickDurationNanos);
+    }
+
+    private void tick() {
+        long tick = tickCount;
+        long begin = System.nanoTime();
+        long jitter = Math.max(0, begin - startNanos - TimeUnit.MILLISECONDS.toNanos(tick * tickMillis));
+
+        List<Callable<Void>> batches = new ArrayList<>();
+        for (Wheel wheel : wheels) {
+            int[] patients = wheel.slots[(int) (tick % wheel.slots.length)];
+            int size = wheel.sizes[(int) (tick % wheel.slots.length)];
+            int batchSize = Math.max(MIN_BATCH_SIZE, (size + workerCount - 1) / workerCount);
+            for (int from = 0; from < size; from += batchSize) {
+                int start = from;
+                int end = Math.min(size, from + batchSize);
+                batches.add(() -> {
+                    for (int i = start; i < end; i++) {
+                        wheel.generator.generate(patients[i], outputStrategy);
+                    }
+                    return null;
+                });
+            }
+        }
+        try {
+            for (Future<Void> batch : workers.invokeAll(batches)) {
+                batch.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("An error occurred while generating data: " + e.getCause());
+        }
+
+        lastJitterNanos = jitter;
+        maxJitterNanos = Math.max(maxJitterNanos, jitter);
+        totalJitterNanos += jitter;
+        lastTickDurationNanos = System.nanoTime() - begin;
+        tickCount = tick + 1;
+    }
+
+    private Wheel wheelFor(PatientDataGenerator generator, int periodTicks) {
+        for (Wheel wheel : wheels) {
+            if (wheel.generator == generator && wheel.slots.length == periodTicks) {
+                return wheel;
+            }
+        }
+        Wheel wheel = new Wheel(generator, periodTicks);
+        wheels.add(wheel);
+        return wheel;
+    }
+
+    /**
+     * The patients of one generator, bucketed by the tick within the period
+     * at which they are due.
+     */
+    private static final class Wheel {
+        final PatientDataGenerator generator;
+        final int[][] slots;
+        final int[] sizes;
+
+        Wheel(PatientDataGenerator generator, int periodTicks) {
+            this.generator = generator;
+            this.slots = new int[periodTicks][];
+            this.sizes = new int[periodTicks];
+            Arrays.fill(slots, new int[0]);
+        }
+
+        void add(int slot, int patientId) {
+            if (sizes[slot] == slots[slot].length) {
+                slots[slot] = Arrays.copyOf(slots[slot], Math.max(16, sizes[slot] * 2));
+            }
+            slots[slot][sizes[slot]++] = patientId;
+        }
+    }
+
+    /**
+     * A snapshot of the scheduler's metrics.
+     */
+    public static final class Metrics {
+        private final int threadCount;
+        private final long tickCount;
+        private final long lastJitterNanos;
+        private final long maxJitterNanos;
+        private final long meanJitterNanos;
+        private final long lastTickDurationNanos;
+
+        Metrics(int threadCount, long tickCount, long lastJitterNanos, long maxJitterNanos, long meanJitterNanos,
+                long lastTickDurationNanos) {
+            this.threadCount = threadCount;
+            this.tickCount = tickCount;
+            this.lastJitterNanos = lastJitterNanos;
+            this.maxJitterNanos = maxJitterNanos;
+            this.meanJitterNanos = meanJitterNanos;
+            this.lastTickDurationNanos = lastTickDurationNanos;
+        }
+
+        /**
+         * @return The number of threads used by the scheduler.
+         */
+        public int getThreadCount() {
+            return threadCount;
+        }
+
+        /**
+         * @return The number of completed ticks.
+         */
+        public long getTickCount() {
+            return tickCount;
+        }
+
+        /**
+         * @return How late the last tick started, in nanoseconds.
+         */
+        public long getLastJitterNanos() {
+            return lastJitterNanos;
+        }
+
+        /**
+         * @return How late the latest tick so far started, in nanoseconds.
+         */
+        public long getMaxJitterNanos() {
+            return maxJitterNanos;
+        }
+
+        /**
+         * @return How late ticks started on average, in nanoseconds.
+         */
+        public long getMeanJitterNanos() {
+            return meanJitterNanos;
+        }
+
+        /**
+         * @return How long the last tick took to generate its readings, in nanoseconds.
+         */
+        public long getLastTickDurationNanos() {
+            return lastTickDurationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("threads=%d ticks=%d jitter(last/mean/max)=%.3f/%.3f/%.3f ms lastTick=%.3f ms",
+                    threadCount, tickCount, lastJitterNanos / 1e6, meanJitterNanos / 1e6, maxJitterNanos / 1e6,
+                    lastTickDurationNanos / 1e6);
+        }
+    }
+}
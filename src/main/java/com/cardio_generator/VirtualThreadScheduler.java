@@ -0,0 +1,159 @@
+package com.cardio_generator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+
+/**
+ * Runs the data generators of each patient in a loop on its own virtual
+ * thread.
+ * The loop sleeps until the next generator of the patient is due, runs every
+ * due generator and goes back to sleep. A generator blocked in a slow
+ * {@link OutputStrategy}, such as a TCP client that is not reading, only
+ * delays the patient it belongs to: the virtual thread unmounts while it is
+ * blocked and the carrier threads keep running the other patients.
+ *
+ * @author Ege Postacioglu
+ */
+public class VirtualThreadScheduler implements GenerationScheduler {
+    private final Map<Integer, PatientLoop> loops = new LinkedHashMap<>();
+    private final List<Thread> threads = new ArrayList<>();
+    private boolean started;
+
+    /**
+     * Schedules a generator to run for a patient at a fixed rate, in the
+     * patient's loop.
+     *
+     * @param patientId The ID of the patient.
+     * @param generator The generator to run.
+     * @param initialDelay The delay before the first run.
+     * @param period The period between runs.
+     * @param timeUnit The time unit of the delay and the period.
+     * @throws IllegalStateException If the scheduler has already been started.
+     */
+    @Override
+    public synchronized void schedule(int patientId, PatientDataGenerator generator, long initialDelay, long period,
+            TimeUnit timeUnit) {
+        if (started) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive: " + period);
+        }
+        loops.computeIfAbsent(patientId, PatientLoop::new)
+                .add(generator, timeUnit.toNanos(initialDelay), timeUnit.toNanos(period));
+    }
+
+    /**
+     * Starts one virtual thread per patient.
+     *
+     * @param outputStrategy The strategy used to output the generated data.
+     */
+    @Override
+    public synchronized void start(OutputStrategy outputStrategy) {
+        if (started) {
+            throw new IllegalStateException("Scheduler already started");
+        }
+        started = true;
+        long startNanos = System.nanoTime();
+        for (PatientLoop loop : loops.values()) {
+            threads.add(Thread.ofVirtual()
+                    .name("patient-" + loop.patientId)
+                    .start(() -> loop.run(startNanos, outputStrategy)));
+        }
+    }
+
+    /**
+     * Interrupts every patient thread and waits for it to finish the
+     * generator it is running.
+     */
+    @Override
+    public synchronized void stop() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        boolean interrupted = false;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        threads.clear();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of virtual threads started, one per patient.
+     *
+     * @return The thread count.
+     */
+    @Override
+    public synchronized int getThreadCount() {
+        return threads.size();
+    }
+
+    /**
+     * The generators of one patient with the time each is next due.
+     */
+    private static final class PatientLoop {
+        final int patientId;
+        PatientDataGenerator[] generators = new PatientDataGenerator[0];
+        long[] delays = new long[0];
+        long[] periods = new long[0];
+
+        PatientLoop(int patientId) {
+            this.patientId = patientId;
+        }
+
+        void add(PatientDataGenerator generator, long delayNanos, long periodNanos) {
+            int n = generators.length;
+            generators = Arrays.copyOf(generators, n + 1);
+            delays = Arrays.copyOf(delays, n + 1);
+            periods = Arrays.copyOf(periods, n + 1);
+            generators[n] = generator;
+            delays[n] = delayNanos;
+            periods[n] = periodNanos;
+        }
+
+        void run(long startNanos, OutputStrategy outputStrategy) {
+            long[] due = new long[generators.length];
+            for (int i = 0; i < due.length; i++) {
+                due[i] = startNanos + delays[i];
+            }
+            while (!Thread.currentThread().isInterrupted()) {
+                long next = Long.MAX_VALUE;
+                for (long time : due) {
+                    next = Math.min(next, time);
+                }
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                long now = System.nanoTime();
+                for (int i = 0; i < due.length; i++) {
+                    if (due[i] <= now) {
+                        generators[i].generate(patientId, outputStrategy);
+                        // Fixed rate, like ScheduledExecutorService.scheduleAtFixedRate
+                        due[i] += periods[i];
+                    }
+                }
+            }
+        }
+    }
+}
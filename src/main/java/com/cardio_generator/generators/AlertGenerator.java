@@ -1,7 +1,8 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
+import com.cardio_generator.outputs.Labels;
 import com.cardio_generator.outputs.OutputStrategy;
 
 /**
@@ -11,11 +12,10 @@ import com.cardio_generator.outputs.OutputStrategy;
  * @author Ege Postacioglu
  */
 public class AlertGenerator implements PatientDataGenerator {
-    // Fixed: Constants should be in UPPER_CASE
     /**
-     * Random number generator used for simulating alert events.
+     * Random streams used for simulating alert events, one per patient.
      */
-    public static final Random RANDOM_GENERATOR = new Random();
+    private final SplittableRandom[] randoms;
     // Fixed: Variable names should be in camelCase 
     /**
      * Tracks the alert state for each patient.
@@ -29,6 +29,18 @@ public class AlertGenerator implements PatientDataGenerator {
      * @param patientCount The number of patients to simulate.
      */
     public AlertGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a new AlertGenerator whose patients' random streams are split
+     * from the given source, so the same seed generates the same alerts.
+     *
+     * @param patientCount The number of patients to simulate.
+     * @param random The source of the patients' random streams.
+     */
+    public AlertGenerator(int patientCount, SplittableRandom random) {
+        randoms = PatientRandoms.split(random, patientCount);
         alertStates = new boolean[patientCount + 1];
     }
 
@@ -40,23 +52,35 @@ public class AlertGenerator implements PatientDataGenerator {
      */
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
+        generate(patientId, System.currentTimeMillis(), outputStrategy);
+    }
+
+    /**
+     * Generates alert data for a specific patient as of the given time and outputs it.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time to generate the data for, in milliseconds since the epoch.
+     * @param outputStrategy The strategy used to output the alert data.
+     */
+    @Override
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         try {
             if (alertStates[patientId]) {
-                if (RANDOM_GENERATOR.nextDouble() < 0.9) { // 90% chance to resolve
+                if (randoms[patientId].nextDouble() < 0.9) { // 90% chance to resolve
                     alertStates[patientId] = false;
                     // Output the alert
-                    outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "resolved");
+                    outputStrategy.output(patientId, timestamp, Labels.ALERT, 0);
                 }
             } else {
                 // Fixed: Variable names should be in camelCase
                 double lambda = 0.1; // Average rate (alerts per period), adjust based on desired frequency
                 double p = -Math.expm1(-lambda); // Probability of at least one alert in the period
-                boolean alertTriggered = RANDOM_GENERATOR.nextDouble() < p;
+                boolean alertTriggered = randoms[patientId].nextDouble() < p;
 
                 if (alertTriggered) {
                     alertStates[patientId] = true;
                     // Output the alert
-                    outputStrategy.output(patientId, System.currentTimeMillis(), "Alert", "triggered");
+                    outputStrategy.output(patientId, timestamp, Labels.ALERT, 1);
                 }
             }
         } catch (Exception e) {
@@ -1,7 +1,8 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
+import com.cardio_generator.outputs.Labels;
 import com.cardio_generator.outputs.OutputStrategy;
 
 /**
@@ -10,15 +11,27 @@ import com.cardio_generator.outputs.OutputStrategy;
  * @author Ege Postacioglu
  */
 public class BloodSaturationDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
+    private final SplittableRandom[] randoms; // One stream per patient
     private int[] lastSaturationValues;
 
     public BloodSaturationDataGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator whose patients' random streams are split from the
+     * given source, so the same seed generates the same values.
+     *
+     * @param patientCount The number of patients to simulate.
+     * @param random The source of the patients' random streams.
+     */
+    public BloodSaturationDataGenerator(int patientCount, SplittableRandom random) {
+        randoms = PatientRandoms.split(random, patientCount);
         lastSaturationValues = new int[patientCount + 1];
 
         // Initialize with baseline saturation values for each patient
         for (int i = 1; i <= patientCount; i++) {
-            lastSaturationValues[i] = 95 + random.nextInt(6); // Initializes with a value between 95 and 100
+            lastSaturationValues[i] = 95 + randoms[i].nextInt(6); // Initializes with a value between 95 and 100
         }
     }
 
@@ -30,16 +43,27 @@ public class BloodSaturationDataGenerator implements PatientDataGenerator {
      */
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
+        generate(patientId, System.currentTimeMillis(), outputStrategy);
+    }
+
+    /**
+     * Generates blood saturation data for a specific patient as of the given time and outputs it.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time to generate the data for, in milliseconds since the epoch.
+     * @param outputStrategy The strategy used to output the data.
+     */
+    @Override
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         try {
             // Simulate blood saturation values
-            int variation = random.nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
+            int variation = randoms[patientId].nextInt(3) - 1; // -1, 0, or 1 to simulate small fluctuations
             int newSaturationValue = lastSaturationValues[patientId] + variation;
 
             // Ensure the saturation stays within a realistic and healthy range
             newSaturationValue = Math.min(Math.max(newSaturationValue, 90), 100);
             lastSaturationValues[patientId] = newSaturationValue;
-            outputStrategy.output(patientId, System.currentTimeMillis(), "Saturation",
-                    Double.toString(newSaturationValue) + "%");
+            outputStrategy.output(patientId, timestamp, Labels.SATURATION, newSaturationValue);
         } catch (Exception e) {
             System.err.println("An error occurred while generating blood saturation data for patient " + patientId);
             e.printStackTrace(); // This will print the stack trace to help identify where the error occurred.
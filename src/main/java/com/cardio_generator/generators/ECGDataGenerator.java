@@ -1,15 +1,62 @@
 package com.cardio_generator.generators;
 
-import java.util.Random;
+import java.util.SplittableRandom;
 
+import com.cardio_generator.outputs.Labels;
 import com.cardio_generator.outputs.OutputStrategy;
 
+/**
+ * Generates ECG data for patients in the health data simulation.
+ * By default each run outputs one value, a sum of sinusoids. Created with a
+ * sample rate, each run instead outputs one second of waveform at that rate as
+ * a single block (see {@link OutputStrategy#outputBlock}): a beat template of
+ * P wave, QRS complex and T wave, played back at the patient's slowly drifting
+ * heart rate, plus baseline wander and noise. A block is built an array at a
+ * time in plain counted loops over primitive arrays, which the JIT compiles to
+ * SIMD instructions where the hardware has them.
+ *
+ * @author Ege Postacioglu
+ */
 public class ECGDataGenerator implements PatientDataGenerator {
-    private static final Random random = new Random();
+    /**
+     * The highest sample rate supported in block mode, in Hz.
+     */
+    public static final int MAX_SAMPLE_RATE = 2000;
+
+    private static final int TEMPLATE_SIZE = 1024; // Points per beat
+    private static final double[] BEAT = beatTemplate();
+    private static final double[] NOISE = noiseTable(4 * MAX_SAMPLE_RATE);
+    private static final double WANDER_AMPLITUDE = 0.05; // mV
+    private static final double WANDER_HZ = 0.25; // Breathing
+
+    private final SplittableRandom[] randoms; // One stream per patient
     private double[] lastEcgValues;
     private static final double PI = Math.PI;
 
+    // Block mode only
+    private final int sampleRate;
+    private long[] sampleOffsets; // Milliseconds from the start of a block to each sample
+    private double[] beatPhases; // Position within the current beat, from 0 to 1
+    private double[] heartRates; // Beats per minute
+    private double[] baselineRates;
+    private double[] amplitudes;
+    private double[] wanderPhases;
+    private ThreadLocal<Block> blocks;
+
     public ECGDataGenerator(int patientCount) {
+        this(patientCount, new SplittableRandom());
+    }
+
+    /**
+     * Creates a generator whose patients' random streams are split from the
+     * given source, so the same seed generates the same values.
+     *
+     * @param patientCount The number of patients to simulate.
+     * @param random The source of the patients' random streams.
+     */
+    public ECGDataGenerator(int patientCount, SplittableRandom random) {
+        randoms = PatientRandoms.split(random, patientCount);
+        sampleRate = 0;
         lastEcgValues = new double[patientCount + 1];
         // Initialize the last ECG value for each patient
         for (int i = 1; i <= patientCount; i++) {
@@ -17,12 +64,66 @@ public class ECGDataGenerator implements PatientDataGenerator {
         }
     }
 
+    /**
+     * Creates a generator in block mode: every run outputs one second of
+     * waveform for the patient, {@code sampleRate} samples evenly spaced from
+     * the run's timestamp, as one block.
+     *
+     * @param patientCount The number of patients to simulate.
+     * @param random The source of the patients' random streams.
+     * @param sampleRate The samples per second, e.g. 250 or 500.
+     * @throws IllegalArgumentException If the sample rate is not between 1 and {@link #MAX_SAMPLE_RATE}.
+     */
+    public ECGDataGenerator(int patientCount, SplittableRandom random, int sampleRate) {
+        if (sampleRate < 1 || sampleRate > MAX_SAMPLE_RATE) {
+            throw new IllegalArgumentException(
+                    "Sample rate must be between 1 and " + MAX_SAMPLE_RATE + " Hz: " + sampleRate);
+        }
+        randoms = PatientRandoms.split(random, patientCount);
+        this.sampleRate = sampleRate;
+        sampleOffsets = new long[sampleRate];
+        for (int i = 0; i < sampleRate; i++) {
+            sampleOffsets[i] = i * 1000L / sampleRate;
+        }
+        beatPhases = new double[patientCount + 1];
+        heartRates = new double[patientCount + 1];
+        baselineRates = new double[patientCount + 1];
+        amplitudes = new double[patientCount + 1];
+        wanderPhases = new double[patientCount + 1];
+        for (int i = 1; i <= patientCount; i++) {
+            beatPhases[i] = randoms[i].nextDouble();
+            baselineRates[i] = 60 + randoms[i].nextDouble() * 20; // Between 60 and 80 bpm
+            heartRates[i] = baselineRates[i];
+            amplitudes[i] = 0.8 + randoms[i].nextDouble() * 0.4;
+            wanderPhases[i] = randoms[i].nextDouble() * 2 * PI;
+        }
+        blocks = ThreadLocal.withInitial(() -> new Block(sampleRate));
+    }
+
+    /**
+     * Returns the samples per second output in block mode.
+     *
+     * @return The sample rate, or 0 if every run outputs a single value.
+     */
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
     @Override
     public void generate(int patientId, OutputStrategy outputStrategy) {
+        generate(patientId, System.currentTimeMillis(), outputStrategy);
+    }
+
+    @Override
+    public void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
         // TODO Check how realistic this data is and make it more realistic if necessary
         try {
-            double ecgValue = simulateEcgWaveform(patientId, lastEcgValues[patientId]);
-            outputStrategy.output(patientId, System.currentTimeMillis(), "ECG", Double.toString(ecgValue));
+            if (sampleRate > 0) {
+                generateBlock(patientId, timestamp, outputStrategy);
+                return;
+            }
+            double ecgValue = simulateEcgWaveform(patientId, timestamp, lastEcgValues[patientId]);
+            outputStrategy.output(patientId, timestamp, Labels.ECG, ecgValue);
             lastEcgValues[patientId] = ecgValue;
         } catch (Exception e) {
             System.err.println("An error occurred while generating ECG data for patient " + patientId);
@@ -30,10 +131,11 @@ public class ECGDataGenerator implements PatientDataGenerator {
         }
     }
 
-    private double simulateEcgWaveform(int patientId, double lastEcgValue) {
+    private double simulateEcgWaveform(int patientId, long timestamp, double lastEcgValue) {
         // Simplified ECG waveform generation based on sinusoids
+        SplittableRandom random = randoms[patientId];
         double hr = 60.0 + random.nextDouble() * 20.0; // Simulate heart rate variability between 60 and 80 bpm
-        double t = System.currentTimeMillis() / 1000.0; // Use system time to simulate continuous time
+        double t = timestamp / 1000.0; // Use the (possibly simulated) time to simulate continuous time
         double ecgFrequency = hr / 60.0; // Convert heart rate to Hz
 
         // Simulate different components of the ECG signal
@@ -43,4 +145,101 @@ public class ECGDataGenerator implements PatientDataGenerator {
 
         return pWave + qrsComplex + tWave + random.nextDouble() * 0.05; // Add small noise
     }
+
+    /**
+     * Generates and outputs one second of waveform for a patient. Generators
+     * run a patient on one thread at a time, so the patient's state needs no
+     * lock; the sample arrays belong to the calling thread.
+     */
+    private void generateBlock(int patientId, long timestamp, OutputStrategy outputStrategy) {
+        SplittableRandom random = randoms[patientId];
+        int n = sampleRate;
+        Block block = blocks.get();
+        double[] phases = block.phases;
+        double[] values = block.values;
+        long[] timestamps = block.timestamps;
+
+        // The heart rate drifts a little every second and is pulled back to the patient's baseline
+        double hr = heartRates[patientId];
+        hr += (baselineRates[patientId] - hr) * 0.05 + (random.nextDouble() - 0.5) * 2;
+        heartRates[patientId] = hr;
+        double step = hr / 60.0 / n; // Beats per sample
+        double start = beatPhases[patientId];
+        double amplitude = amplitudes[patientId];
+        double wander = wanderPhases[patientId];
+        double wanderStart = WANDER_AMPLITUDE * Math.sin(wander);
+        double wanderSlope = (WANDER_AMPLITUDE * Math.sin(wander + 2 * PI * WANDER_HZ) - wanderStart) / n;
+        int noiseOffset = random.nextInt(NOISE.length - n + 1);
+
+        for (int i = 0; i < n; i++) {
+            double phase = start + i * step;
+            phases[i] = (phase - (long) phase) * TEMPLATE_SIZE;
+        }
+        for (int i = 0; i < n; i++) {
+            int k = (int) phases[i];
+            double fraction = phases[i] - k;
+            values[i] = BEAT[k] + fraction * (BEAT[k + 1] - BEAT[k]);
+        }
+        for (int i = 0; i < n; i++) {
+            values[i] = values[i] * amplitude + wanderStart + wanderSlope * i + NOISE[noiseOffset + i];
+        }
+        for (int i = 0; i < n; i++) {
+            timestamps[i] = timestamp + sampleOffsets[i];
+        }
+
+        double end = start + n * step;
+        beatPhases[patientId] = end - (long) end;
+        wanderPhases[patientId] = (wander + 2 * PI * WANDER_HZ) % (2 * PI);
+        outputStrategy.outputBlock(patientId, timestamps, Labels.ECG, values, n);
+    }
+
+    /**
+     * Builds one beat, in millivolts, as a sum of Gaussian waves placed by
+     * their angle within the beat, with the R peak in the middle. The last
+     * point repeats the first so that interpolation needs no wrap-around.
+     */
+    private static double[] beatTemplate() {
+        // P, Q, R, S and T waves: angle (radians from the R peak), amplitude (mV) and width (radians)
+        double[][] waves = { { -PI / 3, 0.15, 0.25 }, { -PI / 12, -0.12, 0.1 }, { 0, 1.0, 0.1 },
+                { PI / 12, -0.25, 0.1 }, { PI / 2, 0.3, 0.4 } };
+        double[] beat = new double[TEMPLATE_SIZE + 1];
+        for (int i = 0; i <= TEMPLATE_SIZE; i++) {
+            double angle = 2 * PI * i / TEMPLATE_SIZE - PI;
+            for (double[] wave : waves) {
+                double distance = Math.IEEEremainder(angle - wave[0], 2 * PI);
+                beat[i] += wave[1] * Math.exp(-distance * distance / (2 * wave[2] * wave[2]));
+            }
+        }
+        return beat;
+    }
+
+    /**
+     * A fixed table of small Gaussian noise. Each block reads a stretch of it
+     * from a random offset, which costs one random number per block instead
+     * of one per sample.
+     */
+    private static double[] noiseTable(int size) {
+        SplittableRandom random = new SplittableRandom(0x5EED);
+        double[] noise = new double[size];
+        for (int i = 0; i < size; i++) {
+            // Sum of uniforms, close enough to Gaussian with a standard deviation of 0.01 mV
+            noise[i] = (random.nextDouble() + random.nextDouble() + random.nextDouble() - 1.5) * 0.02;
+        }
+        return noise;
+    }
+
+    /**
+     * The working arrays of one thread, one slot per sample of a block.
+     */
+    private static final class Block {
+        final double[] phases;
+        final double[] values;
+        final long[] timestamps;
+
+        Block(int sampleRate) {
+            phases = new double[sampleRate];
+            values = new double[sampleRate];
+            timestamps = new long[sampleRate];
+        }
+    }
 }
@@ -16,4 +16,46 @@ public interface PatientDataGenerator {
      * @param outputStrategy The strategy used to output the generated data.
      */
     void generate(int patientId, OutputStrategy outputStrategy);
+
+    /**
+     * Generates data for a specific patient as of the given time, which may be
+     * a simulated time rather than the current one. Every reading output is
+     * stamped with it. The built-in generators override this form and
+     * implement {@link #generate(int, OutputStrategy)} with the current time;
+     * the default passes the readings of {@link #generate(int, OutputStrategy)}
+     * on with their timestamps replaced. A block keeps its sample spacing: its
+     * first sample is stamped with the given time and the others follow at
+     * the same offsets as before.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time to generate the data for, in milliseconds since the epoch.
+     * @param outputStrategy The strategy used to output the generated data.
+     */
+    default void generate(int patientId, long timestamp, OutputStrategy outputStrategy) {
+        generate(patientId, new OutputStrategy() {
+            @Override
+            public void output(int id, long ignored, String label, String data) {
+                outputStrategy.output(id, timestamp, label, data);
+            }
+
+            @Override
+            public void output(int id, long ignored, int labelId, double value) {
+                outputStrategy.output(id, timestamp, labelId, value);
+            }
+
+            @Override
+            public void outputBlock(int id, long[] timestamps, int labelId, double[] values, int count) {
+                long[] shifted = new long[count];
+                for (int i = 0; i < count; i++) {
+                    shifted[i] = timestamp + (timestamps[i] - timestamps[0]);
+                }
+                outputStrategy.outputBlock(id, shifted, labelId, values, count);
+            }
+
+            @Override
+            public void close() {
+                outputStrategy.close();
+            }
+        });
+    }
 }
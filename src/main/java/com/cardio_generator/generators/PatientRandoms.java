@@ -0,0 +1,31 @@
+package com.cardio_generator.generators;
+
+import java.util.SplittableRandom;
+
+/**
+ * Splits the random streams of a generator's patients from one source.
+ * Each patient gets a stream of its own, so generators running on many
+ * threads never contend on a shared seed, and the values generated for a
+ * patient depend only on the source's seed, not on which thread ran first.
+ *
+ * @author Ege Postacioglu
+ */
+final class PatientRandoms {
+    private PatientRandoms() {
+    }
+
+    /**
+     * Splits one stream per patient, in patient id order.
+     *
+     * @param source The stream to split from; advanced by the split.
+     * @param patientCount The number of patients.
+     * @return The streams, indexed by patient ID; index 0 is unused.
+     */
+    static SplittableRandom[] split(SplittableRandom source, int patientCount) {
+        SplittableRandom[] randoms = new SplittableRandom[patientCount + 1];
+        for (int patientId = 1; patientId <= patientCount; patientId++) {
+            randoms[patientId] = source.split();
+        }
+        return randoms;
+    }
+}
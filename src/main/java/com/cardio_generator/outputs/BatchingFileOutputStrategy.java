@@ -0,0 +1,365 @@
+package com.cardio_generator.outputs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Outputs patient data to files in a specified directory, one file per label,
+ * either in the same format as {@link FileOutputStrategy} or as CSV lines that
+ * the data readers can load (see {@link FileLineFormat}).
+ * Instead of opening and closing a file for every reading, {@link #output}
+ * only formats the line and appends it to a lock-free queue. A dedicated
+ * writer thread drains the queue in batches into one buffer per label and
+ * writes each buffer to a channel that stays open for the lifetime of the
+ * strategy. A buffer is written when it is full or when the flush interval
+ * has passed since the last flush; {@link #close()} writes everything still
+ * pending and forces it to disk.
+ * When {@value #MAX_PENDING_LINES} lines are queued because the disk is slower
+ * than generation, producers wait until the writer has caught up to half of
+ * that, so the queue never outgrows the heap.
+ *
+ * @author Ege Postacioglu
+ */
+public class BatchingFileOutputStrategy implements OutputStrategy {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    public static final int MAX_PENDING_LINES = 64 * 1024;
+
+    private final Path baseDirectory;
+    private final FileLineFormat format;
+    private final int bufferSize;
+    private final long flushIntervalNanos;
+    private final int wakeThreshold;
+    private final ConcurrentLinkedQueue<Line> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final Object space = new Object(); // Producers wait on it while the queue is full
+    private final Map<String, LabelWriter> writers = new HashMap<>(); // Only used by the writer thread
+    private final Thread writerThread;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new BatchingFileOutputStrategy for the given directory with a
+     * 64 KB buffer per label, flushed at least once a second.
+     *
+     * @param baseDirectory The directory where files will be written.
+     * @throws IOException If the directory cannot be created.
+     */
+    public BatchingFileOutputStrategy(String baseDirectory) throws IOException {
+        this(baseDirectory, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Creates a new BatchingFileOutputStrategy for the given directory and line
+     * format with a 64 KB buffer per label, flushed at least once a second.
+     *
+     * @param baseDirectory The directory where files will be written.
+     * @param format The format of the lines.
+     * @throws IOException If the directory cannot be created.
+     */
+    public BatchingFileOutputStrategy(String baseDirectory, FileLineFormat format) throws IOException {
+        this(baseDirectory, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, format);
+    }
+
+    /**
+     * Creates a new BatchingFileOutputStrategy with a custom flush policy.
+     *
+     * @param baseDirectory The directory where files will be written.
+     * @param bufferSize The number of bytes buffered per label before they are written.
+     * @param flushIntervalMillis The longest time a line waits before it is written.
+     * @throws IOException If the directory cannot be created.
+     */
+    public BatchingFileOutputStrategy(String baseDirectory, int bufferSize, long flushIntervalMillis)
+            throws IOException {
+        this(baseDirectory, bufferSize, flushIntervalMillis, FileLineFormat.TEXT);
+    }
+
+    /**
+     * Creates a new BatchingFileOutputStrategy with a custom flush policy and
+     * line format.
+     *
+     * @param baseDirectory The directory where files will be written.
+     * @param bufferSize The number of bytes buffered per label before they are written.
+     * @param flushIntervalMillis The longest time a line waits before it is written.
+     * @param format The format of the lines.
+     * @throws IOException If the directory cannot be created.
+     */
+    public BatchingFileOutputStrategy(String baseDirectory, int bufferSize, long flushIntervalMillis,
+            FileLineFormat format) throws IOException {
+        if (bufferSize <= 0 || flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Buffer size and flush interval must be positive");
+        }
+        this.baseDirectory = Paths.get(baseDirectory);
+        this.format = format;
+        this.bufferSize = bufferSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.wakeThreshold = Math.max(1, bufferSize / 64);
+        Files.createDirectories(this.baseDirectory);
+        writerThread = new Thread(this::writeLoop, "file-output-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queues the given data for a patient to be written to the file of its label.
+     * In CSV format a trailing {@code %} is dropped and the alert values
+     * {@code triggered} and {@code resolved} are written as 1.0 and 0.0.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time the data was generated.
+     * @param label The type of data.
+     * @param data The actual data value.
+     * @throws IllegalStateException If the strategy has been closed.
+     */
+    @Override
+    public void output(int patientId, long timestamp, String label, String data) {
+        if (closed) {
+            throw new IllegalStateException("Output strategy is closed");
+        }
+        String text;
+        if (format == FileLineFormat.CSV) {
+            text = patientId + "," + timestamp + "," + label + "," + csvValue(data) + System.lineSeparator();
+        } else {
+            text = "Patient ID: " + patientId + ", Timestamp: " + timestamp + ", Label: " + label
+                    + ", Data: " + data + System.lineSeparator();
+        }
+        enqueue(label, text);
+    }
+
+    /**
+     * Queues a numeric reading to be written to the file of its label. The
+     * line is formatted once, without an intermediate data string.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time the data was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param value The measurement value.
+     * @throws IllegalStateException If the strategy has been closed.
+     */
+    @Override
+    public void output(int patientId, long timestamp, int labelId, double value) {
+        if (closed) {
+            throw new IllegalStateException("Output strategy is closed");
+        }
+        String label = Labels.nameOf(labelId);
+        StringBuilder text = new StringBuilder(80);
+        if (format == FileLineFormat.CSV) {
+            text.append(patientId).append(',').append(timestamp).append(',').append(label).append(',').append(value);
+        } else {
+            text.append("Patient ID: ").append(patientId).append(", Timestamp: ").append(timestamp)
+                    .append(", Label: ").append(label).append(", Data: ");
+            Labels.appendData(text, labelId, value);
+        }
+        enqueue(label, text.append(System.lineSeparator()).toString());
+    }
+
+    private static String csvValue(String data) {
+        if (data.equals("triggered")) {
+            return "1.0";
+        }
+        if (data.equals("resolved")) {
+            return "0.0";
+        }
+        return data.endsWith("%") ? data.substring(0, data.length() - 1) : data;
+    }
+
+    /**
+     * Returns the number of lines queued and not yet handed to the writer's
+     * buffers.
+     *
+     * @return The number of pending lines.
+     */
+    public int getPendingLines() {
+        return pending.get();
+    }
+
+    private void enqueue(String label, String text) {
+        if (pending.get() >= MAX_PENDING_LINES) {
+            awaitSpace();
+        }
+        queue.offer(new Line(label, text));
+        // Wake the writer early once a full batch is waiting
+        if (pending.incrementAndGet() == wakeThreshold) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    private void awaitSpace() {
+        LockSupport.unpark(writerThread);
+        synchronized (space) {
+            while (pending.get() >= MAX_PENDING_LINES && !closed) {
+                try {
+                    space.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+        if (closed) {
+            throw new IllegalStateException("Output strategy is closed");
+        }
+    }
+
+    /**
+     * Writes every queued line, forces the files to disk and closes them.
+     * Blocks until the writer thread has finished; calling it again has no
+     * effect. Lines output concurrently with this call may be dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (space) {
+            space.notifyAll();
+        }
+        LockSupport.unpark(writerThread);
+        boolean interrupted = false;
+        while (writerThread.isAlive()) {
+            try {
+                writerThread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeLoop() {
+        long lastFlush = System.nanoTime();
+        while (true) {
+            // Read the flag before draining so no line queued before close is missed
+            boolean closing = closed;
+            drain();
+            long now = System.nanoTime();
+            if (closing || now - lastFlush >= flushIntervalNanos) {
+                for (LabelWriter writer : writers.values()) {
+                    writer.flush();
+                }
+                lastFlush = now;
+            }
+            if (closing) {
+                break;
+            }
+            if (queue.isEmpty()) {
+                LockSupport.parkNanos(this, Math.max(0, flushIntervalNanos - (System.nanoTime() - lastFlush)));
+            }
+        }
+        for (LabelWriter writer : writers.values()) {
+            writer.close();
+        }
+    }
+
+    private void drain() {
+        Line line;
+        while ((line = queue.poll()) != null) {
+            if (pending.decrementAndGet() == MAX_PENDING_LINES / 2) {
+                synchronized (space) {
+                    space.notifyAll();
+                }
+            }
+            LabelWriter writer = writers.get(line.label);
+            if (writer == null) {
+                writer = new LabelWriter(baseDirectory.resolve(line.label
+                        + (format == FileLineFormat.CSV ? ".csv" : ".txt")));
+                writers.put(line.label, writer);
+            }
+            writer.append(line.text);
+        }
+    }
+
+    /**
+     * Opens the file of one label for appending. Called on the writer thread.
+     *
+     * @param path The file to open.
+     * @return The open channel.
+     * @throws IOException If the file cannot be opened.
+     */
+    protected FileChannel openChannel(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    private static final class Line {
+        final String label;
+        final String text;
+
+        Line(String label, String text) {
+            this.label = label;
+            this.text = text;
+        }
+    }
+
+    /**
+     * The open file and pending bytes of one label.
+     */
+    private final class LabelWriter {
+        private final Path path;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+        private FileChannel channel;
+
+        LabelWriter(Path path) {
+            this.path = path;
+            try {
+                channel = openChannel(path);
+            } catch (IOException e) {
+                System.err.println("Error opening file " + path + ": " + e.getMessage());
+            }
+        }
+
+        void append(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining()) {
+                flush();
+            }
+            if (bytes.length > buffer.capacity()) {
+                write(ByteBuffer.wrap(bytes));
+            } else {
+                buffer.put(bytes);
+            }
+        }
+
+        void flush() {
+            buffer.flip();
+            write(buffer);
+            buffer.clear();
+        }
+
+        private void write(ByteBuffer bytes) {
+            if (channel == null) {
+                return;
+            }
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+            } catch (IOException e) {
+                System.err.println("Error writing to file " + path + ": " + e.getMessage());
+            }
+        }
+
+        void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.force(true);
+                channel.close();
+            } catch (IOException e) {
+                System.err.println("Error closing file " + path + ": " + e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package com.cardio_generator.outputs;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Encodes readings into the binary wire format used by the {@code tcp-bin}
+ * and {@code websocket-bin} outputs. All numbers are big-endian and every
+ * frame starts with a one-byte type:
+ * <ul>
+ * <li>{@code 1} label definition: label id (2 bytes), length (2 bytes) and
+ * the UTF-8 bytes of the label. Sent before the first reading that uses the
+ * label, and again to every client that connects later.</li>
+ * <li>{@code 2} reading: patient id (4 bytes), timestamp (8 bytes), label id
+ * (2 bytes) and value (8-byte double), 23 bytes in total.</li>
+ * <li>{@code 3} batch: a reading count (2 bytes) followed by that many
+ * readings without their type byte, 22 bytes each.</li>
+ * </ul>
+ * A writer with a batch size of 1 emits one reading frame per reading;
+ * otherwise readings are collected into batch frames of up to that many
+ * readings. A writer is not thread-safe.
+ *
+ * @author Ege Postacioglu
+ */
+public class BinaryFrameWriter {
+    public static final byte LABEL_FRAME = 1;
+    public static final byte READING_FRAME = 2;
+    public static final byte BATCH_FRAME = 3;
+    public static final int READING_SIZE = 22; // Without the frame type byte
+
+    private final int batchSize;
+    private int[] wireIds = new int[16]; // Indexed by Labels id, -1 until the label is defined on this stream
+    private final List<byte[]> labelNames = new ArrayList<>();
+    private ByteBuffer buffer;
+    private int batchCountPosition = -1;
+    private int batchCount;
+
+    /**
+     * Creates a new BinaryFrameWriter.
+     *
+     * @param batchSize The number of readings per batch frame, or 1 for one frame per reading.
+     */
+    public BinaryFrameWriter(int batchSize) {
+        if (batchSize < 1 || batchSize > 0xFFFF) {
+            throw new IllegalArgumentException("Batch size must be between 1 and 65535: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.buffer = ByteBuffer.allocate(64 + batchSize * READING_SIZE);
+        Arrays.fill(wireIds, -1);
+    }
+
+    /**
+     * Appends a reading, preceded by a label definition if the label is new.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time the data was generated.
+     * @param label The type of data.
+     * @param value The measurement value.
+     * @return True if a frame is complete and the pending bytes should be sent.
+     */
+    public boolean add(int patientId, long timestamp, String label, double value) {
+        return add(patientId, timestamp, Labels.idOf(label), value);
+    }
+
+    /**
+     * Appends a reading for an interned label, preceded by a label definition
+     * if the label is new to this stream. Apart from growing for a new label,
+     * this writes into the writer's own buffer and creates no objects.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time the data was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param value The measurement value.
+     * @return True if a frame is complete and the pending bytes should be sent.
+     */
+    public boolean add(int patientId, long timestamp, int labelId, double value) {
+        int wireId = labelId < wireIds.length ? wireIds[labelId] : -1;
+        if (wireId < 0) {
+            wireId = defineLabel(labelId);
+        }
+        if (batchSize == 1) {
+            ensureCapacity(1 + READING_SIZE);
+            buffer.put(READING_FRAME);
+            putReading(patientId, timestamp, wireId, value);
+            return true;
+        }
+        if (batchCountPosition < 0) {
+            ensureCapacity(3);
+            buffer.put(BATCH_FRAME);
+            batchCountPosition = buffer.position();
+            buffer.putShort((short) 0);
+        }
+        ensureCapacity(READING_SIZE);
+        putReading(patientId, timestamp, wireId, value);
+        batchCount++;
+        if (batchCount == batchSize) {
+            endBatch();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if there are bytes that have not been taken by {@link #flush()}.
+     *
+     * @return Whether anything is pending.
+     */
+    public boolean hasPending() {
+        return buffer.position() > 0;
+    }
+
+    /**
+     * Ends the current batch, if any, and returns everything written since
+     * the last flush.
+     *
+     * @return A new buffer ready to be read, or null if nothing is pending.
+     */
+    public ByteBuffer flush() {
+        endBatch();
+        if (buffer.position() == 0) {
+            return null;
+        }
+        buffer.flip();
+        ByteBuffer frames = ByteBuffer.allocate(buffer.remaining());
+        frames.put(buffer).flip();
+        buffer.clear();
+        return frames;
+    }
+
+    /**
+     * Returns a label definition frame for every label seen so far, for a
+     * client that connects after they were first sent.
+     *
+     * @return A new buffer ready to be read; empty if no label is known yet.
+     */
+    public ByteBuffer labelDefinitions() {
+        int size = 0;
+        for (byte[] name : labelNames) {
+            size += 5 + name.length;
+        }
+        ByteBuffer frames = ByteBuffer.allocate(size);
+        for (int id = 0; id < labelNames.size(); id++) {
+            putLabel(frames, id, labelNames.get(id));
+        }
+        return frames.flip();
+    }
+
+    /**
+     * Converts the data string passed to an {@link OutputStrategy} to the
+     * value sent on the wire. A trailing {@code %} is ignored, and alert
+     * states are sent as 1 for {@code triggered} and 0 for {@code resolved}.
+     *
+     * @param data The data string.
+     * @return The numeric value.
+     * @throws NumberFormatException If the data is not numeric.
+     */
+    public static double parseValue(String data) {
+        if (data.equals("triggered")) {
+            return 1;
+        }
+        if (data.equals("resolved")) {
+            return 0;
+        }
+        if (data.endsWith("%")) {
+            return Double.parseDouble(data.substring(0, data.length() - 1));
+        }
+        return Double.parseDouble(data);
+    }
+
+    /**
+     * Returns true if the given frames, as returned by {@link #flush()},
+     * include a label definition. A client that misses such frames must be
+     * sent {@link #labelDefinitions()} again.
+     *
+     * @param frames Complete frames between position and limit; not modified.
+     * @return Whether any of the frames is a label definition.
+     */
+    public static boolean containsLabelDefinition(ByteBuffer frames) {
+        int position = frames.position();
+        while (position < frames.limit()) {
+            byte type = frames.get(position);
+            if (type == LABEL_FRAME) {
+                return true;
+            } else if (type == READING_FRAME) {
+                position += 1 + READING_SIZE;
+            } else {
+                position += 3 + (frames.getShort(position + 1) & 0xFFFF) * READING_SIZE;
+            }
+        }
+        return false;
+    }
+
+    private int defineLabel(int labelId) {
+        int id = labelNames.size();
+        if (id > 0xFFFF) {
+            throw new IllegalStateException("Too many labels");
+        }
+        String label = Labels.nameOf(labelId);
+        byte[] name = label.getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) {
+            throw new IllegalArgumentException("Label too long: " + label);
+        }
+        if (labelId >= wireIds.length) {
+            int oldLength = wireIds.length;
+            wireIds = Arrays.copyOf(wireIds, Math.max(labelId + 1, oldLength * 2));
+            Arrays.fill(wireIds, oldLength, wireIds.length, -1);
+        }
+        wireIds[labelId] = id;
+        labelNames.add(name);
+        // A definition cannot be placed inside a batch, so end the batch first
+        endBatch();
+        ensureCapacity(5 + name.length);
+        putLabel(buffer, id, name);
+        return id;
+    }
+
+    private void endBatch() {
+        if (batchCountPosition >= 0) {
+            buffer.putShort(batchCountPosition, (short) batchCount);
+            batchCountPosition = -1;
+            batchCount = 0;
+        }
+    }
+
+    private void putReading(int patientId, long timestamp, int labelId, double value) {
+        buffer.putInt(patientId);
+        buffer.putLong(timestamp);
+        buffer.putShort((short) labelId);
+        buffer.putDouble(value);
+    }
+
+    private static void putLabel(ByteBuffer target, int id, byte[] name) {
+        target.put(LABEL_FRAME);
+        target.putShort((short) id);
+        target.putShort((short) name.length);
+        target.put(name);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() < bytes) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.cardio_generator.outputs;
+
+/**
+ * The line format of file output.
+ *
+ * @author Ege Postacioglu
+ */
+public enum FileLineFormat {
+    /**
+     * {@code Patient ID: 1, Timestamp: 1700000000000, Label: Saturation, Data: 97.0%},
+     * as {@link FileOutputStrategy} writes it, in one {@code <label>.txt} file
+     * per label.
+     */
+    TEXT,
+    /**
+     * {@code 1,1700000000000,Saturation,97.0}, the format the data readers
+     * load, in one {@code <label>.csv} file per label. Values are plain
+     * numbers; alerts are 1.0 when triggered and 0.0 when resolved.
+     */
+    CSV
+}
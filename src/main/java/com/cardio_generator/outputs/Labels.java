@@ -0,0 +1,89 @@
+package com.cardio_generator.outputs;
+
+import com.data_management.RecordTypes;
+
+/**
+ * Interns output labels (e.g. "ECG", "Saturation") as small, dense integer
+ * ids, so that generators can hand readings to an {@link OutputStrategy} as a
+ * label id and a numeric value without creating a string.
+ * Labels are interned in the same table as the record types of
+ * {@link RecordTypes}, so a label id is also the record type id under which a
+ * {@link com.data_management.DataStorage} in the same JVM stores the reading.
+ * Ids are assigned in order of first use and never change for the lifetime of
+ * the JVM. The labels of the built-in generators are registered up front.
+ *
+ * <p>The text form of a value, as in the {@code data} argument of
+ * {@link OutputStrategy#output(int, long, String, String)}, depends on the
+ * label: saturation is written as a percentage ({@code "97.0%"}), alerts as
+ * {@code "triggered"} (1) or {@code "resolved"} (0), and everything else with
+ * {@link Double#toString(double)}. {@link #appendData} writes it into a
+ * caller's buffer.
+ *
+ * @author Ege Postacioglu
+ */
+public final class Labels {
+    public static final int ECG = idOf("ECG");
+    public static final int SATURATION = idOf("Saturation");
+    public static final int SYSTOLIC_PRESSURE = idOf("SystolicPressure");
+    public static final int DIASTOLIC_PRESSURE = idOf("DiastolicPressure");
+    public static final int CHOLESTEROL = idOf("Cholesterol");
+    public static final int WHITE_BLOOD_CELLS = idOf("WhiteBloodCells");
+    public static final int RED_BLOOD_CELLS = idOf("RedBloodCells");
+    public static final int ALERT = idOf("Alert");
+
+    private Labels() {
+    }
+
+    /**
+     * Returns the id for the given label, assigning a new one if the label has
+     * not been seen before.
+     *
+     * @param label The label name.
+     * @return The interned id of the label.
+     */
+    public static int idOf(String label) {
+        return RecordTypes.idOf(label);
+    }
+
+    /**
+     * Returns the label name for an interned id. The same string instance is
+     * returned every time.
+     *
+     * @param id An id previously returned by {@link #idOf(String)}.
+     * @return The label name.
+     */
+    public static String nameOf(int id) {
+        return RecordTypes.nameOf(id);
+    }
+
+    /**
+     * Appends the text form of a value to a buffer, without creating an
+     * intermediate string.
+     *
+     * @param target The buffer to append to.
+     * @param labelId The interned id of the value's label.
+     * @param value The measurement value.
+     * @return The buffer.
+     */
+    public static StringBuilder appendData(StringBuilder target, int labelId, double value) {
+        if (labelId == ALERT) {
+            return target.append(value != 0 ? "triggered" : "resolved");
+        }
+        target.append(value);
+        return labelId == SATURATION ? target.append('%') : target;
+    }
+
+    /**
+     * Returns the text form of a value.
+     *
+     * @param labelId The interned id of the value's label.
+     * @param value The measurement value.
+     * @return The data string, as generators passed it before label ids.
+     */
+    public static String formatData(int labelId, double value) {
+        if (labelId == ALERT) {
+            return value != 0 ? "triggered" : "resolved";
+        }
+        return labelId == SATURATION ? value + "%" : Double.toString(value);
+    }
+}
@@ -16,4 +16,47 @@ public interface OutputStrategy {
      * @param data The actual data value.
      */
     void output(int patientId, long timestamp, String label, String data);
+
+    /**
+     * Outputs a numeric reading for a patient, identified by an interned
+     * label id. Generators call this form, so that no string is created for a
+     * reading unless the strategy writes text. The default formats the value
+     * with {@link Labels#formatData(int, double)} and calls
+     * {@link #output(int, long, String, String)}; strategies that send numbers
+     * or can format into their own buffers override it.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time the data was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param value The measurement value; for alerts 1 if triggered and 0 if resolved.
+     */
+    default void output(int patientId, long timestamp, int labelId, double value) {
+        output(patientId, timestamp, Labels.nameOf(labelId), Labels.formatData(labelId, value));
+    }
+
+    /**
+     * Outputs a block of numeric readings of one label for a patient, such
+     * as one second of a high-rate waveform. The arrays belong to the caller
+     * and may be reused as soon as this returns. The default outputs the
+     * readings one by one with {@link #output(int, long, int, double)};
+     * strategies that can take many readings under one lock override it.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamps The time each reading was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param values The measurement values.
+     * @param count The number of readings, from index 0.
+     */
+    default void outputBlock(int patientId, long[] timestamps, int labelId, double[] values, int count) {
+        for (int i = 0; i < count; i++) {
+            output(patientId, timestamps[i], labelId, values[i]);
+        }
+    }
+
+    /**
+     * Releases the resources held by this strategy, making sure everything
+     * output so far has been delivered. The default does nothing.
+     */
+    default void close() {
+    }
 }
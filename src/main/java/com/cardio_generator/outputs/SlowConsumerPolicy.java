@@ -0,0 +1,16 @@
+package com.cardio_generator.outputs;
+
+/**
+ * What a network output does when a client's send queue is full because the
+ * client reads slower than data is produced.
+ *
+ * @author Ege Postacioglu
+ */
+public enum SlowConsumerPolicy {
+    /** Drop the oldest queued message to make room; the client sees a gap. */
+    DROP_OLDEST,
+    /** Disconnect the client. */
+    DISCONNECT,
+    /** Block the generator thread until the client has read enough. */
+    BLOCK
+}
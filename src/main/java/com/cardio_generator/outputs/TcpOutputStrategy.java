@@ -1,45 +1,122 @@
 package com.cardio_generator.outputs;
 
 import java.io.IOException;
-import java.io.PrintWriter;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Outputs patient data over a TCP connection to a specified port.
- * Sends each data entry as a message to connected TCP clients.
+ * Outputs patient data over TCP to any number of clients connected to a
+ * specified port.
+ * Sends each data entry as a message to connected TCP clients, either as a
+ * text line or, in binary mode, in the frame format of
+ * {@link BinaryFrameWriter}.
+ * A single selector thread accepts clients and writes to them without
+ * blocking. Each message is encoded once and queued to every client; a
+ * client's queue holds a bounded number of messages, and what happens when it
+ * is full is set by a {@link SlowConsumerPolicy}. Queued messages are sent
+ * with gathering writes, many per system call. Queue depth, dropped messages
+ * and bytes sent per client are available from {@link #getClientStats()}.
  *
  * @author Ege Postacioglu
  */
 public class TcpOutputStrategy implements OutputStrategy {
+    static final long BATCH_FLUSH_MILLIS = 50;
+    public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+    private static final int MAX_GATHER = 64;
+    private static final long CLOSE_DRAIN_MILLIS = 1000;
 
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private PrintWriter out;
+    private final BinaryFrameWriter frameWriter; // Null in text mode, guarded by this
+    private final SlowConsumerPolicy policy;
+    private final int queueCapacity;
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final ConcurrentLinkedQueue<Client> writeRequests = new ConcurrentLinkedQueue<>();
+    private final AtomicLong disconnectedClients = new AtomicLong();
+    private ServerSocketChannel serverChannel;
+    private Selector selector;
+    private Thread selectorThread;
+    private ScheduledExecutorService flusher;
+    private volatile boolean closing;
 
     /**
-     * Creates a new TCPOutputStrategy for the given port.
+     * Creates a new TCPOutputStrategy for the given port that sends text lines.
      *
      * @param port The TCP port to send data to.
      */
     public TcpOutputStrategy(int port) {
+        this(port, 0);
+    }
+
+    /**
+     * Creates a new TCPOutputStrategy for the given port that drops the oldest
+     * messages of slow clients.
+     *
+     * @param port The TCP port to send data to.
+     * @param binaryBatchSize 0 to send text lines, 1 to send one binary frame
+     *                        per reading, or the number of readings per binary
+     *                        batch frame. Partial batches are sent every 50 ms.
+     */
+    public TcpOutputStrategy(int port, int binaryBatchSize) {
+        this(port, binaryBatchSize, SlowConsumerPolicy.DROP_OLDEST, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a new TCPOutputStrategy for the given port.
+     *
+     * @param port The TCP port to send data to, or 0 for any free port.
+     * @param binaryBatchSize 0 to send text lines, 1 to send one binary frame
+     *                        per reading, or the number of readings per binary
+     *                        batch frame. Partial batches are sent every 50 ms.
+     * @param policy What to do when a client's queue is full.
+     * @param queueCapacity The number of messages queued per client, at least 2.
+     */
+    public TcpOutputStrategy(int port, int binaryBatchSize, SlowConsumerPolicy policy, int queueCapacity) {
+        if (queueCapacity < 2) {
+            throw new IllegalArgumentException("Queue capacity must be at least 2: " + queueCapacity);
+        }
+        this.frameWriter = binaryBatchSize > 0 ? new BinaryFrameWriter(binaryBatchSize) : null;
+        this.policy = policy;
+        this.queueCapacity = queueCapacity;
         try {
-            serverSocket = new ServerSocket(port);
-            System.out.println("TCP Server started on port " + port);
-
-            // Accept clients in a new thread to not block the main thread
-            Executors.newSingleThreadExecutor().submit(() -> {
-                try {
-                    clientSocket = serverSocket.accept();
-                    out = new PrintWriter(clientSocket.getOutputStream(), true);
-                    System.out.println("Client connected: " + clientSocket.getInetAddress());
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            System.out.println("TCP Server started on port " + getLocalPort());
+
+            // Accept and write to clients in a new thread to not block the generators
+            selectorThread = new Thread(this::selectLoop, "tcp-output-selector");
+            selectorThread.setDaemon(true);
+            selectorThread.start();
         } catch (IOException e) {
             e.printStackTrace();
+            serverChannel = null;
+        }
+        if (binaryBatchSize > 1) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "tcp-output-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(this::flushBinary, BATCH_FLUSH_MILLIS, BATCH_FLUSH_MILLIS,
+                    TimeUnit.MILLISECONDS);
         }
     }
 
@@ -53,9 +130,492 @@ public class TcpOutputStrategy implements OutputStrategy {
      */
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        if (out != null) {
-            String message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
-            out.println(message);
+        if (clients.isEmpty()) {
+            return;
+        }
+        if (frameWriter != null) {
+            outputBinary(patientId, timestamp, label, data);
+            return;
+        }
+        enqueueLine(new StringBuilder(48).append(patientId).append(',').append(timestamp).append(',')
+                .append(label).append(',').append(data).append(System.lineSeparator()));
+    }
+
+    /**
+     * Outputs a numeric reading over TCP. In binary mode the value is written
+     * straight into the pending frame without creating any object; in text
+     * mode the line is formatted once, without an intermediate data string.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time the data was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param value The measurement value.
+     */
+    @Override
+    public void output(int patientId, long timestamp, int labelId, double value) {
+        if (clients.isEmpty()) {
+            return;
+        }
+        if (frameWriter != null) {
+            addBinary(patientId, timestamp, labelId, value);
+            return;
+        }
+        StringBuilder line = new StringBuilder(48).append(patientId).append(',').append(timestamp).append(',')
+                .append(Labels.nameOf(labelId)).append(',');
+        enqueueLine(Labels.appendData(line, labelId, value).append(System.lineSeparator()));
+    }
+
+    /**
+     * Outputs a block of numeric readings over TCP. In binary mode the
+     * readings are added to the pending frames under a single lock; in text
+     * mode their lines are queued to each client as one message.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamps The time each reading was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param values The measurement values.
+     * @param count The number of readings, from index 0.
+     */
+    @Override
+    public void outputBlock(int patientId, long[] timestamps, int labelId, double[] values, int count) {
+        if (clients.isEmpty() || count == 0) {
+            return;
+        }
+        if (frameWriter != null) {
+            addBinaryBlock(patientId, timestamps, labelId, values, count);
+            return;
+        }
+        String label = Labels.nameOf(labelId);
+        StringBuilder lines = new StringBuilder(count * 48);
+        for (int i = 0; i < count; i++) {
+            lines.append(patientId).append(',').append(timestamps[i]).append(',').append(label).append(',');
+            Labels.appendData(lines, labelId, values[i]).append(System.lineSeparator());
+        }
+        enqueueLine(lines);
+    }
+
+    /**
+     * Sends any partial batch, gives clients up to a second to receive what is
+     * queued and closes the server. Returns once the server is closed, so
+     * queued messages are not lost when the JVM exits right after.
+     */
+    @Override
+    public void close() {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flushBinary();
+        closing = true;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        for (Client client : clients) {
+            client.wakeBlockedProducers();
+        }
+        if (selectorThread == null) {
+            return;
+        }
+        // The selector thread stops by itself after the drain timeout; the margin covers closing the sockets
+        long deadline = System.currentTimeMillis() + CLOSE_DRAIN_MILLIS + 500;
+        boolean interrupted = false;
+        while (selectorThread.isAlive() && System.currentTimeMillis() < deadline) {
+            try {
+                selectorThread.join(Math.max(1, deadline - System.currentTimeMillis()));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the port the server listens on.
+     *
+     * @return The local port, or -1 if the server could not be started.
+     */
+    public int getLocalPort() {
+        return serverChannel == null ? -1 : serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns a snapshot of every connected client's queue and counters.
+     *
+     * @return One entry per connected client.
+     */
+    public List<ClientStats> getClientStats() {
+        List<ClientStats> stats = new ArrayList<>();
+        for (Client client : clients) {
+            stats.add(client.stats());
+        }
+        return stats;
+    }
+
+    /**
+     * Returns how many clients have disconnected or been disconnected.
+     *
+     * @return The number of disconnected clients.
+     */
+    public long getDisconnectedClients() {
+        return disconnectedClients.get();
+    }
+
+    private void outputBinary(int patientId, long timestamp, String label, String data) {
+        double value;
+        try {
+            value = BinaryFrameWriter.parseValue(data);
+        } catch (NumberFormatException e) {
+            System.err.println("Cannot send non-numeric data for label " + label + ": " + data);
+            return;
+        }
+        addBinary(patientId, timestamp, Labels.idOf(label), value);
+    }
+
+    private synchronized void addBinary(int patientId, long timestamp, int labelId, double value) {
+        if (frameWriter.add(patientId, timestamp, labelId, value)) {
+            flushBinary();
+        }
+    }
+
+    private synchronized void addBinaryBlock(int patientId, long[] timestamps, int labelId, double[] values,
+            int count) {
+        for (int i = 0; i < count; i++) {
+            if (frameWriter.add(patientId, timestamps[i], labelId, values[i])) {
+                flushBinary();
+            }
+        }
+    }
+
+    /**
+     * Encodes a text line and queues it to every client. Lines are almost
+     * always ASCII, which is copied directly instead of going through a
+     * string and a charset encoder.
+     */
+    private void enqueueLine(CharSequence line) {
+        byte[] bytes = new byte[line.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            char c = line.charAt(i);
+            if (c >= 0x80) {
+                bytes = line.toString().getBytes(StandardCharsets.UTF_8);
+                break;
+            }
+            bytes[i] = (byte) c;
+        }
+        ByteBuffer message = ByteBuffer.wrap(bytes);
+        for (Client client : clients) {
+            client.enqueue(message);
+        }
+    }
+
+    private synchronized void flushBinary() {
+        if (frameWriter == null || !frameWriter.hasPending()) {
+            return;
+        }
+        ByteBuffer frames = frameWriter.flush();
+        ByteBuffer definitions = null;
+        for (Client client : clients) {
+            if (client.takeNeedsLabels()) {
+                // New clients; a client that drops a definition gets them back in dropOldest
+                if (definitions == null) {
+                    definitions = frameWriter.labelDefinitions();
+                }
+                client.enqueue(definitions);
+            }
+            client.enqueue(frames);
+        }
+    }
+
+    private void selectLoop() {
+        long closeDeadline = Long.MAX_VALUE;
+        try {
+            while (true) {
+                if (closing) {
+                    closeDeadline = Math.min(closeDeadline, System.currentTimeMillis() + CLOSE_DRAIN_MILLIS);
+                    if (System.currentTimeMillis() >= closeDeadline || allQueuesEmpty()) {
+                        break;
+                    }
+                    selector.select(10);
+                } else {
+                    selector.select();
+                }
+                Client requested;
+                while ((requested = writeRequests.poll()) != null) {
+                    requested.write();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Client client = (Client) key.attachment();
+                        if (key.isReadable()) {
+                            client.read();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            client.write();
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("TCP output server stopped: " + e.getMessage());
+        } finally {
+            for (Client client : clients) {
+                client.close();
+            }
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private boolean allQueuesEmpty() {
+        for (Client client : clients) {
+            if (client.stats().getQueueDepth() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Client client = new Client(channel);
+        client.key = channel.register(selector, SelectionKey.OP_READ, client);
+        clients.add(client);
+        System.out.println("Client connected: " + channel.getRemoteAddress());
+    }
+
+    /**
+     * A snapshot of one client's send queue and counters.
+     */
+    public static final class ClientStats {
+        private final String address;
+        private final int queueDepth;
+        private final long droppedMessages;
+        private final long bytesSent;
+
+        ClientStats(String address, int queueDepth, long droppedMessages, long bytesSent) {
+            this.address = address;
+            this.queueDepth = queueDepth;
+            this.droppedMessages = droppedMessages;
+            this.bytesSent = bytesSent;
+        }
+
+        /**
+         * @return The remote address of the client.
+         */
+        public String getAddress() {
+            return address;
+        }
+
+        /**
+         * @return The number of messages waiting to be sent.
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        /**
+         * @return The number of messages dropped because the queue was full.
+         */
+        public long getDroppedMessages() {
+            return droppedMessages;
+        }
+
+        /**
+         * @return The number of bytes written to the client.
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        @Override
+        public String toString() {
+            return address + " queued=" + queueDepth + " dropped=" + droppedMessages + " sent=" + bytesSent
+                    + " bytes";
+        }
+    }
+
+    /**
+     * One connected client and its bounded queue of messages, oldest first.
+     * Producers add to the queue and the selector thread writes from it, both
+     * holding the client's lock.
+     */
+    private final class Client {
+        private final SocketChannel channel;
+        private final String address;
+        private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<>();
+        private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+        private SelectionKey key;
+        private boolean needsLabels = true;
+        private ByteBuffer resentLabels; // Definitions put back at the front of the queue by a drop
+        private boolean closed;
+        private long droppedMessages;
+        private long bytesSent;
+
+        Client(SocketChannel channel) throws IOException {
+            this.channel = channel;
+            this.address = String.valueOf(channel.getRemoteAddress());
+        }
+
+        synchronized void enqueue(ByteBuffer message) {
+            while (!closed && queue.size() >= queueCapacity) {
+                if (policy == SlowConsumerPolicy.DROP_OLDEST) {
+                    if (!dropOldest()) {
+                        break; // Only messages that must be kept; exceed the capacity by one
+                    }
+                } else if (policy == SlowConsumerPolicy.DISCONNECT) {
+                    droppedMessages++;
+                    System.err.println("Disconnecting slow TCP client " + address);
+                    close();
+                } else if (closing) {
+                    return;
+                } else {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+            }
+            if (closed) {
+                return;
+            }
+            boolean wasEmpty = queue.isEmpty();
+            queue.addLast(message.duplicate());
+            if (wasEmpty) {
+                writeRequests.offer(this);
+                selector.wakeup();
+            }
+        }
+
+        /**
+         * Drops the oldest message that may be dropped. The head may be partly
+         * written, and dropping it would cut a message in two. In binary mode
+         * the frames still queued may use labels defined by the dropped
+         * message, so the definitions are put back at the front of the queue,
+         * before those frames, and are not dropped again.
+         *
+         * @return false if no message could be dropped
+         */
+        private boolean dropOldest() {
+            ByteBuffer head = queue.peekFirst().position() > 0 ? queue.pollFirst() : null;
+            if (resentLabels != null && queue.peekFirst() == resentLabels) {
+                queue.pollFirst();
+            } else {
+                resentLabels = null;
+            }
+            ByteBuffer dropped = queue.pollFirst();
+            if (dropped != null) {
+                droppedMessages++;
+                if (frameWriter != null && BinaryFrameWriter.containsLabelDefinition(dropped.rewind())) {
+                    // Called while flushBinary holds the strategy's lock, which guards the frame writer
+                    resentLabels = frameWriter.labelDefinitions();
+                }
+            }
+            if (resentLabels != null) {
+                queue.addFirst(resentLabels);
+            }
+            if (head != null) {
+                queue.addFirst(head);
+            }
+            return dropped != null;
+        }
+
+        synchronized boolean takeNeedsLabels() {
+            boolean needed = needsLabels;
+            needsLabels = false;
+            return needed;
+        }
+
+        synchronized void write() {
+            if (closed) {
+                return;
+            }
+            try {
+                while (!queue.isEmpty()) {
+                    int count = 0;
+                    for (ByteBuffer message : queue) {
+                        gather[count++] = message;
+                        if (count == MAX_GATHER) {
+                            break;
+                        }
+                    }
+                    long written = channel.write(gather, 0, count);
+                    bytesSent += written;
+                    while (!queue.isEmpty() && !queue.peekFirst().hasRemaining()) {
+                        queue.pollFirst();
+                    }
+                    if (written == 0) {
+                        break; // The socket buffer is full; wait until it is writable
+                    }
+                }
+                Arrays.fill(gather, null);
+                key.interestOps(queue.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                notifyAll();
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void read() {
+            ByteBuffer discard = ByteBuffer.allocate(256);
+            try {
+                // Clients are not expected to send anything; this only detects a closed connection
+                while (true) {
+                    int read = channel.read(discard);
+                    if (read < 0) {
+                        close();
+                        return;
+                    }
+                    if (read == 0) {
+                        return;
+                    }
+                    discard.clear();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        synchronized void wakeBlockedProducers() {
+            notifyAll();
+        }
+
+        synchronized ClientStats stats() {
+            return new ClientStats(address, queue.size(), droppedMessages, bytesSent);
+        }
+
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queue.clear();
+            clients.remove(this);
+            disconnectedClients.incrementAndGet();
+            notifyAll();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
     }
 }
@@ -1,48 +1,505 @@
 package com.cardio_generator.outputs;
 
 import org.java_websocket.WebSocket;
+import org.java_websocket.exceptions.WebsocketNotConnectedException;
+import org.java_websocket.framing.CloseFrame;
 import org.java_websocket.server.WebSocketServer;
 
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Streams readings to WebSocket clients. A client receives every reading until
+ * it sends a subscription; from then on it only receives the readings it
+ * subscribed to. Subscriptions are text messages:
+ * <ul>
+ * <li>{@code subscribe <ids>} receives every label of the patients with the
+ * given comma-separated ids.</li>
+ * <li>{@code subscribe <ids> <labels>} receives only the given
+ * comma-separated labels of those patients, replacing earlier labels.</li>
+ * <li>{@code unsubscribe <ids>} stops receiving those patients.</li>
+ * <li>{@code unsubscribe <ids> <labels>} stops receiving only the given
+ * labels of those patients.</li>
+ * <li>{@code subscribe *} goes back to receiving every reading.</li>
+ * </ul>
+ * Unsubscribing has no effect on a client that has not subscribed. The server
+ * keeps an index from patient id to subscribers, so a reading is
+ * only handed to the clients that receive every reading and to the
+ * subscribers of its patient.
+ */
 public class WebSocketOutputStrategy implements OutputStrategy {
+    static final long BATCH_FLUSH_MILLIS = 50;
+    private static final int MAX_COALESCED_CHARS = 64 * 1024;
+    private static final int CLOSE_TIMEOUT_MILLIS = 1000;
+    private static final Subscriber[] NO_SUBSCRIBERS = {};
 
     private WebSocketServer server;
+    private final int binaryBatchSize;
+    private final BinaryFrameWriter frameWriter; // Null in text mode, guarded by this
+    private final StringBuilder pendingLines; // Null unless text is coalesced, guarded by this
+    private final Set<WebSocket> connections = ConcurrentHashMap.newKeySet();
+    private final Set<WebSocket> unfilteredClients = new CopyOnWriteArraySet<>();
+    // Values are replaced, never modified, under the lock of this
+    private final Map<Integer, Subscriber[]> subscribersByPatient = new ConcurrentHashMap<>();
+    private ScheduledExecutorService flusher;
+    private final AtomicBoolean closed = new AtomicBoolean();
 
     public WebSocketOutputStrategy(int port) {
-        server = new SimpleWebSocketServer(new InetSocketAddress(port));
+        this(port, 0);
+    }
+
+    /**
+     * Creates a WebSocket server on the given port.
+     *
+     * @param port The port to listen on.
+     * @param binaryBatchSize 0 to send one text message per reading, 1 to send
+     *                        one binary message per reading, or the number of
+     *                        readings per binary batch frame, in the format of
+     *                        {@link BinaryFrameWriter}. Partial batches are sent
+     *                        every 50 ms.
+     */
+    public WebSocketOutputStrategy(int port, int binaryBatchSize) {
+        this(port, binaryBatchSize, 0);
+    }
+
+    /**
+     * Creates a WebSocket server on the given port. Every message is encoded
+     * once and the same frame is broadcast to all clients, so the cost of
+     * encoding does not grow with the number of clients.
+     *
+     * @param port The port to listen on.
+     * @param binaryBatchSize As for {@link #WebSocketOutputStrategy(int, int)}.
+     * @param textFlushMillis In text mode, 0 to send one message per reading, or
+     *                        the interval at which the readings of that interval
+     *                        are sent as one message of newline-separated lines.
+     *                        Ignored in binary mode.
+     */
+    public WebSocketOutputStrategy(int port, int binaryBatchSize, long textFlushMillis) {
+        this.binaryBatchSize = binaryBatchSize;
+        frameWriter = binaryBatchSize > 0 ? new BinaryFrameWriter(binaryBatchSize) : null;
+        pendingLines = frameWriter == null && textFlushMillis > 0 ? new StringBuilder() : null;
+        server = new SimpleWebSocketServer(new InetSocketAddress(port), this);
         System.out.println("WebSocket server created on port: " + port + ", listening for connections...");
         server.start();
+        long flushMillis = pendingLines != null ? textFlushMillis : binaryBatchSize > 1 ? BATCH_FLUSH_MILLIS : 0;
+        if (flushMillis > 0) {
+            flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "websocket-output-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleAtFixedRate(this::flush, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
     public void output(int patientId, long timestamp, String label, String data) {
-        String message = String.format("%d,%d,%s,%s", patientId, timestamp, label, data);
-        // Broadcast the message to all connected clients
-        for (WebSocket conn : server.getConnections()) {
-            conn.send(message);
+        if (frameWriter != null) {
+            outputBinary(patientId, timestamp, label, data);
+        } else if (pendingLines != null) {
+            outputCoalesced(patientId, timestamp, label, data);
+        } else if (hasReceivers(patientId)) {
+            sendText(patientId, label, patientId + "," + timestamp + "," + label + "," + data);
+        }
+    }
+
+    /**
+     * Outputs a numeric reading. In binary mode the value is written straight
+     * into the pending frames, and coalesced text is formatted straight into
+     * the pending lines, so neither creates an object per reading. Only one
+     * text message per reading needs a string of its own.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamp The time the data was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param value The measurement value.
+     */
+    @Override
+    public void output(int patientId, long timestamp, int labelId, double value) {
+        if (frameWriter != null) {
+            addBinary(patientId, timestamp, labelId, value);
+        } else if (pendingLines != null) {
+            outputCoalesced(patientId, timestamp, labelId, value);
+        } else if (hasReceivers(patientId)) {
+            StringBuilder message = new StringBuilder(48).append(patientId).append(',').append(timestamp)
+                    .append(',').append(Labels.nameOf(labelId)).append(',');
+            sendText(patientId, Labels.nameOf(labelId), Labels.appendData(message, labelId, value).toString());
+        }
+    }
+
+    /**
+     * Outputs a block of numeric readings. Binary frames and coalesced text
+     * take the whole block under one lock; otherwise every reading is still
+     * sent as a message of its own.
+     *
+     * @param patientId The ID of the patient.
+     * @param timestamps The time each reading was generated.
+     * @param labelId The type of data, as an id from {@link Labels}.
+     * @param values The measurement values.
+     * @param count The number of readings, from index 0.
+     */
+    @Override
+    public void outputBlock(int patientId, long[] timestamps, int labelId, double[] values, int count) {
+        if (frameWriter != null || pendingLines != null) {
+            outputBlockLocked(patientId, timestamps, labelId, values, count);
+        } else {
+            OutputStrategy.super.outputBlock(patientId, timestamps, labelId, values, count);
+        }
+    }
+
+    private synchronized void outputBlockLocked(int patientId, long[] timestamps, int labelId, double[] values,
+            int count) {
+        for (int i = 0; i < count; i++) {
+            output(patientId, timestamps[i], labelId, values[i]);
+        }
+    }
+
+    /**
+     * Sends any pending readings, stops the periodic flush and stops the server.
+     * Clients get up to a second to complete the close handshake; connections
+     * still open after that are closed without it, so no client is left
+     * waiting for its own timeout. Calling this again has no effect.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+        try {
+            server.stop(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (WebSocket conn : connections) {
+            conn.closeConnection(CloseFrame.GOING_AWAY, "Server stopped");
+        }
+    }
+
+    private boolean hasReceivers(int patientId) {
+        return !unfilteredClients.isEmpty() || subscribersByPatient.containsKey(patientId);
+    }
+
+    private void sendText(int patientId, String label, String message) {
+        if (!unfilteredClients.isEmpty()) {
+            server.broadcast(message, unfilteredClients);
+        }
+        for (Subscriber subscriber : subscribersByPatient.getOrDefault(patientId, NO_SUBSCRIBERS)) {
+            if (subscriber.accepts(patientId, label)) {
+                subscriber.send(message);
+            }
+        }
+    }
+
+    private synchronized void outputCoalesced(int patientId, long timestamp, int labelId, double value) {
+        String label = Labels.nameOf(labelId);
+        if (!unfilteredClients.isEmpty()) {
+            appendLine(pendingLines, patientId, timestamp, labelId, value);
+            if (pendingLines.length() >= MAX_COALESCED_CHARS) {
+                flushText();
+            }
+        }
+        for (Subscriber subscriber : subscribersByPatient.getOrDefault(patientId, NO_SUBSCRIBERS)) {
+            if (subscriber.accepts(patientId, label)) {
+                appendLine(subscriber.pendingLines, patientId, timestamp, labelId, value);
+                if (subscriber.pendingLines.length() >= MAX_COALESCED_CHARS) {
+                    subscriber.flushText();
+                }
+            }
+        }
+    }
+
+    private synchronized void outputCoalesced(int patientId, long timestamp, String label, String data) {
+        if (!unfilteredClients.isEmpty()) {
+            appendLine(pendingLines, patientId, timestamp, label, data);
+            if (pendingLines.length() >= MAX_COALESCED_CHARS) {
+                flushText();
+            }
+        }
+        for (Subscriber subscriber : subscribersByPatient.getOrDefault(patientId, NO_SUBSCRIBERS)) {
+            if (subscriber.accepts(patientId, label)) {
+                appendLine(subscriber.pendingLines, patientId, timestamp, label, data);
+                if (subscriber.pendingLines.length() >= MAX_COALESCED_CHARS) {
+                    subscriber.flushText();
+                }
+            }
+        }
+    }
+
+    private static void appendLine(StringBuilder lines, int patientId, long timestamp, String label, String data) {
+        lines.append(patientId).append(',').append(timestamp).append(',')
+                .append(label).append(',').append(data).append('\n');
+    }
+
+    private static void appendLine(StringBuilder lines, int patientId, long timestamp, int labelId, double value) {
+        lines.append(patientId).append(',').append(timestamp).append(',')
+                .append(Labels.nameOf(labelId)).append(',');
+        Labels.appendData(lines, labelId, value).append('\n');
+    }
+
+    private static String takeLines(StringBuilder pending) {
+        // Drop the last line terminator so a single reading looks like an uncoalesced message
+        String lines = pending.substring(0, pending.length() - 1);
+        pending.setLength(0);
+        return lines;
+    }
+
+    private void flush() {
+        if (frameWriter != null) {
+            flushBinary();
+        } else if (pendingLines != null) {
+            flushText();
+        }
+    }
+
+    private synchronized void flushText() {
+        if (pendingLines.length() > 0) {
+            String lines = takeLines(pendingLines);
+            if (!unfilteredClients.isEmpty()) {
+                server.broadcast(lines, unfilteredClients);
+            }
+        }
+        for (Subscriber subscriber : subscribers()) {
+            subscriber.flushText();
+        }
+    }
+
+    private void outputBinary(int patientId, long timestamp, String label, String data) {
+        double value;
+        try {
+            value = BinaryFrameWriter.parseValue(data);
+        } catch (NumberFormatException e) {
+            System.err.println("Cannot send non-numeric data for label " + label + ": " + data);
+            return;
+        }
+        addBinary(patientId, timestamp, Labels.idOf(label), value);
+    }
+
+    private synchronized void addBinary(int patientId, long timestamp, int labelId, double value) {
+        if (!unfilteredClients.isEmpty() && frameWriter.add(patientId, timestamp, labelId, value)) {
+            flushUnfilteredBinary();
+        }
+        String label = Labels.nameOf(labelId);
+        for (Subscriber subscriber : subscribersByPatient.getOrDefault(patientId, NO_SUBSCRIBERS)) {
+            if (subscriber.accepts(patientId, label)
+                    && subscriber.frameWriter.add(patientId, timestamp, labelId, value)) {
+                subscriber.flushBinary();
+            }
+        }
+    }
+
+    private synchronized void flushBinary() {
+        flushUnfilteredBinary();
+        for (Subscriber subscriber : subscribers()) {
+            subscriber.flushBinary();
+        }
+    }
+
+    private synchronized void flushUnfilteredBinary() {
+        if (!frameWriter.hasPending()) {
+            return;
+        }
+        ByteBuffer frames = frameWriter.flush();
+        if (!unfilteredClients.isEmpty()) {
+            server.broadcast(frames, unfilteredClients);
+        }
+    }
+
+    private synchronized void sendLabelDefinitions(WebSocket conn) {
+        // The client missed the definitions of labels already in use
+        ByteBuffer definitions = frameWriter.labelDefinitions();
+        if (definitions.hasRemaining()) {
+            conn.send(definitions);
+        }
+    }
+
+    private Set<Subscriber> subscribers() {
+        Set<Subscriber> all = new HashSet<>();
+        for (Subscriber[] subscribers : subscribersByPatient.values()) {
+            all.addAll(Arrays.asList(subscribers));
+        }
+        return all;
+    }
+
+    private synchronized void connected(WebSocket conn) {
+        connections.add(conn);
+        unfilteredClients.add(conn);
+        if (frameWriter != null) {
+            sendLabelDefinitions(conn);
+        }
+    }
+
+    private synchronized void disconnected(WebSocket conn) {
+        connections.remove(conn);
+        unfilteredClients.remove(conn);
+        Subscriber subscriber = conn.getAttachment();
+        if (subscriber != null) {
+            for (Integer patientId : subscriber.labelsByPatient.keySet()) {
+                removeFromIndex(patientId, subscriber);
+            }
+        }
+    }
+
+    private synchronized void handleMessage(WebSocket conn, String message) {
+        String[] parts = message.trim().split("\\s+");
+        boolean subscribe = parts[0].equals("subscribe");
+        if (!subscribe && !parts[0].equals("unsubscribe") || parts.length < 2 || parts.length > 3) {
+            System.err.println("Ignoring unknown message from " + conn.getRemoteSocketAddress() + ": " + message);
+            return;
+        }
+        Subscriber subscriber = conn.getAttachment();
+        if (subscribe && parts[1].equals("*")) {
+            if (subscriber != null) {
+                if (frameWriter != null) {
+                    subscriber.flushBinary();
+                } else {
+                    subscriber.flushText();
+                }
+                for (Integer patientId : subscriber.labelsByPatient.keySet()) {
+                    removeFromIndex(patientId, subscriber);
+                }
+                conn.setAttachment(null);
+            }
+            if (unfilteredClients.add(conn) && frameWriter != null) {
+                // The label ids of the client's own frames differ from those of the shared frames
+                sendLabelDefinitions(conn);
+            }
+            return;
+        }
+        int[] patientIds;
+        try {
+            patientIds = Arrays.stream(parts[1].split(",")).mapToInt(Integer::parseInt).toArray();
+        } catch (NumberFormatException e) {
+            System.err.println("Ignoring invalid patient ids from " + conn.getRemoteSocketAddress() + ": " + message);
+            return;
+        }
+        if (subscriber == null) {
+            if (!subscribe) {
+                return; // Still receives every reading; there is nothing to remove
+            }
+            subscriber = new Subscriber(conn);
+            conn.setAttachment(subscriber);
+            unfilteredClients.remove(conn);
+        }
+        Set<String> labels = parts.length == 3 ? new HashSet<>(Arrays.asList(parts[2].split(","))) : null;
+        for (int patientId : patientIds) {
+            if (subscribe) {
+                LabelFilter filter = labels == null ? LabelFilter.ALL : LabelFilter.only(labels);
+                if (subscriber.labelsByPatient.put(patientId, filter) == null) {
+                    addToIndex(patientId, subscriber);
+                }
+            } else {
+                LabelFilter current = subscriber.labelsByPatient.get(patientId);
+                LabelFilter remaining = current == null || labels == null ? null : current.without(labels);
+                if (remaining != null) {
+                    subscriber.labelsByPatient.put(patientId, remaining);
+                } else if (subscriber.labelsByPatient.remove(patientId) != null) {
+                    removeFromIndex(patientId, subscriber);
+                }
+            }
+        }
+    }
+
+    private void addToIndex(int patientId, Subscriber subscriber) {
+        Subscriber[] current = subscribersByPatient.getOrDefault(patientId, NO_SUBSCRIBERS);
+        Subscriber[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscriber;
+        subscribersByPatient.put(patientId, updated);
+    }
+
+    private void removeFromIndex(int patientId, Subscriber subscriber) {
+        Subscriber[] current = subscribersByPatient.getOrDefault(patientId, NO_SUBSCRIBERS);
+        Subscriber[] updated = Arrays.stream(current).filter(s -> s != subscriber).toArray(Subscriber[]::new);
+        if (updated.length == 0) {
+            subscribersByPatient.remove(patientId);
+        } else {
+            subscribersByPatient.put(patientId, updated);
+        }
+    }
+
+    /**
+     * A client that has subscribed to some patients. It gets its own coalesced
+     * lines and binary frames, as no other client receives the same readings.
+     */
+    private class Subscriber {
+        final WebSocket connection;
+        // Patient id to the labels received
+        final Map<Integer, LabelFilter> labelsByPatient = new ConcurrentHashMap<>();
+        final StringBuilder pendingLines = new StringBuilder(); // Guarded by the strategy
+        final BinaryFrameWriter frameWriter; // Null in text mode, guarded by the strategy
+
+        Subscriber(WebSocket connection) {
+            this.connection = connection;
+            this.frameWriter = binaryBatchSize > 0 ? new BinaryFrameWriter(binaryBatchSize) : null;
+        }
+
+        boolean accepts(int patientId, String label) {
+            LabelFilter filter = labelsByPatient.get(patientId);
+            return filter != null && filter.accepts(label);
+        }
+
+        void send(String message) {
+            try {
+                connection.send(message);
+            } catch (WebsocketNotConnectedException e) {
+                // Closed; removed from the index by onClose
+            }
+        }
+
+        void flushText() {
+            if (pendingLines.length() > 0) {
+                send(takeLines(pendingLines));
+            }
+        }
+
+        void flushBinary() {
+            if (frameWriter.hasPending()) {
+                try {
+                    connection.send(frameWriter.flush());
+                } catch (WebsocketNotConnectedException e) {
+                    // Closed; removed from the index by onClose
+                }
+            }
         }
     }
 
     private static class SimpleWebSocketServer extends WebSocketServer {
+        private final WebSocketOutputStrategy strategy;
 
-        public SimpleWebSocketServer(InetSocketAddress address) {
+        public SimpleWebSocketServer(InetSocketAddress address, WebSocketOutputStrategy strategy) {
             super(address);
+            this.strategy = strategy;
         }
 
         @Override
         public void onOpen(WebSocket conn, org.java_websocket.handshake.ClientHandshake handshake) {
             System.out.println("New connection: " + conn.getRemoteSocketAddress());
+            strategy.connected(conn);
         }
 
         @Override
         public void onClose(WebSocket conn, int code, String reason, boolean remote) {
             System.out.println("Closed connection: " + conn.getRemoteSocketAddress());
+            strategy.disconnected(conn);
         }
 
         @Override
         public void onMessage(WebSocket conn, String message) {
-            // Not used in this context
+            // Subscription messages; see the class comment
+            strategy.handleMessage(conn, message);
         }
 
         @Override
@@ -55,4 +512,43 @@ public class WebSocketOutputStrategy implements OutputStrategy {
             System.out.println("Server started successfully");
         }
     }
+
+    /**
+     * The labels a subscriber receives of one patient: either the given
+     * labels, or every label except the given ones. Immutable, so producers
+     * can read it while a subscription changes.
+     */
+    private static final class LabelFilter {
+        static final LabelFilter ALL = new LabelFilter(true, Set.of());
+
+        final boolean allLabels;
+        final Set<String> labels; // The labels excluded if allLabels, else the labels received
+
+        private LabelFilter(boolean allLabels, Set<String> labels) {
+            this.allLabels = allLabels;
+            this.labels = labels;
+        }
+
+        static LabelFilter only(Set<String> labels) {
+            return new LabelFilter(false, Set.copyOf(labels));
+        }
+
+        boolean accepts(String label) {
+            return allLabels != labels.contains(label);
+        }
+
+        /**
+         * Returns this filter without the given labels, or null if no label is
+         * left.
+         */
+        LabelFilter without(Set<String> removed) {
+            Set<String> updated = new HashSet<>(labels);
+            if (allLabels) {
+                updated.addAll(removed);
+                return new LabelFilter(true, Set.copyOf(updated));
+            }
+            updated.removeAll(removed);
+            return updated.isEmpty() ? null : new LabelFilter(false, Set.copyOf(updated));
+        }
+    }
 }
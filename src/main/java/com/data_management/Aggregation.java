@@ -0,0 +1,151 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Per-bucket statistics of the readings of one series over a time range,
+ * split into buckets of equal duration. Computed by
+ * {@link RecordView#aggregate(long, long, int)} directly over the stored
+ * readings, or by {@link TimeSeries#aggregate(long, long, int)} from the
+ * series' rollups, so no {@link PatientRecord} is created.
+ * Buckets without readings have a count of 0 and NaN for every other
+ * statistic.
+ */
+public final class Aggregation {
+    private final long startTime;
+    private final long bucketMillis;
+    private final int[] counts;
+    private final double[] minimums;
+    private final double[] maximums;
+    private final double[] sums;
+    private final double[] lastValues;
+
+    Aggregation(long startTime, long bucketMillis, int bucketCount) {
+        this.startTime = startTime;
+        this.bucketMillis = bucketMillis;
+        this.counts = new int[bucketCount];
+        this.minimums = new double[bucketCount];
+        this.maximums = new double[bucketCount];
+        this.sums = new double[bucketCount];
+        this.lastValues = new double[bucketCount];
+        Arrays.fill(minimums, Double.NaN);
+        Arrays.fill(maximums, Double.NaN);
+        Arrays.fill(lastValues, Double.NaN);
+    }
+
+    void add(int bucket, double value) {
+        if (counts[bucket]++ == 0) {
+            minimums[bucket] = value;
+            maximums[bucket] = value;
+        } else {
+            minimums[bucket] = Math.min(minimums[bucket], value);
+            maximums[bucket] = Math.max(maximums[bucket], value);
+        }
+        sums[bucket] += value;
+        lastValues[bucket] = value;
+    }
+
+    void addSummary(int bucket, int count, double min, double max, double sum, double last) {
+        if (counts[bucket] == 0) {
+            minimums[bucket] = min;
+            maximums[bucket] = max;
+        } else {
+            minimums[bucket] = Math.min(minimums[bucket], min);
+            maximums[bucket] = Math.max(maximums[bucket], max);
+        }
+        counts[bucket] += count;
+        sums[bucket] += sum;
+        lastValues[bucket] = last; // Summaries are added in time order
+    }
+
+    /**
+     * Returns the number of buckets.
+     *
+     * @return the number of buckets
+     */
+    public int getBucketCount() {
+        return counts.length;
+    }
+
+    /**
+     * Returns the duration of every bucket.
+     *
+     * @return the bucket duration in milliseconds
+     */
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * Returns the start of a bucket; the bucket holds the readings from this
+     * time up to, but excluding, the start of the next bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the start time in milliseconds since the Unix epoch
+     */
+    public long getBucketStart(int bucket) {
+        checkBucket(bucket);
+        return startTime + bucket * bucketMillis;
+    }
+
+    /**
+     * Returns the number of readings in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the number of readings
+     */
+    public int getCount(int bucket) {
+        checkBucket(bucket);
+        return counts[bucket];
+    }
+
+    /**
+     * Returns the smallest value in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the minimum, or NaN if the bucket is empty
+     */
+    public double getMin(int bucket) {
+        checkBucket(bucket);
+        return minimums[bucket];
+    }
+
+    /**
+     * Returns the largest value in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the maximum, or NaN if the bucket is empty
+     */
+    public double getMax(int bucket) {
+        checkBucket(bucket);
+        return maximums[bucket];
+    }
+
+    /**
+     * Returns the mean value of a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the average, or NaN if the bucket is empty
+     */
+    public double getAverage(int bucket) {
+        checkBucket(bucket);
+        return counts[bucket] == 0 ? Double.NaN : sums[bucket] / counts[bucket];
+    }
+
+    /**
+     * Returns the value of the latest reading in a bucket.
+     *
+     * @param bucket the index of the bucket
+     * @return the last value, or NaN if the bucket is empty
+     */
+    public double getLast(int bucket) {
+        checkBucket(bucket);
+        return lastValues[bucket];
+    }
+
+    private void checkBucket(int bucket) {
+        if (bucket < 0 || bucket >= counts.length) {
+            throw new IndexOutOfBoundsException("Bucket: " + bucket + ", Buckets: " + counts.length);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.data_management;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Decodes the binary wire format of the simulator's {@code tcp-bin} and
+ * {@code websocket-bin} outputs and stores the readings in a
+ * {@link DataStorage}. All numbers are big-endian and every frame starts with
+ * a one-byte type:
+ * <ul>
+ * <li>{@code 1} label definition: label id (2 bytes), length (2 bytes) and
+ * the UTF-8 bytes of the label.</li>
+ * <li>{@code 2} reading: patient id (4 bytes), timestamp (8 bytes), label id
+ * (2 bytes) and value (8-byte double).</li>
+ * <li>{@code 3} batch: a reading count (2 bytes) followed by that many
+ * readings without their type byte.</li>
+ * </ul>
+ * Label ids are mapped to {@link RecordTypes} ids once, when their definition
+ * arrives, so decoding a reading creates no objects. A decoder keeps the label
+ * definitions of one stream and is not thread-safe.
+ */
+public class BinaryFrameDecoder {
+    static final byte LABEL_FRAME = 1;
+    static final byte READING_FRAME = 2;
+    static final byte BATCH_FRAME = 3;
+    static final int READING_SIZE = 22; // Without the frame type byte
+
+    private int[] recordTypeIds = new int[16];
+
+    public BinaryFrameDecoder() {
+        Arrays.fill(recordTypeIds, -1);
+    }
+
+    /**
+     * Decodes and stores every complete frame in the buffer. On return the
+     * buffer is positioned at the start of the first incomplete frame, so the
+     * caller can compact it and read more bytes after it.
+     *
+     * @param source the bytes to decode, between position and limit
+     * @param dataStorage the storage where readings will be stored
+     * @return the number of readings stored
+     * @throws IOException if a frame is corrupt or uses an undefined label
+     */
+    public int decode(ByteBuffer source, DataStorage dataStorage) throws IOException {
+        return decode(source, (patientId, recordTypeId, measurementValue, timestamp) -> dataStorage
+                .addPatientData(patientId, measurementValue, recordTypeId, timestamp));
+    }
+
+    /**
+     * Decodes every complete frame in the buffer and hands each reading to a
+     * listener instead of storing it. On return the buffer is positioned at
+     * the start of the first incomplete frame.
+     *
+     * @param source the bytes to decode, between position and limit
+     * @param sink receives every reading, with its {@link RecordTypes} id
+     * @return the number of readings decoded
+     * @throws IOException if a frame is corrupt or uses an undefined label
+     */
+    public int decode(ByteBuffer source, RecordListener sink) throws IOException {
+        int readings = 0;
+        while (source.hasRemaining()) {
+            int frameStart = source.position();
+            byte type = source.get(frameStart);
+            if (type == LABEL_FRAME) {
+                if (source.remaining() < 5) {
+                    break;
+                }
+                int length = source.getShort(frameStart + 3) & 0xFFFF;
+                if (source.remaining() < 5 + length) {
+                    break;
+                }
+                int labelId = source.getShort(frameStart + 1) & 0xFFFF;
+                byte[] name = new byte[length];
+                source.position(frameStart + 5);
+                source.get(name);
+                defineLabel(labelId, new String(name, StandardCharsets.UTF_8));
+            } else if (type == READING_FRAME) {
+                if (source.remaining() < 1 + READING_SIZE) {
+                    break;
+                }
+                source.position(frameStart + 1);
+                storeReading(source, sink);
+                readings++;
+            } else if (type == BATCH_FRAME) {
+                if (source.remaining() < 3) {
+                    break;
+                }
+                int count = source.getShort(frameStart + 1) & 0xFFFF;
+                if (source.remaining() < 3 + count * READING_SIZE) {
+                    break;
+                }
+                source.position(frameStart + 3);
+                for (int i = 0; i < count; i++) {
+                    storeReading(source, sink);
+                }
+                readings += count;
+            } else {
+                throw new IOException("Unknown frame type " + type + " at offset " + frameStart);
+            }
+        }
+        return readings;
+    }
+
+    /**
+     * Decodes a whole stream, storing readings as they arrive, until the
+     * channel reaches end of stream.
+     *
+     * @param channel the stream to read
+     * @param dataStorage the storage where readings will be stored
+     * @return the number of readings stored
+     * @throws IOException if there is an error reading the stream, the stream
+     *                     is corrupt or it ends in the middle of a frame
+     */
+    public long readAll(ReadableByteChannel channel, DataStorage dataStorage) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        long readings = 0;
+        while (channel.read(buffer) >= 0) {
+            buffer.flip();
+            readings += decode(buffer, dataStorage);
+            if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                // A single frame larger than the buffer
+                ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+        }
+        if (buffer.position() > 0) {
+            throw new IOException("Stream ended in the middle of a frame");
+        }
+        return readings;
+    }
+
+    private void defineLabel(int labelId, String label) {
+        if (labelId >= recordTypeIds.length) {
+            int oldLength = recordTypeIds.length;
+            recordTypeIds = Arrays.copyOf(recordTypeIds, Math.max(labelId + 1, oldLength * 2));
+            Arrays.fill(recordTypeIds, oldLength, recordTypeIds.length, -1);
+        }
+        recordTypeIds[labelId] = RecordTypes.idOf(label);
+    }
+
+    private void storeReading(ByteBuffer source, RecordListener sink) throws IOException {
+        int patientId = source.getInt();
+        long timestamp = source.getLong();
+        int labelId = source.getShort() & 0xFFFF;
+        double value = source.getDouble();
+        int recordTypeId = labelId < recordTypeIds.length ? recordTypeIds[labelId] : -1;
+        if (recordTypeId < 0) {
+            throw new IOException("Reading uses undefined label id " + labelId);
+        }
+        sink.onRecord(patientId, recordTypeId, value, timestamp);
+    }
+}
@@ -1,9 +1,16 @@
 package com.data_management;
 
+import java.io.IOException;
+import java.net.URI;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import com.alerts.AlertGenerator;
 
 /**
@@ -11,16 +18,42 @@ import com.alerts.AlertGenerator;
  * system.
  * This class serves as a repository for all patient records, organized by
  * patient IDs.
+ * Readings are stored per patient in columnar {@link TimeSeries} chunks; see
+ * {@link Patient}.
+ * The storage may be fed from several threads at once. Writes for different
+ * patients never contend, and readers receive snapshots without blocking
+ * writers.
  */
 public class DataStorage {
+    // The simulator's fastest feeds produce one reading per second, so a one-second rollup would only duplicate them
+    private static final long[] DEFAULT_ROLLUP_MILLIS = { 60_000L, 3_600_000L };
+
     private Map<Integer, Patient> patientMap; // Stores patient objects indexed by their unique patient ID.
+    private final long[] rollupMillis;
+    private ScheduledExecutorService retentionExecutor; // Guarded by this
+    private final List<RecordListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile IngestGate ingestGate; // Null until a write-ahead log needs it
 
     /**
      * Constructs a new instance of DataStorage, initializing the underlying storage
-     * structure.
+     * structure with rollups of one minute and one hour.
      */
     public DataStorage() {
-        this.patientMap = new HashMap<>();
+        this(DEFAULT_ROLLUP_MILLIS);
+    }
+
+    /**
+     * Constructs a new instance of DataStorage that maintains rollups of every
+     * series at the given resolutions, updated as readings are added.
+     * Aggregation queries with buckets at least as long as a rollup's are
+     * answered from the coarsest such rollup instead of the readings.
+     *
+     * @param rollupMillis the bucket durations of the rollups, in milliseconds;
+     *                     none to keep no rollups
+     */
+    public DataStorage(long... rollupMillis) {
+        this.patientMap = new ConcurrentHashMap<>();
+        this.rollupMillis = rollupMillis.clone();
     }
 
     /**
@@ -28,6 +61,7 @@ public class DataStorage {
      * If the patient does not exist, a new Patient object is created and added to
      * the storage.
      * Otherwise, the new data is added to the existing patient's records.
+     * Registered {@link RecordListener}s are notified once the data is stored.
      *
      * @param patientId        the unique identifier of the patient
      * @param measurementValue the value of the health metric being recorded
@@ -37,12 +71,91 @@ public class DataStorage {
      *                         milliseconds since the Unix epoch
      */
     public void addPatientData(int patientId, double measurementValue, String recordType, long timestamp) {
+        addPatientData(patientId, measurementValue, RecordTypes.idOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds patient data for an already interned record type, avoiding the
+     * record type lookup.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordTypeId     the interned id of the record type, see
+     *                         {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    public void addPatientData(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        IngestGate gate = ingestGate;
+        if (gate == null) {
+            store(patientId, measurementValue, recordTypeId, timestamp);
+            return;
+        }
+        int[] nesting = gate.enter();
+        try {
+            store(patientId, measurementValue, recordTypeId, timestamp);
+        } finally {
+            gate.exit(nesting);
+        }
+    }
+
+    private void store(int patientId, double measurementValue, int recordTypeId, long timestamp) {
+        restorePatientData(patientId, measurementValue, recordTypeId, timestamp);
+        for (RecordListener listener : listeners) {
+            listener.onRecord(patientId, recordTypeId, measurementValue, timestamp);
+        }
+    }
+
+    /**
+     * Stores a reading that was already added once, such as one replayed from
+     * a write-ahead log, without notifying listeners: they saw it when it was
+     * first added, and readings they derived from it are restored themselves.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param measurementValue the value of the health metric being recorded
+     * @param recordTypeId     the interned id of the record type, see
+     *                         {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    void restorePatientData(int patientId, double measurementValue, int recordTypeId, long timestamp) {
         Patient patient = patientMap.get(patientId);
         if (patient == null) {
-            patient = new Patient(patientId);
-            patientMap.put(patientId, patient);
+            patient = patientMap.computeIfAbsent(patientId, id -> new Patient(id, rollupMillis));
+        }
+        patient.addRecord(measurementValue, recordTypeId, timestamp);
+    }
+
+    /**
+     * Returns the gate that readings pass through from now on, creating it on
+     * first use. Readings that are being added when it is created do not pass
+     * through it, so it should be requested before the storage is fed.
+     *
+     * @return the storage's ingest gate
+     */
+    synchronized IngestGate getIngestGate() {
+        if (ingestGate == null) {
+            ingestGate = new IngestGate();
         }
-        patient.addRecord(measurementValue, recordType, timestamp);
+        return ingestGate;
+    }
+
+    /**
+     * Registers a listener that is notified of every reading added from now on.
+     *
+     * @param listener the listener to notify
+     */
+    public void addListener(RecordListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a previously added listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener(RecordListener listener) {
+        listeners.remove(listener);
     }
 
     /**
@@ -55,15 +168,155 @@ public class DataStorage {
      *                  epoch
      * @param endTime   the end of the time range, in milliseconds since the Unix
      *                  epoch
-     * @return a list of PatientRecord objects that fall within the specified time
-     *         range
+     * @return an unmodifiable list of PatientRecord objects that fall within the
+     *         specified time range
      */
     public List<PatientRecord> getRecords(int patientId, long startTime, long endTime) {
         Patient patient = patientMap.get(patientId);
         if (patient != null) {
             return patient.getRecords(startTime, endTime);
         }
-        return new ArrayList<>(); // return an empty list if no patient is found
+        return Collections.emptyList(); // return an empty list if no patient is found
+    }
+
+    /**
+     * Retrieves the records of one type for a specific patient, filtered by a
+     * time range, as a view over the stored series.
+     *
+     * @param patientId  the unique identifier of the patient whose records are to
+     *                   be retrieved
+     * @param recordType the type of record, e.g., "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the
+     *                   Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the Unix
+     *                   epoch
+     * @return a view of the matching records, ordered by timestamp
+     */
+    public RecordView getRecords(int patientId, String recordType, long startTime, long endTime) {
+        Patient patient = patientMap.get(patientId);
+        if (patient != null) {
+            return patient.getRecords(recordType, startTime, endTime);
+        }
+        return RecordView.empty();
+    }
+
+    /**
+     * Computes per-bucket statistics of one type of record for a specific
+     * patient directly over the stored series, for trend charts that need a
+     * summary rather than every reading. When the buckets are at least as long
+     * as one of the storage's rollups, the statistics are read from the
+     * coarsest such rollup and the buckets are aligned to it.
+     *
+     * @param patientId   the unique identifier of the patient
+     * @param recordType  the type of record, e.g., "ECG"
+     * @param startTime   the start of the time range, in milliseconds since the
+     *                    Unix epoch
+     * @param endTime     the end of the time range, inclusive
+     * @param bucketCount the number of equal buckets to split the range into
+     * @return the count, minimum, maximum, average and last value per bucket
+     * @throws IllegalArgumentException if the range is empty or the bucket
+     *                                  count is not positive
+     * @see TimeSeries#aggregate(long, long, int)
+     */
+    public Aggregation aggregate(int patientId, String recordType, long startTime, long endTime, int bucketCount) {
+        Patient patient = patientMap.get(patientId);
+        TimeSeries series = patient != null ? patient.getSeries(recordType) : null;
+        if (series == null) {
+            return RecordView.empty().aggregate(startTime, endTime, bucketCount);
+        }
+        return series.aggregate(startTime, endTime, bucketCount);
+    }
+
+    /**
+     * Retrieves at most {@code maxPoints} records of one type for a specific
+     * patient, chosen to keep the visual shape of the series when drawn.
+     *
+     * @param patientId  the unique identifier of the patient
+     * @param recordType the type of record, e.g., "ECG"
+     * @param startTime  the start of the time range, in milliseconds since the
+     *                   Unix epoch
+     * @param endTime    the end of the time range, in milliseconds since the
+     *                   Unix epoch
+     * @param maxPoints  the maximum number of records, at least 3
+     * @return a view of the selected records, ordered by timestamp
+     * @see RecordView#downsample(int)
+     */
+    public RecordView downsample(int patientId, String recordType, long startTime, long endTime, int maxPoints) {
+        return getRecords(patientId, recordType, startTime, endTime).downsample(maxPoints);
+    }
+
+    /**
+     * Drops readings and rollup buckets that are older than the given
+     * retention periods. Ages are measured from each patient's latest reading
+     * rather than the clock, so replayed history ages the same way as live
+     * data, and one patient's readings never age another's. Readings are dropped a chunk at a time, so up to 1,024
+     * readings per series may outlive their retention period, and the latest
+     * chunk and rollup buckets of a series are always kept.
+     * Ingestion is not blocked: each series is locked only while its chunk
+     * table is replaced.
+     *
+     * @param readingRetentionMillis how long raw readings are kept
+     * @param rollupRetentionMillis  how long rollup buckets are kept
+     * @return the number of readings dropped
+     */
+    public long enforceRetention(long readingRetentionMillis, long rollupRetentionMillis) {
+        long dropped = 0;
+        for (Patient patient : patientMap.values()) {
+            dropped += patient.dropBefore(readingRetentionMillis, rollupRetentionMillis);
+        }
+        return dropped;
+    }
+
+    /**
+     * Starts enforcing retention periodically on a background thread, replacing
+     * any retention started before.
+     *
+     * @param readingRetentionMillis how long raw readings are kept
+     * @param rollupRetentionMillis  how long rollup buckets are kept
+     * @param intervalMillis         how often retention is enforced
+     * @see #enforceRetention(long, long)
+     */
+    public synchronized void startRetention(long readingRetentionMillis, long rollupRetentionMillis,
+            long intervalMillis) {
+        stopRetention();
+        retentionExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "storage-retention");
+            thread.setDaemon(true);
+            return thread;
+        });
+        retentionExecutor.scheduleWithFixedDelay(() -> {
+            try {
+                enforceRetention(readingRetentionMillis, rollupRetentionMillis);
+            } catch (RuntimeException e) {
+                // An exception escaping the task would cancel every later run
+                System.err.println("Error enforcing retention: " + e);
+                e.printStackTrace();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic retention started by {@link #startRetention}.
+     */
+    public synchronized void stopRetention() {
+        if (retentionExecutor != null) {
+            retentionExecutor.shutdownNow();
+            retentionExecutor = null;
+        }
+    }
+
+    /**
+     * Returns an estimate of the heap used by the readings and rollups of all
+     * patients.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateHeapBytes() {
+        long bytes = 0;
+        for (Patient patient : patientMap.values()) {
+            bytes += patient.estimateHeapBytes();
+        }
+        return bytes;
     }
 
     /**
@@ -80,16 +333,26 @@ public class DataStorage {
      * Initializes the system, reads data into storage, and continuously monitors
      * and evaluates patient data.
      * 
-     * @param args command line arguments
+     * @param args command line arguments; the optional first argument is the
+     *             data source: a directory of simulator output files,
+     *             {@code file:<directory>}, {@code tcp:<host>:<port>}, {@code tcp-bin:<host>:<port>},
+     *             {@code websocket:<uri>} or {@code websocket-bin:<uri>}
+     * @throws IOException if the data source cannot be read
      */
-    public static void main(String[] args) {
-        // DataReader is not defined in this scope, should be initialized appropriately.
-        // DataReader reader = new SomeDataReaderImplementation("path/to/data");
+    public static void main(String[] args) throws IOException {
         DataStorage storage = new DataStorage();
 
-        // Assuming the reader has been properly initialized and can read data into the
-        // storage
-        // reader.readData(storage);
+        // Initialize the AlertGenerator with the storage; readings are evaluated
+        // as they arrive, so each alert is triggered once
+        AlertGenerator alertGenerator = new AlertGenerator(storage);
+        alertGenerator.startMonitoring();
+        // Heart rate and RR intervals are derived from high-rate ECG as it arrives
+        storage.addListener(new RPeakDetector(storage));
+
+        if (args.length > 0) {
+            // Live sources keep storing until the simulator closes the connection
+            createDataReader(args[0]).readData(storage);
+        }
 
         // Example of using DataStorage to retrieve and print records for a patient
         List<PatientRecord> records = storage.getRecords(1, 1700000000000L, 1800000000000L);
@@ -99,13 +362,37 @@ public class DataStorage {
                     ", Data: " + record.getMeasurementValue() +
                     ", Timestamp: " + record.getTimestamp());
         }
+    }
 
-        // Initialize the AlertGenerator with the storage
-        AlertGenerator alertGenerator = new AlertGenerator(storage);
-
-        // Evaluate all patients' data to check for conditions that may trigger alerts
-        for (Patient patient : storage.getAllPatients()) {
-            alertGenerator.evaluateData(patient);
+    /**
+     * Creates the reader for a data source given on the command line.
+     * A directory is bulk-loaded in parallel by a {@link MappedFileDataReader};
+     * {@code file:<directory>} reads it line by line with a
+     * {@link FileDataReader} instead.
+     *
+     * @param source a directory, {@code file:<directory>}, {@code tcp:<host>:<port>},
+     *               {@code tcp-bin:<host>:<port>}, {@code websocket:<uri>} or
+     *               {@code websocket-bin:<uri>}
+     * @return the reader for the source
+     * @throws IllegalArgumentException if the source is not in one of these forms
+     */
+    static DataReader createDataReader(String source) {
+        if (source.startsWith("tcp:") || source.startsWith("tcp-bin:")) {
+            String address = source.substring(source.indexOf(':') + 1);
+            int separator = address.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected tcp:<host>:<port>: " + source);
+            }
+            return new TcpDataReader(address.substring(0, separator),
+                    Integer.parseInt(address.substring(separator + 1)), source.startsWith("tcp-bin:"));
+        }
+        if (source.startsWith("websocket:") || source.startsWith("websocket-bin:")) {
+            return new WebSocketDataReader(URI.create(source.substring(source.indexOf(':') + 1)),
+                    source.startsWith("websocket-bin:"));
+        }
+        if (source.startsWith("file:")) {
+            return new FileDataReader(source.substring("file:".length()));
         }
+        return new MappedFileDataReader(source);
     }
 }
@@ -0,0 +1,83 @@
+package com.data_management;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Lets one thread briefly stop readings from being added to a
+ * {@link DataStorage}, after waiting for the readings being added to be stored
+ * and passed to every listener. A {@link WriteAheadLog} uses it to capture a
+ * snapshot at an exact position in its log.
+ * A listener that adds a derived reading while handling one, such as
+ * {@link RPeakDetector}, is already inside the gate and is let through.
+ */
+final class IngestGate {
+    private final AtomicLong adding = new AtomicLong(); // Threads between enter and exit
+    private final ThreadLocal<int[]> depth = ThreadLocal.withInitial(() -> new int[1]);
+    private volatile boolean closed;
+
+    /**
+     * Called before a reading is added; waits while the gate is closed.
+     *
+     * @return the nesting depth of the calling thread, to pass to
+     *         {@link #exit(int[])}
+     */
+    int[] enter() {
+        int[] nesting = depth.get();
+        if (nesting[0]++ > 0) {
+            return nesting;
+        }
+        adding.incrementAndGet();
+        while (closed) {
+            adding.decrementAndGet();
+            awaitOpen();
+            adding.incrementAndGet();
+        }
+        return nesting;
+    }
+
+    /**
+     * Called once a reading has been added and every listener has seen it.
+     *
+     * @param nesting the value returned by the matching {@link #enter()}
+     */
+    void exit(int[] nesting) {
+        if (--nesting[0] == 0) {
+            adding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Closes the gate, waits until no reading is being added, runs the action
+     * and opens the gate again.
+     *
+     * @param action the work to do while no reading is added
+     * @return the result of the action
+     */
+    synchronized <T> T whileClosed(Supplier<T> action) {
+        closed = true;
+        try {
+            while (adding.get() != 0) {
+                Thread.yield();
+            }
+            return action.get();
+        } finally {
+            closed = false;
+            notifyAll();
+        }
+    }
+
+    private synchronized void awaitOpen() {
+        boolean interrupted = false;
+        while (closed) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package com.data_management;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bulk-loads patient data files from a directory, in the same
+ * {@code patientId,timestamp,recordType,measurementValue} format as
+ * {@link FileDataReader}.
+ * Each file is memory-mapped and cut into segments at line boundaries; the
+ * segments of all files are parsed in parallel on a fork-join pool, straight
+ * from the mapped bytes by a {@link RecordLineParser}. The parsed readings of
+ * each file are then stored in file order, so a time-ordered file still
+ * appends to its series instead of causing late insertions.
+ * At the end of {@link #readData} a summary with lines per second and the
+ * number of malformed lines is printed and kept in {@link #getLastReport()}.
+ */
+public class MappedFileDataReader implements DataReader {
+    static final int DEFAULT_SEGMENT_SIZE = 8 << 20; // bytes per parallel parse task
+    static final int MAX_LINE_LENGTH = 4096; // longer lines are counted as malformed
+
+    private final String directoryPath;
+    private final ForkJoinPool pool;
+    private final int segmentSize;
+    private volatile LoadReport lastReport;
+
+    /**
+     * Constructs a MappedFileDataReader for the given directory that parses on
+     * the common fork-join pool.
+     *
+     * @param directoryPath the path to the directory containing data files
+     */
+    public MappedFileDataReader(String directoryPath) {
+        this(directoryPath, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructs a MappedFileDataReader for the given directory that parses on
+     * the given pool.
+     *
+     * @param directoryPath the path to the directory containing data files
+     * @param pool          the pool running the parse and store tasks
+     */
+    public MappedFileDataReader(String directoryPath, ForkJoinPool pool) {
+        this(directoryPath, pool, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a MappedFileDataReader with a custom segment size.
+     *
+     * @param directoryPath the path to the directory containing data files
+     * @param pool          the pool running the parse and store tasks
+     * @param segmentSize   the number of bytes of a file parsed by one task
+     */
+    public MappedFileDataReader(String directoryPath, ForkJoinPool pool, int segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive: " + segmentSize);
+        }
+        this.directoryPath = directoryPath;
+        this.pool = pool;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Reads data from all files in the directory and stores it in DataStorage.
+     * Blank lines are skipped; malformed lines are skipped and counted.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException if there is an error reading the data
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        File dir = new File(directoryPath);
+        if (!dir.exists() || !dir.isDirectory()) {
+            throw new IOException("Directory does not exist: " + directoryPath);
+        }
+        File[] files = dir.listFiles(File::isFile);
+        if (files == null) {
+            files = new File[0];
+        }
+        long startNanos = System.nanoTime();
+        AtomicLong lines = new AtomicLong();
+        AtomicLong malformed = new AtomicLong();
+        List<FileTask> tasks = new ArrayList<>();
+        for (File file : files) {
+            tasks.add(new FileTask(file, segmentSize, dataStorage, lines, malformed));
+        }
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        lastReport = new LoadReport(files.length, lines.get(), malformed.get(), System.nanoTime() - startNanos);
+        System.out.println(lastReport);
+    }
+
+    /**
+     * Returns the summary of the most recent {@link #readData} call.
+     *
+     * @return the last load report, or null if no data has been read yet
+     */
+    public LoadReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Summary of one bulk load.
+     */
+    public static final class LoadReport {
+        private final int files;
+        private final long lines;
+        private final long malformedLines;
+        private final long elapsedNanos;
+
+        LoadReport(int files, long lines, long malformedLines, long elapsedNanos) {
+            this.files = files;
+            this.lines = lines;
+            this.malformedLines = malformedLines;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the number of files read.
+         *
+         * @return the number of files
+         */
+        public int getFiles() {
+            return files;
+        }
+
+        /**
+         * Returns the number of non-blank lines read, including malformed ones.
+         *
+         * @return the number of lines
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Returns the number of lines that could not be parsed.
+         *
+         * @return the number of malformed lines
+         */
+        public long getMalformedLines() {
+            return malformedLines;
+        }
+
+        /**
+         * Returns the wall-clock time of the load.
+         *
+         * @return the elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Returns the load throughput.
+         *
+         * @return lines read per second
+         */
+        public double getLinesPerSecond() {
+            return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d lines from %d files in %d ms (%.0f lines/sec), %d malformed lines skipped",
+                    lines, files, elapsedNanos / 1_000_000, getLinesPerSecond(), malformedLines);
+        }
+    }
+
+    /**
+     * Splits one file into segments, parses them in parallel and stores the
+     * readings segment by segment in file order.
+     */
+    private static final class FileTask extends RecursiveAction {
+        private final File file;
+        private final int segmentSize;
+        private final DataStorage dataStorage;
+        private final AtomicLong lines;
+        private final AtomicLong malformed;
+
+        FileTask(File file, int segmentSize, DataStorage dataStorage, AtomicLong lines, AtomicLong malformed) {
+            this.file = file;
+            this.segmentSize = segmentSize;
+            this.dataStorage = dataStorage;
+            this.lines = lines;
+            this.malformed = malformed;
+        }
+
+        @Override
+        protected void compute() {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                long size = channel.size();
+                int segmentCount = (int) ((size + segmentSize - 1) / segmentSize);
+                SegmentTask[] segments = new SegmentTask[segmentCount];
+                for (int i = 0; i < segmentCount; i++) {
+                    segments[i] = new SegmentTask(channel, (long) i * segmentSize,
+                            Math.min(size, (long) (i + 1) * segmentSize), size);
+                    segments[i].fork();
+                }
+                for (SegmentTask segment : segments) {
+                    segment.join();
+                    segment.storeInto(dataStorage);
+                    lines.addAndGet(segment.lines);
+                    malformed.addAndGet(segment.malformed);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Parses the lines that start within {@code [start, end)} of a file into
+     * primitive arrays.
+     */
+    private static final class SegmentTask extends RecursiveAction {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final long fileSize;
+
+        int count;
+        int[] patientIds = new int[1024];
+        long[] timestamps = new long[1024];
+        int[] recordTypeIds = new int[1024];
+        double[] values = new double[1024];
+        long lines;
+        long malformed;
+
+        SegmentTask(FileChannel channel, long start, long end, long fileSize) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.fileSize = fileSize;
+        }
+
+        @Override
+        protected void compute() {
+            // Map one byte before the segment to find the first line start, and
+            // enough after it to finish the last line that starts inside it
+            long mapStart = Math.max(0, start - 1);
+            long mapEnd = Math.min(fileSize, end + MAX_LINE_LENGTH);
+            MappedByteBuffer buffer;
+            try {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            int limit = (int) (mapEnd - mapStart);
+            int segmentEnd = (int) (end - mapStart);
+            int lineStart = (int) (start - mapStart);
+            if (start > 0 && buffer.get(0) != '\n') {
+                // The first partial line belongs to the previous segment
+                while (lineStart < limit && buffer.get(lineStart) != '\n') {
+                    lineStart++;
+                }
+                lineStart++;
+            }
+            RecordLineParser parser = new RecordLineParser();
+            while (lineStart < segmentEnd) {
+                int lineEnd = lineStart;
+                while (lineEnd < limit && buffer.get(lineEnd) != '\n') {
+                    lineEnd++;
+                }
+                if (lineEnd == limit && mapEnd < fileSize) {
+                    // Line longer than MAX_LINE_LENGTH: skip it as malformed
+                    lines++;
+                    malformed++;
+                    break;
+                }
+                if (!RecordLineParser.isBlank(buffer, lineStart, lineEnd)) {
+                    lines++;
+                    if (parser.parse(buffer, lineStart, lineEnd)) {
+                        add(parser);
+                    } else {
+                        malformed++;
+                    }
+                }
+                lineStart = lineEnd + 1;
+            }
+        }
+
+        private void add(RecordLineParser parser) {
+            if (count == patientIds.length) {
+                int capacity = count * 2;
+                patientIds = Arrays.copyOf(patientIds, capacity);
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                recordTypeIds = Arrays.copyOf(recordTypeIds, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            patientIds[count] = parser.getPatientId();
+            timestamps[count] = parser.getTimestamp();
+            recordTypeIds[count] = parser.getRecordTypeId();
+            values[count] = parser.getMeasurementValue();
+            count++;
+        }
+
+        void storeInto(DataStorage dataStorage) {
+            for (int i = 0; i < count; i++) {
+                dataStorage.addPatientData(patientIds[i], values[i], recordTypeIds[i], timestamps[i]);
+            }
+            // Release the parsed readings as soon as they are stored
+            patientIds = null;
+            timestamps = null;
+            recordTypeIds = null;
+            values = null;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.data_management;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -8,20 +10,39 @@ import java.util.List;
  * This class stores patient-specific data, allowing for the addition and
  * retrieval
  * of medical records based on specified criteria.
+ * Records are kept as one columnar {@link TimeSeries} per record type, indexed
+ * by the type's interned id, and are only turned into {@link PatientRecord}
+ * objects when they are retrieved.
+ * A patient may be written and read from several threads at once: each
+ * series synchronizes its own writers, and readers work on snapshots.
  */
 public class Patient {
     private int patientId;
-    private List<PatientRecord> patientRecords;
+    private volatile TimeSeries[] series; // Indexed by RecordTypes id, null for types never recorded
+    private final long[] rollupMillis;
 
     /**
      * Constructs a new Patient with a specified ID.
-     * Initializes an empty list of patient records.
+     * Initializes an empty set of record series.
      *
      * @param patientId the unique identifier for the patient
      */
     public Patient(int patientId) {
+        this(patientId, new long[0]);
+    }
+
+    /**
+     * Constructs a new Patient whose series maintain rollups at the given
+     * resolutions.
+     *
+     * @param patientId    the unique identifier for the patient
+     * @param rollupMillis the bucket durations of the rollups, in milliseconds;
+     *                     see {@link TimeSeries#aggregate(long, long, int)}
+     */
+    public Patient(int patientId, long... rollupMillis) {
         this.patientId = patientId;
-        this.patientRecords = new ArrayList<>();
+        this.series = new TimeSeries[8];
+        this.rollupMillis = rollupMillis.clone();
     }
 
     /**
@@ -36,29 +57,195 @@ public class Patient {
      *                         milliseconds since UNIX epoch
      */
     public void addRecord(double measurementValue, String recordType, long timestamp) {
-        PatientRecord record = new PatientRecord(this.patientId, measurementValue, recordType, timestamp);
-        this.patientRecords.add(record);
+        addRecord(measurementValue, RecordTypes.idOf(recordType), timestamp);
+    }
+
+    /**
+     * Adds a new record for an already interned record type.
+     *
+     * @param measurementValue the measurement value to store in the record
+     * @param recordTypeId     the interned id of the record type, see
+     *                         {@link RecordTypes}
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since UNIX epoch
+     */
+    public void addRecord(double measurementValue, int recordTypeId, long timestamp) {
+        TimeSeries[] current = series;
+        TimeSeries target = recordTypeId < current.length ? current[recordTypeId] : null;
+        if (target == null) {
+            target = createSeries(recordTypeId);
+        }
+        target.add(timestamp, measurementValue);
     }
 
     /**
      * Retrieves a list of PatientRecord objects for this patient that fall within a
      * specified time range.
-     * The method filters records based on the start and end times provided.
+     * Each record type's range is located by binary search, and the ranges are
+     * merged by timestamp, so the cost depends on the number of matching records
+     * rather than on the length of the patient's history.
      *
      * @param startTime the start of the time range, in milliseconds since UNIX
      *                  epoch
      * @param endTime   the end of the time range, in milliseconds since UNIX epoch
-     * @return a list of PatientRecord objects that fall within the specified time
-     *         range
+     * @return an unmodifiable list of PatientRecord objects that fall within the
+     *         specified time range, ordered by timestamp
      */
     public List<PatientRecord> getRecords(long startTime, long endTime) {
-        List<PatientRecord> filtered = new ArrayList<>();
-        for (PatientRecord record : this.patientRecords) {
-            if (record.getTimestamp() >= startTime && record.getTimestamp() <= endTime) {
-                filtered.add(record);
+        List<RecordView> views = new ArrayList<>();
+        int total = 0;
+        for (TimeSeries typeSeries : this.series) {
+            if (typeSeries != null) {
+                RecordView view = typeSeries.range(startTime, endTime);
+                if (!view.isEmpty()) {
+                    views.add(view);
+                    total += view.size();
+                }
+            }
+        }
+        if (views.size() == 1) {
+            return views.get(0);
+        }
+        List<PatientRecord> merged = new ArrayList<>(total);
+        int[] positions = new int[views.size()];
+        while (merged.size() < total) {
+            int next = -1;
+            for (int v = 0; v < views.size(); v++) {
+                if (positions[v] < views.get(v).size() && (next < 0
+                        || views.get(v).getTimestamp(positions[v]) < views.get(next).getTimestamp(positions[next]))) {
+                    next = v;
+                }
+            }
+            merged.add(views.get(next).get(positions[next]++));
+        }
+        return Collections.unmodifiableList(merged);
+    }
+
+    /**
+     * Retrieves the records of one type that fall within a specified time range.
+     * The range is located by binary search and returned as a view over the
+     * stored series, without copying.
+     *
+     * @param recordType the type of record, e.g., "ECG"
+     * @param startTime  the start of the time range, in milliseconds since UNIX
+     *                   epoch
+     * @param endTime    the end of the time range, in milliseconds since UNIX
+     *                   epoch
+     * @return a view of the matching records, ordered by timestamp
+     */
+    public RecordView getRecords(String recordType, long startTime, long endTime) {
+        TimeSeries typeSeries = getSeries(recordType);
+        if (typeSeries == null) {
+            return RecordView.empty();
+        }
+        return typeSeries.range(startTime, endTime);
+    }
+
+    /**
+     * Returns the stored series for a record type.
+     *
+     * @param recordType the type of record, e.g., "ECG"
+     * @return the series, or null if no record of that type has been stored
+     */
+    public TimeSeries getSeries(String recordType) {
+        int id = RecordTypes.find(recordType);
+        TimeSeries[] current = series;
+        return id >= 0 && id < current.length ? current[id] : null;
+    }
+
+    /**
+     * Returns the series of every record type stored for this patient.
+     *
+     * @return the series, in record type id order
+     */
+    List<TimeSeries> getAllSeries() {
+        List<TimeSeries> all = new ArrayList<>();
+        for (TimeSeries typeSeries : this.series) {
+            if (typeSeries != null) {
+                all.add(typeSeries);
+            }
+        }
+        return all;
+    }
+
+    /**
+     * Returns an estimate of the heap used by this patient's stored readings.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateHeapBytes() {
+        long bytes = 0;
+        for (TimeSeries typeSeries : this.series) {
+            if (typeSeries != null) {
+                bytes += typeSeries.estimateHeapBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns the timestamp of this patient's latest reading of any type.
+     *
+     * @return the timestamp in milliseconds since UNIX epoch, or
+     *         {@code Long.MIN_VALUE} if nothing has been stored
+     */
+    public long getLatestTimestamp() {
+        long latest = Long.MIN_VALUE;
+        for (TimeSeries typeSeries : this.series) {
+            if (typeSeries != null) {
+                latest = Math.max(latest, typeSeries.getLatestTimestamp());
+            }
+        }
+        return latest;
+    }
+
+    /**
+     * Drops readings and rollup buckets older than the given retention periods
+     * from every series of this patient. Ages are measured from this patient's
+     * latest reading, so a patient whose feed runs ahead of the others, or a
+     * reading stamped in the future, does not age anyone else's history.
+     *
+     * @param readingRetentionMillis how long raw readings are kept, see
+     *                               {@link TimeSeries#dropReadingsBefore(long)}
+     * @param rollupRetentionMillis  how long rollup buckets are kept, see
+     *                               {@link TimeSeries#dropRollupsBefore(long)}
+     * @return the number of readings dropped
+     */
+    public long dropBefore(long readingRetentionMillis, long rollupRetentionMillis) {
+        long latest = getLatestTimestamp();
+        if (latest == Long.MIN_VALUE) {
+            return 0;
+        }
+        long readingCutoff = cutoff(latest, readingRetentionMillis);
+        long rollupCutoff = cutoff(latest, rollupRetentionMillis);
+        long dropped = 0;
+        for (TimeSeries typeSeries : this.series) {
+            if (typeSeries != null) {
+                dropped += typeSeries.dropReadingsBefore(readingCutoff);
+                typeSeries.dropRollupsBefore(rollupCutoff);
             }
         }
-        return filtered;
+        return dropped;
+    }
+
+    private static long cutoff(long latest, long retentionMillis) {
+        // A retention reaching back past Long.MIN_VALUE keeps everything
+        return latest < Long.MIN_VALUE + retentionMillis ? Long.MIN_VALUE : latest - retentionMillis;
+    }
+
+    /**
+     * Creates the series for a record type, replacing the series table so that
+     * concurrent readers never see it half-updated.
+     */
+    private synchronized TimeSeries createSeries(int recordTypeId) {
+        TimeSeries[] current = series;
+        if (recordTypeId < current.length && current[recordTypeId] != null) {
+            return current[recordTypeId];
+        }
+        TimeSeries[] updated = Arrays.copyOf(current, Math.max(current.length, recordTypeId + 1));
+        updated[recordTypeId] = new TimeSeries(patientId, recordTypeId, rollupMillis);
+        series = updated;
+        return updated[recordTypeId];
     }
 
     /**
@@ -0,0 +1,366 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Detects the R peaks of ECG readings as they are added to a
+ * {@link DataStorage} and stores the RR interval and heart rate of every beat
+ * as series of their own: {@value #RR_INTERVAL}, in milliseconds, and
+ * {@value #HEART_RATE}, in beats per minute, both stamped with the time of the
+ * beat's R peak.
+ *
+ * <p>Detection follows Pan and Tompkins. Each sample is band-passed to 5-15 Hz,
+ * differentiated, squared and integrated over a 150 ms window. Peaks of the
+ * integrated signal are classified as QRS complexes or noise against a
+ * threshold that adapts to the running levels of both, and no second QRS
+ * complex is accepted within 200 ms of the last. If none has been found for
+ * 1.66 times the average RR interval, the largest noise peak since the last
+ * one is taken if it clears half the threshold. The R peak is placed at the
+ * highest sample of the complex.
+ *
+ * <p>The sample rate of each patient's feed is learned from the timestamps of
+ * its first samples, and a gap of more than five sample periods starts the
+ * learning again. ECG at one reading per second is too slow to find beats in
+ * and derives nothing. State is kept per patient and is fixed in size once the
+ * rate is known; processing for a patient is serialized on that state, so
+ * patients are processed in parallel without contention. The derived readings
+ * are added from the thread that added the ECG sample.
+ */
+public class RPeakDetector implements RecordListener {
+    /**
+     * The record type of the derived heart rates, in beats per minute.
+     */
+    public static final String HEART_RATE = "HeartRate";
+
+    /**
+     * The record type of the derived RR intervals, in milliseconds.
+     */
+    public static final String RR_INTERVAL = "RRInterval";
+
+    private static final int MIN_SAMPLE_RATE = 50;
+    private static final int MAX_SAMPLE_RATE = 2000;
+    private static final int RATE_LEARNING_INTERVALS = 16;
+    private static final long MIN_RR_MILLIS = 200; // 300 bpm
+    private static final long MAX_RR_MILLIS = 3000; // 20 bpm
+
+    private final DataStorage storage;
+    private final int ecgTypeId = RecordTypes.idOf("ECG");
+    private final int heartRateTypeId = RecordTypes.idOf(HEART_RATE);
+    private final int rrIntervalTypeId = RecordTypes.idOf(RR_INTERVAL);
+    private final ConcurrentHashMap<Integer, PatientState> states = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, Filters> filtersByRate = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a detector that adds the derived series to the given storage.
+     * It still has to be registered with {@link DataStorage#addListener}.
+     *
+     * @param storage the storage to add heart rates and RR intervals to
+     */
+    public RPeakDetector(DataStorage storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Processes a newly stored reading if it is an ECG sample.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param recordTypeId     the interned id of the record type
+     * @param measurementValue the value of the reading
+     * @param timestamp        the time of the reading, in milliseconds since the
+     *                         Unix epoch
+     */
+    @Override
+    public void onRecord(int patientId, int recordTypeId, double measurementValue, long timestamp) {
+        if (recordTypeId != ecgTypeId) {
+            return;
+        }
+        PatientState state = states.get(patientId);
+        if (state == null) {
+            state = states.computeIfAbsent(patientId, PatientState::new);
+        }
+        synchronized (state) {
+            state.accept(measurementValue, timestamp);
+        }
+    }
+
+    /**
+     * Discards the detection state of a patient, e.g. when the patient is
+     * discharged.
+     *
+     * @param patientId the unique identifier of the patient
+     */
+    public void forgetPatient(int patientId) {
+        states.remove(patientId);
+    }
+
+    private void addBeat(int patientId, long rPeakTime, long rrMillis) {
+        storage.addPatientData(patientId, rrMillis, rrIntervalTypeId, rPeakTime);
+        storage.addPatientData(patientId, 60_000.0 / rrMillis, heartRateTypeId, rPeakTime);
+    }
+
+    /**
+     * The filter coefficients and window lengths for one sample rate, shared by
+     * every patient fed at that rate.
+     */
+    private static final class Filters {
+        final int sampleRate;
+        final double[] highPass; // b0, b1, b2, a1, a2
+        final double[] lowPass;
+        final double derivativeScale;
+        final int windowSize; // Moving window integration
+        final int searchSize; // Samples searched back for the R peak
+        final int refractorySamples;
+        final int settleSamples; // Filter start-up, ignored
+        final int learningSamples; // Used to set the first thresholds
+        final long maxGapMillis;
+
+        Filters(int sampleRate) {
+            this.sampleRate = sampleRate;
+            highPass = biquad(sampleRate, 5, true);
+            lowPass = biquad(sampleRate, 15, false);
+            derivativeScale = sampleRate / 8.0;
+            windowSize = Math.max(1, Math.round(0.15f * sampleRate));
+            searchSize = Math.max(1, Math.round(0.25f * sampleRate));
+            refractorySamples = Math.round(0.2f * sampleRate);
+            settleSamples = sampleRate / 2;
+            learningSamples = 2 * sampleRate;
+            maxGapMillis = Math.max(5 * 1000L / sampleRate, 5);
+        }
+
+        /**
+         * Returns a second-order Butterworth high-pass or low-pass section,
+         * from the bilinear transform, normalized so that a0 is 1.
+         */
+        private static double[] biquad(int sampleRate, double cutoffHz, boolean highPass) {
+            double w0 = 2 * Math.PI * Math.min(cutoffHz, 0.45 * sampleRate) / sampleRate;
+            double cos = Math.cos(w0);
+            double alpha = Math.sin(w0) / Math.sqrt(2);
+            double a0 = 1 + alpha;
+            double b1 = highPass ? -(1 + cos) : 1 - cos;
+            double b0 = Math.abs(b1) / 2;
+            return new double[] { b0 / a0, b1 / a0, b0 / a0, -2 * cos / a0, (1 - alpha) / a0 };
+        }
+    }
+
+    /**
+     * The detection state of one patient.
+     */
+    private final class PatientState {
+        final int patientId;
+        long lastTime = Long.MIN_VALUE;
+
+        // Learning the sample rate
+        long firstTime;
+        int intervals = -1;
+        Filters filters; // Null while learning the rate
+
+        // Band-pass sections, derivative history and moving window integration
+        double highPass1, highPass2, lowPass1, lowPass2;
+        double filtered1, filtered2, filtered3, filtered4;
+        double[] window;
+        int windowNext;
+        double windowSum;
+        double previousIntegrated;
+        boolean rising;
+
+        // Raw samples of the last searchSize samples, to locate R peaks
+        double[] recentValues;
+        long[] recentTimes;
+        int recentNext;
+        long sampleIndex;
+
+        // Adaptive thresholds
+        double signalLevel;
+        double noiseLevel;
+        double learningMax;
+        double learningSum;
+
+        // Beats
+        long lastQrsIndex;
+        long lastRPeakTime;
+        final long[] rrSamples = new long[8];
+        int rrCount;
+        int rrNext;
+        double rrAverage;
+
+        // Largest noise peak since the last QRS complex, for the search back
+        double backPeak;
+        long backIndex;
+        long backRPeakTime;
+
+        PatientState(int patientId) {
+            this.patientId = patientId;
+        }
+
+        void accept(double value, long timestamp) {
+            if (timestamp < lastTime) {
+                return; // Out of order
+            }
+            long gap = lastTime == Long.MIN_VALUE ? Long.MAX_VALUE : timestamp - lastTime;
+            lastTime = timestamp;
+            if (filters == null) {
+                learnRate(timestamp, gap);
+            } else if (gap > filters.maxGapMillis) {
+                filters = null;
+                learnRate(timestamp, Long.MAX_VALUE);
+            } else {
+                process(value, timestamp);
+            }
+        }
+
+        private void learnRate(long timestamp, long gap) {
+            if (intervals < 0 || gap > 1000 / MIN_SAMPLE_RATE) {
+                firstTime = timestamp;
+                intervals = 0;
+                return;
+            }
+            if (++intervals == RATE_LEARNING_INTERVALS) {
+                long span = Math.max(1, timestamp - firstTime);
+                int rate = (int) Math.min(MAX_SAMPLE_RATE, Math.round(RATE_LEARNING_INTERVALS * 1000.0 / span));
+                intervals = -1;
+                start(filtersByRate.computeIfAbsent(rate, Filters::new));
+            }
+        }
+
+        private void start(Filters filters) {
+            this.filters = filters;
+            highPass1 = highPass2 = lowPass1 = lowPass2 = 0;
+            filtered1 = filtered2 = filtered3 = filtered4 = 0;
+            if (window == null || window.length != filters.windowSize) {
+                window = new double[filters.windowSize];
+                recentValues = new double[filters.searchSize];
+                recentTimes = new long[filters.searchSize];
+            } else {
+                Arrays.fill(window, 0);
+            }
+            windowNext = 0;
+            windowSum = 0;
+            previousIntegrated = 0;
+            rising = false;
+            recentNext = 0;
+            sampleIndex = 0;
+            signalLevel = noiseLevel = learningMax = learningSum = 0;
+            lastQrsIndex = -1;
+            lastRPeakTime = Long.MIN_VALUE;
+            rrCount = rrNext = 0;
+            rrAverage = filters.sampleRate; // One beat per second until RR intervals are known
+            backPeak = 0;
+        }
+
+        private void process(double value, long timestamp) {
+            Filters f = filters;
+            // Band-pass: high-pass then low-pass, each a transposed direct form II section
+            double[] hp = f.highPass;
+            double highPassed = hp[0] * value + highPass1;
+            highPass1 = hp[1] * value - hp[3] * highPassed + highPass2;
+            highPass2 = hp[2] * value - hp[4] * highPassed;
+            double[] lp = f.lowPass;
+            double filtered = lp[0] * highPassed + lowPass1;
+            lowPass1 = lp[1] * highPassed - lp[3] * filtered + lowPass2;
+            lowPass2 = lp[2] * highPassed - lp[4] * filtered;
+
+            // Five-point derivative, squared
+            double slope = (2 * filtered + filtered1 - filtered3 - 2 * filtered4) * f.derivativeScale;
+            filtered4 = filtered3;
+            filtered3 = filtered2;
+            filtered2 = filtered1;
+            filtered1 = filtered;
+            double squared = slope * slope;
+
+            // Moving window integration
+            windowSum += squared - window[windowNext];
+            window[windowNext] = squared;
+            windowNext = windowNext + 1 == window.length ? 0 : windowNext + 1;
+            double integrated = Math.max(0, windowSum) / window.length;
+
+            recentValues[recentNext] = value;
+            recentTimes[recentNext] = timestamp;
+            recentNext = recentNext + 1 == recentValues.length ? 0 : recentNext + 1;
+
+            long index = sampleIndex++;
+            long learningEnd = f.settleSamples + f.learningSamples;
+            if (index >= f.settleSamples && index < learningEnd) {
+                learningMax = Math.max(learningMax, integrated);
+                learningSum += integrated;
+                if (index == learningEnd - 1) {
+                    signalLevel = learningMax / 3;
+                    noiseLevel = learningSum / f.learningSamples / 2;
+                    lastQrsIndex = index;
+                }
+            } else if (index >= learningEnd) {
+                if (rising && integrated < previousIntegrated) {
+                    classifyPeak(previousIntegrated, index - 1);
+                }
+                if (index - lastQrsIndex > 1.66 * rrAverage && backPeak > threshold() / 2) {
+                    signalLevel = 0.25 * backPeak + 0.75 * signalLevel;
+                    beat(backIndex, backRPeakTime);
+                }
+            }
+            if (integrated != previousIntegrated) {
+                rising = integrated > previousIntegrated;
+            }
+            previousIntegrated = integrated;
+        }
+
+        private double threshold() {
+            return noiseLevel + 0.25 * (signalLevel - noiseLevel);
+        }
+
+        private void classifyPeak(double height, long index) {
+            if (index - lastQrsIndex < filters.refractorySamples) {
+                return;
+            }
+            if (height > threshold()) {
+                signalLevel = 0.125 * height + 0.875 * signalLevel;
+                beat(index, locateRPeak());
+            } else {
+                noiseLevel = 0.125 * height + 0.875 * noiseLevel;
+                if (height > backPeak) {
+                    backPeak = height;
+                    backIndex = index;
+                    backRPeakTime = locateRPeak();
+                }
+            }
+        }
+
+        /**
+         * Returns the time of the highest raw sample of the last searchSize
+         * samples, which span the QRS complex behind a peak of the integrated
+         * signal.
+         */
+        private long locateRPeak() {
+            int best = 0;
+            for (int i = 1; i < recentValues.length; i++) {
+                if (recentValues[i] > recentValues[best]) {
+                    best = i;
+                }
+            }
+            return recentTimes[best];
+        }
+
+        private void beat(long index, long rPeakTime) {
+            long previousIndex = lastQrsIndex;
+            lastQrsIndex = index;
+            backPeak = 0;
+            if (rPeakTime <= lastRPeakTime) {
+                return; // The same R peak found again
+            }
+            if (lastRPeakTime != Long.MIN_VALUE) {
+                rrSamples[rrNext] = index - previousIndex;
+                rrNext = (rrNext + 1) % rrSamples.length;
+                rrCount = Math.min(rrCount + 1, rrSamples.length);
+                long sum = 0;
+                for (int i = 0; i < rrCount; i++) {
+                    sum += rrSamples[i];
+                }
+                rrAverage = (double) sum / rrCount;
+                long rrMillis = rPeakTime - lastRPeakTime;
+                if (rrMillis >= MIN_RR_MILLIS && rrMillis <= MAX_RR_MILLIS) {
+                    addBeat(patientId, rPeakTime, rrMillis);
+                }
+            }
+            lastRPeakTime = rPeakTime;
+        }
+    }
+}
@@ -0,0 +1,345 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses {@code patientId,timestamp,recordType,measurementValue} lines
+ * directly from bytes, without creating a String per line or per field.
+ * Fields may be surrounded by spaces, and a trailing {@code %} on the value
+ * (as the simulator writes for saturation) is ignored. The simulator's alert
+ * values {@code triggered} and {@code resolved} are read as 1 and 0, as in its
+ * binary output. Record type names are
+ * resolved to {@link RecordTypes} ids through a small cache keyed by the raw
+ * bytes, so a name is only decoded the first time this parser sees it.
+ *
+ * <p>A parser keeps the fields of the last parsed line and is not
+ * thread-safe; use one per thread.
+ */
+public class RecordLineParser {
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+    private int patientId;
+    private long timestamp;
+    private int recordTypeId;
+    private double measurementValue;
+
+    // Open-addressing cache from record type bytes to record type id
+    private byte[][] typeNames = new byte[32][];
+    private int[] typeIds = new int[32];
+    private int typeCount;
+
+    // Cursor used while parsing one line
+    private ByteBuffer buffer;
+    private int position;
+    private int end;
+
+    /**
+     * Parses one line. The line must not include its line terminator, but may
+     * end with a carriage return.
+     *
+     * @param source the buffer holding the line; its position and limit are not
+     *               used or changed
+     * @param start  the index of the first byte of the line
+     * @param end    the index just past the last byte of the line
+     * @return true if the line was well formed, in which case its fields are
+     *         available through the getters
+     */
+    public boolean parse(ByteBuffer source, int start, int end) {
+        this.buffer = source;
+        this.position = start;
+        this.end = end;
+        try {
+            long id = parseLong();
+            if (id < Integer.MIN_VALUE || id > Integer.MAX_VALUE || !skipSeparator()) {
+                return false;
+            }
+            long time = parseLong();
+            if (!skipSeparator()) {
+                return false;
+            }
+            int type = parseRecordType();
+            if (type < 0 || !skipSeparator()) {
+                return false;
+            }
+            double value = parseDouble();
+            skipSpaces();
+            if (position < this.end && buffer.get(position) == '%') {
+                position++;
+                skipSpaces();
+            }
+            if (position != this.end) {
+                return false;
+            }
+            patientId = (int) id;
+            timestamp = time;
+            recordTypeId = type;
+            measurementValue = value;
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        } finally {
+            this.buffer = null;
+        }
+    }
+
+    /**
+     * Returns whether the bytes of a line hold nothing but whitespace.
+     *
+     * @param source the buffer holding the line
+     * @param start  the index of the first byte of the line
+     * @param end    the index just past the last byte of the line
+     * @return true if the line is blank
+     */
+    public static boolean isBlank(ByteBuffer source, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!isSpace(source.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the patient id of the last parsed line.
+     *
+     * @return the patient id
+     */
+    public int getPatientId() {
+        return patientId;
+    }
+
+    /**
+     * Returns the timestamp of the last parsed line.
+     *
+     * @return the timestamp in milliseconds since the Unix epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the interned record type id of the last parsed line.
+     *
+     * @return the record type id, see {@link RecordTypes}
+     */
+    public int getRecordTypeId() {
+        return recordTypeId;
+    }
+
+    /**
+     * Returns the measurement value of the last parsed line.
+     *
+     * @return the measurement value
+     */
+    public double getMeasurementValue() {
+        return measurementValue;
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private void skipSpaces() {
+        while (position < end && isSpace(buffer.get(position))) {
+            position++;
+        }
+    }
+
+    private boolean skipSeparator() {
+        skipSpaces();
+        if (position < end && buffer.get(position) == ',') {
+            position++;
+            skipSpaces();
+            return true;
+        }
+        return false;
+    }
+
+    private long parseLong() {
+        skipSpaces();
+        boolean negative = false;
+        if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+        int digitsStart = position;
+        long result = 0;
+        while (position < end) {
+            int digit = buffer.get(position) - '0';
+            if (digit < 0 || digit > 9) {
+                break;
+            }
+            if (result > (Long.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Number too large");
+            }
+            result = result * 10 + digit;
+            position++;
+        }
+        if (position == digitsStart) {
+            throw new NumberFormatException("Missing digits");
+        }
+        return negative ? -result : result;
+    }
+
+    /**
+     * Parses a decimal number. When the significant digits fit in 53 bits and
+     * the decimal exponent is small, which covers everything the simulator
+     * writes, the correctly rounded value is computed from a long mantissa and
+     * an exact power of ten; anything else falls back to
+     * {@link Double#parseDouble(String)}.
+     */
+    private double parseDouble() {
+        int start = position;
+        boolean negative = false;
+        if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+            negative = buffer.get(position) == '-';
+            position++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean exact = true;
+        boolean seenPoint = false;
+        int digitsStart = position;
+        while (position < end) {
+            byte b = buffer.get(position);
+            if (b >= '0' && b <= '9') {
+                if (mantissa == 0 && b == '0') {
+                    // Leading zeros add no significant digits
+                } else if (digits < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                } else {
+                    exact = false;
+                }
+                if (seenPoint) {
+                    exponent--;
+                }
+                position++;
+            } else if (b == '.' && !seenPoint) {
+                seenPoint = true;
+                position++;
+            } else {
+                break;
+            }
+        }
+        if (position == digitsStart || (seenPoint && position == digitsStart + 1)) {
+            return parseDoubleSlow(start);
+        }
+        if (position < end && (buffer.get(position) == 'e' || buffer.get(position) == 'E')) {
+            position++;
+            long exponentPart = parseLong();
+            if (exponentPart > 400 || exponentPart < -400) {
+                exact = false;
+            } else {
+                exponent += (int) exponentPart;
+            }
+        }
+        if (!exact || mantissa >= MAX_EXACT_MANTISSA || exponent > 22 || exponent < -22) {
+            return parseDoubleSlow(start);
+        }
+        double value = exponent >= 0 ? mantissa * POWERS_OF_TEN[exponent] : mantissa / POWERS_OF_TEN[-exponent];
+        return negative ? -value : value;
+    }
+
+    private double parseDoubleSlow(int start) {
+        int stop = start;
+        while (stop < end && buffer.get(stop) != '%' && !isSpace(buffer.get(stop))) {
+            stop++;
+        }
+        byte[] bytes = new byte[stop - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        position = stop;
+        String text = new String(bytes, StandardCharsets.US_ASCII);
+        if (text.equals("triggered")) {
+            return 1;
+        }
+        if (text.equals("resolved")) {
+            return 0;
+        }
+        return Double.parseDouble(text);
+    }
+
+    private int parseRecordType() {
+        int start = position;
+        while (position < end && buffer.get(position) != ',') {
+            position++;
+        }
+        int stop = position;
+        while (stop > start && isSpace(buffer.get(stop - 1))) {
+            stop--;
+        }
+        if (stop == start) {
+            return -1;
+        }
+        int hash = 1;
+        for (int i = start; i < stop; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int mask = typeNames.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            byte[] name = typeNames[slot];
+            if (name == null) {
+                return addRecordType(slot, start, stop);
+            }
+            if (matches(name, start, stop)) {
+                return typeIds[slot];
+            }
+        }
+    }
+
+    private boolean matches(byte[] name, int start, int stop) {
+        if (name.length != stop - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int addRecordType(int slot, int start, int stop) {
+        byte[] name = new byte[stop - start];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = buffer.get(start + i);
+        }
+        int id = RecordTypes.idOf(new String(name, StandardCharsets.UTF_8));
+        typeNames[slot] = name;
+        typeIds[slot] = id;
+        if (++typeCount * 2 > typeNames.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void rehash() {
+        byte[][] oldNames = typeNames;
+        int[] oldIds = typeIds;
+        typeNames = new byte[oldNames.length * 2][];
+        typeIds = new int[oldIds.length * 2];
+        int mask = typeNames.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null) {
+                continue;
+            }
+            int hash = 1;
+            for (byte b : oldNames[i]) {
+                hash = 31 * hash + b;
+            }
+            int slot = hash & mask;
+            while (typeNames[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            typeNames[slot] = oldNames[i];
+            typeIds[slot] = oldIds[i];
+        }
+    }
+}
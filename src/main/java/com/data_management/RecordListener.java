@@ -0,0 +1,21 @@
+package com.data_management;
+
+/**
+ * Receives every reading as it is added to a {@link DataStorage}.
+ * Listeners are called on the thread that added the reading, after the
+ * reading has been stored, so implementations should be quick and must be
+ * safe to call from several threads at once.
+ */
+public interface RecordListener {
+    /**
+     * Called once for each reading added to the storage.
+     *
+     * @param patientId        the unique identifier of the patient
+     * @param recordTypeId     the interned id of the record type, see
+     *                         {@link RecordTypes}
+     * @param measurementValue the value of the health metric being recorded
+     * @param timestamp        the time at which the measurement was taken, in
+     *                         milliseconds since the Unix epoch
+     */
+    void onRecord(int patientId, int recordTypeId, double measurementValue, long timestamp);
+}
@@ -0,0 +1,81 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns record type names (e.g. "ECG", "Saturation") as small, dense
+ * integer ids so that stored series can be indexed by array position instead
+ * of by string.
+ * Ids are assigned in order of first use and never change for the lifetime of
+ * the JVM.
+ */
+public final class RecordTypes {
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private static volatile String[] names = new String[16];
+    private static int count;
+
+    private RecordTypes() {
+    }
+
+    /**
+     * Returns the id for the given record type, assigning a new one if the type
+     * has not been seen before.
+     *
+     * @param recordType the record type name
+     * @return the interned id of the record type
+     */
+    public static int idOf(String recordType) {
+        Integer id = ids.get(recordType);
+        if (id != null) {
+            return id;
+        }
+        return register(recordType);
+    }
+
+    /**
+     * Returns the id for the given record type without registering it.
+     *
+     * @param recordType the record type name
+     * @return the interned id, or -1 if the type has never been stored
+     */
+    public static int find(String recordType) {
+        Integer id = ids.get(recordType);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * Returns the record type name for an interned id.
+     *
+     * @param id an id previously returned by {@link #idOf(String)}
+     * @return the record type name
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * Returns the number of record types registered so far. Ids run from 0 to
+     * one less than this count.
+     *
+     * @return the number of registered record types
+     */
+    public static synchronized int count() {
+        return count;
+    }
+
+    private static synchronized int register(String recordType) {
+        Integer id = ids.get(recordType);
+        if (id != null) {
+            return id;
+        }
+        String[] current = names;
+        if (count == current.length) {
+            current = Arrays.copyOf(current, count * 2);
+        }
+        current[count] = recordType;
+        names = current; // publish the name before the id becomes visible
+        ids.put(recordType, count);
+        return count++;
+    }
+}
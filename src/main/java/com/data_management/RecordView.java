@@ -0,0 +1,228 @@
+package com.data_management;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * A read-only, timestamp-ordered view over a contiguous range of a
+ * {@link TimeSeries}.
+ * The view is a snapshot: readings added to the series after the view was
+ * created, including late insertions inside its range, are not visible through
+ * it.
+ * Creating a view costs two binary searches and no copying; callers that only
+ * need the raw numbers should use {@link #getTimestamp(int)} and
+ * {@link #getValue(int)}, while {@link #get(int)} builds a
+ * {@link PatientRecord} on demand.
+ */
+public class RecordView extends AbstractList<PatientRecord> implements RandomAccess {
+    private static final RecordView EMPTY = new RecordView(0, 0, null, null, 0, 0);
+
+    private final int patientId;
+    private final int recordTypeId;
+    private final long[][] timestampChunks;
+    private final double[][] valueChunks;
+    private final int from;
+    private final int to;
+
+    RecordView(int patientId, int recordTypeId, long[][] timestampChunks, double[][] valueChunks, int from, int to) {
+        this.patientId = patientId;
+        this.recordTypeId = recordTypeId;
+        this.timestampChunks = timestampChunks;
+        this.valueChunks = valueChunks;
+        this.from = from;
+        this.to = to;
+    }
+
+    /**
+     * Returns a view with no records.
+     *
+     * @return the empty view
+     */
+    public static RecordView empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the record at the given position of the view.
+     *
+     * @param index the position within the view
+     * @return a new PatientRecord holding the reading
+     */
+    @Override
+    public PatientRecord get(int index) {
+        checkIndex(index);
+        return new PatientRecord(patientId, TimeSeries.valueAt(valueChunks, from + index),
+                RecordTypes.nameOf(recordTypeId), TimeSeries.timestampAt(timestampChunks, from + index));
+    }
+
+    /**
+     * Returns the number of records in the view.
+     *
+     * @return the number of records
+     */
+    @Override
+    public int size() {
+        return to - from;
+    }
+
+    /**
+     * Returns the timestamp of the record at the given position of the view.
+     *
+     * @param index the position within the view
+     * @return the timestamp in milliseconds since the Unix epoch
+     */
+    public long getTimestamp(int index) {
+        checkIndex(index);
+        return TimeSeries.timestampAt(timestampChunks, from + index);
+    }
+
+    /**
+     * Returns the measurement value of the record at the given position of the
+     * view.
+     *
+     * @param index the position within the view
+     * @return the measurement value
+     */
+    public double getValue(int index) {
+        checkIndex(index);
+        return TimeSeries.valueAt(valueChunks, from + index);
+    }
+
+    /**
+     * Computes the count, minimum, maximum, average and last value of the
+     * readings in consecutive buckets of equal duration, in one pass over the
+     * stored readings. Readings of the view outside the time range are
+     * ignored.
+     *
+     * @param startTime   the start of the first bucket, in milliseconds since
+     *                    the Unix epoch
+     * @param endTime     the end of the time range, inclusive
+     * @param bucketCount the number of buckets to split the range into
+     * @return the statistics per bucket
+     * @throws IllegalArgumentException if the range is empty or the bucket
+     *                                  count is not positive
+     */
+    public Aggregation aggregate(long startTime, long endTime, int bucketCount) {
+        long bucketMillis = bucketMillis(startTime, endTime, bucketCount);
+        Aggregation aggregation = new Aggregation(startTime, bucketMillis, bucketCount);
+        for (int i = from; i < to; i++) {
+            long timestamp = TimeSeries.timestampAt(timestampChunks, i);
+            if (timestamp < startTime) {
+                continue;
+            }
+            if (timestamp > endTime) {
+                break;
+            }
+            aggregation.add((int) ((timestamp - startTime) / bucketMillis), TimeSeries.valueAt(valueChunks, i));
+        }
+        return aggregation;
+    }
+
+    /**
+     * Returns the smallest bucket duration that splits the time range into at
+     * most {@code bucketCount} buckets.
+     *
+     * @throws IllegalArgumentException if the range is empty or too long, or
+     *                                  the bucket count is not positive
+     */
+    static long bucketMillis(long startTime, long endTime, int bucketCount) {
+        long duration = endTime - startTime + 1;
+        if (bucketCount <= 0 || endTime < startTime || duration <= 0) {
+            throw new IllegalArgumentException(
+                    "Invalid buckets: " + bucketCount + " over " + startTime + ".." + endTime);
+        }
+        // Round up so that the last bucket ends at or after endTime
+        return Math.max(1, duration / bucketCount + (duration % bucketCount == 0 ? 0 : 1));
+    }
+
+    /**
+     * Reduces the view to at most {@code maxPoints} readings that keep the
+     * visual shape of the series, using the Largest-Triangle-Three-Buckets
+     * algorithm: the first and last readings are kept, and from each of the
+     * buckets in between the reading that forms the largest triangle with the
+     * reading kept before it and the average of the next bucket.
+     *
+     * @param maxPoints the maximum number of readings to return, at least 3
+     * @return a view of the selected readings, or this view if it already has
+     *         no more than {@code maxPoints} readings
+     * @throws IllegalArgumentException if {@code maxPoints} is less than 3
+     */
+    public RecordView downsample(int maxPoints) {
+        if (maxPoints < 3) {
+            throw new IllegalArgumentException("At least 3 points are needed: " + maxPoints);
+        }
+        int count = size();
+        if (count <= maxPoints) {
+            return this;
+        }
+        long[] timestamps = new long[maxPoints];
+        double[] values = new double[maxPoints];
+        int selected = from;
+        timestamps[0] = TimeSeries.timestampAt(timestampChunks, from);
+        values[0] = TimeSeries.valueAt(valueChunks, from);
+        double bucketSize = (double) (count - 2) / (maxPoints - 2);
+        for (int bucket = 0; bucket < maxPoints - 2; bucket++) {
+            int bucketStart = from + 1 + (int) (bucket * bucketSize);
+            int bucketEnd = from + 1 + (int) ((bucket + 1) * bucketSize);
+            // Average of the next bucket, or the last reading for the final bucket
+            int nextStart = bucketEnd;
+            int nextEnd = Math.min(from + 1 + (int) ((bucket + 2) * bucketSize), to - 1);
+            double averageTime = 0;
+            double averageValue = 0;
+            if (nextStart >= nextEnd) {
+                averageTime = TimeSeries.timestampAt(timestampChunks, to - 1);
+                averageValue = TimeSeries.valueAt(valueChunks, to - 1);
+            } else {
+                for (int i = nextStart; i < nextEnd; i++) {
+                    averageTime += TimeSeries.timestampAt(timestampChunks, i);
+                    averageValue += TimeSeries.valueAt(valueChunks, i);
+                }
+                averageTime /= nextEnd - nextStart;
+                averageValue /= nextEnd - nextStart;
+            }
+            // Times relative to the selected reading keep the products small enough for a double
+            long selectedTime = TimeSeries.timestampAt(timestampChunks, selected);
+            double selectedValue = TimeSeries.valueAt(valueChunks, selected);
+            double largestArea = -1;
+            int largest = bucketStart;
+            for (int i = bucketStart; i < bucketEnd; i++) {
+                double time = TimeSeries.timestampAt(timestampChunks, i) - selectedTime;
+                double value = TimeSeries.valueAt(valueChunks, i) - selectedValue;
+                double area = Math.abs((averageTime - selectedTime) * value - time * (averageValue - selectedValue));
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+            selected = largest;
+            timestamps[bucket + 1] = TimeSeries.timestampAt(timestampChunks, selected);
+            values[bucket + 1] = TimeSeries.valueAt(valueChunks, selected);
+        }
+        timestamps[maxPoints - 1] = TimeSeries.timestampAt(timestampChunks, to - 1);
+        values[maxPoints - 1] = TimeSeries.valueAt(valueChunks, to - 1);
+        return of(patientId, recordTypeId, timestamps, values);
+    }
+
+    /**
+     * Creates a view over readings that are not stored in a series.
+     */
+    static RecordView of(int patientId, int recordTypeId, long[] timestamps, double[] values) {
+        int chunks = (timestamps.length + TimeSeries.CHUNK_SIZE - 1) >>> TimeSeries.CHUNK_SHIFT;
+        long[][] timestampChunks = new long[chunks][];
+        double[][] valueChunks = new double[chunks][];
+        for (int chunk = 0; chunk < chunks; chunk++) {
+            int start = chunk << TimeSeries.CHUNK_SHIFT;
+            int end = Math.min(start + TimeSeries.CHUNK_SIZE, timestamps.length);
+            timestampChunks[chunk] = Arrays.copyOfRange(timestamps, start, end);
+            valueChunks[chunk] = Arrays.copyOfRange(values, start, end);
+        }
+        return new RecordView(patientId, recordTypeId, timestampChunks, valueChunks, 0, timestamps.length);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= to - from) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+        }
+    }
+}
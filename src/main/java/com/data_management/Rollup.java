@@ -0,0 +1,188 @@
+package com.data_management;
+
+import java.util.Arrays;
+
+/**
+ * Continuously maintained minimum, maximum, sum, count and last value of the
+ * readings of a {@link TimeSeries} in fixed buckets of one duration, aligned
+ * to the Unix epoch. Buckets are only stored once they receive a reading, so
+ * sparse series stay small.
+ * A rollup is not thread-safe; its series guards it with the series lock.
+ */
+final class Rollup {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final long bucketMillis;
+    private long[] bucketIds = new long[INITIAL_CAPACITY]; // Bucket start divided by bucketMillis, ascending
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private double[] minimums = new double[INITIAL_CAPACITY];
+    private double[] maximums = new double[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY];
+    private double[] lastValues = new double[INITIAL_CAPACITY];
+    private long[] lastTimestamps = new long[INITIAL_CAPACITY];
+    private int size;
+    // The latest bucket is kept in fields rather than in the arrays, so that
+    // the common case of a reading for the latest bucket touches one object
+    private long openStart;
+    private long openEnd; // Exclusive; openStart == openEnd while no bucket is open
+    private int openCount;
+    private double openMinimum;
+    private double openMaximum;
+    private double openSum;
+    private double openLastValue;
+    private long openLastTimestamp;
+
+    Rollup(long bucketMillis) {
+        if (bucketMillis <= 0) {
+            throw new IllegalArgumentException("Bucket duration must be positive: " + bucketMillis);
+        }
+        this.bucketMillis = bucketMillis;
+    }
+
+    long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    /**
+     * Adds a reading to its bucket. Readings in the latest bucket or a newer
+     * one cost constant time; a late reading for an older bucket is found by
+     * binary search.
+     */
+    void add(long timestamp, double value) {
+        if (timestamp >= openStart && timestamp < openEnd) {
+            openMinimum = Math.min(openMinimum, value);
+            openMaximum = Math.max(openMaximum, value);
+            openSum += value;
+            openCount++;
+            if (timestamp >= openLastTimestamp) {
+                openLastValue = value;
+                openLastTimestamp = timestamp;
+            }
+        } else if (openStart == openEnd || timestamp >= openEnd) {
+            if (openStart != openEnd) {
+                int index = insert(size, openStart / bucketMillis);
+                counts[index] = openCount;
+                minimums[index] = openMinimum;
+                maximums[index] = openMaximum;
+                sums[index] = openSum;
+                lastValues[index] = openLastValue;
+                lastTimestamps[index] = openLastTimestamp;
+            }
+            openStart = Math.floorDiv(timestamp, bucketMillis) * bucketMillis;
+            openEnd = openStart + bucketMillis;
+            openCount = 1;
+            openMinimum = value;
+            openMaximum = value;
+            openSum = value;
+            openLastValue = value;
+            openLastTimestamp = timestamp;
+        } else {
+            addToClosedBucket(timestamp, value);
+        }
+    }
+
+    private void addToClosedBucket(long timestamp, double value) {
+        long bucketId = Math.floorDiv(timestamp, bucketMillis);
+        int index = Arrays.binarySearch(bucketIds, 0, size, bucketId);
+        if (index < 0) {
+            index = insert(-index - 1, bucketId);
+        }
+        if (counts[index]++ == 0) {
+            minimums[index] = value;
+            maximums[index] = value;
+            lastValues[index] = value;
+            lastTimestamps[index] = timestamp;
+        } else {
+            minimums[index] = Math.min(minimums[index], value);
+            maximums[index] = Math.max(maximums[index], value);
+            if (timestamp >= lastTimestamps[index]) {
+                lastValues[index] = value;
+                lastTimestamps[index] = timestamp;
+            }
+        }
+        sums[index] += value;
+    }
+
+    /**
+     * Adds every stored bucket that starts within the aggregation's buckets
+     * to the aggregation bucket containing it. The aggregation's start and
+     * bucket duration must be multiples of this rollup's bucket duration.
+     */
+    void aggregateInto(Aggregation aggregation, long startTime, long endTime) {
+        int from = Arrays.binarySearch(bucketIds, 0, size, Math.floorDiv(startTime, bucketMillis));
+        if (from < 0) {
+            from = -from - 1;
+        }
+        long aggregationMillis = aggregation.getBucketMillis();
+        for (int i = from; i < size; i++) {
+            long bucketStart = bucketIds[i] * bucketMillis;
+            if (bucketStart > endTime) {
+                break;
+            }
+            aggregation.addSummary((int) ((bucketStart - startTime) / aggregationMillis), counts[i],
+                    minimums[i], maximums[i], sums[i], lastValues[i]);
+        }
+        if (openStart != openEnd && openStart >= startTime && openStart <= endTime) {
+            aggregation.addSummary((int) ((openStart - startTime) / aggregationMillis), openCount,
+                    openMinimum, openMaximum, openSum, openLastValue);
+        }
+    }
+
+    /**
+     * Removes the stored buckets that end at or before the cutoff; the latest
+     * bucket is kept.
+     */
+    void dropBefore(long cutoff) {
+        int dropped = 0;
+        while (dropped < size && (bucketIds[dropped] + 1) * bucketMillis <= cutoff) {
+            dropped++;
+        }
+        if (dropped == 0) {
+            return;
+        }
+        int kept = size - dropped;
+        System.arraycopy(bucketIds, dropped, bucketIds, 0, kept);
+        System.arraycopy(counts, dropped, counts, 0, kept);
+        System.arraycopy(minimums, dropped, minimums, 0, kept);
+        System.arraycopy(maximums, dropped, maximums, 0, kept);
+        System.arraycopy(sums, dropped, sums, 0, kept);
+        System.arraycopy(lastValues, dropped, lastValues, 0, kept);
+        System.arraycopy(lastTimestamps, dropped, lastTimestamps, 0, kept);
+        size = kept;
+    }
+
+    /**
+     * Returns the heap used by the allocated bucket arrays, in bytes.
+     */
+    long estimateHeapBytes() {
+        return 7 * 16L + bucketIds.length * (8L + 4 + 8 + 8 + 8 + 8 + 8);
+    }
+
+    private int insert(int index, long bucketId) {
+        if (size == bucketIds.length) {
+            int capacity = size * 2;
+            bucketIds = Arrays.copyOf(bucketIds, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+            minimums = Arrays.copyOf(minimums, capacity);
+            maximums = Arrays.copyOf(maximums, capacity);
+            sums = Arrays.copyOf(sums, capacity);
+            lastValues = Arrays.copyOf(lastValues, capacity);
+            lastTimestamps = Arrays.copyOf(lastTimestamps, capacity);
+        }
+        if (index < size) {
+            int moved = size - index;
+            System.arraycopy(bucketIds, index, bucketIds, index + 1, moved);
+            System.arraycopy(counts, index, counts, index + 1, moved);
+            System.arraycopy(minimums, index, minimums, index + 1, moved);
+            System.arraycopy(maximums, index, maximums, index + 1, moved);
+            System.arraycopy(sums, index, sums, index + 1, moved);
+            System.arraycopy(lastValues, index, lastValues, index + 1, moved);
+            System.arraycopy(lastTimestamps, index, lastTimestamps, index + 1, moved);
+        }
+        bucketIds[index] = bucketId;
+        counts[index] = 0;
+        sums[index] = 0;
+        size++;
+        return index;
+    }
+}
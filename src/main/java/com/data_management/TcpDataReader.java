@@ -0,0 +1,134 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Reads the live output of the simulator's {@code tcp:} or {@code tcp-bin:}
+ * output and stores the readings in a {@link DataStorage} as they arrive.
+ * Text lines are parsed straight from a reused buffer by a
+ * {@link RecordLineParser}; binary frames are decoded by a
+ * {@link BinaryFrameDecoder}. Neither creates objects per reading.
+ *
+ * <p>Readings are stored on the thread that reads the socket, so when storing
+ * falls behind, the reader stops reading and TCP flow control slows the
+ * sender down; with the simulator's default slow consumer policy the
+ * simulator then drops the oldest readings for this client.
+ */
+public class TcpDataReader implements DataReader, Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String host;
+    private final int port;
+    private final boolean binary;
+    private volatile SocketChannel channel;
+    private volatile boolean closed;
+    private TextLineDecoder lineDecoder;
+    private volatile long readings;
+
+    /**
+     * Constructs a TcpDataReader for a text stream.
+     *
+     * @param host the host the simulator runs on
+     * @param port the port of the simulator's TCP output
+     */
+    public TcpDataReader(String host, int port) {
+        this(host, port, false);
+    }
+
+    /**
+     * Constructs a TcpDataReader.
+     *
+     * @param host   the host the simulator runs on
+     * @param port   the port of the simulator's TCP output
+     * @param binary true for the binary frames of {@code tcp-bin:}, false for
+     *               the text lines of {@code tcp:}
+     */
+    public TcpDataReader(String host, int port, boolean binary) {
+        this.host = host;
+        this.port = port;
+        this.binary = binary;
+    }
+
+    /**
+     * Connects to the simulator and stores readings until the connection is
+     * closed by either side.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException if the connection fails or a binary frame is corrupt
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        BinaryFrameDecoder frameDecoder = binary ? new BinaryFrameDecoder() : null;
+        lineDecoder = binary ? null : new TextLineDecoder();
+        try (SocketChannel socket = SocketChannel.open(new InetSocketAddress(host, port))) {
+            channel = socket;
+            if (closed) {
+                return;
+            }
+            while (true) {
+                int read = socket.read(buffer);
+                buffer.flip();
+                if (binary) {
+                    readings += frameDecoder.decode(buffer, dataStorage);
+                    if (buffer.position() == 0 && buffer.limit() == buffer.capacity()) {
+                        // A batch frame larger than the buffer
+                        ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                        larger.put(buffer).flip();
+                        buffer = larger;
+                    }
+                } else {
+                    lineDecoder.decode(buffer, dataStorage, read < 0);
+                    readings = lineDecoder.getLines() - lineDecoder.getMalformedLines();
+                }
+                buffer.compact();
+                if (read < 0) {
+                    if (binary && buffer.position() > 0) {
+                        throw new IOException("Stream ended in the middle of a frame");
+                    }
+                    return;
+                }
+            }
+        } catch (AsynchronousCloseException e) {
+            // Closed by close(); not an error
+        }
+    }
+
+    /**
+     * Closes the connection, making a running {@link #readData} return.
+     *
+     * @throws IOException if closing the connection fails
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        SocketChannel socket = channel;
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Returns the number of readings stored so far.
+     *
+     * @return the number of readings
+     */
+    public long getReadings() {
+        return readings;
+    }
+
+    /**
+     * Returns the number of text lines that could not be parsed.
+     *
+     * @return the number of malformed lines, always 0 for binary streams
+     */
+    public long getMalformedLines() {
+        TextLineDecoder decoder = lineDecoder;
+        return decoder == null ? 0 : decoder.getMalformedLines();
+    }
+}
@@ -0,0 +1,75 @@
+package com.data_management;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits a byte stream of {@code patientId,timestamp,recordType,measurementValue}
+ * lines and stores each line through a {@link RecordLineParser}, without
+ * creating objects per line. Used by the streaming readers, which receive
+ * lines in arbitrary chunks.
+ */
+final class TextLineDecoder {
+    private final RecordLineParser parser = new RecordLineParser();
+    private long lines;
+    private long malformedLines;
+    private boolean skippingLongLine;
+
+    /**
+     * Stores every complete line in the buffer. On return the buffer is
+     * positioned at the start of the incomplete last line, if any, so the
+     * caller can compact it and read more bytes after it.
+     *
+     * @param source the bytes to decode, between position and limit
+     * @param dataStorage the storage where readings will be stored
+     * @param endOfInput true if no more bytes follow, so a last line without
+     *                   a line terminator is complete
+     */
+    void decode(ByteBuffer source, DataStorage dataStorage, boolean endOfInput) {
+        int lineStart = source.position();
+        int limit = source.limit();
+        for (int i = lineStart; i < limit; i++) {
+            if (source.get(i) == '\n') {
+                storeLine(source, lineStart, i, dataStorage);
+                lineStart = i + 1;
+            }
+        }
+        if (endOfInput && lineStart < limit) {
+            storeLine(source, lineStart, limit, dataStorage);
+            lineStart = limit;
+        } else if (lineStart == source.position() && limit - lineStart == source.capacity()) {
+            // A line longer than the whole buffer: count it once and drop the rest of it
+            if (!skippingLongLine) {
+                lines++;
+                malformedLines++;
+            }
+            skippingLongLine = true;
+            lineStart = limit;
+        }
+        source.position(lineStart);
+    }
+
+    long getLines() {
+        return lines;
+    }
+
+    long getMalformedLines() {
+        return malformedLines;
+    }
+
+    private void storeLine(ByteBuffer source, int start, int end, DataStorage dataStorage) {
+        if (skippingLongLine) {
+            skippingLongLine = false;
+            return;
+        }
+        if (RecordLineParser.isBlank(source, start, end)) {
+            return;
+        }
+        lines++;
+        if (parser.parse(source, start, end)) {
+            dataStorage.addPatientData(parser.getPatientId(), parser.getMeasurementValue(),
+                    parser.getRecordTypeId(), parser.getTimestamp());
+        } else {
+            malformedLines++;
+        }
+    }
+}
@@ -0,0 +1,419 @@
+package com.data_management;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Stores the readings of one record type for one patient in a columnar
+ * layout.
+ * Timestamps and measurement values are kept in parallel primitive arrays
+ * that are split into fixed-size chunks, so a reading costs 16 bytes of heap
+ * instead of a full {@link PatientRecord} object, and growing the series
+ * never copies the readings that are already stored.
+ * Readings are kept in timestamp order so that time-range lookups are binary
+ * searches; a reading older than the latest one is inserted at its sorted
+ * position.
+ *
+ * <p>The series is safe for concurrent use. Writers serialize on a
+ * per-series lock. Readers take an optimistic snapshot of the chunk arrays and
+ * the size, which never blocks a writer: appends only touch slots past every
+ * published size, and late insertions copy the chunks they shift instead of
+ * modifying them in place, so a snapshot keeps seeing the readings it was
+ * taken over.
+ *
+ * <p>A series may also keep {@link Rollup}s: per-bucket summaries at coarser
+ * resolutions, updated with every added reading, from which
+ * {@link #aggregate(long, long, int)} answers long-range queries without
+ * scanning the readings. Rollups are read under the series' read lock, which
+ * is held only for the few buckets a query covers.
+ */
+public class TimeSeries {
+    static final int CHUNK_SHIFT = 10;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // readings per chunk
+    static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int INITIAL_CAPACITY = 16; // sparse series stay small
+
+    private final int patientId;
+    private final int recordTypeId;
+    private final StampedLock lock = new StampedLock();
+    private final Rollup[] rollups; // Ascending bucket duration, guarded by lock
+    // Guarded by lock for writing; read through optimistic stamps
+    private long[][] timestampChunks;
+    private double[][] valueChunks;
+    private int size;
+
+    /**
+     * Constructs an empty series for the given patient and interned record
+     * type.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the id of the record type, see {@link RecordTypes}
+     */
+    public TimeSeries(int patientId, int recordTypeId) {
+        this(patientId, recordTypeId, new long[0]);
+    }
+
+    /**
+     * Constructs an empty series that maintains rollups at the given
+     * resolutions.
+     *
+     * @param patientId    the unique identifier of the patient
+     * @param recordTypeId the id of the record type, see {@link RecordTypes}
+     * @param rollupMillis the bucket durations of the rollups, in milliseconds
+     */
+    public TimeSeries(int patientId, int recordTypeId, long... rollupMillis) {
+        this.patientId = patientId;
+        this.recordTypeId = recordTypeId;
+        long[] durations = rollupMillis.clone();
+        Arrays.sort(durations);
+        this.rollups = new Rollup[durations.length];
+        for (int i = 0; i < durations.length; i++) {
+            rollups[i] = new Rollup(durations[i]);
+        }
+        this.timestampChunks = new long[][] { new long[INITIAL_CAPACITY] };
+        this.valueChunks = new double[][] { new double[INITIAL_CAPACITY] };
+    }
+
+    /**
+     * Adds a reading to the series, keeping the series ordered by timestamp.
+     * Readings arriving in order are appended in constant time; a late reading
+     * is inserted after all readings with the same or an earlier timestamp.
+     *
+     * @param timestamp        the time of the reading, in milliseconds since
+     *                         the Unix epoch
+     * @param measurementValue the measured value
+     */
+    public void add(long timestamp, double measurementValue) {
+        long stamp = lock.writeLock();
+        try {
+            ensureCapacity(size >>> CHUNK_SHIFT, size & CHUNK_MASK);
+            int index = size;
+            if (size > 0 && timestamp < timestampChunks[(size - 1) >>> CHUNK_SHIFT][(size - 1) & CHUNK_MASK]) {
+                index = upperBound(timestampChunks, size, timestamp);
+                shiftRight(index);
+            }
+            timestampChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = timestamp;
+            valueChunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK] = measurementValue;
+            size++;
+            for (Rollup rollup : rollups) {
+                rollup.add(timestamp, measurementValue);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns a consistent view of the readings taken within a time range.
+     *
+     * @param startTime the start of the time range, in milliseconds since the
+     *                  Unix epoch
+     * @param endTime   the end of the time range, in milliseconds since the Unix
+     *                  epoch
+     * @return a view of the matching readings, ordered by timestamp
+     */
+    public RecordView range(long startTime, long endTime) {
+        long[][] timestamps;
+        double[][] values;
+        int count;
+        long stamp = lock.tryOptimisticRead();
+        timestamps = timestampChunks;
+        values = valueChunks;
+        count = size;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                timestamps = timestampChunks;
+                values = valueChunks;
+                count = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        if (startTime > endTime) {
+            return RecordView.empty();
+        }
+        int from = lowerBound(timestamps, count, startTime);
+        int to = upperBound(timestamps, count, endTime);
+        return new RecordView(patientId, recordTypeId, timestamps, values, from, to);
+    }
+
+    /**
+     * Returns a consistent view of all readings in the series.
+     *
+     * @return a view of every reading, ordered by timestamp
+     */
+    public RecordView snapshot() {
+        return range(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Computes per-bucket statistics over a time range, like
+     * {@link RecordView#aggregate(long, long, int)}, but from the coarsest
+     * rollup whose buckets are no longer than the requested ones, if there is
+     * one. The result's buckets are then aligned to that rollup: the first
+     * bucket starts at the rollup bucket containing {@code startTime}, the
+     * bucket duration is a multiple of the rollup's and the last bucket may
+     * extend past {@code endTime}. There are never more than
+     * {@code bucketCount} buckets.
+     *
+     * @param startTime   the start of the time range, in milliseconds since the
+     *                    Unix epoch
+     * @param endTime     the end of the time range, inclusive
+     * @param bucketCount the maximum number of buckets
+     * @return the statistics per bucket
+     * @throws IllegalArgumentException if the range is empty or the bucket
+     *                                  count is not positive
+     */
+    public Aggregation aggregate(long startTime, long endTime, int bucketCount) {
+        long bucketMillis = RecordView.bucketMillis(startTime, endTime, bucketCount);
+        Rollup rollup = null;
+        for (Rollup candidate : rollups) {
+            if (candidate.getBucketMillis() <= bucketMillis) {
+                rollup = candidate;
+            }
+        }
+        if (rollup == null) {
+            return range(startTime, endTime).aggregate(startTime, endTime, bucketCount);
+        }
+        long rollupMillis = rollup.getBucketMillis();
+        long alignedStart = Math.floorDiv(startTime, rollupMillis) * rollupMillis;
+        long span = endTime - alignedStart + 1;
+        long alignedMillis = (bucketMillis + rollupMillis - 1) / rollupMillis * rollupMillis;
+        while ((span + alignedMillis - 1) / alignedMillis > bucketCount) {
+            // Aligning the start widened the range
+            alignedMillis += rollupMillis;
+        }
+        int alignedCount = (int) ((span + alignedMillis - 1) / alignedMillis);
+        Aggregation aggregation = new Aggregation(alignedStart, alignedMillis, alignedCount);
+        long stamp = lock.readLock();
+        try {
+            rollup.aggregateInto(aggregation, alignedStart, alignedStart + alignedMillis * alignedCount - 1);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return aggregation;
+    }
+
+    /**
+     * Drops readings older than the cutoff, a whole chunk at a time: only
+     * chunks whose readings are all older than the cutoff are dropped, and the
+     * chunk holding the latest reading is always kept. The chunk table is
+     * replaced rather than modified, so snapshots taken earlier keep seeing
+     * every reading they were taken over, and the write lock is only held to
+     * copy the table.
+     *
+     * @param cutoff the oldest timestamp to keep, in milliseconds since the
+     *               Unix epoch
+     * @return the number of readings dropped
+     */
+    public int dropReadingsBefore(long cutoff) {
+        long stamp = lock.writeLock();
+        try {
+            if (size == 0) {
+                return 0;
+            }
+            int chunks = Math.min(lowerBound(timestampChunks, size, cutoff), size - 1) >>> CHUNK_SHIFT;
+            if (chunks == 0) {
+                return 0;
+            }
+            long[][] timestamps = new long[timestampChunks.length - chunks][];
+            double[][] values = new double[timestampChunks.length - chunks][];
+            System.arraycopy(timestampChunks, chunks, timestamps, 0, timestampChunks.length - chunks);
+            System.arraycopy(valueChunks, chunks, values, 0, valueChunks.length - chunks);
+            timestampChunks = timestamps;
+            valueChunks = values;
+            int dropped = chunks << CHUNK_SHIFT;
+            size -= dropped;
+            return dropped;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Drops the rollup buckets that end at or before the cutoff. The latest
+     * bucket of each rollup is always kept.
+     *
+     * @param cutoff the oldest timestamp to keep, in milliseconds since the
+     *               Unix epoch
+     */
+    public void dropRollupsBefore(long cutoff) {
+        long stamp = lock.writeLock();
+        try {
+            for (Rollup rollup : rollups) {
+                rollup.dropBefore(cutoff);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the timestamp of the latest reading in the series.
+     *
+     * @return the timestamp in milliseconds since the Unix epoch, or
+     *         {@code Long.MIN_VALUE} if the series is empty
+     */
+    public long getLatestTimestamp() {
+        RecordView view = snapshot();
+        return view.isEmpty() ? Long.MIN_VALUE : view.getTimestamp(view.size() - 1);
+    }
+
+    /**
+     * Returns the number of readings in the series.
+     *
+     * @return the number of readings
+     */
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int count = size;
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                count = size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the interned id of this series' record type.
+     *
+     * @return the record type id
+     */
+    public int getRecordTypeId() {
+        return recordTypeId;
+    }
+
+    /**
+     * Returns the record type name of this series.
+     *
+     * @return the record type
+     */
+    public String getRecordType() {
+        return RecordTypes.nameOf(recordTypeId);
+    }
+
+    /**
+     * Returns an estimate of the heap used by the readings and rollups of this
+     * series, including unused capacity of the allocated chunks.
+     *
+     * @return the estimated size in bytes
+     */
+    public long estimateHeapBytes() {
+        long stamp = lock.readLock();
+        try {
+            long bytes = 0;
+            for (int i = 0; i < timestampChunks.length && timestampChunks[i] != null; i++) {
+                bytes += 2 * (16 + 8L * timestampChunks[i].length); // array header plus 8-byte slots
+            }
+            for (Rollup rollup : rollups) {
+                bytes += rollup.estimateHeapBytes();
+            }
+            return bytes;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    static long timestampAt(long[][] timestamps, int index) {
+        return timestamps[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    static double valueAt(double[][] values, int index) {
+        return values[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    /**
+     * Returns the index of the first of {@code count} readings with a timestamp
+     * not less than {@code timestamp}, or {@code count} if there is none.
+     */
+    private static int lowerBound(long[][] timestamps, int count, long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(timestamps, mid) < timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the index of the first of {@code count} readings with a timestamp
+     * greater than {@code timestamp}, or {@code count} if there is none.
+     */
+    private static int upperBound(long[][] timestamps, int count, long timestamp) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestampAt(timestamps, mid) <= timestamp) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Moves the readings from {@code index} to the end of the series one slot
+     * towards the end, copying whole chunk segments where possible. The slot
+     * at {@code size} must already be allocated. The affected chunks are
+     * replaced by copies so that published snapshots are left untouched.
+     */
+    private void shiftRight(int index) {
+        long[][] timestamps = timestampChunks.clone();
+        double[][] values = valueChunks.clone();
+        for (int chunk = index >>> CHUNK_SHIFT; chunk <= size >>> CHUNK_SHIFT; chunk++) {
+            timestamps[chunk] = timestamps[chunk].clone();
+            values[chunk] = values[chunk].clone();
+        }
+        int position = size; // destination of the reading currently at position - 1
+        while (position > index) {
+            int chunk = position >>> CHUNK_SHIFT;
+            int offset = position & CHUNK_MASK;
+            if (offset == 0) {
+                // The reading crosses from the end of the previous chunk
+                timestamps[chunk][0] = timestamps[chunk - 1][CHUNK_MASK];
+                values[chunk][0] = values[chunk - 1][CHUNK_MASK];
+                position--;
+                continue;
+            }
+            int count = Math.min(offset, position - index);
+            System.arraycopy(timestamps[chunk], offset - count, timestamps[chunk], offset - count + 1, count);
+            System.arraycopy(values[chunk], offset - count, values[chunk], offset - count + 1, count);
+            position -= count;
+        }
+        timestampChunks = timestamps;
+        valueChunks = values;
+    }
+
+    private void ensureCapacity(int chunk, int offset) {
+        if (chunk == 0) {
+            long[] first = timestampChunks[0];
+            if (offset == first.length) {
+                // Replace the chunk table rather than mutating it under readers
+                int capacity = Math.min(first.length * 2, CHUNK_SIZE);
+                timestampChunks = new long[][] { Arrays.copyOf(first, capacity) };
+                valueChunks = new double[][] { Arrays.copyOf(valueChunks[0], capacity) };
+            }
+            return;
+        }
+        if (chunk == timestampChunks.length) {
+            timestampChunks = Arrays.copyOf(timestampChunks, chunk * 2);
+            valueChunks = Arrays.copyOf(valueChunks, chunk * 2);
+        }
+        if (timestampChunks[chunk] == null) {
+            timestampChunks[chunk] = new long[CHUNK_SIZE];
+            valueChunks[chunk] = new double[CHUNK_SIZE];
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+/**
+ * Reads the live output of the simulator's {@code websocket:} or
+ * {@code websocket-bin:} output and stores the readings in a
+ * {@link DataStorage} as they arrive. Text messages are copied into a reused
+ * buffer and parsed by a {@link RecordLineParser}; binary messages are decoded
+ * by a {@link BinaryFrameDecoder}.
+ *
+ * <p>Readings are stored on the thread that receives the messages, so when
+ * storing falls behind, the client stops reading and TCP flow control slows
+ * the server down.
+ */
+public class WebSocketDataReader implements DataReader, Closeable {
+    private final URI uri;
+    private final boolean binary;
+    private volatile Client client;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a WebSocketDataReader for a text stream.
+     *
+     * @param uri the address of the simulator's WebSocket output, such as
+     *            {@code ws://localhost:8080}
+     */
+    public WebSocketDataReader(URI uri) {
+        this(uri, false);
+    }
+
+    /**
+     * Constructs a WebSocketDataReader.
+     *
+     * @param uri    the address of the simulator's WebSocket output
+     * @param binary true for the binary frames of {@code websocket-bin:}, false
+     *               for the text messages of {@code websocket:}
+     */
+    public WebSocketDataReader(URI uri, boolean binary) {
+        this.uri = uri;
+        this.binary = binary;
+    }
+
+    /**
+     * Connects to the simulator and stores readings until the connection is
+     * closed by either side.
+     *
+     * @param dataStorage the storage where data will be stored
+     * @throws IOException if the connection fails or a binary frame is corrupt
+     */
+    @Override
+    public void readData(DataStorage dataStorage) throws IOException {
+        Client current = new Client(uri, binary, dataStorage);
+        client = current;
+        try {
+            if (closed) {
+                return;
+            }
+            if (!current.connectBlocking()) {
+                throw new IOException("Cannot connect to " + uri, current.failure);
+            }
+            current.closedLatch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current.close();
+            throw new IOException("Interrupted while reading " + uri, e);
+        }
+        if (current.failure != null && !closed) {
+            throw new IOException("Error reading " + uri, current.failure);
+        }
+    }
+
+    /**
+     * Closes the connection, making a running {@link #readData} return.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Client current = client;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    /**
+     * Returns the number of readings stored so far.
+     *
+     * @return the number of readings
+     */
+    public long getReadings() {
+        Client current = client;
+        return current == null ? 0 : current.readings;
+    }
+
+    /**
+     * Returns the number of text messages that could not be parsed.
+     *
+     * @return the number of malformed messages, always 0 for binary streams
+     */
+    public long getMalformedLines() {
+        Client current = client;
+        return current == null ? 0 : current.lineDecoder.getMalformedLines();
+    }
+
+    private static class Client extends WebSocketClient {
+        private final boolean binary;
+        private final DataStorage dataStorage;
+        private final TextLineDecoder lineDecoder = new TextLineDecoder();
+        private final BinaryFrameDecoder frameDecoder = new BinaryFrameDecoder();
+        private final CountDownLatch closedLatch = new CountDownLatch(1);
+        private ByteBuffer lineBuffer = ByteBuffer.allocate(256);
+        private ByteBuffer frameBuffer = ByteBuffer.allocate(64 * 1024);
+        private volatile long readings;
+        private volatile Exception failure;
+
+        Client(URI uri, boolean binary, DataStorage dataStorage) {
+            super(uri);
+            this.binary = binary;
+            this.dataStorage = dataStorage;
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+            // Nothing to send; the server starts streaming on its own
+        }
+
+        @Override
+        public void onMessage(String message) {
+            if (binary) {
+                return;
+            }
+            // Each message is one line of ASCII text
+            if (message.length() > lineBuffer.capacity()) {
+                lineBuffer = ByteBuffer.allocate(message.length());
+            }
+            lineBuffer.clear();
+            for (int i = 0; i < message.length(); i++) {
+                lineBuffer.put((byte) message.charAt(i));
+            }
+            lineBuffer.flip();
+            lineDecoder.decode(lineBuffer, dataStorage, true);
+            readings = lineDecoder.getLines() - lineDecoder.getMalformedLines();
+        }
+
+        @Override
+        public void onMessage(ByteBuffer message) {
+            if (!binary) {
+                return;
+            }
+            // Frames are not split across messages, but keep a tail just in case
+            if (frameBuffer.remaining() < message.remaining()) {
+                ByteBuffer larger = ByteBuffer.allocate(frameBuffer.position() + message.remaining());
+                frameBuffer.flip();
+                larger.put(frameBuffer);
+                frameBuffer = larger;
+            }
+            frameBuffer.put(message).flip();
+            try {
+                readings += frameDecoder.decode(frameBuffer, dataStorage);
+            } catch (IOException e) {
+                failure = e;
+                close();
+            }
+            frameBuffer.compact();
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+            closedLatch.countDown();
+        }
+
+        @Override
+        public void onError(Exception ex) {
+            if (failure == null) {
+                failure = ex;
+            }
+        }
+    }
+}
@@ -0,0 +1,644 @@
+package com.data_management;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Makes a {@link DataStorage} durable across restarts with an append-only
+ * write-ahead log and periodic snapshots in a directory.
+ *
+ * <p>Constructing the log first recovers the storage: the latest snapshot is
+ * loaded, then the log segments written after it are replayed. Recovered
+ * readings are stored without notifying the storage's listeners, which saw
+ * them when they were first added; derived readings, such as those of an
+ * {@link RPeakDetector}, were logged too and are recovered as they were. The
+ * log then registers as a {@link RecordListener} and appends every added
+ * reading to an in-memory buffer, in the binary frame format of
+ * {@link BinaryFrameDecoder} (a 23-byte reading frame, with a label definition
+ * the first time a record type appears in a segment). A background writer thread commits the buffered
+ * readings in groups: every commit interval, or sooner once half the buffer is
+ * filled, it swaps in a second buffer, writes the full one with a single
+ * {@code write} and forces it to disk. Adding a reading therefore never waits
+ * for the disk unless the writer falls a whole buffer behind, and a crash loses
+ * at most the readings of the last commit interval. {@link #sync()} makes the
+ * writer commit at once and waits until everything appended so far is
+ * durable.
+ *
+ * <p>{@link #snapshot()} writes every stored series to a snapshot file as
+ * batch frames and then deletes the segments and older snapshots it covers,
+ * so the log never grows much beyond the stored data. Adding readings only
+ * pauses while the snapshot waits for the readings being added, marks the end
+ * of the current segment at the last of them and captures a view of every
+ * series; the snapshot then holds exactly the readings logged before the mark,
+ * and readings added while it is written go to the next segment. Recovery
+ * therefore replays every segment after the snapshot in full.
+ * Only raw readings are persisted: rollup buckets are rebuilt from the
+ * readings, so rollup history older than the readings left by retention is not
+ * recovered.
+ *
+ * <p>Files are named {@code wal-<sequence>.log} and
+ * {@code snapshot-<sequence>.bin}, where a snapshot's sequence is that of the
+ * last segment it includes.
+ */
+public class WriteAheadLog implements RecordListener, Closeable {
+    /** Default time between group commits, in milliseconds. */
+    public static final long DEFAULT_COMMIT_INTERVAL_MILLIS = 10;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_BATCH = 4096; // Readings per snapshot batch frame, well within a buffer
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private final Path directory;
+    private final DataStorage storage;
+    private final long commitIntervalMillis;
+    private final RecoveryReport recoveryReport;
+    private final Thread writer;
+    private final IngestGate gate;
+    private final Object snapshotLock = new Object();
+    private ScheduledExecutorService snapshotExecutor; // Guarded by snapshotLock
+
+    // Guarded by this
+    private ByteBuffer active = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private ByteBuffer spare = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private boolean[] definedTypes = new boolean[16]; // Labels defined in the current segment
+    private long appended; // Readings appended to the buffers
+    private long durable; // Readings forced to disk
+    private long syncTarget; // Readings a sync() is waiting for
+    private boolean rotationRequested;
+    private int rotationMark; // Position in the active buffer where the next segment starts
+    private long closedSegment; // Sequence of the segment closed by the last rotation
+    private boolean closing;
+    private IOException failure;
+
+    // Owned by the writer thread
+    private FileChannel channel;
+    private long segment;
+
+    /**
+     * Recovers the storage from the given directory and starts logging the
+     * readings added to it, with the default commit interval.
+     *
+     * @param directoryPath the directory holding the log and snapshots; created
+     *                      if it does not exist
+     * @param storage       the storage to recover into and log
+     * @throws IOException if the directory cannot be read or a snapshot is
+     *                     corrupt
+     */
+    public WriteAheadLog(String directoryPath, DataStorage storage) throws IOException {
+        this(directoryPath, storage, DEFAULT_COMMIT_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Recovers the storage from the given directory and starts logging the
+     * readings added to it. The storage should not be fed until the
+     * constructor returns, or readings added meanwhile are not logged.
+     *
+     * @param directoryPath        the directory holding the log and snapshots;
+     *                             created if it does not exist
+     * @param storage              the storage to recover into and log
+     * @param commitIntervalMillis the longest time a reading waits in memory
+     *                             before it is written and forced to disk
+     * @throws IOException if the directory cannot be read or a snapshot is
+     *                     corrupt
+     */
+    public WriteAheadLog(String directoryPath, DataStorage storage, long commitIntervalMillis) throws IOException {
+        if (commitIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Commit interval must be positive: " + commitIntervalMillis);
+        }
+        this.directory = Paths.get(directoryPath);
+        this.storage = storage;
+        this.commitIntervalMillis = commitIntervalMillis;
+        Files.createDirectories(directory);
+        this.recoveryReport = recover();
+        this.channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        this.gate = storage.getIngestGate();
+        storage.addListener(this);
+        this.writer = new Thread(this::runWriter, "wal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Returns what was loaded when the log was opened.
+     *
+     * @return the recovery report
+     */
+    public RecoveryReport getRecoveryReport() {
+        return recoveryReport;
+    }
+
+    /**
+     * Appends a reading to the log. Called by the storage for every added
+     * reading; returns once the reading is buffered, before it is durable.
+     * If the writer has failed, the reading is not logged and the failure is
+     * reported by {@link #sync()}.
+     */
+    @Override
+    public synchronized void onRecord(int patientId, int recordTypeId, double measurementValue, long timestamp) {
+        byte[] label = null;
+        while (!closing && failure == null) {
+            boolean defined = recordTypeId < definedTypes.length && definedTypes[recordTypeId];
+            label = defined ? null : RecordTypes.nameOf(recordTypeId).getBytes(StandardCharsets.UTF_8);
+            int needed = 1 + BinaryFrameDecoder.READING_SIZE + (defined ? 0 : 5 + label.length);
+            if (active.remaining() >= needed) {
+                break;
+            }
+            // The writer is a whole buffer behind: wait for it to swap buffers
+            notifyAll();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        if (closing || failure != null) {
+            return;
+        }
+        if (label != null) {
+            if (recordTypeId >= definedTypes.length) {
+                definedTypes = Arrays.copyOf(definedTypes, Math.max(recordTypeId + 1, definedTypes.length * 2));
+            }
+            definedTypes[recordTypeId] = true;
+            putLabel(active, recordTypeId, label);
+        }
+        int before = active.position();
+        active.put(BinaryFrameDecoder.READING_FRAME);
+        putReading(active, patientId, timestamp, recordTypeId, measurementValue);
+        appended++;
+        if (before < BUFFER_SIZE / 2 && active.position() >= BUFFER_SIZE / 2) {
+            notifyAll(); // Commit early rather than let appenders wait
+        }
+    }
+
+    /**
+     * Commits the readings appended so far without waiting for the commit
+     * interval, and waits until they have been forced to disk.
+     *
+     * @throws IOException if the log could not be written
+     */
+    public synchronized void sync() throws IOException {
+        long target = appended;
+        syncTarget = Math.max(syncTarget, target);
+        notifyAll();
+        while (durable < target && failure == null && writer.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the log", e);
+            }
+        }
+        if (failure != null) {
+            throw new IOException("Write-ahead log failed", failure);
+        }
+    }
+
+    /**
+     * Writes a snapshot of the storage and deletes the log segments and
+     * snapshots it makes redundant. Ingestion only pauses while every series is
+     * captured and continues while the snapshot is written; only one snapshot
+     * is written at a time.
+     *
+     * @throws IOException if the snapshot could not be written
+     */
+    public void snapshot() throws IOException {
+        synchronized (snapshotLock) {
+            List<CapturedSeries> captured = gate.whileClosed(this::capture);
+            if (captured == null) {
+                throw new IOException("Write-ahead log is closed");
+            }
+            long included = awaitRotation();
+            Path temporary = directory.resolve(SNAPSHOT_PREFIX + "tmp");
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeSnapshot(out, captured);
+                out.force(true);
+            }
+            Files.move(temporary, snapshotPath(included), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            for (long sequence : list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)) {
+                if (sequence < included) {
+                    Files.deleteIfExists(snapshotPath(sequence));
+                }
+            }
+            for (long sequence : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+                if (sequence <= included) {
+                    Files.deleteIfExists(segmentPath(sequence));
+                }
+            }
+        }
+    }
+
+    /**
+     * Starts writing snapshots periodically on a background thread, replacing
+     * any periodic snapshots started before. A failed snapshot is reported on
+     * standard error and retried at the next interval.
+     *
+     * @param intervalMillis how often a snapshot is written
+     */
+    public void startSnapshots(long intervalMillis) {
+        synchronized (snapshotLock) {
+            stopSnapshots();
+            snapshotExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "wal-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+            snapshotExecutor.scheduleWithFixedDelay(() -> {
+                try {
+                    snapshot();
+                } catch (IOException e) {
+                    System.err.println("Snapshot failed: " + e.getMessage());
+                }
+            }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots started by {@link #startSnapshots(long)}.
+     */
+    public void stopSnapshots() {
+        ScheduledExecutorService executor;
+        synchronized (snapshotLock) {
+            executor = snapshotExecutor;
+            snapshotExecutor = null;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Stops logging, commits the buffered readings and closes the current
+     * segment. Readings added to the storage afterwards are not logged.
+     *
+     * @throws IOException if the last commit failed
+     */
+    @Override
+    public void close() throws IOException {
+        stopSnapshots();
+        storage.removeListener(this);
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the log", e);
+        }
+        synchronized (this) {
+            if (failure != null) {
+                throw new IOException("Write-ahead log failed", failure);
+            }
+        }
+    }
+
+    private void runWriter() {
+        try {
+            while (true) {
+                ByteBuffer full;
+                long committed;
+                boolean rotate;
+                int mark;
+                boolean last;
+                synchronized (this) {
+                    long deadline = System.nanoTime() + commitIntervalMillis * 1_000_000;
+                    long remaining = commitIntervalMillis;
+                    while (!closing && !rotationRequested && syncTarget <= durable
+                            && active.position() < BUFFER_SIZE / 2 && remaining > 0) {
+                        wait(remaining);
+                        remaining = (deadline - System.nanoTime()) / 1_000_000;
+                    }
+                    full = active;
+                    active = spare;
+                    spare = full;
+                    committed = appended;
+                    rotate = rotationRequested;
+                    mark = rotationMark;
+                    last = closing;
+                    notifyAll(); // Appenders waiting for space
+                }
+                full.flip();
+                if (rotate) {
+                    // The readings before the mark end the current segment
+                    ByteBuffer closingPart = full.duplicate();
+                    closingPart.limit(mark);
+                    while (closingPart.hasRemaining()) {
+                        channel.write(closingPart);
+                    }
+                    channel.force(false);
+                    channel.close();
+                    long previous = segment;
+                    segment++;
+                    channel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE_NEW,
+                            StandardOpenOption.WRITE);
+                    full.position(mark);
+                    synchronized (this) {
+                        closedSegment = previous;
+                        rotationRequested = false;
+                        notifyAll();
+                    }
+                }
+                while (full.hasRemaining()) {
+                    channel.write(full);
+                }
+                full.clear();
+                channel.force(false);
+                synchronized (this) {
+                    durable = committed;
+                    notifyAll();
+                }
+                if (last) {
+                    channel.close();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            synchronized (this) {
+                failure = e;
+                notifyAll();
+            }
+            try {
+                channel.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+        } catch (InterruptedException e) {
+            synchronized (this) {
+                failure = new IOException("Log writer interrupted", e);
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Marks the end of the current segment after the last appended reading and
+     * captures a view of every stored series. Runs while no reading is being
+     * added, so the views hold exactly the readings logged before the mark.
+     *
+     * @return the captured series, or null if the log is closed
+     */
+    private List<CapturedSeries> capture() {
+        synchronized (this) {
+            if (closing || failure != null) {
+                return null;
+            }
+            rotationRequested = true;
+            rotationMark = active.position();
+            // Readings appended from now on go to the next segment, which needs its own labels
+            Arrays.fill(definedTypes, false);
+            notifyAll();
+        }
+        List<CapturedSeries> captured = new ArrayList<>();
+        for (Patient patient : storage.getAllPatients()) {
+            for (TimeSeries series : patient.getAllSeries()) {
+                RecordView view = series.snapshot();
+                if (!view.isEmpty()) {
+                    captured.add(new CapturedSeries(patient.getPatientId(), series, view));
+                }
+            }
+        }
+        return captured;
+    }
+
+    /**
+     * Waits until the writer has closed the segment marked by
+     * {@link #capture()}.
+     *
+     * @return the sequence of the segment that was closed
+     */
+    private synchronized long awaitRotation() throws IOException {
+        while (rotationRequested && failure == null && writer.isAlive()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the log", e);
+            }
+        }
+        if (rotationRequested) {
+            throw new IOException("Write-ahead log failed", failure);
+        }
+        return closedSegment;
+    }
+
+    private void writeSnapshot(FileChannel out, List<CapturedSeries> captured) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        boolean[] defined = new boolean[16];
+        for (CapturedSeries series : captured) {
+            RecordView view = series.view;
+            int typeId = series.series.getRecordTypeId();
+            if (typeId >= defined.length) {
+                defined = Arrays.copyOf(defined, Math.max(typeId + 1, defined.length * 2));
+            }
+            if (!defined[typeId]) {
+                defined[typeId] = true;
+                byte[] label = series.series.getRecordType().getBytes(StandardCharsets.UTF_8);
+                ensureSpace(out, buffer, 5 + label.length);
+                putLabel(buffer, typeId, label);
+            }
+            int patientId = series.patientId;
+            for (int from = 0; from < view.size(); from += MAX_BATCH) {
+                int count = Math.min(MAX_BATCH, view.size() - from);
+                ensureSpace(out, buffer, 3);
+                buffer.put(BinaryFrameDecoder.BATCH_FRAME);
+                buffer.putShort((short) count);
+                for (int i = from; i < from + count; i++) {
+                    ensureSpace(out, buffer, BinaryFrameDecoder.READING_SIZE);
+                    putReading(buffer, patientId, view.getTimestamp(i), typeId, view.getValue(i));
+                }
+            }
+        }
+        flush(out, buffer);
+    }
+
+    private RecoveryReport recover() throws IOException {
+        long startNanos = System.nanoTime();
+        List<Long> snapshots = list(SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+        long snapshotSequence = snapshots.isEmpty() ? -1 : snapshots.get(snapshots.size() - 1);
+        long snapshotReadings = 0;
+        if (snapshotSequence >= 0) {
+            snapshotReadings = load(snapshotPath(snapshotSequence), this::store, false);
+        }
+        long replayed = 0;
+        long last = snapshotSequence;
+        for (long sequence : list(SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (sequence <= snapshotSequence) {
+                continue; // Left behind by a snapshot that failed to delete it
+            }
+            replayed += load(segmentPath(sequence), this::store, true);
+            last = sequence;
+        }
+        segment = last + 1;
+        return new RecoveryReport(snapshotReadings, replayed, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Decodes a file into the storage. A log segment may end in a partial
+     * frame if the process stopped while it was written; that frame is
+     * ignored. A snapshot is complete or absent, so a partial frame means it
+     * is corrupt.
+     */
+    private long load(Path file, RecordListener sink, boolean tornTailAllowed) throws IOException {
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        long readings = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                readings += decoder.decode(buffer, sink);
+                if (buffer.remaining() == buffer.capacity()) {
+                    throw new IOException("Frame larger than " + BUFFER_SIZE + " bytes in " + file);
+                }
+                buffer.compact();
+            }
+        }
+        if (buffer.position() > 0 && !tornTailAllowed) {
+            throw new IOException("Snapshot ends in a partial frame: " + file);
+        }
+        return readings;
+    }
+
+    private void store(int patientId, int recordTypeId, double measurementValue, long timestamp) {
+        storage.restorePatientData(patientId, measurementValue, recordTypeId, timestamp);
+    }
+
+    private static void putLabel(ByteBuffer buffer, int recordTypeId, byte[] label) {
+        buffer.put(BinaryFrameDecoder.LABEL_FRAME);
+        buffer.putShort((short) recordTypeId);
+        buffer.putShort((short) label.length);
+        buffer.put(label);
+    }
+
+    private static void putReading(ByteBuffer buffer, int patientId, long timestamp, int recordTypeId,
+            double value) {
+        buffer.putInt(patientId);
+        buffer.putLong(timestamp);
+        buffer.putShort((short) recordTypeId);
+        buffer.putDouble(value);
+    }
+
+    private static void ensureSpace(FileChannel out, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(out, buffer);
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private List<Long> list(String prefix, String suffix) throws IOException {
+        List<Long> sequences = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    sequences.add(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(sequences);
+        return sequences;
+    }
+
+    private Path segmentPath(long sequence) {
+        return directory.resolve(String.format("%s%016d%s", SEGMENT_PREFIX, sequence, SEGMENT_SUFFIX));
+    }
+
+    private Path snapshotPath(long sequence) {
+        return directory.resolve(String.format("%s%016d%s", SNAPSHOT_PREFIX, sequence, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * A series as captured for a snapshot.
+     */
+    private static final class CapturedSeries {
+        final int patientId;
+        final TimeSeries series;
+        final RecordView view;
+
+        CapturedSeries(int patientId, TimeSeries series, RecordView view) {
+            this.patientId = patientId;
+            this.series = series;
+            this.view = view;
+        }
+    }
+
+    /**
+     * Summary of a recovery.
+     */
+    public static final class RecoveryReport {
+        private final long snapshotReadings;
+        private final long replayedReadings;
+        private final long elapsedNanos;
+
+        RecoveryReport(long snapshotReadings, long replayedReadings, long elapsedNanos) {
+            this.snapshotReadings = snapshotReadings;
+            this.replayedReadings = replayedReadings;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Returns the number of readings loaded from the snapshot.
+         *
+         * @return the number of snapshot readings, 0 without a snapshot
+         */
+        public long getSnapshotReadings() {
+            return snapshotReadings;
+        }
+
+        /**
+         * Returns the number of readings replayed from the log segments.
+         *
+         * @return the number of replayed readings
+         */
+        public long getReplayedReadings() {
+            return replayedReadings;
+        }
+
+        /**
+         * Returns the wall-clock time of the recovery.
+         *
+         * @return the elapsed time in nanoseconds
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Recovered %d snapshot readings and %d logged readings in %d ms", snapshotReadings,
+                    replayedReadings, elapsedNanos / 1_000_000);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.AcceleratedScheduler;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.outputs.Labels;
+import com.cardio_generator.outputs.OutputStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+class AcceleratedSchedulerTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final int PATIENTS = 20;
+
+    /**
+     * Generates an hour of ECG, saturation and blood pressure data for every
+     * patient and returns the readings per patient, as "timestamp label value".
+     */
+    private static Map<Integer, List<String>> generateHour(int workers, double speed) throws InterruptedException {
+        SplittableRandom master = new SplittableRandom(7);
+        ECGDataGenerator ecg = new ECGDataGenerator(PATIENTS, master.split());
+        BloodSaturationDataGenerator saturation = new BloodSaturationDataGenerator(PATIENTS, master.split());
+        BloodPressureDataGenerator pressure = new BloodPressureDataGenerator(PATIENTS, master.split());
+        AcceleratedScheduler scheduler = new AcceleratedScheduler(START, TimeUnit.HOURS.toMillis(1), speed, workers);
+        for (int p = 1; p <= PATIENTS; p++) {
+            scheduler.schedule(p, ecg, 0, 1, TimeUnit.SECONDS);
+            scheduler.schedule(p, saturation, 0, 1, TimeUnit.SECONDS);
+            scheduler.schedule(p, pressure, p, 60, TimeUnit.SECONDS);
+        }
+        Map<Integer, List<String>> readings = new ConcurrentHashMap<>();
+        scheduler.start(new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("Generators should use the primitive form");
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, int labelId, double value) {
+                // A patient's readings all come from one worker
+                readings.computeIfAbsent(patientId, k -> new ArrayList<>())
+                        .add(timestamp + " " + Labels.nameOf(labelId) + " " + value);
+            }
+        });
+        scheduler.awaitCompletion();
+        AcceleratedScheduler.Metrics metrics = scheduler.getMetrics();
+        assertEquals(TimeUnit.HOURS.toMillis(1), metrics.getSimulatedMillis());
+        assertEquals(START + TimeUnit.HOURS.toMillis(1), metrics.getSimulatedTime());
+        assertEquals(PATIENTS * (3600 + 3600 + 60), metrics.getRunCount());
+        return readings;
+    }
+
+    @Test
+    void testGeneratesSimulatedTimeWithLogicalTimestamps() throws InterruptedException {
+        long begin = System.nanoTime();
+        Map<Integer, List<String>> readings = generateHour(2, 0);
+        // An hour of data is generated without waiting for the wall clock
+        assertTrue(System.nanoTime() - begin < TimeUnit.SECONDS.toNanos(30));
+
+        assertEquals(PATIENTS, readings.size());
+        for (int p = 1; p <= PATIENTS; p++) {
+            List<String> patient = readings.get(p);
+            assertEquals(3600 + 3600 + 2 * 60, patient.size());
+            long last = Long.MIN_VALUE;
+            int ecg = 0;
+            for (String reading : patient) {
+                String[] parts = reading.split(" ");
+                long timestamp = Long.parseLong(parts[0]);
+                assertTrue(timestamp >= last, "Readings of a patient are in time order");
+                assertTrue(timestamp >= START && timestamp < START + TimeUnit.HOURS.toMillis(1));
+                assertEquals(0, (timestamp - START) % 1000, "Stamped on whole simulated seconds");
+                if (parts[1].equals("ECG")) {
+                    assertEquals(START + ecg++ * 1000L, timestamp);
+                }
+                last = timestamp;
+            }
+            assertEquals(3600, ecg);
+        }
+    }
+
+    @Test
+    void testTheSameSeedAndStartTimeGenerateTheSameArchiveOnAnyNumberOfWorkers() throws InterruptedException {
+        assertEquals(generateHour(1, 0), generateHour(3, 0));
+    }
+
+    @Test
+    void testSpeedLimitsTheSimulatedClock() throws InterruptedException {
+        long begin = System.nanoTime();
+        // An hour at 36,000 times the wall clock takes at least 100 ms
+        generateHour(2, 36_000);
+        assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS.toNanos(95));
+    }
+
+    @Test
+    void testCustomGeneratorsAreStampedWithTheSimulatedTime() throws InterruptedException {
+        AcceleratedScheduler scheduler = new AcceleratedScheduler(START, 10_000, 0, 1);
+        // Only implements the wall clock form
+        scheduler.schedule(1, (patientId, output) -> output.output(patientId, System.currentTimeMillis(), "Custom", "1"),
+                0, 2, TimeUnit.SECONDS);
+        List<Long> timestamps = new ArrayList<>();
+        scheduler.start((patientId, timestamp, label, data) -> timestamps.add(timestamp));
+        scheduler.awaitCompletion();
+        assertEquals(List.of(START, START + 2000, START + 4000, START + 6000, START + 8000), timestamps);
+    }
+
+    @Test
+    void testCustomBlockGeneratorsKeepTheirSampleSpacing() throws InterruptedException {
+        AcceleratedScheduler scheduler = new AcceleratedScheduler(START, 2_000, 0, 1);
+        // Only implements the wall clock form, with four samples 250 ms apart
+        scheduler.schedule(1, (patientId, output) -> {
+            long now = System.currentTimeMillis();
+            long[] timestamps = { now, now + 250, now + 500, now + 750 };
+            output.outputBlock(patientId, timestamps, Labels.ECG, new double[] { 1, 2, 3, 4 }, 4);
+        }, 0, 1, TimeUnit.SECONDS);
+        List<Long> blockStarts = new ArrayList<>();
+        List<String> samples = new ArrayList<>();
+        scheduler.start(new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("The block should be passed on whole");
+            }
+
+            @Override
+            public void outputBlock(int patientId, long[] timestamps, int labelId, double[] values, int count) {
+                blockStarts.add(timestamps[0]);
+                for (int i = 0; i < count; i++) {
+                    samples.add((timestamps[i] - timestamps[0]) + " " + values[i]);
+                }
+            }
+        });
+        scheduler.awaitCompletion();
+        assertEquals(List.of(START, START + 1000), blockStarts);
+        assertEquals(List.of("0 1.0", "250 2.0", "500 3.0", "750 4.0"), samples.subList(0, 4));
+    }
+
+    @Test
+    void testStopEndsAnUnboundedRun() throws InterruptedException {
+        AcceleratedScheduler scheduler = new AcceleratedScheduler(START, Long.MAX_VALUE, 3600, 2);
+        for (int p = 1; p <= PATIENTS; p++) {
+            scheduler.schedule(p, (patientId, output) -> { }, 0, 1, TimeUnit.SECONDS);
+        }
+        scheduler.start((patientId, timestamp, label, data) -> { });
+        Thread.sleep(200);
+        scheduler.stop();
+        long simulated = scheduler.getMetrics().getSimulatedMillis();
+        // About 0.2 s at an hour per second, and nothing after stopping
+        assertTrue(simulated > 0 && simulated < TimeUnit.HOURS.toMillis(1), "Simulated " + simulated + " ms");
+        scheduler.awaitCompletion();
+        assertEquals(simulated, scheduler.getMetrics().getSimulatedMillis());
+    }
+}
@@ -0,0 +1,198 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.cardio_generator.AcceleratedScheduler;
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.outputs.BatchingFileOutputStrategy;
+import com.cardio_generator.outputs.FileLineFormat;
+import com.cardio_generator.outputs.Labels;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.DataReader;
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.MappedFileDataReader;
+import com.data_management.RecordView;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+class BatchingFileOutputStrategyTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testCloseWritesEveryLineFromConcurrentProducers() throws Exception {
+        BatchingFileOutputStrategy strategy = new BatchingFileOutputStrategy(directory.toString(), 256, 10_000);
+        int producers = 4;
+        int linesPerProducer = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            Future<?>[] futures = new Future<?>[producers];
+            for (int p = 0; p < producers; p++) {
+                int patientId = p + 1;
+                futures[p] = executor.submit(() -> {
+                    for (int i = 0; i < linesPerProducer; i++) {
+                        strategy.output(patientId, i, i % 2 == 0 ? "ECG" : "Saturation", Integer.toString(i));
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        strategy.close();
+
+        List<String> ecg = Files.readAllLines(directory.resolve("ECG.txt"));
+        List<String> saturation = Files.readAllLines(directory.resolve("Saturation.txt"));
+        assertEquals(producers * linesPerProducer / 2, ecg.size());
+        assertEquals(producers * linesPerProducer / 2, saturation.size());
+        Set<String> unique = new HashSet<>(ecg);
+        assertEquals(ecg.size(), unique.size());
+        assertTrue(unique.contains("Patient ID: 3, Timestamp: 42, Label: ECG, Data: 42"));
+        assertThrows(IllegalStateException.class, () -> strategy.output(1, 0, "ECG", "0"));
+    }
+
+    @Test
+    void testFlushesOnIntervalWithoutClose() throws IOException, InterruptedException {
+        BatchingFileOutputStrategy strategy = new BatchingFileOutputStrategy(directory.toString(), 64 * 1024, 20);
+        try {
+            strategy.output(7, 1000, "Alert", "triggered");
+            Path file = directory.resolve("Alert.txt");
+            long deadline = System.currentTimeMillis() + 5000;
+            while ((!Files.exists(file) || Files.size(file) == 0) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(List.of("Patient ID: 7, Timestamp: 1000, Label: Alert, Data: triggered"),
+                    Files.readAllLines(file));
+        } finally {
+            strategy.close();
+        }
+    }
+
+    @Test
+    void testCsvLinesFromTextDataAreReadable() throws IOException {
+        BatchingFileOutputStrategy strategy = new BatchingFileOutputStrategy(directory.toString(), 256, 10_000,
+                FileLineFormat.CSV);
+        strategy.output(7, 1000, "Saturation", "97.0%");
+        strategy.output(7, 2000, "Alert", "triggered");
+        strategy.output(7, 3000, "Alert", "resolved");
+        strategy.close();
+
+        assertEquals(List.of("7,1000,Saturation,97.0"), Files.readAllLines(directory.resolve("Saturation.csv")));
+        assertEquals(List.of("7,2000,Alert,1.0", "7,3000,Alert,0.0"),
+                Files.readAllLines(directory.resolve("Alert.csv")));
+        DataStorage storage = new DataStorage();
+        new FileDataReader(directory.toString()).readData(storage);
+        assertEquals(97.0, storage.getRecords(7, "Saturation", 0, 10_000).getValue(0));
+        assertEquals(2, storage.getRecords(7, "Alert", 0, 10_000).size());
+    }
+
+    @Test
+    void testAcceleratedCsvArchiveLoadsBackIntoDataStorage() throws Exception {
+        long start = 1_700_000_000_000L;
+        int patients = 5;
+        SplittableRandom master = new SplittableRandom(11);
+        ECGDataGenerator ecg = new ECGDataGenerator(patients, master.split());
+        BloodSaturationDataGenerator saturation = new BloodSaturationDataGenerator(patients, master.split());
+        BloodPressureDataGenerator pressure = new BloodPressureDataGenerator(patients, master.split());
+        AlertGenerator alert = new AlertGenerator(patients, master.split());
+        AcceleratedScheduler scheduler = new AcceleratedScheduler(start, TimeUnit.MINUTES.toMillis(30), 0, 2);
+        for (int p = 1; p <= patients; p++) {
+            scheduler.schedule(p, ecg, 0, 1, TimeUnit.SECONDS);
+            scheduler.schedule(p, saturation, 0, 1, TimeUnit.SECONDS);
+            scheduler.schedule(p, pressure, p, 60, TimeUnit.SECONDS);
+            scheduler.schedule(p, alert, 0, 1, TimeUnit.SECONDS);
+        }
+        BatchingFileOutputStrategy archive = new BatchingFileOutputStrategy(directory.toString(),
+                FileLineFormat.CSV);
+        // Count what was written per patient and label, to compare with what is loaded
+        Map<String, LongAdder> written = new ConcurrentHashMap<>();
+        scheduler.start(new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("Generators should use the primitive form");
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, int labelId, double value) {
+                written.computeIfAbsent(patientId + "," + Labels.nameOf(labelId), k -> new LongAdder()).increment();
+                archive.output(patientId, timestamp, labelId, value);
+            }
+        });
+        scheduler.awaitCompletion();
+        archive.close();
+
+        for (DataReader reader : List.of(new FileDataReader(directory.toString()),
+                new MappedFileDataReader(directory.toString()))) {
+            DataStorage storage = new DataStorage();
+            reader.readData(storage);
+            assertEquals(patients, storage.getAllPatients().size());
+            for (Map.Entry<String, LongAdder> entry : written.entrySet()) {
+                String[] key = entry.getKey().split(",");
+                RecordView records = storage.getRecords(Integer.parseInt(key[0]), key[1], start, Long.MAX_VALUE - 1);
+                assertEquals(entry.getValue().sum(), records.size(), entry.getKey());
+            }
+            RecordView oxygen = storage.getRecords(1, "Saturation", start, Long.MAX_VALUE - 1);
+            assertTrue(oxygen.getValue(0) >= 90 && oxygen.getValue(0) <= 100, "saturation " + oxygen.getValue(0));
+        }
+    }
+
+    @Test
+    void testProducersWaitWhileTheDiskIsBehind() throws Exception {
+        CountDownLatch diskReady = new CountDownLatch(1);
+        BatchingFileOutputStrategy strategy = new BatchingFileOutputStrategy(directory.toString(), 64 * 1024, 10,
+                FileLineFormat.CSV) {
+            @Override
+            protected FileChannel openChannel(Path path) throws IOException {
+                // A disk that does not take anything until the test lets it
+                try {
+                    diskReady.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.openChannel(path);
+            }
+        };
+        int lines = 3 * BatchingFileOutputStrategy.MAX_PENDING_LINES;
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < lines; i++) {
+                strategy.output(1, i, Labels.ECG, 0.5);
+            }
+        });
+        producer.start();
+        try {
+            producer.join(2000);
+            assertTrue(producer.isAlive(), "The producer should wait for the disk");
+            assertTrue(strategy.getPendingLines() <= BatchingFileOutputStrategy.MAX_PENDING_LINES,
+                    strategy.getPendingLines() + " pending lines");
+        } finally {
+            diskReady.countDown();
+        }
+        producer.join(10_000);
+        assertFalse(producer.isAlive());
+        strategy.close();
+        assertEquals(lines, Files.readAllLines(directory.resolve("ECG.csv")).size());
+    }
+}
@@ -0,0 +1,102 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.outputs.Labels;
+import com.cardio_generator.outputs.OutputStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+class EcgBlockTest {
+    private static final long START = 1_700_000_000_000L;
+
+    /**
+     * Collects the blocks output for one patient, flattened.
+     */
+    private static final class Recorder implements OutputStrategy {
+        final List<Long> timestamps = new ArrayList<>();
+        final List<Double> values = new ArrayList<>();
+        int blocks;
+
+        @Override
+        public void output(int patientId, long timestamp, String label, String data) {
+            fail("Blocks should not be formatted");
+        }
+
+        @Override
+        public void outputBlock(int patientId, long[] timestamps, int labelId, double[] values, int count) {
+            assertEquals(Labels.ECG, labelId);
+            blocks++;
+            for (int i = 0; i < count; i++) {
+                this.timestamps.add(timestamps[i]);
+                this.values.add(values[i]);
+            }
+        }
+    }
+
+    private static Recorder record(long seed, int sampleRate, int seconds) {
+        ECGDataGenerator generator = new ECGDataGenerator(3, new SplittableRandom(seed), sampleRate);
+        Recorder recorder = new Recorder();
+        for (int second = 0; second < seconds; second++) {
+            generator.generate(2, START + second * 1000L, recorder);
+        }
+        return recorder;
+    }
+
+    @Test
+    void testEveryRunOutputsOneSecondAsABlock() {
+        Recorder recorder = record(1, 250, 10);
+        assertEquals(10, recorder.blocks);
+        assertEquals(2500, recorder.values.size());
+        for (int i = 0; i < recorder.timestamps.size(); i++) {
+            assertEquals(START + i * 4L, recorder.timestamps.get(i));
+        }
+    }
+
+    @Test
+    void testWaveformHasOneRPeakPerBeat() {
+        int sampleRate = 500;
+        Recorder recorder = record(3, sampleRate, 60);
+        double max = Double.NEGATIVE_INFINITY;
+        double min = Double.POSITIVE_INFINITY;
+        int peaks = 0;
+        int lastPeak = -sampleRate;
+        List<Double> values = recorder.values;
+        for (int i = 1; i < values.size() - 1; i++) {
+            double value = values.get(i);
+            max = Math.max(max, value);
+            min = Math.min(min, value);
+            // R peaks stand out above 0.5 mV; nothing else in a beat comes close
+            if (value > 0.5 && value >= values.get(i - 1) && value > values.get(i + 1)
+                    && i - lastPeak > sampleRate / 5) {
+                peaks++;
+                lastPeak = i;
+            }
+        }
+        assertTrue(max > 0.7 && max < 1.4, "R peak amplitude " + max);
+        assertTrue(min > -0.5, "Lowest value " + min);
+        // Heart rates stay around the patient's baseline of 60 to 80 bpm
+        assertTrue(peaks >= 50 && peaks <= 95, peaks + " beats in a minute");
+    }
+
+    @Test
+    void testTheSameSeedGeneratesTheSameWaveform() {
+        assertEquals(record(42, 250, 5).values, record(42, 250, 5).values);
+        assertNotEquals(record(42, 250, 5).values, record(43, 250, 5).values);
+    }
+
+    @Test
+    void testStrategiesWithoutBlockSupportReceiveEveryReading() {
+        ECGDataGenerator generator = new ECGDataGenerator(1, new SplittableRandom(5), 250);
+        List<String> lines = new ArrayList<>();
+        generator.generate(1, START, (patientId, timestamp, label, data) -> lines.add(timestamp + "," + label));
+        assertEquals(250, lines.size());
+        assertEquals(START + "," + "ECG", lines.get(0));
+        assertEquals((START + 996) + "," + "ECG", lines.get(249));
+        assertThrows(IllegalArgumentException.class, () -> new ECGDataGenerator(1, new SplittableRandom(), 0));
+    }
+}
@@ -0,0 +1,135 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodLevelsDataGenerator;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.BinaryFrameWriter;
+import com.cardio_generator.outputs.Labels;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.RecordTypes;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+class PrimitiveOutputTest {
+    private static final int PATIENTS = 100;
+
+    private static PatientDataGenerator[] generators() {
+        return new PatientDataGenerator[] { new ECGDataGenerator(PATIENTS), new BloodSaturationDataGenerator(PATIENTS),
+                new BloodPressureDataGenerator(PATIENTS), new BloodLevelsDataGenerator(PATIENTS),
+                new AlertGenerator(PATIENTS) };
+    }
+
+    private static void generate(PatientDataGenerator[] generators, OutputStrategy output, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            for (int patientId = 1; patientId <= PATIENTS; patientId++) {
+                for (PatientDataGenerator generator : generators) {
+                    generator.generate(patientId, output);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTextStrategiesStillReceiveTheFormerDataStrings() {
+        Map<String, Set<String>> dataByLabel = new HashMap<>();
+        // Only implements the text form, like ConsoleOutputStrategy
+        OutputStrategy text = (patientId, timestamp, label, data) -> dataByLabel
+                .computeIfAbsent(label, k -> new HashSet<>()).add(data);
+        generate(generators(), text, 20);
+
+        assertEquals(Set.of("ECG", "Saturation", "SystolicPressure", "DiastolicPressure", "Cholesterol",
+                "WhiteBloodCells", "RedBloodCells", "Alert"), dataByLabel.keySet());
+        for (String saturation : dataByLabel.get("Saturation")) {
+            assertTrue(saturation.matches("\\d+\\.0%"), saturation);
+        }
+        for (String systolic : dataByLabel.get("SystolicPressure")) {
+            assertTrue(systolic.matches("\\d+\\.0"), systolic);
+        }
+        assertTrue(Set.of("triggered", "resolved").containsAll(dataByLabel.get("Alert")));
+        for (String ecg : dataByLabel.get("ECG")) {
+            assertEquals(ecg, Double.toString(Double.parseDouble(ecg)));
+        }
+        assertEquals("97.0%", Labels.formatData(Labels.SATURATION, 97));
+        assertEquals("97.0%", Labels.appendData(new StringBuilder(), Labels.SATURATION, 97).toString());
+        assertEquals("resolved", Labels.formatData(Labels.ALERT, 0));
+        assertEquals(Labels.ECG, Labels.idOf("ECG"));
+    }
+
+    @Test
+    void testLabelsAndRecordTypesShareOneTable() {
+        assertEquals(RecordTypes.find("ECG"), Labels.ECG);
+        assertEquals(RecordTypes.find("Alert"), Labels.ALERT);
+        int label = Labels.idOf("PrimitiveOutputTestLabel");
+        assertEquals(label, RecordTypes.find("PrimitiveOutputTestLabel"));
+        int recordType = RecordTypes.idOf("PrimitiveOutputTestRecordType");
+        assertEquals(recordType, Labels.idOf("PrimitiveOutputTestRecordType"));
+        assertEquals("PrimitiveOutputTestRecordType", Labels.nameOf(recordType));
+    }
+
+    @Test
+    void testGeneratorsAndBinaryFramesCreateNoGarbagePerReading() {
+        PatientDataGenerator[] generators = generators();
+        long[] readings = new long[1];
+        // An in-memory sink that keeps the readings as primitives
+        double[] sums = new double[64];
+        OutputStrategy memory = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("Generators should use the primitive form");
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, int labelId, double value) {
+                sums[labelId] += value;
+                readings[0]++;
+            }
+        };
+        generate(generators, memory, 200); // Warm up
+        readings[0] = 0;
+        long allocated = allocatedBytes();
+        generate(generators, memory, 200);
+        allocated = allocatedBytes() - allocated;
+        // A single object per reading would be at least 16 bytes each
+        assertTrue(allocated < readings[0] / 10, allocated + " bytes for " + readings[0] + " readings");
+
+        // Binary frames are written into the writer's own buffer; only sending a
+        // complete batch copies it out
+        BinaryFrameWriter writer = new BinaryFrameWriter(0xFFFF);
+        OutputStrategy binary = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("Generators should use the primitive form");
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, int labelId, double value) {
+                if (writer.add(patientId, timestamp, labelId, value)) {
+                    writer.flush();
+                }
+                readings[0]++;
+            }
+        };
+        generate(generators, binary, 200);
+        writer.flush();
+        readings[0] = 0;
+        allocated = allocatedBytes();
+        generate(generators, binary, 50);
+        allocated = allocatedBytes() - allocated;
+        assertTrue(readings[0] < 0xFFFF, "No batch should complete: " + readings[0]);
+        assertTrue(allocated < readings[0] / 10, allocated + " bytes for " + readings[0] + " readings");
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+}
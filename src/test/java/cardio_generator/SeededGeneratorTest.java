@@ -0,0 +1,90 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.generators.AlertGenerator;
+import com.cardio_generator.generators.BloodLevelsDataGenerator;
+import com.cardio_generator.generators.BloodPressureDataGenerator;
+import com.cardio_generator.generators.BloodSaturationDataGenerator;
+import com.cardio_generator.generators.PatientDataGenerator;
+import com.cardio_generator.outputs.Labels;
+import com.cardio_generator.outputs.OutputStrategy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+class SeededGeneratorTest {
+    private static final int PATIENTS = 40;
+
+    /**
+     * Runs every generator 100 times per patient, each patient on one of a
+     * few threads, and returns the values generated per patient and label.
+     */
+    private static Map<String, List<Double>> run(long seed, boolean reversed) throws Exception {
+        SplittableRandom master = new SplittableRandom(seed);
+        PatientDataGenerator[] generators = { new BloodSaturationDataGenerator(PATIENTS, master.split()),
+                new BloodPressureDataGenerator(PATIENTS, master.split()),
+                new BloodLevelsDataGenerator(PATIENTS, master.split()), new AlertGenerator(PATIENTS, master.split()) };
+        Map<String, List<Double>> values = new ConcurrentHashMap<>();
+        OutputStrategy output = new OutputStrategy() {
+            @Override
+            public void output(int patientId, long timestamp, String label, String data) {
+                fail("Generators should use the primitive form");
+            }
+
+            @Override
+            public void output(int patientId, long timestamp, int labelId, double value) {
+                // Each patient is generated on one thread at a time, as by the schedulers
+                values.computeIfAbsent(patientId + "," + Labels.nameOf(labelId), k -> new ArrayList<>()).add(value);
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 1; i <= PATIENTS; i++) {
+                int patientId = reversed ? PATIENTS + 1 - i : i;
+                futures.add(executor.submit(() -> {
+                    for (int round = 0; round < 100; round++) {
+                        for (PatientDataGenerator generator : generators) {
+                            generator.generate(patientId, output);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return values;
+    }
+
+    @Test
+    void testTheSameSeedGeneratesTheSameValuesInAnyThreadOrder() throws Exception {
+        Map<String, List<Double>> first = run(42, false);
+        Map<String, List<Double>> second = run(42, true);
+        // Six labels per patient, and alerts for most patients
+        assertEquals(PATIENTS * 6, first.size() - countAlertKeys(first));
+        assertTrue(countAlertKeys(first) > PATIENTS / 2);
+        assertEquals(first, second);
+        assertNotEquals(first, run(43, false));
+    }
+
+    private static int countAlertKeys(Map<String, List<Double>> values) {
+        int count = 0;
+        for (String key : values.keySet()) {
+            if (key.endsWith(",Alert")) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,172 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.outputs.SlowConsumerPolicy;
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import com.data_management.BinaryFrameDecoder;
+import com.data_management.DataStorage;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+class TcpOutputStrategyTest {
+
+    private static void awaitClients(TcpOutputStrategy strategy, int clients) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (strategy.getClientStats().size() < clients && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(clients, strategy.getClientStats().size());
+    }
+
+    private static Future<Integer> readLines(ExecutorService executor, Socket socket, int expected) {
+        return executor.submit(() -> {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            int count = 0;
+            String line;
+            while (count < expected && (line = in.readLine()) != null) {
+                assertEquals(count + ",1000,ECG,0.5", line);
+                count++;
+            }
+            return count;
+        });
+    }
+
+    @Test
+    void testEveryClientReceivesEveryLineWhenProducerBlocks() throws Exception {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 0, SlowConsumerPolicy.BLOCK, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try (Socket first = new Socket("localhost", strategy.getLocalPort());
+                Socket second = new Socket("localhost", strategy.getLocalPort())) {
+            awaitClients(strategy, 2);
+            Future<Integer> firstCount = readLines(executor, first, 50_000);
+            Future<Integer> secondCount = readLines(executor, second, 50_000);
+            for (int i = 0; i < 50_000; i++) {
+                strategy.output(i, 1000, "ECG", "0.5");
+            }
+            assertEquals(50_000, firstCount.get(10, TimeUnit.SECONDS));
+            assertEquals(50_000, secondCount.get(10, TimeUnit.SECONDS));
+            for (TcpOutputStrategy.ClientStats stats : strategy.getClientStats()) {
+                assertEquals(0, stats.getDroppedMessages());
+            }
+        } finally {
+            executor.shutdownNow();
+            strategy.close();
+        }
+    }
+
+    @Test
+    void testSlowClientLosesOldestMessagesWithoutStallingProducer() throws Exception {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 0, SlowConsumerPolicy.DROP_OLDEST, 100);
+        try (Socket slow = new Socket("localhost", strategy.getLocalPort())) {
+            slow.setReceiveBufferSize(4096);
+            awaitClients(strategy, 1);
+            // Far more than the socket buffers can hold while the client does not read
+            for (int i = 0; i < 500_000; i++) {
+                strategy.output(i, 1000, "ECG", "0.5");
+            }
+            TcpOutputStrategy.ClientStats stats = strategy.getClientStats().get(0);
+            assertTrue(stats.getDroppedMessages() > 0);
+            assertTrue(stats.getQueueDepth() <= 100);
+        } finally {
+            strategy.close();
+        }
+    }
+
+    @Test
+    void testSlowClientIsDisconnected() throws Exception {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 0, SlowConsumerPolicy.DISCONNECT, 100);
+        try (Socket slow = new Socket("localhost", strategy.getLocalPort())) {
+            slow.setReceiveBufferSize(4096);
+            awaitClients(strategy, 1);
+            for (int i = 0; i < 500_000 && strategy.getDisconnectedClients() == 0; i++) {
+                strategy.output(i, 1000, "ECG", "0.5");
+            }
+            assertEquals(1, strategy.getDisconnectedClients());
+            assertTrue(strategy.getClientStats().isEmpty());
+        } finally {
+            strategy.close();
+        }
+    }
+
+    @Test
+    void testBinaryClientConnectingLateReceivesLabelDefinitions() throws IOException, InterruptedException {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 1, SlowConsumerPolicy.DROP_OLDEST, 100);
+        try (Socket early = new Socket("localhost", strategy.getLocalPort())) {
+            awaitClients(strategy, 1);
+            strategy.output(1, 1000, "ECG", "0.5");
+            try (Socket late = new Socket("localhost", strategy.getLocalPort())) {
+                awaitClients(strategy, 2);
+                strategy.output(1, 2000, "ECG", "0.75");
+                // Label definition (1 + 2 + 2 + 3 bytes), then one reading frame
+                byte[] frames = late.getInputStream().readNBytes(8 + 23);
+                assertEquals(1, frames[0]);
+                assertEquals("ECG", new String(frames, 5, 3, StandardCharsets.UTF_8));
+                assertEquals(2, frames[8]);
+            }
+        } finally {
+            strategy.close();
+        }
+    }
+
+    @Test
+    void testCloseReturnsAfterQueuedFramesAreSent() throws IOException, InterruptedException {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 256, SlowConsumerPolicy.DROP_OLDEST, 100);
+        try (Socket client = new Socket("localhost", strategy.getLocalPort())) {
+            awaitClients(strategy, 1);
+            for (int i = 0; i < 100; i++) {
+                strategy.output(i, 1000, "ECG", "0.5");
+            }
+            // The partial batch is only flushed by close, and must be on the wire when it returns
+            strategy.close();
+            assertTrue(client.getInputStream().available() > 0);
+            client.setSoTimeout(100);
+            byte[] received = client.getInputStream().readAllBytes();
+            int batch = received.length - (3 + 100 * 22);
+            assertTrue(batch >= 0, received.length + " bytes");
+            assertEquals(3, received[batch]);
+            assertEquals(100, ((received[batch + 1] & 0xFF) << 8) | (received[batch + 2] & 0xFF));
+        }
+    }
+
+    @Test
+    void testBinaryClientThatDropsLabelDefinitionsCanStillDecode() throws Exception {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 1, SlowConsumerPolicy.DROP_OLDEST, 2);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (Socket client = new Socket("localhost", strategy.getLocalPort())) {
+            client.setReceiveBufferSize(4096);
+            awaitClients(strategy, 1);
+            // The client stalls while new labels keep being defined, so some definitions are dropped
+            for (int i = 0; i < 200_000; i++) {
+                strategy.output(1, i, "Label" + i / 10_000, "0.5");
+            }
+            assertTrue(strategy.getClientStats().get(0).getDroppedMessages() > 0);
+            assertTrue(strategy.getClientStats().get(0).getQueueDepth() <= 3);
+            // Now it drains everything
+            DataStorage storage = new DataStorage();
+            Future<Long> decoded = executor.submit(() -> new BinaryFrameDecoder()
+                    .readAll(Channels.newChannel(client.getInputStream()), storage));
+            for (int i = 0; i < 10; i++) {
+                strategy.output(2, i, "Label19", "0.75");
+            }
+            strategy.close();
+            assertTrue(decoded.get(10, TimeUnit.SECONDS) > 0);
+            // Older messages may still be dropped, but the newest one is always delivered
+            assertEquals(1, storage.getRecords(2, "Label19", 9, 9).size());
+        } finally {
+            executor.shutdownNow();
+            strategy.close();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.TickScheduler;
+import com.cardio_generator.generators.PatientDataGenerator;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class TickSchedulerTest {
+
+    @Test
+    void testEveryPatientRunsOncePerPeriod() throws InterruptedException {
+        int patients = 5000;
+        AtomicIntegerArray everyTick = new AtomicIntegerArray(patients + 1);
+        AtomicIntegerArray everyFifthTick = new AtomicIntegerArray(patients + 1);
+        TickScheduler scheduler = new TickScheduler(10, 3);
+        for (int p = 1; p <= patients; p++) {
+            scheduler.schedule(p, (patientId, output) -> everyTick.incrementAndGet(patientId), 0, 10,
+                    TimeUnit.MILLISECONDS);
+            scheduler.schedule(p, (patientId, output) -> everyFifthTick.incrementAndGet(patientId), (p % 5) * 10, 50,
+                    TimeUnit.MILLISECONDS);
+        }
+        scheduler.start((patientId, timestamp, label, data) -> { });
+        while (scheduler.getMetrics().getTickCount() < 40) {
+            Thread.sleep(10);
+        }
+        scheduler.stop();
+
+        long ticks = scheduler.getMetrics().getTickCount();
+        for (int p = 1; p <= patients; p++) {
+            assertEquals(ticks, everyTick.get(p));
+            int slot = p % 5;
+            assertEquals((ticks - slot + 4) / 5, everyFifthTick.get(p));
+        }
+        assertEquals(4, scheduler.getThreadCount());
+        assertTrue(scheduler.getMetrics().getMaxJitterNanos() >= scheduler.getMetrics().getMeanJitterNanos());
+    }
+
+    @Test
+    void testASmallSlotIsSharedByEveryWorker() throws InterruptedException {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        TickScheduler scheduler = new TickScheduler(1000, 3);
+        // Blocks like a slow output would
+        PatientDataGenerator generator = (patientId, output) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        };
+        for (int p = 1; p <= 300; p++) {
+            scheduler.schedule(p, generator, 0, 1, TimeUnit.SECONDS);
+        }
+        scheduler.start((patientId, timestamp, label, data) -> { });
+        while (scheduler.getMetrics().getTickCount() < 1) {
+            Thread.sleep(10);
+        }
+        scheduler.stop();
+        assertEquals(3, maxRunning.get());
+    }
+}
@@ -0,0 +1,45 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.VirtualThreadScheduler;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+class VirtualThreadSchedulerTest {
+
+    @Test
+    void testBlockedPatientDoesNotStallOthers() throws InterruptedException {
+        int patients = 1000;
+        AtomicIntegerArray runs = new AtomicIntegerArray(patients + 1);
+        CountDownLatch release = new CountDownLatch(1);
+        VirtualThreadScheduler scheduler = new VirtualThreadScheduler();
+        for (int p = 1; p <= patients; p++) {
+            scheduler.schedule(p, (patientId, output) -> output.output(patientId, 0, "ECG", "0"), 0, 20,
+                    TimeUnit.MILLISECONDS);
+        }
+        // Patient 1 blocks in its output until released, like a stalled TCP client
+        scheduler.start((patientId, timestamp, label, data) -> {
+            if (patientId == 1) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            runs.incrementAndGet(patientId);
+        });
+        Thread.sleep(300);
+        assertEquals(patients, scheduler.getThreadCount());
+        assertEquals(0, runs.get(1));
+        for (int p = 2; p <= patients; p++) {
+            assertTrue(runs.get(p) >= 5, "patient " + p + " ran " + runs.get(p) + " times");
+        }
+        release.countDown();
+        scheduler.stop();
+        assertEquals(0, scheduler.getThreadCount());
+    }
+}
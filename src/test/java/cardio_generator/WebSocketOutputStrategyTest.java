@@ -0,0 +1,205 @@
+package cardio_generator;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class WebSocketOutputStrategyTest {
+
+    private static class CountingClient extends WebSocketClient {
+        final AtomicInteger messages = new AtomicInteger();
+        final AtomicInteger lines = new AtomicInteger();
+        final AtomicInteger malformedLines = new AtomicInteger();
+        final Set<String> patientsAndLabels = ConcurrentHashMap.newKeySet();
+
+        CountingClient(URI uri) {
+            super(uri);
+        }
+
+        @Override
+        public void onOpen(ServerHandshake handshake) {
+        }
+
+        @Override
+        public void onMessage(String message) {
+            messages.incrementAndGet();
+            for (String line : message.split("\n")) {
+                String[] fields = line.split(",");
+                if (fields.length != 4 || !fields[3].equals("0.5")) {
+                    malformedLines.incrementAndGet();
+                } else {
+                    patientsAndLabels.add(fields[0] + "," + fields[2]);
+                }
+                lines.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void onClose(int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(Exception ex) {
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static CountingClient connect(int port) throws InterruptedException {
+        CountingClient client = new CountingClient(URI.create("ws://localhost:" + port));
+        // The server starts asynchronously, so retry until it accepts
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!client.connectBlocking(1, TimeUnit.SECONDS)) {
+            assertTrue(System.currentTimeMillis() < deadline, "Could not connect");
+            Thread.sleep(50);
+            client = new CountingClient(URI.create("ws://localhost:" + port));
+        }
+        return client;
+    }
+
+    /**
+     * Closes a client, failing instead of waiting for the library's own timeout
+     * if the server never completes the close.
+     */
+    private static void close(CountingClient client) throws InterruptedException {
+        client.close();
+        awaitClosed(client);
+    }
+
+    private static void awaitClosed(CountingClient client) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!client.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(client.isClosed(), "Connection still open");
+    }
+
+    private static void awaitLines(CountingClient client, int lines) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (client.lines.get() < lines && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(lines, client.lines.get());
+        assertEquals(0, client.malformedLines.get());
+    }
+
+    @Test
+    void testCoalescedReadingsReachEveryClientInFewMessages() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 0, 50);
+        List<CountingClient> clients = new ArrayList<>();
+        try {
+            for (int i = 0; i < 3; i++) {
+                clients.add(connect(port));
+            }
+            // Connections are registered by the server after the handshake completes
+            Thread.sleep(200);
+            for (int i = 0; i < 10_000; i++) {
+                strategy.output(i, 1000, "ECG", "0.5");
+            }
+            strategy.close();
+            for (CountingClient client : clients) {
+                awaitLines(client, 10_000);
+                assertTrue(client.messages.get() < 100, "Expected coalesced messages: " + client.messages.get());
+            }
+        } finally {
+            strategy.close();
+            for (CountingClient client : clients) {
+                close(client);
+            }
+        }
+    }
+
+    @Test
+    void testSubscribersOnlyReceiveTheirPatientsAndLabels() throws Exception {
+        for (long flushMillis : new long[] { 0, 50 }) {
+            int port = freePort();
+            WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 0, flushMillis);
+            CountingClient everything = connect(port);
+            CountingClient subscriber = connect(port);
+            try {
+                subscriber.send("subscribe 2,3,4");
+                subscriber.send("subscribe 3 ECG");
+                subscriber.send("unsubscribe 4");
+                Thread.sleep(200);
+                for (int i = 0; i < 100; i++) {
+                    strategy.output(i % 10, 1000 + i, "ECG", "0.5");
+                    strategy.output(i % 10, 1000 + i, "Saturation", "0.5");
+                }
+                strategy.close();
+                awaitLines(everything, 200);
+                awaitLines(subscriber, 30);
+                assertEquals(Set.of("2,ECG", "2,Saturation", "3,ECG"), subscriber.patientsAndLabels);
+            } finally {
+                strategy.close();
+                close(everything);
+                close(subscriber);
+            }
+        }
+    }
+
+    @Test
+    void testUnsubscribeRemovesPatientsOrSingleLabels() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 0, 0);
+        CountingClient unfiltered = connect(port);
+        CountingClient subscriber = connect(port);
+        try {
+            // Has not subscribed, so it keeps receiving every reading
+            unfiltered.send("unsubscribe 1");
+            subscriber.send("subscribe 2,3");
+            subscriber.send("unsubscribe 2 Saturation");
+            subscriber.send("unsubscribe 3 ECG,Saturation");
+            subscriber.send("subscribe 5 ECG,ECG");
+            subscriber.send("subscribe 6 ECG,Saturation");
+            subscriber.send("unsubscribe 6 Saturation,Saturation");
+            Thread.sleep(200);
+            for (int i = 0; i < 100; i++) {
+                strategy.output(i % 10, 1000 + i, "ECG", "0.5");
+                strategy.output(i % 10, 1000 + i, "Saturation", "0.5");
+            }
+            strategy.close();
+            awaitLines(unfiltered, 200);
+            awaitLines(subscriber, 30);
+            assertEquals(Set.of("2,ECG", "5,ECG", "6,ECG"), subscriber.patientsAndLabels);
+        } finally {
+            strategy.close();
+            close(unfiltered);
+            close(subscriber);
+        }
+    }
+
+    @Test
+    void testCloseClosesEveryConnectionOnce() throws Exception {
+        int port = freePort();
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port, 0, 50);
+        CountingClient first = connect(port);
+        CountingClient second = connect(port);
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        strategy.close();
+        strategy.close();
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(3), "Close took too long");
+        // Without waiting for the clients to close their side
+        awaitClosed(first);
+        awaitClosed(second);
+    }
+}
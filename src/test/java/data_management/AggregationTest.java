@@ -0,0 +1,110 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.data_management.Aggregation;
+import com.data_management.DataStorage;
+import com.data_management.RecordView;
+
+class AggregationTest {
+
+    @Test
+    void testBucketStatisticsMatchTheStoredReadings() {
+        DataStorage storage = new DataStorage();
+        // One reading per second for 100 seconds, value equal to the second
+        for (int second = 0; second < 100; second++) {
+            storage.addPatientData(1, second, "HeartRate", 1000L * second);
+        }
+        storage.addPatientData(1, 500, "HeartRate", 200_000L); // Outside the range
+
+        Aggregation aggregation = storage.aggregate(1, "HeartRate", 0, 99_999, 10);
+        assertEquals(10, aggregation.getBucketCount());
+        assertEquals(10_000, aggregation.getBucketMillis());
+        for (int bucket = 0; bucket < 10; bucket++) {
+            assertEquals(bucket * 10_000L, aggregation.getBucketStart(bucket));
+            assertEquals(10, aggregation.getCount(bucket));
+            assertEquals(bucket * 10, aggregation.getMin(bucket));
+            assertEquals(bucket * 10 + 9, aggregation.getMax(bucket));
+            assertEquals(bucket * 10 + 4.5, aggregation.getAverage(bucket), 1e-9);
+            assertEquals(bucket * 10 + 9, aggregation.getLast(bucket));
+        }
+    }
+
+    @Test
+    void testEmptyBucketsAreNaN() {
+        DataStorage storage = new DataStorage();
+        storage.addPatientData(1, 7, "HeartRate", 5_000L);
+
+        Aggregation aggregation = storage.aggregate(1, "HeartRate", 0, 39_999, 4);
+        assertEquals(1, aggregation.getCount(0));
+        assertEquals(7, aggregation.getAverage(0));
+        for (int bucket = 1; bucket < 4; bucket++) {
+            assertEquals(0, aggregation.getCount(bucket));
+            assertTrue(Double.isNaN(aggregation.getMin(bucket)));
+            assertTrue(Double.isNaN(aggregation.getAverage(bucket)));
+        }
+        assertEquals(0, storage.aggregate(2, "HeartRate", 0, 39_999, 4).getCount(0));
+        assertThrows(IllegalArgumentException.class, () -> storage.aggregate(1, "HeartRate", 10, 0, 4));
+    }
+
+    @Test
+    void testDownsampleKeepsEndpointsAndPeaks() {
+        DataStorage storage = new DataStorage();
+        for (int i = 0; i < 10_000; i++) {
+            double value = i == 4321 ? 100 : Math.sin(i / 100.0);
+            storage.addPatientData(1, value, "ECG", 1000L * i);
+        }
+
+        RecordView downsampled = storage.downsample(1, "ECG", 0, Long.MAX_VALUE, 200);
+        assertEquals(200, downsampled.size());
+        assertEquals(0, downsampled.getTimestamp(0));
+        assertEquals(9_999_000, downsampled.getTimestamp(199));
+        boolean peakKept = false;
+        for (int i = 1; i < downsampled.size(); i++) {
+            assertTrue(downsampled.getTimestamp(i - 1) < downsampled.getTimestamp(i));
+            peakKept |= downsampled.getValue(i) == 100;
+        }
+        assertTrue(peakKept, "The spike should survive downsampling");
+        assertEquals("ECG", downsampled.get(0).getRecordType());
+
+        RecordView few = storage.downsample(1, "ECG", 0, 4_000, 200);
+        assertEquals(5, few.size());
+        assertThrows(IllegalArgumentException.class, () -> storage.downsample(1, "ECG", 0, 4_000, 2));
+    }
+
+    @Test
+    void testRollupsGiveTheSameStatisticsAsTheReadings() {
+        DataStorage withRollups = new DataStorage(1_000L, 60_000L, 3_600_000L);
+        DataStorage withoutRollups = new DataStorage(new long[0]);
+        long start = 1_700_000_012_345L;
+        for (int second = 0; second < 3 * 86_400; second++) {
+            double value = 70 + 10 * Math.sin(second / 600.0) + (second % 7);
+            withRollups.addPatientData(1, value, "HeartRate", start + 1000L * second);
+            withoutRollups.addPatientData(1, value, "HeartRate", start + 1000L * second);
+        }
+        // Late readings land in old buckets
+        withRollups.addPatientData(1, 500, "HeartRate", start + 3_600_500L);
+        withoutRollups.addPatientData(1, 500, "HeartRate", start + 3_600_500L);
+
+        long end = start + 3 * 86_400_000L;
+        for (int bucketCount : new int[] { 1, 100, 1000, 5000 }) {
+            Aggregation fromRollup = withRollups.aggregate(1, "HeartRate", start, end, bucketCount);
+            assertTrue(fromRollup.getBucketCount() <= bucketCount);
+            long alignedEnd = fromRollup.getBucketStart(0)
+                    + fromRollup.getBucketMillis() * fromRollup.getBucketCount() - 1;
+            assertTrue(fromRollup.getBucketStart(0) <= start && alignedEnd >= end);
+            Aggregation fromReadings = withoutRollups
+                    .getRecords(1, "HeartRate", fromRollup.getBucketStart(0), alignedEnd)
+                    .aggregate(fromRollup.getBucketStart(0), alignedEnd, fromRollup.getBucketCount());
+            assertEquals(fromReadings.getBucketMillis(), fromRollup.getBucketMillis());
+            for (int bucket = 0; bucket < fromRollup.getBucketCount(); bucket++) {
+                assertEquals(fromReadings.getCount(bucket), fromRollup.getCount(bucket));
+                assertEquals(fromReadings.getMin(bucket), fromRollup.getMin(bucket));
+                assertEquals(fromReadings.getMax(bucket), fromRollup.getMax(bucket));
+                assertEquals(fromReadings.getAverage(bucket), fromRollup.getAverage(bucket), 1e-9);
+                assertEquals(fromReadings.getLast(bucket), fromRollup.getLast(bucket));
+            }
+        }
+    }
+}
@@ -1,10 +1,13 @@
 package data_management;
 
+import com.data_management.DataStorage;
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
 import com.alerts.AlertGenerator;
 import com.alerts.Alert;
+import com.alerts.StreamingAlertEvaluator;
 import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
 import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -61,4 +64,94 @@ public class AlertGeneratorTest {
         AlertGenerator generator = new AlertGenerator(null);
         generator.evaluateData(patient);
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testStreamingEvaluationEmitsEachAlertOnce() {
+        DataStorage storage = new DataStorage();
+        List<Alert> alerts = new ArrayList<>();
+        storage.addListener(new StreamingAlertEvaluator(alerts::add));
+
+        storage.addPatientData(6, 100, "BloodPressure", 1000L);
+        storage.addPatientData(6, 115, "BloodPressure", 2000L);
+        storage.addPatientData(6, 130, "BloodPressure", 3000L);
+        assertEquals(2, alerts.size());
+        assertEquals("Blood Pressure Trend Alert", alerts.get(0).getCondition());
+        assertEquals("Critical Blood Pressure Alert", alerts.get(1).getCondition());
+
+        storage.addPatientData(6, 98, "Saturation", 4000L);
+        storage.addPatientData(6, 97, "Saturation", 5000L);
+        assertEquals(2, alerts.size()); // earlier readings are not evaluated again
+
+        storage.addPatientData(6, 93, "Saturation", 6000L);
+        assertEquals(3, alerts.size());
+        assertEquals("Rapid Saturation Drop Alert", alerts.get(2).getCondition());
+        assertEquals(6000L, alerts.get(2).getTimestamp());
+    }
+
+    @Test
+    public void testStreamingCombinedAlertMatchesEitherOrder() {
+        DataStorage storage = new DataStorage();
+        List<Alert> alerts = new ArrayList<>();
+        storage.addListener(new StreamingAlertEvaluator(alerts::add));
+
+        storage.addPatientData(7, 91, "Saturation", 0L);
+        storage.addPatientData(7, 85, "BloodPressure", 4 * 60 * 1000L);
+        storage.addPatientData(7, 85, "BloodPressure", 10 * 60 * 1000L);
+
+        long combined = alerts.stream().filter(a -> a.getCondition().equals("Hypotensive Hypoxemia Alert")).count();
+        assertEquals(1, combined);
+    }
+
+    @Test
+    public void testLateReadingsAreOnlyCheckedAgainstThresholds() {
+        DataStorage storage = new DataStorage();
+        List<Alert> alerts = new ArrayList<>();
+        storage.addListener(new StreamingAlertEvaluator(alerts::add));
+
+        storage.addPatientData(8, 98, "Saturation", 5000L);
+        storage.addPatientData(8, 91, "Saturation", 1000L); // late: low, but not a drop from a later reading
+        assertEquals(1, alerts.size());
+        assertEquals("Low Saturation Alert", alerts.get(0).getCondition());
+        storage.addPatientData(8, 97, "Saturation", 6000L);
+        assertEquals(1, alerts.size());
+        storage.addPatientData(8, 93, "Saturation", 7000L);
+        assertEquals("Rapid Saturation Drop Alert", alerts.get(1).getCondition());
+
+        alerts.clear();
+        storage.addPatientData(8, 100, "BloodPressure", 1000L);
+        storage.addPatientData(8, 115, "BloodPressure", 3000L);
+        storage.addPatientData(8, 130, "BloodPressure", 2000L); // late: not part of the trend
+        assertEquals(1, alerts.size());
+        assertEquals("Critical Blood Pressure Alert", alerts.get(0).getCondition());
+        storage.addPatientData(8, 115, "BloodPressure", 4000L);
+        assertEquals(1, alerts.size());
+    }
+
+    @Test
+    public void testLateReadingOfTheOtherSignalStillTriggersCombinedAlert() {
+        DataStorage storage = new DataStorage();
+        List<Alert> alerts = new ArrayList<>();
+        storage.addListener(new StreamingAlertEvaluator(alerts::add));
+
+        storage.addPatientData(9, 85, "BloodPressure", 10 * 60 * 1000L);
+        storage.addPatientData(9, 91, "Saturation", 6 * 60 * 1000L);
+
+        List<Alert> combined = alerts.stream().filter(a -> a.getCondition().equals("Hypotensive Hypoxemia Alert"))
+                .toList();
+        assertEquals(1, combined.size());
+        assertEquals(10 * 60 * 1000L, combined.get(0).getTimestamp());
+    }
+
+    @Test
+    public void testRecordTypesAreMatchedIgnoringCase() {
+        DataStorage storage = new DataStorage();
+        List<Alert> alerts = new ArrayList<>();
+        storage.addListener(new StreamingAlertEvaluator(alerts::add));
+
+        storage.addPatientData(10, 91, "saturation", 1000L);
+        storage.addPatientData(10, 1, "ALERT", 2000L);
+        assertEquals(2, alerts.size());
+        assertEquals("Low Saturation Alert", alerts.get(0).getCondition());
+        assertEquals("Triggered Alert", alerts.get(1).getCondition());
+    }
+}
@@ -0,0 +1,88 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.outputs.BinaryFrameWriter;
+import com.data_management.BinaryFrameDecoder;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.List;
+
+class BinaryFrameDecoderTest {
+
+    private static byte[] encode(int batchSize) {
+        BinaryFrameWriter writer = new BinaryFrameWriter(batchSize);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String[] labels = { "ECG", "Saturation", "ECG", "Alert", "SystolicPressure" };
+        String[] data = { "0.25", "97.0%", "-0.5", "triggered", "120.0" };
+        for (int i = 0; i < 50; i++) {
+            if (writer.add(i % 3 + 1, 1000L + i, labels[i % labels.length],
+                    BinaryFrameWriter.parseValue(data[i % data.length]))) {
+                ByteBuffer frames = writer.flush();
+                bytes.write(frames.array(), 0, frames.remaining());
+            }
+        }
+        ByteBuffer rest = writer.flush();
+        if (rest != null) {
+            bytes.write(rest.array(), 0, rest.remaining());
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void testSingleAndBatchedFramesDecodeToTheSameReadings() throws IOException {
+        DataStorage single = new DataStorage();
+        assertEquals(50, new BinaryFrameDecoder().readAll(
+                Channels.newChannel(new ByteArrayInputStream(encode(1))), single));
+        DataStorage batched = new DataStorage();
+        assertEquals(50, new BinaryFrameDecoder().readAll(
+                Channels.newChannel(new ByteArrayInputStream(encode(8))), batched));
+
+        for (int patientId = 1; patientId <= 3; patientId++) {
+            List<PatientRecord> expected = single.getRecords(patientId, 0, Long.MAX_VALUE);
+            List<PatientRecord> actual = batched.getRecords(patientId, 0, Long.MAX_VALUE);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.get(i).getTimestamp(), actual.get(i).getTimestamp());
+                assertEquals(expected.get(i).getRecordType(), actual.get(i).getRecordType());
+                assertEquals(expected.get(i).getMeasurementValue(), actual.get(i).getMeasurementValue());
+            }
+        }
+        List<PatientRecord> first = single.getRecords(2, 1001, 1001);
+        assertEquals("Saturation", first.get(0).getRecordType());
+        assertEquals(97.0, first.get(0).getMeasurementValue());
+        assertEquals(1.0, single.getRecords(1, "Alert", 0, Long.MAX_VALUE).get(0).getMeasurementValue());
+        assertTrue(encode(8).length < encode(1).length);
+    }
+
+    @Test
+    void testFramesSplitAcrossReadsAreKeptUntilComplete() throws IOException {
+        byte[] bytes = encode(4);
+        BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+        DataStorage storage = new DataStorage();
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int stored = 0;
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            buffer.put(bytes, offset, Math.min(7, bytes.length - offset));
+            buffer.flip();
+            stored += decoder.decode(buffer, storage);
+            buffer.compact();
+        }
+        assertEquals(0, buffer.position());
+        assertEquals(50, stored);
+    }
+
+    @Test
+    void testUndefinedLabelIsRejected() {
+        ByteBuffer frame = ByteBuffer.allocate(23);
+        frame.put((byte) 2).putInt(1).putLong(1000).putShort((short) 5).putDouble(1.0).flip();
+        assertThrows(IOException.class, () -> new BinaryFrameDecoder().decode(frame, new DataStorage()));
+    }
+}
@@ -5,8 +5,15 @@ import org.junit.jupiter.api.Test;
 
 import com.data_management.DataStorage;
 import com.data_management.PatientRecord;
+import com.data_management.RecordView;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 class DataStorageTest {
 
@@ -22,4 +29,63 @@ class DataStorageTest {
         assertEquals(2, records.size()); // Check if two records are retrieved
         assertEquals(100.0, records.get(0).getMeasurementValue()); // Validate first record
     }
+
+    @Test
+    void testConcurrentIngestionLosesNoRecords() throws Exception {
+        int producers = 4;
+        int patients = 8;
+        int recordsPerProducer = 50_000;
+        DataStorage storage = new DataStorage();
+        ExecutorService executor = Executors.newFixedThreadPool(producers + 1);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean producing = new AtomicBoolean(true);
+
+        Future<?>[] futures = new Future<?>[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            futures[p] = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < recordsPerProducer; i++) {
+                    // Every producer writes to every patient, and every 16th reading arrives late
+                    long timestamp = (i % 16 == 0 ? i - 500L : i) * producers + producer;
+                    storage.addPatientData(i % patients, producer, "ECG", timestamp);
+                }
+                return null;
+            });
+        }
+        Future<?> reader = executor.submit(() -> {
+            start.await();
+            while (producing.get()) {
+                for (int patientId = 0; patientId < patients; patientId++) {
+                    RecordView view = storage.getRecords(patientId, "ECG", Long.MIN_VALUE, Long.MAX_VALUE);
+                    for (int i = 1; i < view.size(); i++) {
+                        assertTrue(view.getTimestamp(i - 1) <= view.getTimestamp(i), "snapshot out of order");
+                    }
+                }
+            }
+            return null;
+        });
+
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(60, TimeUnit.SECONDS);
+        }
+        producing.set(false);
+        reader.get(60, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        int total = 0;
+        int[] perProducer = new int[producers];
+        for (int patientId = 0; patientId < patients; patientId++) {
+            RecordView view = storage.getRecords(patientId, "ECG", Long.MIN_VALUE, Long.MAX_VALUE);
+            total += view.size();
+            for (int i = 0; i < view.size(); i++) {
+                perProducer[(int) view.getValue(i)]++;
+            }
+        }
+        assertEquals(producers * recordsPerProducer, total);
+        for (int count : perProducer) {
+            assertEquals(recordsPerProducer, count);
+        }
+    }
 }
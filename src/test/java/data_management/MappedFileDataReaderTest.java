@@ -0,0 +1,73 @@
+package data_management;
+
+import com.data_management.DataStorage;
+import com.data_management.FileDataReader;
+import com.data_management.MappedFileDataReader;
+import com.data_management.PatientRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the MappedFileDataReader class, comparing it with
+ * FileDataReader on the same files.
+ */
+public class MappedFileDataReaderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testMatchesFileDataReaderAcrossSegmentBoundaries() throws IOException {
+        StringBuilder ecg = new StringBuilder();
+        StringBuilder saturation = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            ecg.append(i % 7).append(',').append(1700000000000L + i * 1000L).append(",ECG,")
+                    .append(Math.sin(i) * 0.5).append(i % 3 == 0 ? "\r\n" : "\n");
+            saturation.append(' ').append(i % 5).append(" , ").append(1700000000000L + i * 1000L)
+                    .append(" , Saturation , ").append(90 + i % 10).append(".0\n");
+            if (i % 50 == 0) {
+                ecg.append("\n");
+                saturation.append("not,a,valid line\n");
+            }
+        }
+        Files.writeString(directory.resolve("ECG.txt"), ecg);
+        Files.writeString(directory.resolve("Saturation.txt"), saturation);
+
+        DataStorage expected = new DataStorage();
+        new FileDataReader(directory.toString()).readData(expected);
+        DataStorage actual = new DataStorage();
+        MappedFileDataReader reader = new MappedFileDataReader(directory.toString(), new ForkJoinPool(3), 61);
+        reader.readData(actual);
+
+        for (int patientId = 0; patientId < 7; patientId++) {
+            List<PatientRecord> expectedRecords = expected.getRecords(patientId, Long.MIN_VALUE, Long.MAX_VALUE);
+            List<PatientRecord> actualRecords = actual.getRecords(patientId, Long.MIN_VALUE, Long.MAX_VALUE);
+            assertEquals(expectedRecords.size(), actualRecords.size());
+            for (int i = 0; i < expectedRecords.size(); i++) {
+                assertEquals(expectedRecords.get(i).getTimestamp(), actualRecords.get(i).getTimestamp());
+                assertEquals(expectedRecords.get(i).getRecordType(), actualRecords.get(i).getRecordType());
+                assertEquals(expectedRecords.get(i).getMeasurementValue(), actualRecords.get(i).getMeasurementValue());
+            }
+        }
+        assertEquals(1010, reader.getLastReport().getLines());
+        assertEquals(10, reader.getLastReport().getMalformedLines());
+        assertEquals(2, reader.getLastReport().getFiles());
+    }
+
+    @Test
+    public void testAcceptsPercentSuffixAndMissingFinalNewline() throws IOException {
+        Files.writeString(directory.resolve("Saturation.txt"), "3,1000,Saturation,97.0%\n3,2000,Saturation,1.5E1");
+        DataStorage storage = new DataStorage();
+        new MappedFileDataReader(directory.toString()).readData(storage);
+
+        List<PatientRecord> records = storage.getRecords(3, 0, 5000);
+        assertEquals(2, records.size());
+        assertEquals(97.0, records.get(0).getMeasurementValue());
+        assertEquals(15.0, records.get(1).getMeasurementValue());
+    }
+}
@@ -2,6 +2,7 @@ package data_management;
 
 import com.data_management.Patient;
 import com.data_management.PatientRecord;
+import com.data_management.RecordView;
 import org.junit.jupiter.api.Test;
 import java.util.List;
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,4 +34,94 @@ public class PatientTest {
         List<PatientRecord> records = patient.getRecords(2000L, 3000L);
         assertTrue(records.isEmpty());
     }
-} 
\ No newline at end of file
+
+    @Test
+    public void testGetRecordsAcrossTypesAndChunks() {
+        Patient patient = new Patient(1);
+        for (int i = 0; i < 3000; i++) {
+            patient.addRecord(i, "ECG", 2L * i);
+            patient.addRecord(-i, "Saturation", 2L * i + 1);
+        }
+
+        List<PatientRecord> records = patient.getRecords(1999L, 2002L);
+        assertEquals(4, records.size());
+        assertEquals("Saturation", records.get(0).getRecordType());
+        assertEquals(-999, records.get(0).getMeasurementValue());
+        assertEquals("ECG", records.get(1).getRecordType());
+        assertEquals(1000, records.get(1).getMeasurementValue());
+        assertEquals(3000, patient.getSeries("ECG").size());
+        assertEquals(2999, patient.getSeries("ECG").snapshot().getValue(2999));
+    }
+
+    @Test
+    public void testLateRecordsAreInsertedInOrder() {
+        Patient patient = new Patient(1);
+        for (int i = 0; i < 2100; i++) {
+            patient.addRecord(i, "ECG", 10L * i);
+        }
+        patient.addRecord(-1, "ECG", 5L);
+        patient.addRecord(-2, "ECG", 10235L);
+        patient.addRecord(-3, "ECG", 10L * 2100 + 5);
+
+        RecordView series = patient.getSeries("ECG").snapshot();
+        assertEquals(2103, series.size());
+        for (int i = 1; i < series.size(); i++) {
+            assertTrue(series.getTimestamp(i - 1) <= series.getTimestamp(i));
+        }
+        assertEquals(-1, series.getValue(1));
+        assertEquals(-2, series.getValue(1025));
+        assertEquals(1023, series.getValue(1024));
+        assertEquals(1024, series.getValue(1026));
+    }
+
+    @Test
+    public void testGetRecordsOfTypeReturnsBinarySearchedView() {
+        Patient patient = new Patient(1);
+        patient.addRecord(80, "HeartRate", 1000L);
+        patient.addRecord(90, "HeartRate", 2000L);
+        patient.addRecord(100, "HeartRate", 3000L);
+        patient.addRecord(95, "Saturation", 2000L);
+
+        RecordView view = patient.getRecords("HeartRate", 2000L, 3000L);
+        assertEquals(2, view.size());
+        assertEquals(2000L, view.getTimestamp(0));
+        assertEquals(100, view.getValue(1));
+        assertEquals("HeartRate", view.get(1).getRecordType());
+        assertTrue(patient.getRecords("HeartRate", 3001L, 4000L).isEmpty());
+        assertTrue(patient.getRecords("ECG", 0L, 4000L).isEmpty());
+    }
+
+    @Test
+    public void testViewIsUnaffectedByLaterInsertions() {
+        Patient patient = new Patient(1);
+        patient.addRecord(1, "ECG", 1000L);
+        patient.addRecord(3, "ECG", 3000L);
+
+        RecordView view = patient.getRecords("ECG", 0L, 5000L);
+        patient.addRecord(2, "ECG", 2000L);
+        patient.addRecord(4, "ECG", 4000L);
+
+        assertEquals(2, view.size());
+        assertEquals(1, view.getValue(0));
+        assertEquals(3, view.getValue(1));
+        assertEquals(4, patient.getRecords("ECG", 0L, 5000L).size());
+    }
+
+    @Test
+    public void testGetRecordsIsUnmodifiableForAnyNumberOfTypes() {
+        Patient patient = new Patient(1);
+        PatientRecord extra = new PatientRecord(1, 0, "HeartRate", 0L);
+        assertThrows(UnsupportedOperationException.class, () -> patient.getRecords(0L, 5000L).add(extra));
+
+        patient.addRecord(80, "HeartRate", 1000L);
+        List<PatientRecord> oneType = patient.getRecords(0L, 5000L);
+        assertThrows(UnsupportedOperationException.class, () -> oneType.add(extra));
+        assertThrows(UnsupportedOperationException.class, () -> oneType.remove(0));
+
+        patient.addRecord(95, "Saturation", 2000L);
+        List<PatientRecord> twoTypes = patient.getRecords(0L, 5000L);
+        assertEquals(2, twoTypes.size());
+        assertThrows(UnsupportedOperationException.class, () -> twoTypes.add(extra));
+        assertThrows(UnsupportedOperationException.class, () -> twoTypes.remove(0));
+    }
+}
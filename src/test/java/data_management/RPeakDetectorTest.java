@@ -0,0 +1,164 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.generators.ECGDataGenerator;
+import com.cardio_generator.outputs.OutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.RPeakDetector;
+import com.data_management.RecordView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+class RPeakDetectorTest {
+    private static final long START = 1_700_000_000_000L;
+
+    /**
+     * Feeds a synthetic ECG with beats at the given R peak times: P, Q, R, S
+     * and T waves, breathing wander and noise.
+     */
+    private static void feed(DataStorage storage, int patientId, int sampleRate, List<Long> rPeaks, long startTime,
+            long endTime) {
+        SplittableRandom random = new SplittableRandom(patientId);
+        int next = 0;
+        for (long i = 0;; i++) {
+            long timestamp = startTime + i * 1000 / sampleRate;
+            if (timestamp >= endTime) {
+                return;
+            }
+            while (next + 1 < rPeaks.size() && Math.abs(rPeaks.get(next + 1) - timestamp) < Math
+                    .abs(rPeaks.get(next) - timestamp)) {
+                next++;
+            }
+            double t = (timestamp - rPeaks.get(next)) / 1000.0; // Seconds from the nearest R peak
+            double value = 0.15 * gaussian(t + 0.2, 0.025) - 0.12 * gaussian(t + 0.03, 0.01)
+                    + 1.0 * gaussian(t, 0.01) - 0.25 * gaussian(t - 0.03, 0.01) + 0.3 * gaussian(t - 0.25, 0.04)
+                    + 0.1 * Math.sin(2 * Math.PI * 0.25 * (timestamp - START) / 1000.0)
+                    + (random.nextDouble() - 0.5) * 0.04;
+            storage.addPatientData(patientId, value, "ECG", timestamp);
+        }
+    }
+
+    private static double gaussian(double t, double width) {
+        return Math.exp(-t * t / (2 * width * width));
+    }
+
+    private static List<Long> beats(long firstRPeak, long... rrMillis) {
+        List<Long> rPeaks = new ArrayList<>();
+        rPeaks.add(firstRPeak);
+        for (long rr : rrMillis) {
+            rPeaks.add(rPeaks.get(rPeaks.size() - 1) + rr);
+        }
+        return rPeaks;
+    }
+
+    private static int nearest(List<Long> rPeaks, long timestamp) {
+        int nearest = 0;
+        for (int i = 1; i < rPeaks.size(); i++) {
+            if (Math.abs(rPeaks.get(i) - timestamp) < Math.abs(rPeaks.get(nearest) - timestamp)) {
+                nearest = i;
+            }
+        }
+        return nearest;
+    }
+
+    private static long[] repeat(long rrMillis, int count) {
+        long[] intervals = new long[count];
+        Arrays.fill(intervals, rrMillis);
+        return intervals;
+    }
+
+    @Test
+    void testDerivesRrIntervalsAndHeartRateAtTheRPeaks() {
+        DataStorage storage = new DataStorage();
+        storage.addListener(new RPeakDetector(storage));
+        List<Long> rPeaks = beats(START + 300, repeat(800, 60)); // 75 bpm
+        feed(storage, 1, 500, rPeaks, START, START + 48_000);
+
+        RecordView rr = storage.getRecords(1, RPeakDetector.RR_INTERVAL, Long.MIN_VALUE, Long.MAX_VALUE);
+        RecordView heartRate = storage.getRecords(1, RPeakDetector.HEART_RATE, Long.MIN_VALUE, Long.MAX_VALUE);
+        // Every beat after the first second or so of learning
+        assertTrue(rr.size() >= 55 && rr.size() <= 59, rr.size() + " beats");
+        assertEquals(rr.size(), heartRate.size());
+        for (int i = 0; i < rr.size(); i++) {
+            assertEquals(800, rr.getValue(i), 4);
+            assertEquals(75, heartRate.getValue(i), 0.5);
+            assertEquals(rr.getTimestamp(i), heartRate.getTimestamp(i));
+            // Noise can make a neighbouring sample the highest
+            assertTrue(Math.abs(rPeaks.get(nearest(rPeaks, rr.getTimestamp(i))) - rr.getTimestamp(i)) <= 2,
+                    "Stamped at an R peak: " + rr.getTimestamp(i));
+        }
+    }
+
+    @Test
+    void testFollowsAChangingHeartRate() {
+        DataStorage storage = new DataStorage();
+        storage.addListener(new RPeakDetector(storage));
+        long[] intervals = new long[70];
+        for (int i = 0; i < intervals.length; i++) {
+            // From 60 to 120 bpm and back
+            intervals[i] = i < 35 ? 1000 - i * 14 : 510 + (i - 35) * 14;
+        }
+        List<Long> rPeaks = beats(START + 500, intervals);
+        feed(storage, 2, 250, rPeaks, START, rPeaks.get(rPeaks.size() - 1) + 500);
+
+        RecordView rr = storage.getRecords(2, RPeakDetector.RR_INTERVAL, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(rr.size() >= 65, rr.size() + " beats");
+        for (int i = 0; i < rr.size(); i++) {
+            int beat = nearest(rPeaks, rr.getTimestamp(i));
+            assertTrue(beat > 0 && Math.abs(rPeaks.get(beat) - rr.getTimestamp(i)) <= 4,
+                    "Stamped at an R peak: " + rr.getTimestamp(i));
+            assertEquals(rPeaks.get(beat) - rPeaks.get(beat - 1), rr.getValue(i), 8);
+        }
+    }
+
+    @Test
+    void testDetectsBeatsInTheSimulatorWaveformForEveryPatient() {
+        DataStorage storage = new DataStorage();
+        storage.addListener(new RPeakDetector(storage));
+        int patients = 4;
+        ECGDataGenerator[] generators = { new ECGDataGenerator(patients, new SplittableRandom(3), 250),
+                new ECGDataGenerator(patients, new SplittableRandom(4), 500) };
+        OutputStrategy toStorage = (patientId, timestamp, label, data) -> storage.addPatientData(patientId,
+                Double.parseDouble(data), label, timestamp);
+        for (int second = 0; second < 60; second++) {
+            for (int patientId = 1; patientId <= patients; patientId++) {
+                // Odd patients at 250 Hz, even ones at 500 Hz, through one detector
+                generators[patientId % 2 == 1 ? 0 : 1].generate(patientId, START + second * 1000L, toStorage);
+            }
+        }
+        for (int patientId = 1; patientId <= patients; patientId++) {
+            RecordView heartRate = storage.getRecords(patientId, RPeakDetector.HEART_RATE, Long.MIN_VALUE,
+                    Long.MAX_VALUE);
+            // Baselines of 60 to 80 bpm, drifting a little
+            assertTrue(heartRate.size() >= 50 && heartRate.size() <= 95, heartRate.size() + " beats");
+            for (int i = 0; i < heartRate.size(); i++) {
+                assertTrue(heartRate.getValue(i) > 45 && heartRate.getValue(i) < 100,
+                        "Heart rate " + heartRate.getValue(i));
+            }
+        }
+    }
+
+    @Test
+    void testSlowEcgAndGapsDeriveNothingAcrossThem() {
+        DataStorage storage = new DataStorage();
+        storage.addListener(new RPeakDetector(storage));
+        for (int second = 0; second < 600; second++) {
+            storage.addPatientData(3, Math.sin(second), "ECG", START + second * 1000L);
+        }
+        assertEquals(0, storage.getRecords(3, RPeakDetector.HEART_RATE, Long.MIN_VALUE, Long.MAX_VALUE).size());
+
+        // Two stretches of beats at 1,000 ms; a beat across the 1.5 s gap would be 2,500 ms
+        feed(storage, 4, 500, beats(START + 300, repeat(1000, 15)), START, START + 15_000);
+        feed(storage, 4, 500, beats(START + 16_800, repeat(1000, 15)), START + 16_500, START + 31_500);
+        RecordView rr = storage.getRecords(4, RPeakDetector.RR_INTERVAL, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(rr.size() >= 20, rr.size() + " beats");
+        for (int i = 0; i < rr.size(); i++) {
+            assertEquals(1000, rr.getValue(i), 4);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.data_management.Aggregation;
+import com.data_management.DataStorage;
+import com.data_management.RecordView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class RetentionTest {
+    private static final long START = 1_700_000_000_000L;
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY = 24 * HOUR;
+
+    @Test
+    void testOldReadingsAreDroppedInWholeChunks() {
+        DataStorage storage = new DataStorage();
+        for (int second = 0; second < 10_000; second++) {
+            storage.addPatientData(1, second, "HeartRate", START + 1000L * second);
+        }
+        RecordView before = storage.getRecords(1, "HeartRate", Long.MIN_VALUE, Long.MAX_VALUE);
+
+        long dropped = storage.enforceRetention(HOUR, DAY);
+        RecordView after = storage.getRecords(1, "HeartRate", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertEquals(0, dropped % 1024);
+        assertEquals(10_000 - dropped, after.size());
+        // Every reading of the last hour is kept, and less than one more chunk
+        assertTrue(after.size() >= 3_600 && after.size() < 3_600 + 1024, "kept " + after.size());
+        assertEquals(START + 9_999_000L, after.getTimestamp(after.size() - 1));
+        for (int i = 1; i < after.size(); i++) {
+            assertEquals(after.getTimestamp(i - 1) + 1000, after.getTimestamp(i));
+        }
+        // Views taken before are unaffected
+        assertEquals(10_000, before.size());
+        assertEquals(START, before.getTimestamp(0));
+
+        // Ingestion and late readings keep working after the drop
+        storage.addPatientData(1, -1, "HeartRate", START + 9_000_500L);
+        storage.addPatientData(1, 10_000, "HeartRate", START + 10_000_000L);
+        RecordView grown = storage.getRecords(1, "HeartRate", START + 9_000_000L, Long.MAX_VALUE);
+        assertEquals(1_002, grown.size());
+        assertEquals(-1, grown.getValue(1));
+
+        // Rollups still cover the whole history
+        Aggregation hourly = storage.aggregate(1, "HeartRate", START, START + 10_000_000L, 3);
+        int count = 0;
+        for (int bucket = 0; bucket < hourly.getBucketCount(); bucket++) {
+            count += hourly.getCount(bucket);
+        }
+        assertEquals(10_002, count);
+    }
+
+    @Test
+    void testEachPatientAgesFromItsOwnLatestReading() {
+        DataStorage storage = new DataStorage();
+        for (int second = 0; second < 10_000; second++) {
+            storage.addPatientData(1, second, "HeartRate", START + 1000L * second);
+        }
+        // One reading stamped a week ahead, as from a misconfigured device
+        storage.addPatientData(2, 80, "HeartRate", START + 7 * DAY);
+
+        storage.enforceRetention(HOUR, DAY);
+        RecordView kept = storage.getRecords(1, "HeartRate", Long.MIN_VALUE, Long.MAX_VALUE);
+        assertTrue(kept.size() >= 3_600 && kept.size() < 3_600 + 1024, "kept " + kept.size());
+        assertEquals(1, storage.getRecords(2, "HeartRate", Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(0, storage.enforceRetention(Long.MAX_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test
+    void testRollupsAreDroppedAfterTheirRetention() {
+        DataStorage storage = new DataStorage();
+        for (int minute = 0; minute < 3 * 24 * 60; minute++) {
+            storage.addPatientData(1, minute, "BloodPressure", START + 60_000L * minute);
+        }
+        storage.enforceRetention(HOUR, DAY);
+        Aggregation daily = storage.aggregate(1, "BloodPressure", START, START + 3 * DAY - 1, 3);
+        assertEquals(0, daily.getCount(0));
+        assertTrue(daily.getCount(2) > 0);
+        assertEquals(0, storage.enforceRetention(HOUR, DAY));
+        assertEquals(0, new DataStorage().enforceRetention(HOUR, DAY));
+    }
+
+    @Test
+    void testHeapPlateausUnderSteadyLoad() throws Exception {
+        DataStorage storage = new DataStorage();
+        storage.startRetention(HOUR, DAY, 5);
+        try {
+            // Four days of 20 patients at 1 Hz, fed faster than real time while
+            // retention runs in the background; sample the heap every simulated hour
+            List<Long> samples = new ArrayList<>();
+            for (int second = 0; second < 4 * 86_400; second++) {
+                long timestamp = START + 1000L * second;
+                for (int patientId = 1; patientId <= 20; patientId++) {
+                    storage.addPatientData(patientId, Math.sin(second), "ECG", timestamp);
+                    storage.addPatientData(patientId, 97, "Saturation", timestamp);
+                }
+                if (second % 3600 == 0) {
+                    samples.add(storage.estimateHeapBytes());
+                }
+            }
+            storage.stopRetention();
+            storage.enforceRetention(HOUR, DAY);
+            samples.add(storage.estimateHeapBytes());
+
+            // After the first day, when the rollups have filled their retention, the heap stays flat
+            long plateau = samples.get(30);
+            for (long sample : samples.subList(30, samples.size())) {
+                assertTrue(sample <= plateau * 1.2, "heap grew from " + plateau + " to " + sample);
+            }
+            // Without retention, four days would hold more than ten times as much
+            long unbounded = 20 * 2 * 4 * 86_400L * 16;
+            assertTrue(samples.get(samples.size() - 1) < unbounded / 10);
+        } finally {
+            storage.stopRetention();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package data_management;
+
+import com.alerts.SlidingWindowMax;
+import org.junit.jupiter.api.Test;
+import java.util.Random;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the SlidingWindowMax class used by the rapid saturation drop
+ * rule.
+ */
+public class SlidingWindowMaxTest {
+    @Test
+    public void testMatchesBruteForceMaximum() {
+        Random random = new Random(42);
+        long[] timestamps = new long[2000];
+        double[] values = new double[2000];
+        SlidingWindowMax window = new SlidingWindowMax(30_000);
+        long time = 0;
+        for (int i = 0; i < timestamps.length; i++) {
+            time += random.nextInt(3000);
+            timestamps[i] = time;
+            values[i] = 90 + random.nextInt(11);
+            window.add(time, values[i]);
+
+            double expected = Double.NEGATIVE_INFINITY;
+            for (int j = 0; j <= i; j++) {
+                if (time - timestamps[j] <= 30_000) {
+                    expected = Math.max(expected, values[j]);
+                }
+            }
+            assertEquals(expected, window.max());
+        }
+    }
+
+    @Test
+    public void testWindowBoundaryIsInclusive() {
+        SlidingWindowMax window = new SlidingWindowMax(1000);
+        window.add(0, 99);
+        window.advance(1000);
+        assertEquals(99, window.max());
+        window.advance(1001);
+        assertTrue(window.isEmpty());
+    }
+
+    @Test
+    public void testLateReadingIsRejected() {
+        SlidingWindowMax window = new SlidingWindowMax(1000);
+        window.add(500, 95);
+        window.add(500, 94);
+        assertThrows(IllegalArgumentException.class, () -> window.add(499, 99));
+        assertEquals(95, window.max());
+    }
+
+    @Test
+    public void testFullDayWindowFindsDropsAtOneHertz() {
+        // 24 hours of 1 Hz readings with a window covering the whole day; how the
+        // cost scales with the series length is measured by SlidingWindowMaxBenchmark
+        SlidingWindowMax window = new SlidingWindowMax(24 * 60 * 60 * 1000L);
+        int drops = 0;
+        for (int second = 0; second < 24 * 60 * 60; second++) {
+            double value = 100 - (second % 600) / 100.0; // slow decline, reset every 10 minutes
+            long timestamp = second * 1000L;
+            window.advance(timestamp);
+            if (window.max() - value >= 5) {
+                drops++;
+            }
+            window.add(timestamp, value);
+        }
+        // The last 100 seconds of every 10 minutes are at least 5 below the reset value
+        assertEquals(144 * 100, drops);
+        assertEquals(100, window.max());
+    }
+}
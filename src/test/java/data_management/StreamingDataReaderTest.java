@@ -0,0 +1,162 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+import com.cardio_generator.outputs.OutputStrategy;
+import com.cardio_generator.outputs.SlowConsumerPolicy;
+import com.cardio_generator.outputs.TcpOutputStrategy;
+import com.cardio_generator.outputs.WebSocketOutputStrategy;
+import com.data_management.DataStorage;
+import com.data_management.PatientRecord;
+import com.data_management.TcpDataReader;
+import com.data_management.WebSocketDataReader;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+class StreamingDataReaderTest {
+
+    private static void awaitClients(TcpOutputStrategy strategy, int clients) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (strategy.getClientStats().size() < clients && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(clients, strategy.getClientStats().size());
+    }
+
+    private static void awaitReadings(LongSupplier readings, long expected) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (readings.getAsLong() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(expected, readings.getAsLong());
+    }
+
+    private static void outputSample(OutputStrategy strategy, int count) {
+        for (int i = 0; i < count; i++) {
+            strategy.output(i % 10, 1000L + i, "ECG", Double.toString(i * 0.5));
+            strategy.output(i % 10, 1000L + i, "Saturation", "97.0%");
+        }
+        strategy.output(3, 5000L, "Alert", "triggered");
+    }
+
+    private static void assertSampleStored(DataStorage storage, int count) {
+        List<PatientRecord> records = storage.getRecords(3, 0, Long.MAX_VALUE);
+        assertEquals(count / 10 * 2 + 1, records.size());
+        for (PatientRecord record : records) {
+            switch (record.getRecordType()) {
+                case "ECG" -> assertEquals((record.getTimestamp() - 1000) * 0.5, record.getMeasurementValue());
+                case "Saturation" -> assertEquals(97.0, record.getMeasurementValue());
+                case "Alert" -> assertEquals(1.0, record.getMeasurementValue());
+                default -> fail("Unexpected record type " + record.getRecordType());
+            }
+        }
+    }
+
+    @Test
+    void testTcpTextStreamIsStoredUntilServerCloses() throws Exception {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 0, SlowConsumerPolicy.BLOCK, 64);
+        TcpDataReader reader = new TcpDataReader("localhost", strategy.getLocalPort());
+        DataStorage storage = new DataStorage();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reading = executor.submit(() -> {
+                reader.readData(storage);
+                return null;
+            });
+            awaitClients(strategy, 1);
+            outputSample(strategy, 20_000);
+            awaitReadings(reader::getReadings, 40_001);
+            strategy.close();
+            reading.get(5, TimeUnit.SECONDS);
+            assertEquals(0, reader.getMalformedLines());
+            assertSampleStored(storage, 20_000);
+        } finally {
+            strategy.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTcpBinaryStreamIsStored() throws Exception {
+        TcpOutputStrategy strategy = new TcpOutputStrategy(0, 100, SlowConsumerPolicy.BLOCK, 64);
+        TcpDataReader reader = new TcpDataReader("localhost", strategy.getLocalPort(), true);
+        DataStorage storage = new DataStorage();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> reading = executor.submit(() -> {
+                reader.readData(storage);
+                return null;
+            });
+            awaitClients(strategy, 1);
+            outputSample(strategy, 20_000);
+            awaitReadings(reader::getReadings, 40_001);
+            reader.close();
+            reading.get(5, TimeUnit.SECONDS);
+            assertSampleStored(storage, 20_000);
+        } finally {
+            strategy.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testWebSocketTextStreamIsStored() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        WebSocketOutputStrategy strategy = new WebSocketOutputStrategy(port);
+        DataStorage storage = new DataStorage();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            // The server starts and registers connections asynchronously, so
+            // retry until the reader connects and send probes until one arrives
+            WebSocketDataReader reader = null;
+            Future<?> reading = null;
+            long probes = 0;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (reader == null || reader.getReadings() == 0) {
+                assertTrue(System.currentTimeMillis() < deadline, "Could not connect");
+                if (reading == null || reading.isDone()) {
+                    WebSocketDataReader attempt = new WebSocketDataReader(URI.create("ws://localhost:" + port));
+                    reader = attempt;
+                    reading = executor.submit(() -> {
+                        attempt.readData(storage);
+                        return null;
+                    });
+                }
+                strategy.output(99, probes, "ECG", "0.0");
+                probes++;
+                Thread.sleep(50);
+            }
+            outputSample(strategy, 2_000);
+            WebSocketDataReader connected = reader;
+            awaitReadings(() -> connected.getReadings() - storage.getRecords(99, 0, Long.MAX_VALUE).size(), 4_001);
+            reader.close();
+            reading.get(5, TimeUnit.SECONDS);
+            assertSampleStored(storage, 2_000);
+        } finally {
+            strategy.close();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testConnectionFailureIsReported() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        TcpDataReader reader = new TcpDataReader("localhost", port);
+        assertThrows(IOException.class, () -> reader.readData(new DataStorage()));
+    }
+}
@@ -0,0 +1,83 @@
+package data_management;
+
+import com.alerts.TemporalJoin;
+import com.data_management.Patient;
+import org.junit.jupiter.api.Test;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the TemporalJoin class, focusing on timestamps at the edges
+ * of the tolerance window.
+ */
+public class TemporalJoinTest {
+    @Test
+    public void testReadingsExactlyOneToleranceApartDoNotMatch() {
+        TemporalJoin join = new TemporalJoin(1000);
+        assertEquals(0, join.offerLeft(0, 1, null));
+        assertEquals(0, join.offerRight(1000, 2, null));
+    }
+
+    @Test
+    public void testReadingsJustInsideToleranceMatch() {
+        TemporalJoin join = new TemporalJoin(1000);
+        join.offerLeft(0, 1, null);
+        List<long[]> pairs = new ArrayList<>();
+        assertEquals(1, join.offerRight(999, 2, (lt, lv, rt, rv) -> pairs.add(new long[] { lt, rt })));
+        assertArrayEquals(new long[] { 0, 999 }, pairs.get(0));
+    }
+
+    @Test
+    public void testEqualTimestampsMatch() {
+        TemporalJoin join = new TemporalJoin(1);
+        join.offerRight(500, 2, null);
+        assertEquals(1, join.offerLeft(500, 1, null));
+    }
+
+    @Test
+    public void testEvictedReadingsNoLongerMatch() {
+        TemporalJoin join = new TemporalJoin(1000);
+        join.offerLeft(0, 1, null);
+        join.offerLeft(1500, 1, null); // evicts the reading at 0
+        assertEquals(1, join.offerRight(1600, 2, null));
+    }
+
+    @Test
+    public void testBatchJoinMatchesCrossProduct() {
+        Patient patient = new Patient(1);
+        long[] left = { 0, 1000, 1999, 5000, 5000, 9000 };
+        long[] right = { 0, 999, 3000, 4001, 6000, 20000 };
+        for (long timestamp : left) {
+            patient.addRecord(80, "Left", timestamp);
+        }
+        for (long timestamp : right) {
+            patient.addRecord(timestamp == 999 ? 100 : 90, "Right", timestamp);
+        }
+
+        int expected = 0;
+        for (long l : left) {
+            for (long r : right) {
+                if (r != 999 && Math.abs(l - r) < 1000) {
+                    expected++;
+                }
+            }
+        }
+        int matches = TemporalJoin.join(patient.getRecords("Left", 0, Long.MAX_VALUE), v -> v < 90,
+                patient.getRecords("Right", 0, Long.MAX_VALUE), v -> v < 92, 1000, (lt, lv, rt, rv) -> {
+                    assertTrue(Math.abs(lt - rt) < 1000);
+                });
+        assertEquals(expected, matches);
+    }
+
+    @Test
+    public void testLateReadingsAreMatchedAndKeptInOrder() {
+        TemporalJoin join = new TemporalJoin(1000);
+        join.offerLeft(5000, 1, null);
+        assertEquals(1, join.offerRight(4500, 2, null)); // late, still inside the window
+        join.offerRight(4800, 2, null);
+        assertEquals(2, join.offerLeft(5400, 1, null));
+        assertEquals(0, join.offerRight(3000, 2, null)); // already outside the window, not kept
+        assertEquals(1, join.offerLeft(5600, 1, null)); // 4500 has been evicted, 4800 has not
+    }
+}
@@ -0,0 +1,218 @@
+package data_management;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.data_management.DataStorage;
+import com.data_management.RecordView;
+import com.data_management.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+class WriteAheadLogTest {
+    private static final long START = 1_700_000_000_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testReadingsAreRecoveredAfterClose() throws IOException {
+        DataStorage storage = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), storage)) {
+            assertEquals(0, log.getRecoveryReport().getSnapshotReadings());
+            assertEquals(0, log.getRecoveryReport().getReplayedReadings());
+            addReadings(storage, 0, 5_000);
+            storage.addPatientData(2, 120, "SystolicPressure", START - 1); // Late reading for a new label
+        }
+        storage.addPatientData(1, 1, "ECG", START + 99_999_000L); // Not logged once closed
+
+        DataStorage recovered = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), recovered)) {
+            assertEquals(10_001, log.getRecoveryReport().getReplayedReadings());
+            assertSameReadings(storage, recovered, 1, "ECG", 5_000);
+            assertSameReadings(storage, recovered, 2, "Saturation", 5_000);
+            assertEquals(120, recovered.getRecords(2, "SystolicPressure", START - 1, START - 1).getValue(0));
+
+            // Logging resumes in a new segment
+            addReadings(recovered, 5_000, 6_000);
+        }
+        DataStorage again = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), again)) {
+            assertEquals(12_001, log.getRecoveryReport().getReplayedReadings());
+            assertSameReadings(recovered, again, 1, "ECG", 6_000);
+        }
+    }
+
+    @Test
+    void testSyncMakesReadingsDurableWithoutClose() throws IOException {
+        DataStorage storage = new DataStorage();
+        WriteAheadLog log = new WriteAheadLog(directory.toString(), storage, 60_000);
+        addReadings(storage, 0, 100);
+        long start = System.nanoTime();
+        log.sync();
+        // The commit interval is a minute; sync must not wait for it
+        assertTrue(System.nanoTime() - start < 5_000_000_000L, "sync waited for the commit interval");
+        // Recover from the files as they are, as after a crash
+        DataStorage recovered = new DataStorage();
+        copyInto(directory.resolve("crash"));
+        WriteAheadLog crashed = new WriteAheadLog(directory.resolve("crash").toString(), recovered);
+        assertEquals(200, crashed.getRecoveryReport().getReplayedReadings());
+        crashed.close();
+        log.close();
+    }
+
+    @Test
+    void testTornFrameAtTheEndOfTheLogIsIgnored() throws IOException {
+        DataStorage storage = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), storage)) {
+            addReadings(storage, 0, 1_000);
+        }
+        Path segment = files("wal-").get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5); // Half of the last reading
+        }
+
+        DataStorage recovered = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), recovered)) {
+            assertEquals(1_999, log.getRecoveryReport().getReplayedReadings());
+            assertSameReadings(storage, recovered, 1, "ECG", 1_000);
+            assertEquals(999, recovered.getRecords(2, "Saturation", Long.MIN_VALUE, Long.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    void testSnapshotReplacesTheLogAndTheTailIsReplayedOnce() throws IOException {
+        DataStorage storage = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), storage)) {
+            addReadings(storage, 0, 3_000);
+            log.snapshot();
+            assertEquals(1, files("snapshot-").size());
+            List<Path> segments = files("wal-");
+            assertEquals(1, segments.size(), "Covered segments are deleted: " + segments);
+
+            addReadings(storage, 3_000, 4_000);
+            log.snapshot();
+            addReadings(storage, 4_000, 4_500);
+            assertEquals(1, files("snapshot-").size());
+        }
+
+        DataStorage recovered = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), recovered)) {
+            WriteAheadLog.RecoveryReport report = log.getRecoveryReport();
+            assertEquals(8_000, report.getSnapshotReadings());
+            assertEquals(1_000, report.getReplayedReadings());
+            assertSameReadings(storage, recovered, 1, "ECG", 4_500);
+            assertSameReadings(storage, recovered, 2, "Saturation", 4_500);
+        }
+    }
+
+    @Test
+    void testReadingsAddedDuringASnapshotAreStoredOnce() throws IOException {
+        DataStorage storage = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), storage)) {
+            addReadings(storage, 0, 2_000);
+            // Keep adding while the snapshot is written; each reading must end
+            // up either in the snapshot or in the next segment, never both
+            Thread feeder = new Thread(() -> addReadings(storage, 2_000, 20_000));
+            feeder.start();
+            log.snapshot();
+            try {
+                feeder.join();
+            } catch (InterruptedException e) {
+                fail(e);
+            }
+        }
+
+        DataStorage recovered = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), recovered)) {
+            WriteAheadLog.RecoveryReport report = log.getRecoveryReport();
+            assertEquals(40_000, report.getSnapshotReadings() + report.getReplayedReadings());
+            assertSameReadings(storage, recovered, 1, "ECG", 20_000);
+            assertSameReadings(storage, recovered, 2, "Saturation", 20_000);
+        }
+    }
+
+    @Test
+    void testRepeatedReadingsAfterASnapshotAreRecovered() throws IOException {
+        DataStorage storage = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), storage)) {
+            addReadings(storage, 0, 500);
+            log.snapshot();
+            // The same readings again, as a device resending them would add
+            addReadings(storage, 0, 500);
+        }
+
+        DataStorage recovered = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), recovered)) {
+            assertEquals(1_000, log.getRecoveryReport().getSnapshotReadings());
+            assertEquals(1_000, log.getRecoveryReport().getReplayedReadings());
+            assertSameReadings(storage, recovered, 1, "ECG", 1_000);
+            assertSameReadings(storage, recovered, 2, "Saturation", 1_000);
+        }
+    }
+
+    @Test
+    void testRecoveryDoesNotNotifyListenersRegisteredBeforehand() throws IOException {
+        DataStorage storage = new DataStorage();
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), storage)) {
+            addReadings(storage, 0, 1_000);
+            log.snapshot();
+            addReadings(storage, 1_000, 1_500);
+        }
+
+        DataStorage recovered = new DataStorage();
+        long[] notified = new long[1];
+        recovered.addListener((patientId, recordTypeId, measurementValue, timestamp) -> notified[0]++);
+        try (WriteAheadLog log = new WriteAheadLog(directory.toString(), recovered)) {
+            assertEquals(2_000, log.getRecoveryReport().getSnapshotReadings());
+            assertEquals(1_000, log.getRecoveryReport().getReplayedReadings());
+            assertSameReadings(storage, recovered, 1, "ECG", 1_500);
+            assertEquals(0, notified[0]);
+            // Readings added after recovery are passed on as usual
+            recovered.addPatientData(1, 0.5, "ECG", START + 2_000_000L);
+            assertEquals(1, notified[0]);
+        }
+    }
+
+    private static void addReadings(DataStorage storage, int from, int to) {
+        for (int second = from; second < to; second++) {
+            storage.addPatientData(1, Math.sin(second), "ECG", START + 1000L * second);
+            storage.addPatientData(2, 90 + second % 10, "Saturation", START + 1000L * second);
+        }
+    }
+
+    private static void assertSameReadings(DataStorage expected, DataStorage actual, int patientId,
+            String recordType, int size) {
+        RecordView want = expected.getRecords(patientId, recordType, START, Long.MAX_VALUE - 1);
+        RecordView got = actual.getRecords(patientId, recordType, START, Long.MAX_VALUE - 1);
+        assertEquals(size, got.size());
+        for (int i = 0; i < size; i++) {
+            assertEquals(want.getTimestamp(i), got.getTimestamp(i));
+            assertEquals(want.getValue(i), got.getValue(i));
+        }
+    }
+
+    private List<Path> files(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().startsWith(prefix)).sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private void copyInto(Path target) throws IOException {
+        Files.createDirectories(target);
+        for (Path file : files("")) {
+            if (Files.isRegularFile(file)) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+    }
+}